@@ -0,0 +1,119 @@
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Totali di fatturazione del LogManager mantenuti incrementalmente: complessivo,
+ * per tipo (HW/SW), per cliente (case-insensitive) e per mese.
+ *
+ * Il LogManager li aggiorna a ogni aggiunta, eliminazione e modifica (togliendo il
+ * contributo con i valori vecchi e rimettendolo con i nuovi), quindi un riepilogo costa
+ * O(numero di clienti/mesi) invece di ricalcolare calcolaTariffa() su tutto lo storico.
+ *
+ * Gli importi sono tenuti in centesimi (long): sommare e sottrarre double migliaia di
+ * volte lascerebbe residui tipo 0.0000000001 anche quando un gruppo torna vuoto.
+ *
+ * Concorrenza: come IndiciSecondari, scritture solo sotto il lock del LogManager e letture
+ * libere. Ogni Totale è immutabile e viene sostituito in blocco, quindi numero e importo
+ * letti insieme sono sempre coerenti tra loro.
+ */
+final class Aggregati {
+
+    /** Numero di interventi e importo fatturabile di un gruppo. Immutabile. */
+    static final class Totale {
+
+        static final Totale ZERO = new Totale(0, 0L);
+
+        private final int numero;
+        private final long centesimi;
+
+        private Totale(int numero, long centesimi) {
+            this.numero    = numero;
+            this.centesimi = centesimi;
+        }
+
+        /** Per chi calcola i totali per conto suo (vedi Colonne). */
+        static Totale di(int numero, long centesimi) {
+            return numero == 0 && centesimi == 0 ? ZERO : new Totale(numero, centesimi);
+        }
+
+        int getNumero() {
+            return numero;
+        }
+
+        double getImporto() {
+            return centesimi / 100.0;
+        }
+
+        /** Tariffa media del gruppo (0 se vuoto). */
+        double getMedia() {
+            return numero == 0 ? 0.0 : getImporto() / numero;
+        }
+
+        private Totale piu(int n, long c) {
+            return new Totale(numero + n, centesimi + c);
+        }
+    }
+
+    private final Map<String, Totale> perTipo             = new ConcurrentHashMap<>();
+    private final Map<String, Totale> perCliente          = new ConcurrentHashMap<>();
+    private final NavigableMap<YearMonth, Totale> perMese = new ConcurrentSkipListMap<>();
+    private volatile Totale complessivo = Totale.ZERO;
+
+    /** Va chiamato con i valori correnti dell'intervento. */
+    void aggiungi(Intervento i) {
+        applica(i, 1);
+    }
+
+    /** Va chiamato PRIMA di modificare l'intervento, finché ha i valori conteggiati. */
+    void rimuovi(Intervento i) {
+        applica(i, -1);
+    }
+
+    void svuota() {
+        perTipo.clear();
+        perCliente.clear();
+        perMese.clear();
+        complessivo = Totale.ZERO;
+    }
+
+    Totale complessivo() {
+        return complessivo;
+    }
+
+    /** Chiave = "HW" / "SW". */
+    Map<String, Totale> perTipo() {
+        return Collections.unmodifiableMap(perTipo);
+    }
+
+    /** Chiave = nome del cliente normalizzato (vedi IndiciSecondari.normalizzaCliente). */
+    Map<String, Totale> perCliente() {
+        return Collections.unmodifiableMap(perCliente);
+    }
+
+    /** In ordine cronologico. */
+    NavigableMap<YearMonth, Totale> perMese() {
+        return Collections.unmodifiableNavigableMap(perMese);
+    }
+
+    // --- Helper ---
+
+    private void applica(Intervento i, int segno) {
+        long centesimi = segno * Math.round(i.calcolaTariffa() * 100);
+        complessivo = complessivo.piu(segno, centesimi);
+        aggiorna(perTipo, i.getTipo(), segno, centesimi);
+        aggiorna(perCliente, IndiciSecondari.normalizzaCliente(i.getCliente()), segno, centesimi);
+        aggiorna(perMese, YearMonth.from(i.getData()), segno, centesimi);
+    }
+
+    private static <K> void aggiorna(Map<K, Totale> gruppi, K chiave, int n, long centesimi) {
+        // null dalla funzione di merge = il gruppo è tornato vuoto e sparisce dalla mappa.
+        gruppi.merge(chiave, Totale.ZERO.piu(n, centesimi), (vecchio, delta) -> {
+            Totale nuovo = vecchio.piu(delta.numero, delta.centesimi);
+            return nuovo.numero == 0 ? null : nuovo;
+        });
+    }
+}
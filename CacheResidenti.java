@@ -0,0 +1,98 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Limite alla memoria degli interventi residenti con il caricamento pigro: tiene le voci
+ * residenti in ordine di utilizzo e, quando superano il limite (in numero o in byte stimati),
+ * indica quali scaricare partendo da quella usata meno di recente (LRU).
+ *
+ * Contiene solo voci che si possono scaricare senza perdere nulla: residenti ma identiche
+ * al record nel file mappato, che la prossima lettura decodifica di nuovo. Le voci modificate
+ * e non ancora salvate non ci entrano finché il salvataggio non le riporta su disco.
+ * Cosa significhi "scaricare" lo decide il LogManager: qui ci sono solo ordine, pesi e limiti.
+ *
+ * Metodi synchronized: la cache viene aggiornata anche dalle letture, che non prendono il
+ * lock di scrittura del LogManager. Ogni metodo tiene il monitor per O(1), tranne
+ * {@link #eccedenti()}, O(voci da scaricare).
+ */
+final class CacheResidenti<E> {
+
+    private final long maxElementi; // 0 = nessun limite
+    private final long maxByte;     // 0 = nessun limite
+    // accessOrder = true: get() sposta la voce in coda, la prima è la meno usata di recente.
+    private final LinkedHashMap<E, Long> pesi = new LinkedHashMap<>(16, 0.75f, true);
+    private long byteStimati;
+
+    /** Almeno uno dei due limiti deve essere positivo; 0 = nessun limite da quel lato. */
+    CacheResidenti(long maxElementi, long maxByte) {
+        if (maxElementi < 0 || maxByte < 0 || (maxElementi == 0 && maxByte == 0)) {
+            throw new IllegalArgumentException("limiti della cache non validi: "
+                    + maxElementi + " interventi, " + maxByte + " byte");
+        }
+        this.maxElementi = maxElementi;
+        this.maxByte = maxByte;
+    }
+
+    /** La voce è stata appena usata: diventa l'ultima a essere scaricata. Nessun effetto se non c'è. */
+    synchronized void usa(E voce) {
+        pesi.get(voce);
+    }
+
+    /** Nuova voce residente e scaricabile, con la stima dei byte che libererebbe. */
+    synchronized void aggiungi(E voce, long peso) {
+        Long precedente = pesi.put(voce, peso);
+        byteStimati += peso - (precedente != null ? precedente : 0);
+    }
+
+    /** La voce non è più scaricabile (modificata, eliminata, sostituita). Nessun effetto se non c'è. */
+    synchronized void rimuovi(E voce) {
+        Long peso = pesi.remove(voce);
+        if (peso != null) {
+            byteStimati -= peso;
+        }
+    }
+
+    synchronized boolean oltreIlLimite() {
+        return (maxElementi > 0 && pesi.size() > maxElementi) || (maxByte > 0 && byteStimati > maxByte);
+    }
+
+    /**
+     * Toglie dalla cache le voci usate meno di recente finché si rientra nei limiti,
+     * e le restituisce perché il chiamante le scarichi.
+     */
+    synchronized List<E> eccedenti() {
+        List<E> fuori = new ArrayList<>();
+        Iterator<Map.Entry<E, Long>> meno = pesi.entrySet().iterator();
+        while (oltreIlLimite() && meno.hasNext()) {
+            Map.Entry<E, Long> e = meno.next();
+            byteStimati -= e.getValue();
+            fuori.add(e.getKey());
+            meno.remove();
+        }
+        return fuori;
+    }
+
+    synchronized void svuota() {
+        pesi.clear();
+        byteStimati = 0;
+    }
+
+    synchronized int dimensione() {
+        return pesi.size();
+    }
+
+    synchronized long getByteStimati() {
+        return byteStimati;
+    }
+
+    long getMaxElementi() {
+        return maxElementi;
+    }
+
+    long getMaxByte() {
+        return maxByte;
+    }
+}
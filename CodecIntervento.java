@@ -0,0 +1,245 @@
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Codifica binaria scritta a mano di un singolo Intervento, usata da snapshot e journal
+ * al posto della serializzazione Java (niente descrittori di classe né reflection).
+ *
+ * Layout di un record:
+ *   tipo (byte: TIPO_HW / TIPO_SW)
+ *   id, cliente           (stringhe)
+ *   data                  (int: giorni dall'epoch, LocalDate.toEpochDay)
+ *   descrizione           (stringa)
+ *   pezzoRicambio / sistemaOperativo (stringa, in base al tipo)
+ *
+ * Stringa = lunghezza in byte come varint (1 byte fino a 127) + byte UTF-8.
+ *
+ * Con una {@link Tabella} (snapshot dalla versione 2) cliente e pezzoRicambio /
+ * sistemaOperativo non sono stringhe ma il loro codice nella tabella, come varint: di
+ * solito 1 o 2 byte al posto di nome e lunghezza. Il journal non usa la tabella: i suoi
+ * record devono potersi rileggere uno per uno.
+ *
+ * Aggiungere un campo o un tipo significa cambiare il layout: in quel caso va
+ * incrementata la versione dei file che lo usano (SnapshotBinario, Journal).
+ */
+final class CodecIntervento {
+
+    static final byte TIPO_HW = 1;
+    static final byte TIPO_SW = 2;
+
+    private CodecIntervento() {
+    }
+
+    /**
+     * Scrive il record a partire dalla posizione corrente di {@code dst}.
+     *
+     * @throws BufferOverflowException se nel buffer non c'è spazio: il chiamante
+     *         riporta la posizione indietro, svuota il buffer e riprova
+     * @throws ArithmeticException se la data non sta nel formato (vedi giorno)
+     */
+    static void scrivi(Intervento i, ByteBuffer dst) {
+        scrivi(i, dst, null);
+    }
+
+    /**
+     * Come {@link #scrivi(Intervento, ByteBuffer)}, con i valori ripetuti codificati
+     * come codici di {@code tabella} (null = stringhe per esteso).
+     *
+     * @throws IllegalArgumentException se un valore non è nella tabella
+     */
+    static void scrivi(Intervento i, ByteBuffer dst, Tabella tabella) {
+        if (i instanceof InterventoHardware) {
+            dst.put(TIPO_HW);
+        } else if (i instanceof InterventoSoftware) {
+            dst.put(TIPO_SW);
+        } else {
+            throw new IllegalArgumentException("tipo di intervento non supportato: " + i.getClass());
+        }
+        scriviStringa(i.getId(), dst);
+        scriviValore(i.getCliente(), dst, tabella);
+        dst.putInt(giorno(i));
+        scriviStringa(i.getDescrizione(), dst);
+        scriviValore(specifico(i), dst, tabella);
+    }
+
+    /**
+     * La data come giorni dall'epoch. Le date accettate in ingresso ci stanno sempre (vedi
+     * Intervento.verificaData); una data più lontana, arrivata da un vecchio log serializzato,
+     * non deve diventarne un'altra in silenzio.
+     *
+     * @throws ArithmeticException se non sta in un int
+     */
+    private static int giorno(Intervento i) {
+        long giorno = i.getData().toEpochDay();
+        if (giorno != (int) giorno) {
+            throw new ArithmeticException("intervento " + i.getId() + ": data " + i.getData()
+                    + " non rappresentabile nel formato binario");
+        }
+        return (int) giorno;
+    }
+
+    /** Il campo proprio del tipo: pezzoRicambio per HW, sistemaOperativo per SW. */
+    static String specifico(Intervento i) {
+        return i instanceof InterventoHardware
+                ? ((InterventoHardware) i).getPezzoRicambio()
+                : ((InterventoSoftware) i).getSistemaOperativo();
+    }
+
+    /** Legge un record a partire dalla posizione corrente di {@code src}. */
+    static Intervento leggi(ByteBuffer src) {
+        return leggi(src, null);
+    }
+
+    /**
+     * Legge un record scritto con una tabella i cui valori, in ordine di codice, sono
+     * {@code valori} (null = record senza tabella).
+     */
+    static Intervento leggi(ByteBuffer src, String[] valori) {
+        byte tipo          = src.get();
+        String id          = leggiStringa(src);
+        String cliente     = leggiValore(src, valori);
+        LocalDate data     = LocalDate.ofEpochDay(src.getInt());
+        String descrizione = leggiStringa(src);
+        String specifico   = leggiValore(src, valori);
+        switch (tipo) {
+            case TIPO_HW: return new InterventoHardware(id, cliente, data, descrizione, specifico);
+            case TIPO_SW: return new InterventoSoftware(id, cliente, data, descrizione, specifico);
+            default: throw new IllegalArgumentException("tipo di record sconosciuto: " + tipo);
+        }
+    }
+
+    private static void scriviValore(String valore, ByteBuffer dst, Tabella tabella) {
+        if (tabella == null) {
+            scriviStringa(valore, dst);
+        } else {
+            scriviVarint(tabella.codice(valore), dst);
+        }
+    }
+
+    private static String leggiValore(ByteBuffer src, String[] valori) {
+        if (valori == null) {
+            return leggiStringa(src);
+        }
+        int codice = leggiVarint(src);
+        if (codice >= valori.length) {
+            throw new IllegalArgumentException("codice di tabella inesistente: " + codice);
+        }
+        return valori[codice];
+    }
+
+    /**
+     * Tabella dei valori ripetuti di un file: ogni valore distinto compare una volta,
+     * i record lo indicano con la sua posizione. Si riempie prima di scrivere i record
+     * (la tabella sta nell'header dello snapshot) e poi si usa in sola lettura.
+     */
+    static final class Tabella {
+
+        private final List<String> valori = new ArrayList<>();
+        private final Map<String, Integer> codici = new HashMap<>();
+
+        /**
+         * @param base valori di una tabella esistente, che mantengono il loro codice: i
+         *             record scritti con quella tabella restano validi così come sono
+         */
+        Tabella(String[] base) {
+            if (base != null) {
+                for (String v : base) {
+                    aggiungi(v);
+                }
+            }
+        }
+
+        /** Aggiunge i valori ripetuti dell'intervento, se non ci sono già. */
+        void aggiungi(Intervento i) {
+            aggiungi(i.getCliente());
+            aggiungi(specifico(i));
+        }
+
+        private void aggiungi(String valore) {
+            codici.computeIfAbsent(valore, v -> {
+                valori.add(v);
+                return valori.size() - 1;
+            });
+        }
+
+        int codice(String valore) {
+            Integer codice = codici.get(valore);
+            if (codice == null) {
+                throw new IllegalArgumentException("valore non presente nella tabella: " + valore);
+            }
+            return codice;
+        }
+
+        String[] valori() {
+            return valori.toArray(new String[0]);
+        }
+    }
+
+    // --- Primitive condivise con gli altri formati binari ---
+
+    static void scriviStringa(String s, ByteBuffer dst) {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        scriviVarint(utf8.length, dst);
+        dst.put(utf8);
+    }
+
+    /**
+     * @throws IllegalArgumentException se la lunghezza supera i byte rimasti (dato corrotto
+     *         o troncato): chi legge un file la trasforma in IOException
+     */
+    static String leggiStringa(ByteBuffer src) {
+        int lunghezza = leggiVarint(src);
+        if (lunghezza > src.remaining()) {
+            throw new IllegalArgumentException("stringa troncata (" + lunghezza + " byte)");
+        }
+        String s;
+        if (src.hasArray()) {
+            // Buffer su heap: decodifica direttamente dall'array, senza copia intermedia.
+            s = new String(src.array(), src.arrayOffset() + src.position(), lunghezza, StandardCharsets.UTF_8);
+            src.position(src.position() + lunghezza);
+        } else {
+            byte[] utf8 = new byte[lunghezza];
+            src.get(utf8);
+            s = new String(utf8, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+
+    /** Intero non negativo in 7 bit per byte, bit alto = "continua". */
+    static void scriviVarint(int valore, ByteBuffer dst) {
+        while ((valore & ~0x7F) != 0) {
+            dst.put((byte) ((valore & 0x7F) | 0x80));
+            valore >>>= 7;
+        }
+        dst.put((byte) valore);
+    }
+
+    /**
+     * Il contrario di scriviVarint: mai negativo, così un valore corrotto usato come
+     * lunghezza o come codice si scopre con un confronto e non con un indice fuori dai limiti.
+     *
+     * @throws IllegalArgumentException se non è la codifica di un int non negativo
+     */
+    static int leggiVarint(ByteBuffer src) {
+        int valore = 0;
+        for (int shift = 0; shift < 28; shift += 7) {
+            byte b = src.get();
+            valore |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return valore;
+            }
+        }
+        // Quinto byte: restano 3 bit prima del bit di segno, e nessun "continua".
+        byte b = src.get();
+        if ((b & 0xF8) != 0) {
+            throw new IllegalArgumentException("varint malformato");
+        }
+        return valore | b << 28;
+    }
+}
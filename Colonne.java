@@ -0,0 +1,448 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.IntStream;
+
+/**
+ * Copia a colonne del log per le analisi che scorrono molti interventi: totali di un
+ * periodo qualsiasi, eventualmente di un solo cliente, divisi per tipo, mese, cliente e
+ * sistema operativo.
+ *
+ * Aggregati risponde in O(1) per i gruppi fissi (tutto il log, un mese intero, un cliente
+ * su tutto lo storico). Per "dal 15 marzo al 10 settembre" o "Rossi nel 2023" bisognerebbe
+ * invece passare gli interventi uno per uno: oggetti sparsi in heap (o da decodificare, con
+ * il caricamento pigro), una chiamata virtuale a calcolaTariffa() e un LocalDate ciascuno.
+ * Qui gli stessi dati sono array di primitivi, una posizione per intervento:
+ *   giorni     data come epoch day
+ *   tipi       HW / SW, LIBERA per le posizioni lasciate da un'eliminazione
+ *   centesimi  tariffa già calcolata, in centesimi come in Aggregati
+ *   clienti    codice del cliente normalizzato (vedi IndiciSecondari.normalizzaCliente)
+ *   sistemi    codice del sistema operativo, -1 per gli HW
+ * e un riepilogo è un ciclo su array contigui che non alloca nulla per intervento. Oltre
+ * SOGLIA_PARALLELA posizioni la scansione si divide in blocchi sul pool di fork/join.
+ *
+ * Il LogManager la aggiorna insieme agli indici secondari (stesso ciclo di vita e stesso
+ * flag) e tiene nella voce la posizione del suo intervento. Le posizioni liberate dalle
+ * eliminazioni vengono riusate; i codici di clienti e sistemi non vengono mai tolti (sono
+ * pochi).
+ *
+ * Concorrenza: scritture solo sotto il lock di scrittura del LogManager e in più, per il
+ * tempo di aggiornare una posizione, sotto il write lock di uno StampedLock. Un riepilogo
+ * prova prima una lettura ottimistica, senza lock, e la ripete con il read lock solo se nel
+ * frattempo qualcosa è cambiato: il risultato è sempre una fotografia coerente.
+ */
+final class Colonne {
+
+    private static final byte LIBERA = 0;
+    private static final byte HW     = 1;
+    private static final byte SW     = 2;
+
+    // Sotto questa dimensione dividere il lavoro costa più della scansione stessa.
+    private static final int SOGLIA_PARALLELA = 1 << 17;
+    private static final int BLOCCO           = 1 << 15;
+
+    private final StampedLock lock = new StampedLock();
+
+    private int[]  giorni    = new int[0];
+    private byte[] tipi      = new byte[0];
+    private long[] centesimi = new long[0];
+    private int[]  clienti   = new int[0];
+    private int[]  sistemi   = new int[0];
+    private int occupate;      // posizioni usate almeno una volta: [0, occupate)
+    private int[] libere = new int[0];
+    private int numeroLibere;
+    // Mesi (anno * 12 + mese - 1) più vecchio e più recente mai visti: dimensionano i totali per mese.
+    private int meseMinimo = Integer.MAX_VALUE;
+    private int meseMassimo = Integer.MIN_VALUE;
+
+    // Codice → nome negli array (li legge anche la scansione), nome → codice solo per chi scrive.
+    private String[] nomiClienti = new String[0];
+    private int numeroClienti;
+    private final Map<String, Integer> codiciClienti = new HashMap<>();
+    private String[] nomiSistemi = new String[0];
+    private int numeroSistemi;
+    private final Map<String, Integer> codiciSistemi = new HashMap<>();
+
+    // --- Scritture (sotto il lock di scrittura del LogManager) ---
+
+    /** Aggiunge l'intervento con i suoi valori correnti e ne restituisce la posizione. */
+    int aggiungi(Intervento i) {
+        long stamp = lock.writeLock();
+        try {
+            int posizione = numeroLibere > 0 ? libere[--numeroLibere] : nuovaPosizione();
+            scrivi(posizione, i);
+            return posizione;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Da chiamare DOPO la modifica, con i valori nuovi. */
+    void aggiorna(int posizione, Intervento i) {
+        long stamp = lock.writeLock();
+        try {
+            scrivi(posizione, i);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void rimuovi(int posizione) {
+        long stamp = lock.writeLock();
+        try {
+            tipi[posizione] = LIBERA;
+            if (numeroLibere == libere.length) {
+                libere = Arrays.copyOf(libere, Math.max(16, libere.length * 2));
+            }
+            libere[numeroLibere++] = posizione;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void svuota() {
+        long stamp = lock.writeLock();
+        try {
+            giorni    = new int[0];
+            tipi      = new byte[0];
+            centesimi = new long[0];
+            clienti   = new int[0];
+            sistemi   = new int[0];
+            occupate  = 0;
+            libere    = new int[0];
+            numeroLibere = 0;
+            meseMinimo  = Integer.MAX_VALUE;
+            meseMassimo = Integer.MIN_VALUE;
+            nomiClienti = new String[0];
+            numeroClienti = 0;
+            codiciClienti.clear();
+            nomiSistemi = new String[0];
+            numeroSistemi = 0;
+            codiciSistemi.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private int nuovaPosizione() {
+        if (occupate == tipi.length) {
+            int capacita = Math.max(1024, tipi.length + (tipi.length >> 1));
+            giorni    = Arrays.copyOf(giorni, capacita);
+            tipi      = Arrays.copyOf(tipi, capacita);
+            centesimi = Arrays.copyOf(centesimi, capacita);
+            clienti   = Arrays.copyOf(clienti, capacita);
+            sistemi   = Arrays.copyOf(sistemi, capacita);
+        }
+        return occupate++;
+    }
+
+    private void scrivi(int p, Intervento i) {
+        int giorno = giorno(i.getData());
+        int mese = mese(giorno);
+        meseMinimo  = Math.min(meseMinimo, mese);
+        meseMassimo = Math.max(meseMassimo, mese);
+        giorni[p]    = giorno;
+        centesimi[p] = Math.round(i.calcolaTariffa() * 100);
+        clienti[p]   = codiceCliente(IndiciSecondari.normalizzaCliente(i.getCliente()));
+        if (i instanceof InterventoSoftware) {
+            tipi[p]    = SW;
+            sistemi[p] = codiceSistema(((InterventoSoftware) i).getSistemaOperativo());
+        } else {
+            tipi[p]    = HW;
+            sistemi[p] = -1;
+        }
+    }
+
+    private int codiceCliente(String nome) {
+        Integer codice = codiciClienti.get(nome);
+        if (codice == null) {
+            if (numeroClienti == nomiClienti.length) {
+                nomiClienti = Arrays.copyOf(nomiClienti, Math.max(16, nomiClienti.length * 2));
+            }
+            codice = numeroClienti;
+            nomiClienti[numeroClienti++] = nome;
+            codiciClienti.put(nome, codice);
+        }
+        return codice;
+    }
+
+    private int codiceSistema(String nome) {
+        Integer codice = codiciSistemi.get(nome);
+        if (codice == null) {
+            if (numeroSistemi == nomiSistemi.length) {
+                nomiSistemi = Arrays.copyOf(nomiSistemi, Math.max(16, nomiSistemi.length * 2));
+            }
+            codice = numeroSistemi;
+            nomiSistemi[numeroSistemi++] = nome;
+            codiciSistemi.put(nome, codice);
+        }
+        return codice;
+    }
+
+    // --- Riepiloghi (senza lock, vedi sopra) ---
+
+    /**
+     * Totali degli interventi nel periodo, estremi inclusi (null = nessun limite da quel
+     * lato), solo del cliente indicato se non è null (case-insensitive).
+     */
+    Riepilogo riepiloga(LocalDate da, LocalDate a, String cliente) {
+        int dal = da == null ? Integer.MIN_VALUE : giorno(da);
+        int al  = a == null ? Integer.MAX_VALUE : giorno(a);
+        String filtro = cliente == null ? null : IndiciSecondari.normalizzaCliente(cliente);
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                Riepilogo r = scansiona(dal, al, filtro);
+                if (lock.validate(stamp)) {
+                    return r;
+                }
+            } catch (RuntimeException e) {
+                // Stato letto a metà di una scrittura (es. array appena sostituiti): si ripete col lock.
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return scansiona(dal, al, filtro);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private Riepilogo scansiona(int dal, int al, String filtro) {
+        Fotografia f = new Fotografia(dal, al, filtro);
+        if (f.cliente == -2 || f.meseDal > f.meseAl) {
+            return f.riepilogo(new Parziale(f)); // cliente mai visto o nessun mese in comune
+        }
+        Parziale totale;
+        if (f.n < SOGLIA_PARALLELA) {
+            totale = new Parziale(f).scansiona(0, f.n);
+        } else {
+            int blocchi = (f.n + BLOCCO - 1) / BLOCCO;
+            totale = IntStream.range(0, blocchi).parallel()
+                    .mapToObj(b -> new Parziale(f).scansiona(b * BLOCCO, Math.min(f.n, (b + 1) * BLOCCO)))
+                    .reduce(Parziale::unisci)
+                    .orElseGet(() -> new Parziale(f));
+        }
+        return f.riepilogo(totale);
+    }
+
+    /** I campi letti una volta sola all'inizio della scansione, che poi usa solo questi. */
+    private final class Fotografia {
+        final int[]  giorni     = Colonne.this.giorni;
+        final byte[] tipi       = Colonne.this.tipi;
+        final long[] centesimi  = Colonne.this.centesimi;
+        final int[]  clienti    = Colonne.this.clienti;
+        final int[]  sistemi    = Colonne.this.sistemi;
+        final String[] nomiClienti = Colonne.this.nomiClienti;
+        final String[] nomiSistemi = Colonne.this.nomiSistemi;
+        final int n;
+        final int numeroClienti;
+        final int numeroSistemi;
+        final int dal;
+        final int al;
+        final int cliente; // -1 = tutti, -2 = cliente sconosciuto (nessun risultato)
+        final int meseDal;
+        final int meseAl;
+
+        Fotografia(int dal, int al, String filtro) {
+            this.n = Math.min(occupate, tipi.length);
+            this.numeroClienti = Math.min(Colonne.this.numeroClienti, nomiClienti.length);
+            this.numeroSistemi = Math.min(Colonne.this.numeroSistemi, nomiSistemi.length);
+            this.dal = dal;
+            this.al  = al;
+            int codice = filtro == null ? -1 : -2;
+            for (int c = 0; filtro != null && c < numeroClienti; c++) {
+                if (nomiClienti[c].equals(filtro)) {
+                    codice = c;
+                    break;
+                }
+            }
+            this.cliente = codice;
+            // I totali per mese stanno in un array: solo i mesi possibili sia nel log sia nel periodo.
+            this.meseDal = Math.max(meseMinimo, mese(dal));
+            this.meseAl  = Math.min(meseMassimo, mese(al));
+        }
+
+        Riepilogo riepilogo(Parziale p) {
+            Map<String, Aggregati.Totale> perTipo = new LinkedHashMap<>();
+            aggiungi(perTipo, "HW", p.numeroTipo[HW], p.centesimiTipo[HW]);
+            aggiungi(perTipo, "SW", p.numeroTipo[SW], p.centesimiTipo[SW]);
+            NavigableMap<YearMonth, Aggregati.Totale> perMese = new TreeMap<>();
+            for (int m = 0; m < p.numeroMese.length; m++) {
+                int mese = meseDal + m;
+                aggiungi(perMese, YearMonth.of(Math.floorDiv(mese, 12), Math.floorMod(mese, 12) + 1),
+                        p.numeroMese[m], p.centesimiMese[m]);
+            }
+            Map<String, Aggregati.Totale> perCliente = new HashMap<>();
+            for (int c = 0; c < numeroClienti; c++) {
+                aggiungi(perCliente, nomiClienti[c], p.numeroCliente[c], p.centesimiCliente[c]);
+            }
+            Map<String, Aggregati.Totale> perSistema = new HashMap<>();
+            for (int s = 0; s < numeroSistemi; s++) {
+                aggiungi(perSistema, nomiSistemi[s], p.numeroSistema[s], p.centesimiSistema[s]);
+            }
+            return new Riepilogo(Aggregati.Totale.di(p.numero, p.totaleCentesimi),
+                    perTipo, perMese, perCliente, perSistema);
+        }
+
+        private <K> void aggiungi(Map<K, Aggregati.Totale> gruppi, K chiave, int numero, long centesimi) {
+            if (numero > 0) {
+                gruppi.put(chiave, Aggregati.Totale.di(numero, centesimi));
+            }
+        }
+    }
+
+    /** Accumulatori di un blocco di posizioni: allocati una volta per blocco, non per intervento. */
+    private static final class Parziale {
+        private final Fotografia f;
+        int numero;
+        long totaleCentesimi;
+        final int[]  numeroTipo       = new int[3];
+        final long[] centesimiTipo    = new long[3];
+        final int[]  numeroMese;
+        final long[] centesimiMese;
+        final int[]  numeroCliente;
+        final long[] centesimiCliente;
+        final int[]  numeroSistema;
+        final long[] centesimiSistema;
+
+        Parziale(Fotografia f) {
+            this.f = f;
+            int mesi = Math.max(0, f.meseAl - f.meseDal + 1);
+            numeroMese       = new int[mesi];
+            centesimiMese    = new long[mesi];
+            numeroCliente    = new int[f.numeroClienti];
+            centesimiCliente = new long[f.numeroClienti];
+            numeroSistema    = new int[f.numeroSistemi];
+            centesimiSistema = new long[f.numeroSistemi];
+        }
+
+        Parziale scansiona(int da, int a) {
+            int[] giorni = f.giorni;
+            byte[] tipi = f.tipi;
+            long[] centesimi = f.centesimi;
+            int[] clienti = f.clienti;
+            int[] sistemi = f.sistemi;
+            int dal = f.dal;
+            int al = f.al;
+            int filtro = f.cliente;
+            int meseDal = f.meseDal;
+            for (int p = da; p < a; p++) {
+                byte tipo = tipi[p];
+                int giorno = giorni[p];
+                int cliente = clienti[p];
+                if (tipo == LIBERA || giorno < dal || giorno > al || (filtro >= 0 && cliente != filtro)) {
+                    continue;
+                }
+                long c = centesimi[p];
+                numero++;
+                totaleCentesimi += c;
+                numeroTipo[tipo]++;
+                centesimiTipo[tipo] += c;
+                int m = mese(giorno) - meseDal;
+                numeroMese[m]++;
+                centesimiMese[m] += c;
+                numeroCliente[cliente]++;
+                centesimiCliente[cliente] += c;
+                int sistema = sistemi[p];
+                if (sistema >= 0) {
+                    numeroSistema[sistema]++;
+                    centesimiSistema[sistema] += c;
+                }
+            }
+            return this;
+        }
+
+        Parziale unisci(Parziale altro) {
+            numero += altro.numero;
+            totaleCentesimi += altro.totaleCentesimi;
+            somma(numeroTipo, altro.numeroTipo, centesimiTipo, altro.centesimiTipo);
+            somma(numeroMese, altro.numeroMese, centesimiMese, altro.centesimiMese);
+            somma(numeroCliente, altro.numeroCliente, centesimiCliente, altro.centesimiCliente);
+            somma(numeroSistema, altro.numeroSistema, centesimiSistema, altro.centesimiSistema);
+            return this;
+        }
+
+        private static void somma(int[] numeri, int[] altriNumeri, long[] importi, long[] altriImporti) {
+            for (int k = 0; k < numeri.length; k++) {
+                numeri[k]  += altriNumeri[k];
+                importi[k] += altriImporti[k];
+            }
+        }
+    }
+
+    // --- Date senza oggetti ---
+
+    /** Epoch day della data; le date oltre i limiti di int (anni oltre ±5 milioni) vengono saturate. */
+    private static int giorno(LocalDate data) {
+        long g = data.toEpochDay();
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, g));
+    }
+
+    /**
+     * Anno * 12 + mese - 1 del giorno, come YearMonth.from(LocalDate.ofEpochDay(giorno)) ma
+     * senza creare oggetti: conversione da giorni a data del calendario gregoriano con sola
+     * aritmetica intera (ere di 400 anni che iniziano il 1° marzo).
+     */
+    static int mese(int giorno) {
+        long z = giorno + 719_468L;                 // giorni dal 0000-03-01
+        long era = Math.floorDiv(z, 146_097L);
+        long giornoEra = z - era * 146_097L;        // [0, 146096]
+        long annoEra = (giornoEra - giornoEra / 1_460 + giornoEra / 36_524 - giornoEra / 146_096) / 365;
+        long giornoAnno = giornoEra - (365 * annoEra + annoEra / 4 - annoEra / 100);
+        long m = (5 * giornoAnno + 2) / 153;        // 0 = marzo ... 11 = febbraio
+        long anno = annoEra + era * 400 + (m >= 10 ? 1 : 0);
+        long mese = m < 10 ? m + 2 : m - 10;        // 0 = gennaio
+        return (int) (anno * 12 + mese);
+    }
+
+    /** Risultato di un riepilogo. Immutabile; i gruppi vuoti non compaiono. */
+    static final class Riepilogo {
+        private final Aggregati.Totale totale;
+        private final Map<String, Aggregati.Totale> perTipo;
+        private final NavigableMap<YearMonth, Aggregati.Totale> perMese;
+        private final Map<String, Aggregati.Totale> perCliente;
+        private final Map<String, Aggregati.Totale> perSistema;
+
+        private Riepilogo(Aggregati.Totale totale, Map<String, Aggregati.Totale> perTipo,
+                          NavigableMap<YearMonth, Aggregati.Totale> perMese,
+                          Map<String, Aggregati.Totale> perCliente, Map<String, Aggregati.Totale> perSistema) {
+            this.totale     = totale;
+            this.perTipo    = Collections.unmodifiableMap(perTipo);
+            this.perMese    = Collections.unmodifiableNavigableMap(perMese);
+            this.perCliente = Collections.unmodifiableMap(perCliente);
+            this.perSistema = Collections.unmodifiableMap(perSistema);
+        }
+
+        Aggregati.Totale getTotale() {
+            return totale;
+        }
+
+        /** Chiave = "HW" / "SW". */
+        Map<String, Aggregati.Totale> getPerTipo() {
+            return perTipo;
+        }
+
+        /** In ordine cronologico. */
+        NavigableMap<YearMonth, Aggregati.Totale> getPerMese() {
+            return perMese;
+        }
+
+        /** Chiave = nome del cliente normalizzato, come in Aggregati. */
+        Map<String, Aggregati.Totale> getPerCliente() {
+            return perCliente;
+        }
+
+        /** Solo interventi SW; chiave = sistema operativo come è stato scritto. */
+        Map<String, Aggregati.Totale> getPerSistema() {
+            return perSistema;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Quanto fanno risparmiare il Dizionario (in heap, per cliente e sistema operativo) e la
+ * tabella dello snapshot (su disco) sui campi ripetuti: cliente, pezzo di ricambio,
+ * sistema operativo.
+ *
+ * Per ogni campo confronta "una copia per intervento" con quello che c'è davvero: le
+ * istanze distinte in heap (per identità, non per equals) e, per il file, le stringhe per
+ * esteso in ogni record contro tabella + codici, calcolati con le stesse regole del codec.
+ *
+ * I byte in heap sono stime per una JVM a 64 bit con le impostazioni predefinite
+ * (compressed oops, compact strings): 24 byte di String + array di byte con 16 di header,
+ * 1 byte per carattere se il testo è Latin-1, altrimenti 2, arrotondato a 8.
+ */
+final class DiagnosticaStringhe {
+
+    /** Numeri di un singolo campo. */
+    static final class Campo {
+        final String nome;
+        long riferimenti;         // interventi che hanno il campo
+        long heapCopie;           // se ogni intervento avesse la sua copia
+        long heapEffettivo;       // istanze distinte realmente in heap
+        long fileEsteso;          // stringhe per esteso in ogni record (snapshot v1)
+        private final Map<String, Boolean> valori = new HashMap<>();
+        private final Map<String, Boolean> istanze = new IdentityHashMap<>();
+
+        private Campo(String nome) {
+            this.nome = nome;
+        }
+
+        int distinti() {
+            return valori.size();
+        }
+
+        int istanzeDistinte() {
+            return istanze.size();
+        }
+
+        private void conta(String s) {
+            long dimensione = byteInHeap(s);
+            riferimenti++;
+            heapCopie += dimensione;
+            if (istanze.put(s, Boolean.TRUE) == null) {
+                heapEffettivo += dimensione;
+            }
+            valori.put(s, Boolean.TRUE);
+            fileEsteso += byteSuFile(s);
+        }
+    }
+
+    private final List<Campo> campi = new ArrayList<>();
+    private long fileTabella;     // snapshot attuale: tabella nell'header + codici nei record
+    private long fileEsteso;      // gli stessi campi per esteso in ogni record
+
+    private DiagnosticaStringhe() {
+    }
+
+    /** Analizza gli interventi (una passata, nessuna modifica). */
+    static DiagnosticaStringhe analizza(Collection<Intervento> interventi) {
+        DiagnosticaStringhe d = new DiagnosticaStringhe();
+        Campo cliente = d.campo("cliente");
+        Campo ricambio = d.campo("pezzoRicambio");
+        Campo sistema = d.campo("sistemaOperativo");
+        // Codici assegnati in ordine di prima comparsa, come fa CodecIntervento.Tabella.
+        Map<String, Integer> codici = new HashMap<>();
+        Function<String, Integer> nuovoCodice = v -> codici.size();
+        long byteCodici = 0;
+        for (Intervento i : interventi) {
+            cliente.conta(i.getCliente());
+            String specifico = CodecIntervento.specifico(i);
+            (i instanceof InterventoHardware ? ricambio : sistema).conta(specifico);
+            byteCodici += byteVarint(codici.computeIfAbsent(i.getCliente(), nuovoCodice));
+            byteCodici += byteVarint(codici.computeIfAbsent(specifico, nuovoCodice));
+        }
+        long byteTabella = Integer.BYTES + byteVarint(codici.size());
+        for (String v : codici.keySet()) {
+            byteTabella += byteSuFile(v);
+        }
+        d.fileTabella = byteTabella + byteCodici;
+        for (Campo c : d.campi) {
+            d.fileEsteso += c.fileEsteso;
+        }
+        return d;
+    }
+
+    private Campo campo(String nome) {
+        Campo c = new Campo(nome);
+        campi.add(c);
+        return c;
+    }
+
+    long getHeapCopie() {
+        return campi.stream().mapToLong(c -> c.heapCopie).sum();
+    }
+
+    long getHeapEffettivo() {
+        return campi.stream().mapToLong(c -> c.heapEffettivo).sum();
+    }
+
+    /** Il rapporto come righe di testo, per il menu e per la modalità batch. */
+    List<String> righe(long dimensioneSnapshot) {
+        List<String> righe = new ArrayList<>();
+        righe.add(String.format("%-18s %10s %9s %9s %14s %14s",
+                "campo", "valori", "distinti", "istanze", "heap copie", "heap attuale"));
+        for (Campo c : campi) {
+            righe.add(String.format("%-18s %10d %9d %9d %14s %14s", c.nome, c.riferimenti,
+                    c.distinti(), c.istanzeDistinte(), kb(c.heapCopie), kb(c.heapEffettivo)));
+        }
+        long heapCopie = getHeapCopie();
+        long heapEffettivo = getHeapEffettivo();
+        righe.add("");
+        righe.add(String.format("Heap:  %s invece di %s, risparmio %s (%s)", kb(heapEffettivo), kb(heapCopie),
+                kb(heapCopie - heapEffettivo), percentuale(heapCopie - heapEffettivo, heapCopie)));
+        righe.add(String.format("File:  %s invece di %s, risparmio %s (%s)", kb(fileTabella), kb(fileEsteso),
+                kb(fileEsteso - fileTabella), percentuale(fileEsteso - fileTabella, fileEsteso)));
+        righe.add(String.format("Snapshot su disco: %s. Valori nel dizionario in memoria: %d.",
+                dimensioneSnapshot >= 0 ? kb(dimensioneSnapshot) : "non ancora salvato",
+                Dizionario.dimensione()));
+        return righe;
+    }
+
+    // --- Stime ---
+
+    static long byteInHeap(String s) {
+        boolean latin1 = s.chars().allMatch(c -> c <= 0xFF);
+        long array = 16L + (latin1 ? s.length() : 2L * s.length());
+        return 24 + ((array + 7) & ~7L);
+    }
+
+    /** Come CodecIntervento.scriviStringa: lunghezza varint + UTF-8. */
+    private static long byteSuFile(String s) {
+        int utf8 = s.getBytes(StandardCharsets.UTF_8).length;
+        return byteVarint(utf8) + utf8;
+    }
+
+    private static int byteVarint(int valore) {
+        int n = 1;
+        while ((valore & ~0x7F) != 0) {
+            valore >>>= 7;
+            n++;
+        }
+        return n;
+    }
+
+    private static String kb(long b) {
+        return String.format("%.1f KB", b / 1024.0);
+    }
+
+    private static String percentuale(long parte, long totale) {
+        return totale == 0 ? "-" : String.format("%.0f%%", 100.0 * parte / totale);
+    }
+}
@@ -0,0 +1,70 @@
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * Dizionario dei valori ripetuti degli interventi (cliente, sistema operativo): ogni valore
+ * distinto esiste in heap una volta sola e tutti gli interventi che lo usano puntano alla
+ * stessa istanza.
+ *
+ * Sono pochi valori ripetuti moltissime volte (qualche centinaio di clienti, una manciata
+ * di sistemi operativi): senza dizionario ogni intervento decodificato da carica() o
+ * importato da un CSV ne terrebbe una copia sua, con il proprio array di byte.
+ *
+ * Usato dai costruttori e dai setter degli interventi. Il pezzo di ricambio e la
+ * descrizione non passano di qui: sono testo libero, quasi sempre diverso da un intervento
+ * all'altro, e il dizionario crescerebbe con il log invece che con i clienti.
+ *
+ * I riferimenti sono deboli (chiave in una WeakHashMap, valore in una WeakReference): un
+ * valore resta nel dizionario finché almeno un oggetto lo usa, poi lo raccoglie il GC. Così
+ * i clienti di interventi eliminati, o tolti dalla cache del caricamento pigro, non restano
+ * in heap per sempre. La mappa è divisa in STRISCE, ciascuna con il suo lock, perché l'import
+ * parallelo crea interventi da più thread insieme.
+ */
+final class Dizionario {
+
+    private static final int STRISCE = 32; // potenza di 2
+
+    /** Una parte del dizionario, che fa anche da lock per sé stessa. */
+    private static final class Striscia extends WeakHashMap<String, WeakReference<String>> {
+    }
+
+    private static final Striscia[] VALORI = new Striscia[STRISCE];
+
+    static {
+        for (int k = 0; k < STRISCE; k++) {
+            VALORI[k] = new Striscia();
+        }
+    }
+
+    private Dizionario() {
+    }
+
+    /** L'istanza condivisa di {@code valore} (null resta null, lo rifiuta il chiamante). */
+    static String interna(String valore) {
+        if (valore == null) {
+            return null;
+        }
+        int h = valore.hashCode();
+        Striscia striscia = VALORI[(h ^ (h >>> 16)) & (STRISCE - 1)];
+        synchronized (striscia) {
+            WeakReference<String> riferimento = striscia.get(valore);
+            String condiviso = riferimento != null ? riferimento.get() : null;
+            if (condiviso != null) {
+                return condiviso;
+            }
+            striscia.put(valore, new WeakReference<>(valore));
+            return valore;
+        }
+    }
+
+    /** Numero di valori distinti ancora in uso nel dizionario. */
+    static int dimensione() {
+        int totale = 0;
+        for (Striscia striscia : VALORI) {
+            synchronized (striscia) {
+                totale += striscia.size();
+            }
+        }
+        return totale;
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ID degli interventi nuovi, usato dal LogManager (vedi LogManager.nuovoId).
+ *
+ * Gli ID tirati a sorte (8 cifre esadecimali da un UUID troncato o da ThreadLocalRandom)
+ * non guardavano il log: su 100.000 interventi è più probabile che no che due coincidano
+ * (paradosso del compleanno su 2^32 valori), e UUID.randomUUID() passa da un SecureRandom
+ * condiviso. Qui invece un contatore progressivo: ogni valore viene dato una volta sola, con
+ * un getAndIncrement (nessun lock, nessun tentativo ripetuto) anche da più thread. Blocchi di
+ * valori riservati per thread non servono: un getAndIncrement costa quanto prendere il blocco,
+ * e i blocchi lasciati a metà da thread finiti aprirebbero buchi nella sequenza salvata.
+ *
+ * Il valore passa da una permutazione di 32 bit prima di diventare l'ID, quindi gli ID hanno
+ * lo stesso aspetto di sempre (8 cifre esadecimali maiuscole) e restano tutti diversi, ma due
+ * interventi registrati uno dopo l'altro non hanno ID che differiscono per una cifra: un
+ * errore di battitura in "Elimina per ID" difficilmente colpisce un altro intervento. Ogni log
+ * ha poi il suo scostamento casuale, scelto alla creazione della sequenza: i log di due
+ * tecnici non partono dagli stessi ID, e l'import dell'uno nell'altro non trova doppioni.
+ *
+ * Il contatore sopravvive ai riavvii in un piccolo file accanto al log (log_interventi.dat.id),
+ * riscritto dal salvataggio quando è cambiato. Se manca o è rimasto indietro (crash dopo il
+ * salvataggio dei dati, file cancellato) non succede nulla di grave: il LogManager scarta gli
+ * ID già presenti nel log, compresi quelli importati o scelti a mano.
+ *
+ * Formato del file: MAGIC (int) + VERSIONE (byte) + scostamento (int) + prossimo valore (long).
+ */
+final class GeneratoreId {
+
+    private static final int  MAGIC    = 0x50544C49; // "PTLI"
+    private static final byte VERSIONE = 1;
+
+    // 8 cifre esadecimali: 2^32 valori. Si parte da 1 (lo 0 diventerebbe "00000000").
+    private static final long LIMITE = 1L << 32;
+    private static final long PRIMO  = 1;
+
+    private static final char[] CIFRE = "0123456789ABCDEF".toCharArray();
+
+    private final Path file;
+    private final AtomicLong prossimo = new AtomicLong(PRIMO);
+    // Sommato al valore prima della permutazione (mod 2^32, quindi sempre biunivoco).
+    private volatile int scostamento = ThreadLocalRandom.current().nextInt();
+    // Ultimo valore scritto su file (o letto), per non riscriverlo a ogni salvataggio.
+    // Solo sotto il lock di salvataggio del LogManager, come carica() e salva().
+    private long salvato = -1;
+
+    GeneratoreId(Path file) {
+        this.file = file;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /** Il prossimo ID della sequenza: mai dato prima da questo generatore. Non guarda il log. */
+    String prossimo() {
+        long valore = prossimo.getAndIncrement();
+        if (valore >= LIMITE) {
+            throw new IllegalStateException("ID esauriti: generati tutti i " + (LIMITE - PRIMO) + " valori");
+        }
+        return formatta(valore, scostamento);
+    }
+
+    /**
+     * Permutazione di 32 bit (moltiplicazioni per costanti dispari e xorshift, tutti passi
+     * invertibili): valori diversi danno sempre ID diversi.
+     */
+    static String formatta(long valore, int scostamento) {
+        int x = (int) valore + scostamento;
+        x *= 0x9E3779B1;
+        x ^= x >>> 16;
+        x *= 0x85EBCA6B;
+        x ^= x >>> 13;
+        char[] id = new char[8];
+        for (int k = 7; k >= 0; k--) {
+            id[k] = CIFRE[x & 0xF];
+            x >>>= 4;
+        }
+        return new String(id);
+    }
+
+    /**
+     * Riprende la sequenza dal file. Senza file ne inizia una nuova, con un altro
+     * scostamento: gli ID già nel log vengono comunque saltati.
+     */
+    void carica() throws IOException {
+        int lettoScostamento;
+        long letto;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSIONE) {
+                throw new IOException("formato non riconosciuto");
+            }
+            lettoScostamento = in.readInt();
+            letto = in.readLong();
+        } catch (NoSuchFileException e) {
+            salvato = -1;
+            scostamento = ThreadLocalRandom.current().nextInt();
+            prossimo.set(PRIMO);
+            return;
+        } catch (EOFException e) {
+            throw new IOException("file troncato", e);
+        }
+        if (letto < PRIMO || letto > LIMITE) {
+            throw new IOException("valore non valido: " + letto);
+        }
+        salvato = letto;
+        scostamento = lettoScostamento;
+        prossimo.set(letto);
+    }
+
+    /**
+     * Scrive il punto della sequenza, se è cambiato dall'ultima volta (tmp + rename atomico,
+     * come lo snapshot). Va chiamato dopo aver scritto i dati: ogni ID salvato viene da un
+     * valore minore di quello che finisce qui.
+     */
+    void salva() throws IOException {
+        long valore = Math.min(prossimo.get(), LIMITE); // oltre, solo tentativi falliti
+        if (valore == salvato) {
+            return;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        ByteBuffer buf = ByteBuffer.allocate(4 + 1 + 4 + 8)
+                .putInt(MAGIC).put(VERSIONE).putInt(scostamento).putLong(valore).flip();
+        try (FileChannel canale = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                canale.write(buf);
+            }
+            // Come per lo snapshot: su disco prima del rename, o dopo un crash il .id
+            // potrebbe essere il nuovo nome di un file vuoto.
+            canale.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        salvato = valore;
+    }
+}
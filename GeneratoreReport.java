@@ -0,0 +1,391 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Fatture e riepilogo di un periodo su file, per la fatturazione di fine mese senza
+ * ricopiare a mano l'elenco di "Visualizza tutti".
+ *
+ * Nella cartella indicata scrive:
+ *   riepilogo.csv / riepilogo.html        una riga per cliente: interventi e importi HW/SW
+ *   fatture/&lt;cliente&gt;.csv / .html         gli interventi del cliente in ordine di data, con i totali
+ * I CSV hanno le colonne di Importatore (tipo, id, cliente, data, descrizione, dettaglio)
+ * più l'importo, quindi una fattura si può anche reimportare; i totali stanno nell'HTML e
+ * nel riepilogo, non in righe in fondo al CSV. File già presenti con lo stesso nome vengono
+ * sovrascritti, gli altri restano dove sono.
+ *
+ * Gli interventi del periodo arrivano già in ordine di data dagli indici del LogManager;
+ * il raggruppamento per cliente e la scrittura delle fatture (una per cliente, indipendenti)
+ * vanno in parallelo sul ForkJoinPool comune, come l'analisi dell'Importatore. Ogni fattura
+ * è una sola passata sugli interventi del cliente che scrive CSV e HTML insieme, riga per
+ * riga, su writer bufferizzati: nessun documento intero in memoria, nessun String.format
+ * per riga (importi scritti a partire dai centesimi, come in Aggregati).
+ */
+final class GeneratoreReport {
+
+    /** Cosa è stato scritto. */
+    static final class Esito {
+        int clienti;
+        long interventi;
+        Aggregati.Totale totale = Aggregati.Totale.ZERO;
+        Path riepilogo;   // riepilogo.html, null se nel periodo non c'era nulla
+        Path fatture;     // cartella delle fatture
+    }
+
+    private static final String CARTELLA_FATTURE = "fatture";
+    private static final String INTESTAZIONE_CSV = "tipo,id,cliente,data,descrizione,dettaglio,importo";
+
+    private static final String STILE =
+            "body{font-family:sans-serif;margin:2em;color:#222}"
+            + "table{border-collapse:collapse;width:100%}"
+            + "th,td{border-bottom:1px solid #ccc;padding:4px 8px;text-align:left}"
+            + "th{background:#eee}.n{text-align:right;white-space:nowrap}"
+            + "tfoot td{font-weight:bold}.nota{color:#777;font-size:smaller}";
+
+    private final LogManager logManager;
+
+    GeneratoreReport(LogManager logManager) {
+        this.logManager = logManager;
+    }
+
+    /**
+     * Genera fatture e riepilogo degli interventi nel periodo (estremi inclusi, null =
+     * nessun limite da quel lato), solo del cliente indicato se non è null.
+     */
+    Esito genera(Path cartella, LocalDate da, LocalDate a, String cliente) throws IOException {
+        List<Intervento> interventi = cliente == null
+                ? logManager.cercaPerPeriodo(da, a)
+                : logManager.cercaPerCliente(cliente, da, a);
+        Esito esito = new Esito();
+        if (interventi.isEmpty()) {
+            return esito;
+        }
+        // groupingBy (non concorrente) in parallelo conserva l'ordine: ogni gruppo resta in ordine di data.
+        TreeMap<String, List<Intervento>> perCliente = interventi.parallelStream()
+                .collect(Collectors.groupingBy(i -> IndiciSecondari.normalizzaCliente(i.getCliente()),
+                        TreeMap::new, Collectors.toList()));
+
+        Path fatture = cartella.resolve(CARTELLA_FATTURE);
+        Files.createDirectories(fatture);
+        // Nomi dei file decisi prima, in ordine: "Rossi S.r.l." e "Rossi Srl" darebbero lo stesso.
+        List<Fattura> daScrivere = new ArrayList<>(perCliente.size());
+        Set<String> nomiUsati = new HashSet<>();
+        for (List<Intervento> delCliente : perCliente.values()) {
+            // Il nome come è scritto nell'intervento più recente (il raggruppamento è case-insensitive).
+            String nome = delCliente.get(delCliente.size() - 1).getCliente();
+            String base = nomeFile(nome);
+            String file = base;
+            for (int k = 2; !nomiUsati.add(file); k++) {
+                file = base + "_" + k;
+            }
+            daScrivere.add(new Fattura(nome, file, delCliente));
+        }
+
+        String periodo = periodo(da, a);
+        try {
+            daScrivere.parallelStream().forEach(f -> {
+                try {
+                    f.scrivi(fatture, periodo);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        long centesimi = 0;
+        for (Fattura f : daScrivere) {
+            centesimi += f.centesimiHw + f.centesimiSw;
+        }
+        esito.fatture    = fatture;
+        esito.clienti    = daScrivere.size();
+        esito.interventi = interventi.size();
+        esito.totale     = Aggregati.Totale.di(interventi.size(), centesimi);
+        scriviRiepilogoCsv(cartella.resolve("riepilogo.csv"), daScrivere);
+        esito.riepilogo = cartella.resolve("riepilogo.html");
+        scriviRiepilogoHtml(esito.riepilogo, periodo, daScrivere);
+        return esito;
+    }
+
+    // --- Fatture ---
+
+    /** Gli interventi di un cliente e, dopo scrivi(), i loro totali. */
+    private static final class Fattura {
+        final String cliente;
+        final String file;     // nome senza estensione, dentro fatture/
+        final List<Intervento> interventi;
+        int hw;
+        int sw;
+        long centesimiHw;
+        long centesimiSw;
+
+        Fattura(String cliente, String file, List<Intervento> interventi) {
+            this.cliente    = cliente;
+            this.file       = file;
+            this.interventi = interventi;
+        }
+
+        void scrivi(Path cartella, String periodo) throws IOException {
+            try (BufferedWriter csv = Files.newBufferedWriter(cartella.resolve(file + ".csv"), StandardCharsets.UTF_8);
+                 BufferedWriter html = Files.newBufferedWriter(cartella.resolve(file + ".html"), StandardCharsets.UTF_8)) {
+                csv.write('\uFEFF'); // BOM: Excel altrimenti legge gli accenti come Latin-1 (Importatore lo salta)
+                csv.write(INTESTAZIONE_CSV);
+                csv.newLine();
+
+                apriHtml(html, cliente + " - " + periodo);
+                html.write("<h1>");
+                testoHtml(html, cliente);
+                html.write("</h1>\n<p>Interventi da fatturare, periodo: ");
+                testoHtml(html, periodo);
+                html.write("</p>\n<table>\n<thead><tr><th>Data</th><th>ID</th><th>Tipo</th><th>Descrizione</th>"
+                        + "<th>Ricambio / SO</th><th class=\"n\">Importo</th></tr></thead>\n<tbody>\n");
+
+                for (Intervento i : interventi) {
+                    long centesimi = Math.round(i.calcolaTariffa() * 100);
+                    String dettaglio;
+                    if (i instanceof InterventoHardware) {
+                        hw++;
+                        centesimiHw += centesimi;
+                        dettaglio = ((InterventoHardware) i).getPezzoRicambio();
+                    } else {
+                        sw++;
+                        centesimiSw += centesimi;
+                        dettaglio = ((InterventoSoftware) i).getSistemaOperativo();
+                    }
+                    String data = i.getData().toString();
+
+                    csv.write(i.getTipo());
+                    csv.write(',');
+                    campoCsv(csv, i.getId());
+                    csv.write(',');
+                    campoCsv(csv, i.getCliente());
+                    csv.write(',');
+                    csv.write(data);
+                    csv.write(',');
+                    campoCsv(csv, i.getDescrizione());
+                    csv.write(',');
+                    campoCsv(csv, dettaglio);
+                    csv.write(',');
+                    importo(csv, centesimi);
+                    csv.newLine();
+
+                    html.write("<tr><td>");
+                    html.write(data);
+                    html.write("</td><td>");
+                    testoHtml(html, i.getId());
+                    html.write("</td><td>");
+                    html.write(i.getTipo());
+                    html.write("</td><td>");
+                    testoHtml(html, i.getDescrizione());
+                    html.write("</td><td>");
+                    testoHtml(html, dettaglio);
+                    html.write("</td><td class=\"n\">");
+                    importo(html, centesimi);
+                    html.write("</td></tr>\n");
+                }
+
+                html.write("</tbody>\n<tfoot>\n");
+                if (hw > 0) {
+                    rigaTotale(html, "Hardware (" + hw + ")", centesimiHw, "");
+                }
+                if (sw > 0) {
+                    rigaTotale(html, "Software (" + sw + ")", centesimiSw, "");
+                }
+                rigaTotale(html, "Totale (" + interventi.size() + " interventi)", centesimiHw + centesimiSw, " EUR");
+                html.write("</tfoot>\n</table>\n");
+                chiudiHtml(html);
+            }
+        }
+
+        private static void rigaTotale(Writer html, String etichetta, long centesimi, String valuta)
+                throws IOException {
+            html.write("<tr><td colspan=\"5\">");
+            html.write(etichetta);
+            html.write("</td><td class=\"n\">");
+            importo(html, centesimi);
+            html.write(valuta);
+            html.write("</td></tr>\n");
+        }
+    }
+
+    // --- Riepilogo ---
+
+    private static void scriviRiepilogoCsv(Path file, List<Fattura> fatture) throws IOException {
+        try (BufferedWriter csv = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            csv.write('\uFEFF');
+            csv.write("cliente,interventi,hw,sw,importo_hw,importo_sw,importo,fattura");
+            csv.newLine();
+            for (Fattura f : fatture) {
+                campoCsv(csv, f.cliente);
+                csv.write(',');
+                csv.write(Integer.toString(f.hw + f.sw));
+                csv.write(',');
+                csv.write(Integer.toString(f.hw));
+                csv.write(',');
+                csv.write(Integer.toString(f.sw));
+                csv.write(',');
+                importo(csv, f.centesimiHw);
+                csv.write(',');
+                importo(csv, f.centesimiSw);
+                csv.write(',');
+                importo(csv, f.centesimiHw + f.centesimiSw);
+                csv.write(',');
+                campoCsv(csv, CARTELLA_FATTURE + "/" + f.file + ".csv");
+                csv.newLine();
+            }
+        }
+    }
+
+    private static void scriviRiepilogoHtml(Path file, String periodo, List<Fattura> fatture) throws IOException {
+        try (BufferedWriter html = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            apriHtml(html, "Riepilogo fatturazione - " + periodo);
+            html.write("<h1>Riepilogo fatturazione</h1>\n<p>Periodo: ");
+            testoHtml(html, periodo);
+            html.write("</p>\n<table>\n<thead><tr><th>Cliente</th><th class=\"n\">Interventi</th>"
+                    + "<th class=\"n\">HW</th><th class=\"n\">SW</th><th class=\"n\">Importo HW</th>"
+                    + "<th class=\"n\">Importo SW</th><th class=\"n\">Totale</th></tr></thead>\n<tbody>\n");
+            int hw = 0;
+            int sw = 0;
+            long centesimiHw = 0;
+            long centesimiSw = 0;
+            for (Fattura f : fatture) {
+                hw += f.hw;
+                sw += f.sw;
+                centesimiHw += f.centesimiHw;
+                centesimiSw += f.centesimiSw;
+                html.write("<tr><td><a href=\"");
+                testoHtml(html, CARTELLA_FATTURE + "/" + f.file + ".html");
+                html.write("\">");
+                testoHtml(html, f.cliente);
+                html.write("</a></td><td class=\"n\">");
+                html.write(Integer.toString(f.hw + f.sw));
+                html.write("</td><td class=\"n\">");
+                html.write(Integer.toString(f.hw));
+                html.write("</td><td class=\"n\">");
+                html.write(Integer.toString(f.sw));
+                html.write("</td><td class=\"n\">");
+                importo(html, f.centesimiHw);
+                html.write("</td><td class=\"n\">");
+                importo(html, f.centesimiSw);
+                html.write("</td><td class=\"n\">");
+                importo(html, f.centesimiHw + f.centesimiSw);
+                html.write("</td></tr>\n");
+            }
+            html.write("</tbody>\n<tfoot><tr><td>Totale (");
+            html.write(Integer.toString(fatture.size()));
+            html.write(" clienti)</td><td class=\"n\">");
+            html.write(Integer.toString(hw + sw));
+            html.write("</td><td class=\"n\">");
+            html.write(Integer.toString(hw));
+            html.write("</td><td class=\"n\">");
+            html.write(Integer.toString(sw));
+            html.write("</td><td class=\"n\">");
+            importo(html, centesimiHw);
+            html.write("</td><td class=\"n\">");
+            importo(html, centesimiSw);
+            html.write("</td><td class=\"n\">");
+            importo(html, centesimiHw + centesimiSw);
+            html.write(" EUR</td></tr></tfoot>\n</table>\n");
+            chiudiHtml(html);
+        }
+    }
+
+    // --- Helper ---
+
+    private static void apriHtml(Writer html, String titolo) throws IOException {
+        html.write("<!DOCTYPE html>\n<html lang=\"it\">\n<head>\n<meta charset=\"utf-8\">\n<title>");
+        testoHtml(html, titolo);
+        html.write("</title>\n<style>");
+        html.write(STILE);
+        html.write("</style>\n</head>\n<body>\n");
+    }
+
+    private static void chiudiHtml(Writer html) throws IOException {
+        html.write("<p class=\"nota\">Generato da PersonalTechLog il ");
+        html.write(LocalDate.now().toString());
+        html.write(".</p>\n</body>\n</html>\n");
+    }
+
+    /** "dal 2025-06-01 al 2025-06-30", "fino al ...", "dal ..." oppure "tutto lo storico". */
+    static String periodo(LocalDate da, LocalDate a) {
+        if (da == null && a == null) {
+            return "tutto lo storico";
+        }
+        return da == null ? "fino al " + a : a == null ? "dal " + da : "dal " + da + " al " + a;
+    }
+
+    /** Importo da centesimi, "1234.50": niente String.format né double per riga. */
+    private static void importo(Writer out, long centesimi) throws IOException {
+        if (centesimi < 0) {
+            out.write('-');
+            centesimi = -centesimi;
+        }
+        out.write(Long.toString(centesimi / 100));
+        out.write('.');
+        out.write((char) ('0' + centesimi % 100 / 10));
+        out.write((char) ('0' + centesimi % 10));
+    }
+
+    /** Tra virgolette (con "" per la virgoletta) solo se serve: separatore, virgolette o a capo. */
+    private static void campoCsv(Writer out, String valore) throws IOException {
+        boolean virgolette = false;
+        for (int k = 0; k < valore.length() && !virgolette; k++) {
+            char c = valore.charAt(k);
+            virgolette = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!virgolette) {
+            out.write(valore);
+            return;
+        }
+        out.write('"');
+        out.write(valore.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    /** Scrive il testo con &amp; &lt; &gt; &quot; &#39; al posto dei caratteri speciali, a pezzi senza copie. */
+    private static void testoHtml(Writer out, String testo) throws IOException {
+        int inizio = 0;
+        for (int k = 0; k < testo.length(); k++) {
+            String sostituto;
+            switch (testo.charAt(k)) {
+                case '&':  sostituto = "&amp;";  break;
+                case '<':  sostituto = "&lt;";   break;
+                case '>':  sostituto = "&gt;";   break;
+                case '"':  sostituto = "&quot;"; break;
+                case '\'': sostituto = "&#39;";  break;
+                default:   continue;
+            }
+            out.write(testo, inizio, k - inizio);
+            out.write(sostituto);
+            inizio = k + 1;
+        }
+        out.write(testo, inizio, testo.length() - inizio);
+    }
+
+    /**
+     * Nome di file portabile dal nome del cliente: minuscole, lettere accentate senza accento,
+     * tutto il resto (spazi, punti, barre...) diventa un solo "_".
+     */
+    private static String nomeFile(String cliente) {
+        String semplice = Normalizer.normalize(cliente, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT)
+                .replaceAll("[^a-z0-9]+", "_");
+        semplice = semplice.substring(0, Math.min(semplice.length(), 60)).replaceAll("^_|_$", "");
+        return semplice.isEmpty() ? "cliente" : semplice;
+    }
+}
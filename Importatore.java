@@ -0,0 +1,485 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Import in blocco di interventi da CSV o JSONL, ad es. l'export di un sistema di ticketing.
+ *
+ * Il file viene letto in streaming a blocchi di righe: mentre un blocco viene convertito
+ * in interventi in parallelo (parallel stream sul ForkJoinPool comune) il successivo è già
+ * in lettura, e i blocchi pronti vengono inseriti nel LogManager con aggiungiTutti(), un
+ * lock per blocco e nessun messaggio per riga. In memoria c'è al più qualche blocco alla
+ * volta, non l'intero file. Il salvataggio su disco spetta al chiamante, una volta alla fine.
+ *
+ * Colonne / chiavi riconosciute (maiuscole, spazi e underscore ignorati):
+ *   tipo (HW/SW, hardware/software), id, cliente, data (YYYY-MM-DD o GG/MM/AAAA),
+ *   descrizione, pezzoRicambio (HW), sistemaOperativo (SW), oppure dettaglio per entrambi.
+ * Un id vuoto o assente viene generato. Il CSV può avere una riga di intestazione (se la
+ * prima cella è "tipo"), altrimenti le colonne sono nell'ordine
+ * tipo, id, cliente, data, descrizione, dettaglio. Separatore ',' oppure ';' (Excel italiano),
+ * riconosciuto dalla prima riga. Limite noto: niente campi tra virgolette su più righe.
+ *
+ * Le righe scartate (formato non valido, campo mancante, ID già presente) non fermano
+ * l'import: vengono riportate nell'Esito e scritte per intero nel file "&lt;nome&gt;.scarti".
+ *
+ * Codifica: UTF-8, controllato su tutto il file prima di inserire qualcosa. Se non lo è, il
+ * file viene letto come Windows-1252 (gli export di Excel e dei programmi Windows italiani):
+ * meglio che fallire a metà, con una parte dei blocchi già nel log. Un errore di lettura
+ * dopo il primo inserimento non lancia eccezioni: l'Esito dice fin dove si è arrivati.
+ */
+final class Importatore {
+
+    /** Formato del file da importare. */
+    enum Formato {
+        CSV, JSONL;
+
+        /** .jsonl / .ndjson / .json → JSONL, qualsiasi altra estensione → CSV. */
+        static Formato daNomeFile(Path file) {
+            String nome = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            return nome.endsWith(".jsonl") || nome.endsWith(".ndjson") || nome.endsWith(".json") ? JSONL : CSV;
+        }
+    }
+
+    /** Una riga non importata. */
+    static final class Scarto {
+        final long riga;
+        final String motivo;
+
+        Scarto(long riga, String motivo) {
+            this.riga   = riga;
+            this.motivo = motivo;
+        }
+
+        @Override
+        public String toString() {
+            return "riga " + riga + ": " + motivo;
+        }
+    }
+
+    /** Risultato di un import. */
+    static final class Esito {
+        long lette;
+        long importate;
+        long scartate;
+        // Solo i primi, per il riepilogo a video: l'elenco completo è nel file degli scarti.
+        final List<Scarto> primiScarti = new ArrayList<>();
+        Path fileScarti;
+        // Errore di scrittura del file degli scarti (null se nessuno): l'import continua.
+        String erroreScarti;
+        Charset codifica;
+        // null se il file è stato letto tutto; altrimenti perché l'import si è fermato. Gli
+        // interventi delle righe precedenti sono comunque nel log (importate li conta).
+        String interruzione;
+    }
+
+    private static final int DIMENSIONE_BLOCCO = 8192;
+    private static final int SCARTI_IN_RIEPILOGO = 20;
+
+    private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+
+    private static final List<String> COLONNE_POSIZIONALI =
+            List.of("tipo", "id", "cliente", "data", "descrizione", "dettaglio");
+    private static final DateTimeFormatter DATA_ITALIANA = DateTimeFormatter.ofPattern("d/M/uuuu");
+
+    private final LogManager logManager;
+
+    Importatore(LogManager logManager) {
+        this.logManager = logManager;
+    }
+
+    /** Importa il file nel formato dedotto dall'estensione. */
+    Esito importa(Path file) throws IOException {
+        return importa(file, Formato.daNomeFile(file));
+    }
+
+    /**
+     * @throws IOException solo se il file non si può aprire o leggere prima del primo
+     *                     inserimento: dopo, l'errore finisce in {@link Esito#interruzione}
+     */
+    Esito importa(Path file, Formato formato) throws IOException {
+        Esito esito = new Esito();
+        esito.codifica = codifica(file);
+        try (BufferedReader in = lettore(file, esito.codifica);
+             FileScarti scarti = new FileScarti(file.resolveSibling(file.getFileName() + ".scarti"), esito)) {
+            String prima = in.readLine();
+            if (prima == null) {
+                return esito;
+            }
+            if (prima.startsWith("\uFEFF")) {
+                prima = prima.substring(1); // BOM dei file salvati da Excel/Notepad
+            }
+            long numeroPrima = 1;
+            Function<String, Map<String, String>> analizzatore;
+            if (formato == Formato.CSV) {
+                char separatore = separatore(prima);
+                List<String> celle = dividiCsv(prima, separatore);
+                boolean intestazione = !celle.isEmpty() && "tipo".equals(normalizzaNome(celle.get(0)));
+                List<String> colonne = COLONNE_POSIZIONALI;
+                if (intestazione) {
+                    colonne = new ArrayList<>();
+                    for (String cella : celle) {
+                        colonne.add(normalizzaNome(cella));
+                    }
+                    prima = null; // l'intestazione non è un record
+                    numeroPrima = 2;
+                }
+                List<String> nomi = colonne;
+                analizzatore = riga -> campiCsv(riga, separatore, nomi);
+            } else {
+                analizzatore = Importatore::campiJson;
+            }
+
+            // Pipeline: il blocco k viene inserito mentre il k+1 è già in analisi.
+            CompletableFuture<Blocco> inAnalisi = null;
+            long prossimaRiga = numeroPrima;
+            while (true) {
+                Blocco letto;
+                try {
+                    letto = leggiBlocco(in, prima, prossimaRiga);
+                } catch (IOException e) {
+                    // Il blocco in analisi è stato letto per intero: viene inserito qui sotto.
+                    esito.interruzione = "errore di lettura dalla riga " + prossimaRiga + ": " + e.getMessage();
+                    break;
+                }
+                if (letto == null) {
+                    break;
+                }
+                prima = null;
+                prossimaRiga += letto.righe.size();
+                Blocco daAnalizzare = letto;
+                CompletableFuture<Blocco> successivo =
+                        CompletableFuture.supplyAsync(() -> analizza(daAnalizzare, analizzatore));
+                if (inAnalisi != null) {
+                    inserisci(inAnalisi.join(), esito, scarti);
+                }
+                inAnalisi = successivo;
+            }
+            if (inAnalisi != null) {
+                inserisci(inAnalisi.join(), esito, scarti);
+            }
+        }
+        return esito;
+    }
+
+    /**
+     * UTF-8 se tutto il file lo è, altrimenti Windows-1252. Una passata in più sul file, a
+     * blocchi da 64 KB: molto meno della conversione delle righe che segue.
+     */
+    private static Charset codifica(Path file) throws IOException {
+        CharsetDecoder utf8 = StandardCharsets.UTF_8.newDecoder(); // segnala i byte non validi
+        ByteBuffer byteLetti = ByteBuffer.allocate(1 << 16);
+        CharBuffer caratteri = CharBuffer.allocate(1 << 16); // mai più caratteri che byte
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(byteLetti.array(), byteLetti.position(), byteLetti.remaining())) >= 0) {
+                byteLetti.position(byteLetti.position() + n).flip();
+                if (utf8.decode(byteLetti, caratteri, false).isError()) {
+                    return WINDOWS_1252;
+                }
+                caratteri.clear();
+                byteLetti.compact(); // al più una sequenza incompleta, ripresa al giro dopo
+            }
+        }
+        byteLetti.flip();
+        boolean valido = !utf8.decode(byteLetti, caratteri, true).isError() && !utf8.flush(caratteri).isError();
+        return valido ? StandardCharsets.UTF_8 : WINDOWS_1252;
+    }
+
+    private static BufferedReader lettore(Path file, Charset codifica) throws IOException {
+        if (codifica.equals(StandardCharsets.UTF_8)) {
+            return Files.newBufferedReader(file, codifica);
+        }
+        // I cinque byte che Windows-1252 non definisce diventano U+FFFD invece di un errore.
+        CharsetDecoder decoder = codifica.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return new BufferedReader(new InputStreamReader(Files.newInputStream(file), decoder));
+    }
+
+    // --- Pipeline ---
+
+    /** Righe consecutive del file e, dopo l'analisi, l'intervento o lo scarto di ognuna. */
+    private static final class Blocco {
+        final long primaRiga;
+        final List<String> righe;
+        Object[] risultati;   // Intervento, Scarto oppure null (riga vuota)
+        boolean[] idGenerato;
+
+        Blocco(long primaRiga, List<String> righe) {
+            this.primaRiga = primaRiga;
+            this.righe     = righe;
+        }
+    }
+
+    private static Blocco leggiBlocco(BufferedReader in, String sospesa, long primaRiga) throws IOException {
+        List<String> righe = new ArrayList<>(DIMENSIONE_BLOCCO);
+        if (sospesa != null) {
+            righe.add(sospesa);
+        }
+        String riga;
+        while (righe.size() < DIMENSIONE_BLOCCO && (riga = in.readLine()) != null) {
+            righe.add(riga);
+        }
+        return righe.isEmpty() ? null : new Blocco(primaRiga, righe);
+    }
+
+    /** Conversione riga → intervento, in parallelo: ogni indice scrive solo la propria cella. */
+    private Blocco analizza(Blocco b, Function<String, Map<String, String>> analizzatore) {
+        int n = b.righe.size();
+        b.risultati  = new Object[n];
+        b.idGenerato = new boolean[n];
+        IntStream.range(0, n).parallel().forEach(k -> {
+            String riga = b.righe.get(k);
+            if (riga.isBlank()) {
+                return;
+            }
+            try {
+                Map<String, String> campi = analizzatore.apply(riga);
+                if (campi.getOrDefault("id", "").isEmpty()) {
+                    campi.put("id", logManager.nuovoId());
+                    b.idGenerato[k] = true;
+                }
+                b.risultati[k] = crea(campi);
+            } catch (IllegalArgumentException | DateTimeException e) {
+                b.risultati[k] = new Scarto(b.primaRiga + k, e.getMessage());
+            } catch (RuntimeException | StackOverflowError e) {
+                // Qualsiasi altro problema di una riga resta della riga: nel thread del blocco
+                // arriverebbe a join() e fermerebbe l'import con i blocchi precedenti già inseriti.
+                b.risultati[k] = new Scarto(b.primaRiga + k, "riga non valida (" + e + ")");
+            }
+        });
+        return b;
+    }
+
+    /** Inserimento nell'ordine del file; un ID generato che collide viene rigenerato. */
+    private void inserisci(Blocco b, Esito esito, FileScarti scarti) {
+        List<Intervento> validi = new ArrayList<>();
+        Map<Intervento, Integer> indice = new IdentityHashMap<>();
+        for (int k = 0; k < b.risultati.length; k++) {
+            Object r = b.risultati[k];
+            if (r == null) {
+                continue;
+            }
+            esito.lette++;
+            if (r instanceof Scarto) {
+                scarti.scrivi((Scarto) r, b.righe.get(k));
+            } else {
+                validi.add((Intervento) r);
+                indice.put((Intervento) r, k);
+            }
+        }
+        List<Intervento> rifiutati = logManager.aggiungiTutti(validi);
+        long inseriti = validi.size() - rifiutati.size();
+        while (!rifiutati.isEmpty()) {
+            List<Intervento> daRiprovare = new ArrayList<>();
+            for (Intervento i : rifiutati) {
+                int k = indice.get(i);
+                if (b.idGenerato[k]) {
+                    i.setId(logManager.nuovoId()); // non è ancora nel log: nessun osservatore, semplice assegnazione
+                    daRiprovare.add(i);
+                } else {
+                    scarti.scrivi(new Scarto(b.primaRiga + k, "ID già presente: " + i.getId()), b.righe.get(k));
+                }
+            }
+            rifiutati = logManager.aggiungiTutti(daRiprovare);
+            inseriti += daRiprovare.size() - rifiutati.size();
+        }
+        esito.importate += inseriti;
+    }
+
+    // --- Conversione dei campi ---
+
+    /** Campi con i nomi normalizzati (vedi normalizzaNome), id compreso. Usato anche da ServerHttp. */
+    static Intervento crea(Map<String, String> campi) {
+        String tipo        = obbligatorio(campi, "tipo").toLowerCase(Locale.ROOT);
+        String id          = obbligatorio(campi, "id");
+        String cliente     = obbligatorio(campi, "cliente");
+        LocalDate data     = data(obbligatorio(campi, "data"));
+        String descrizione = obbligatorio(campi, "descrizione");
+        switch (tipo) {
+            case "hw":
+            case "hardware":
+                return new InterventoHardware(id, cliente, data, descrizione,
+                        dettaglio(campi, "pezzoricambio"));
+            case "sw":
+            case "software":
+                return new InterventoSoftware(id, cliente, data, descrizione,
+                        dettaglio(campi, "sistemaoperativo"));
+            default:
+                throw new IllegalArgumentException("tipo non riconosciuto: '" + campi.get("tipo") + "'");
+        }
+    }
+
+    private static String obbligatorio(Map<String, String> campi, String nome) {
+        String valore = campi.get(nome);
+        if (valore == null || valore.isEmpty()) {
+            throw new IllegalArgumentException("campo '" + nome + "' mancante");
+        }
+        return valore;
+    }
+
+    /** Il campo specifico del tipo, oppure la colonna generica "dettaglio". */
+    private static String dettaglio(Map<String, String> campi, String specifico) {
+        String valore = campi.get(specifico);
+        return valore != null && !valore.isEmpty() ? valore : obbligatorio(campi, "dettaglio");
+    }
+
+    /** @throws IllegalArgumentException se non è una data, o è fuori dall'intervallo ammesso */
+    static LocalDate data(String testo) {
+        LocalDate data;
+        try {
+            data = testo.indexOf('/') >= 0 ? LocalDate.parse(testo, DATA_ITALIANA) : LocalDate.parse(testo);
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("data non valida: '" + testo + "'");
+        }
+        return Intervento.verificaData(data);
+    }
+
+    // --- CSV ---
+
+    private static Map<String, String> campiCsv(String riga, char separatore, List<String> colonne) {
+        List<String> celle = dividiCsv(riga, separatore);
+        Map<String, String> campi = new HashMap<>();
+        for (int k = 0; k < colonne.size() && k < celle.size(); k++) {
+            campi.put(colonne.get(k), celle.get(k).trim());
+        }
+        return campi;
+    }
+
+    /** Il separatore più frequente nella prima riga (fuori dalle virgolette non ci interessa: è un'euristica). */
+    private static char separatore(String prima) {
+        long virgole = prima.chars().filter(c -> c == ',').count();
+        long puntiEVirgola = prima.chars().filter(c -> c == ';').count();
+        return puntiEVirgola > virgole ? ';' : ',';
+    }
+
+    /** Divisione di una riga CSV: campi tra virgolette con "" come virgoletta letterale. */
+    static List<String> dividiCsv(String riga, char separatore) {
+        List<String> celle = new ArrayList<>();
+        StringBuilder cella = new StringBuilder();
+        boolean traVirgolette = false;
+        for (int k = 0; k < riga.length(); k++) {
+            char c = riga.charAt(k);
+            if (traVirgolette) {
+                if (c != '"') {
+                    cella.append(c);
+                } else if (k + 1 < riga.length() && riga.charAt(k + 1) == '"') {
+                    cella.append('"');
+                    k++;
+                } else {
+                    traVirgolette = false;
+                }
+            } else if (c == '"') {
+                traVirgolette = true;
+            } else if (c == separatore) {
+                celle.add(cella.toString());
+                cella.setLength(0);
+            } else {
+                cella.append(c);
+            }
+        }
+        if (traVirgolette) {
+            throw new IllegalArgumentException("virgolette non chiuse");
+        }
+        celle.add(cella.toString());
+        return celle;
+    }
+
+    // --- JSONL ---
+
+    static Map<String, String> campiJson(String riga) {
+        Map<String, String> campi = new HashMap<>();
+        for (Map.Entry<String, Object> e : Json.leggiOggetto(riga).entrySet()) {
+            Object valore = e.getValue();
+            if (valore instanceof Map || valore instanceof List) {
+                continue; // campi strutturati dell'export (allegati, note...) non ci interessano
+            }
+            // Un ID numerico (es. numero di ticket) è accettato e trattato come testo.
+            campi.put(normalizzaNome(e.getKey()), valore == null ? "" : valore.toString().trim());
+        }
+        return campi;
+    }
+
+    // --- Helper ---
+
+    /** "Pezzo_Ricambio", "pezzoRicambio" e "pezzo ricambio" sono la stessa colonna. */
+    private static String normalizzaNome(String nome) {
+        return nome.replace("_", "").replace(" ", "").trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * File degli scarti, creato solo al primo scarto: motivo e riga originale, così le righe
+     * si possono correggere e reimportare. Se non si riesce a scriverlo l'import continua (gli
+     * interventi validi sono già nel log) e l'errore resta nell'Esito.
+     */
+    private static final class FileScarti implements Closeable {
+        private final Path file;
+        private final Esito esito;
+        private BufferedWriter out;
+
+        FileScarti(Path file, Esito esito) throws IOException {
+            this.file  = file;
+            this.esito = esito;
+            Files.deleteIfExists(file); // quello di un import precedente non è più attuale
+        }
+
+        void scrivi(Scarto scarto, String riga) {
+            esito.scartate++;
+            if (esito.primiScarti.size() < SCARTI_IN_RIEPILOGO) {
+                esito.primiScarti.add(scarto);
+            }
+            if (esito.erroreScarti != null) {
+                return;
+            }
+            try {
+                if (out == null) {
+                    out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+                    esito.fileScarti = file;
+                }
+                out.write("# " + scarto);
+                out.newLine();
+                out.write(riga);
+                out.newLine();
+            } catch (IOException e) {
+                esito.erroreScarti = e.getMessage();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                if (esito.erroreScarti == null) {
+                    esito.erroreScarti = e.getMessage();
+                }
+            }
+        }
+    }
+}
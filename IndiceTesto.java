@@ -0,0 +1,333 @@
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * Indice invertito sul testo libero degli interventi: descrizione, più pezzo di ricambio
+ * (HW) o sistema operativo (SW).
+ *
+ * Il testo viene diviso in parole (lettere e cifre), portato in minuscolo e senza accenti:
+ * "Sostituzione SSD" e "sostituzione ssd" sono le stesse parole, "perché" si trova con
+ * "perche". Per ogni parola l'indice tiene gli interventi che la contengono, ordinati per
+ * progressivo (vedi {@link Occorrenze}). Il dizionario è ordinato, quindi una ricerca per
+ * prefisso ("win*") è un subMap().
+ *
+ * Come IndiciSecondari contiene solo gli ID, non gli interventi, e ha lo stesso modello di
+ * concorrenza: modifiche dal LogManager sotto il suo lock di scrittura, ricerche senza lock.
+ */
+final class IndiceTesto {
+
+    private static final Pattern SEPARATORI = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern ACCENTI = Pattern.compile("\\p{M}+");
+
+    /**
+     * Gli interventi che contengono una parola: progressivi ordinati e ID corrispondenti,
+     * in due array paralleli. Array primitivi e non una mappa concorrente: un terzo della
+     * memoria, e l'intersezione di due liste è una scansione sequenziale invece di una
+     * ricerca nell'albero per ogni candidato.
+     *
+     * Ogni istanza è immutabile per chi la legge: le modifiche pubblicano un'istanza nuova
+     * nel dizionario. L'unica scrittura sul posto è l'aggiunta in fondo (il caso normale:
+     * un intervento nuovo ha il progressivo più alto), oltre i primi {@code numero}
+     * elementi, quindi invisibile a chi tiene ancora l'istanza precedente.
+     */
+    private static final class Occorrenze {
+        final long[] progressivi;
+        final String[] chiavi;
+        final int numero;
+
+        Occorrenze(long[] progressivi, String[] chiavi, int numero) {
+            this.progressivi = progressivi;
+            this.chiavi      = chiavi;
+            this.numero      = numero;
+        }
+
+        static Occorrenze di(long progressivo, String chiave) {
+            return new Occorrenze(new long[] {progressivo, 0, 0, 0}, new String[] {chiave, null, null, null}, 1);
+        }
+
+        /** Con l'intervento aggiunto (o con l'ID aggiornato, se c'era già). */
+        Occorrenze con(long progressivo, String chiave) {
+            if (progressivi[numero - 1] < progressivo) {
+                long[] p = progressivi;
+                String[] c = chiavi;
+                if (numero == p.length) {
+                    p = Arrays.copyOf(p, numero + (numero >> 1) + 1);
+                    c = Arrays.copyOf(c, p.length);
+                }
+                p[numero] = progressivo;
+                c[numero] = chiave;
+                return new Occorrenze(p, c, numero + 1);
+            }
+            int k = Arrays.binarySearch(progressivi, 0, numero, progressivo);
+            if (k >= 0) {
+                String[] c = Arrays.copyOf(chiavi, numero); // cambio di ID
+                c[k] = chiave;
+                return new Occorrenze(Arrays.copyOf(progressivi, numero), c, numero);
+            }
+            int punto = -k - 1; // in mezzo: succede solo rimettendo un intervento modificato
+            long[] p = new long[numero + 1];
+            String[] c = new String[numero + 1];
+            System.arraycopy(progressivi, 0, p, 0, punto);
+            System.arraycopy(chiavi, 0, c, 0, punto);
+            p[punto] = progressivo;
+            c[punto] = chiave;
+            System.arraycopy(progressivi, punto, p, punto + 1, numero - punto);
+            System.arraycopy(chiavi, punto, c, punto + 1, numero - punto);
+            return new Occorrenze(p, c, numero + 1);
+        }
+
+        /** Senza l'intervento: null se non resta nessuno, this se non c'era. */
+        Occorrenze senza(long progressivo) {
+            int k = Arrays.binarySearch(progressivi, 0, numero, progressivo);
+            if (k < 0) {
+                return this;
+            }
+            if (numero == 1) {
+                return null;
+            }
+            long[] p = new long[numero - 1];
+            String[] c = new String[numero - 1];
+            System.arraycopy(progressivi, 0, p, 0, k);
+            System.arraycopy(chiavi, 0, c, 0, k);
+            System.arraycopy(progressivi, k + 1, p, k, numero - k - 1);
+            System.arraycopy(chiavi, k + 1, c, k, numero - k - 1);
+            return new Occorrenze(p, c, numero - 1);
+        }
+
+        boolean contiene(long progressivo) {
+            return Arrays.binarySearch(progressivi, 0, numero, progressivo) >= 0;
+        }
+    }
+
+    private static final Occorrenze NESSUNA = new Occorrenze(new long[0], new String[0], 0);
+
+    private final NavigableMap<String, Occorrenze> parole = new ConcurrentSkipListMap<>();
+
+    /** Va chiamato con i valori correnti dell'intervento. */
+    void aggiungi(String chiave, long progressivo, Intervento i) {
+        for (String parola : parole(i)) {
+            Occorrenze o = parole.get(parola);
+            parole.put(parola, o == null ? Occorrenze.di(progressivo, chiave) : o.con(progressivo, chiave));
+        }
+    }
+
+    /** Va chiamato PRIMA di modificare i campi di testo, finché l'intervento ha i valori indicizzati. */
+    void rimuovi(long progressivo, Intervento i) {
+        for (String parola : parole(i)) {
+            Occorrenze o = parole.get(parola);
+            if (o == null) {
+                continue;
+            }
+            Occorrenze restanti = o.senza(progressivo);
+            if (restanti == null) {
+                parole.remove(parola); // niente parole senza interventi nel dizionario
+            } else if (restanti != o) {
+                parole.put(parola, restanti);
+            }
+        }
+    }
+
+    void svuota() {
+        parole.clear();
+    }
+
+    /**
+     * ID degli interventi che contengono TUTTI i termini della ricerca, in ordine di
+     * inserimento. Un termine che finisce con '*' è un prefisso ("win*" trova "windows"
+     * e "win11"); gli altri devono corrispondere a una parola intera.
+     *
+     * Si parte dal termine con meno interventi e lo si interseca con gli altri, dal più
+     * raro al più comune: il costo dipende dai termini rari, non dalla dimensione del log.
+     */
+    List<String> cerca(String ricerca) {
+        List<List<Occorrenze>> termini = new ArrayList<>();
+        for (String termine : ricerca.trim().split("\\s+")) {
+            boolean prefisso = termine.endsWith("*");
+            List<String> normalizzati = dividi(prefisso ? termine.substring(0, termine.length() - 1) : termine);
+            // "Windows-Server" nella ricerca sono due parole, come nel testo indicizzato;
+            // il prefisso vale solo per l'ultima.
+            for (int k = 0; k < normalizzati.size(); k++) {
+                List<Occorrenze> t = occorrenze(normalizzati.get(k), prefisso && k == normalizzati.size() - 1);
+                if (t.isEmpty()) {
+                    return List.of(); // un termine senza risultati: l'AND è vuoto
+                }
+                termini.add(t);
+            }
+        }
+        if (termini.isEmpty()) {
+            return List.of();
+        }
+        termini.sort(Comparator.comparingLong(IndiceTesto::stima));
+        Occorrenze risultato = unione(termini.get(0));
+        for (int k = 1; k < termini.size() && risultato.numero > 0; k++) {
+            List<Occorrenze> t = termini.get(k);
+            // Prefisso con molte parole e pochi candidati: conviene cercare ogni candidato
+            // nelle singole liste piuttosto che costruirne l'unione.
+            risultato = t.size() > 1 && (long) risultato.numero * t.size() < stima(t)
+                    ? filtra(risultato, t)
+                    : interseca(risultato, unione(t));
+        }
+        return Arrays.asList(Arrays.copyOf(risultato.chiavi, risultato.numero));
+    }
+
+    // --- Helper ---
+
+    private List<Occorrenze> occorrenze(String parola, boolean prefisso) {
+        if (!prefisso) {
+            Occorrenze o = parole.get(parola);
+            return o == null ? List.of() : List.of(o);
+        }
+        // Tutte le parole che iniziano con il prefisso: da "win" a "win" + il carattere più alto.
+        return new ArrayList<>(parole.subMap(parola, true, parola + Character.MAX_VALUE, true).values());
+    }
+
+    private static long stima(List<Occorrenze> termine) {
+        long n = 0;
+        for (Occorrenze o : termine) {
+            n += o.numero;
+        }
+        return n;
+    }
+
+    /** Le occorrenze di un termine (con un prefisso, unione di più parole), a coppie come un merge sort. */
+    private static Occorrenze unione(List<Occorrenze> termine) {
+        List<Occorrenze> livello = termine;
+        while (livello.size() > 1) {
+            List<Occorrenze> prossimo = new ArrayList<>((livello.size() + 1) / 2);
+            for (int k = 0; k + 1 < livello.size(); k += 2) {
+                prossimo.add(unisci(livello.get(k), livello.get(k + 1)));
+            }
+            if (livello.size() % 2 == 1) {
+                prossimo.add(livello.get(livello.size() - 1));
+            }
+            livello = prossimo;
+        }
+        return livello.isEmpty() ? NESSUNA : livello.get(0);
+    }
+
+    private static Occorrenze unisci(Occorrenze a, Occorrenze b) {
+        long[] p = new long[a.numero + b.numero];
+        String[] c = new String[p.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.numero || j < b.numero) {
+            if (j == b.numero || (i < a.numero && a.progressivi[i] < b.progressivi[j])) {
+                p[n] = a.progressivi[i];
+                c[n++] = a.chiavi[i++];
+            } else {
+                if (i < a.numero && a.progressivi[i] == b.progressivi[j]) {
+                    i++; // lo stesso intervento contiene entrambe le parole
+                }
+                p[n] = b.progressivi[j];
+                c[n++] = b.chiavi[j++];
+            }
+        }
+        return new Occorrenze(p, c, n);
+    }
+
+    /**
+     * Elementi di {@code a} (la lista più corta) presenti anche in {@code b}. Con liste di
+     * lunghezza simile un merge lineare; se b è molto più lunga, per ogni elemento di a si
+     * cerca in b a salti esponenziali dall'ultima posizione: O(|a| log(|b|/|a|)).
+     */
+    private static Occorrenze interseca(Occorrenze a, Occorrenze b) {
+        long[] p = new long[Math.min(a.numero, b.numero)];
+        String[] c = new String[p.length];
+        int n = 0;
+        if (b.numero / 8 <= a.numero) {
+            for (int i = 0, j = 0; i < a.numero && j < b.numero; ) {
+                long x = a.progressivi[i];
+                long y = b.progressivi[j];
+                if (x == y) {
+                    p[n] = x;
+                    c[n++] = a.chiavi[i];
+                }
+                // Avanzamento senza salti condizionali: con liste mescolate a caso il
+                // predittore di salto sbaglierebbe un confronto su due.
+                i += x <= y ? 1 : 0;
+                j += y <= x ? 1 : 0;
+            }
+            return new Occorrenze(p, c, n);
+        }
+        int da = 0;
+        for (int i = 0; i < a.numero && da < b.numero; i++) {
+            long cercato = a.progressivi[i];
+            int salto = 1;
+            int base = da;
+            while (base + salto < b.numero && b.progressivi[base + salto] < cercato) {
+                base += salto;
+                salto <<= 1;
+            }
+            int k = Arrays.binarySearch(b.progressivi, base, Math.min(base + salto + 1, b.numero), cercato);
+            if (k >= 0) {
+                p[n] = cercato;
+                c[n++] = a.chiavi[i];
+                da = k + 1;
+            } else {
+                da = -k - 1;
+            }
+        }
+        return new Occorrenze(p, c, n);
+    }
+
+    /** Elementi di {@code a} presenti in almeno una delle liste del termine. */
+    private static Occorrenze filtra(Occorrenze a, List<Occorrenze> termine) {
+        long[] p = new long[a.numero];
+        String[] c = new String[a.numero];
+        int n = 0;
+        for (int i = 0; i < a.numero; i++) {
+            for (Occorrenze o : termine) {
+                if (o.contiene(a.progressivi[i])) {
+                    p[n] = a.progressivi[i];
+                    c[n++] = a.chiavi[i];
+                    break;
+                }
+            }
+        }
+        return new Occorrenze(p, c, n);
+    }
+
+    /** Parole distinte del testo indicizzato dell'intervento. */
+    private static Collection<String> parole(Intervento i) {
+        Set<String> parole = new LinkedHashSet<>(dividi(i.getDescrizione()));
+        if (i instanceof InterventoHardware) {
+            parole.addAll(dividi(((InterventoHardware) i).getPezzoRicambio()));
+        } else if (i instanceof InterventoSoftware) {
+            parole.addAll(dividi(((InterventoSoftware) i).getSistemaOperativo()));
+        }
+        return parole;
+    }
+
+    /** Minuscolo, senza accenti, diviso su tutto ciò che non è lettera o cifra. */
+    static List<String> dividi(String testo) {
+        String normalizzato = testo.toLowerCase(Locale.ROOT);
+        if (!isAscii(normalizzato)) {
+            normalizzato = ACCENTI.matcher(Normalizer.normalize(normalizzato, Normalizer.Form.NFD)).replaceAll("");
+        }
+        List<String> parole = new ArrayList<>();
+        for (String parola : SEPARATORI.split(normalizzato)) {
+            if (!parola.isEmpty()) {
+                parole.add(parola);
+            }
+        }
+        return parole;
+    }
+
+    private static boolean isAscii(String s) {
+        for (int k = 0; k < s.length(); k++) {
+            if (s.charAt(k) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
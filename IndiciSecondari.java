@@ -0,0 +1,118 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Indici secondari del LogManager: per cliente (case-insensitive) e per data.
+ *
+ * Contengono solo gli ID normalizzati, non gli interventi: così funzionano anche con il
+ * caricamento pigro, dove la maggior parte degli interventi non è in heap.
+ *
+ * Struttura:
+ *   perData    = data → (progressivo → ID) degli interventi di quel giorno
+ *   perCliente = cliente normalizzato → (data → ...), cioè un indice per data per ogni cliente.
+ * "Tutti gli interventi del cliente X a marzo" diventa così un subMap() sull'albero
+ * del cliente, senza scorrere né tutto il log né tutti gli interventi del cliente.
+ *
+ * Dentro lo stesso giorno gli ID restano in ordine di inserimento grazie al progressivo
+ * che il LogManager assegna a ogni voce.
+ *
+ * Concorrenza: le modifiche arrivano solo dal LogManager sotto il suo lock di scrittura,
+ * mentre le ricerche non prendono lock. Per questo tutte le mappe sono concorrenti:
+ * una ricerca contemporanea a una modifica vede lo stato prima o dopo, mai una struttura
+ * a metà (al più non trova per un istante un intervento che sta cambiando data o cliente).
+ */
+final class IndiciSecondari {
+
+    private final Map<String, NavigableMap<LocalDate, NavigableMap<Long, String>>> perCliente =
+            new ConcurrentHashMap<>();
+    private final NavigableMap<LocalDate, NavigableMap<Long, String>> perData = new ConcurrentSkipListMap<>();
+
+    /** Va chiamato con i valori correnti dell'intervento (cliente e data). */
+    void aggiungi(String chiave, long progressivo, Intervento i) {
+        String cliente = normalizzaCliente(i.getCliente());
+        aggiungi(perCliente.computeIfAbsent(cliente, c -> new ConcurrentSkipListMap<>()),
+                i.getData(), progressivo, chiave);
+        aggiungi(perData, i.getData(), progressivo, chiave);
+    }
+
+    /** Va chiamato PRIMA di modificare cliente o data, finché l'intervento ha i valori indicizzati. */
+    void rimuovi(long progressivo, Intervento i) {
+        String cliente = normalizzaCliente(i.getCliente());
+        NavigableMap<LocalDate, NavigableMap<Long, String>> delCliente = perCliente.get(cliente);
+        if (delCliente != null) {
+            rimuovi(delCliente, i.getData(), progressivo);
+            if (delCliente.isEmpty()) {
+                perCliente.remove(cliente);
+            }
+        }
+        rimuovi(perData, i.getData(), progressivo);
+    }
+
+    void svuota() {
+        perCliente.clear();
+        perData.clear();
+    }
+
+    /**
+     * ID degli interventi del cliente, in ordine di data. Gli estremi sono inclusi;
+     * null = nessun limite da quel lato.
+     */
+    List<String> perCliente(String cliente, LocalDate da, LocalDate a) {
+        NavigableMap<LocalDate, NavigableMap<Long, String>> delCliente = perCliente.get(normalizzaCliente(cliente));
+        return delCliente == null ? List.of() : appiattisci(intervallo(delCliente, da, a));
+    }
+
+    /** ID degli interventi nel periodo, in ordine di data. Estremi inclusi, null = illimitato. */
+    List<String> perPeriodo(LocalDate da, LocalDate a) {
+        return appiattisci(intervallo(perData, da, a));
+    }
+
+    /** I clienti sono testo libero: "Rossi Srl" e "ROSSI SRL" sono lo stesso cliente. */
+    static String normalizzaCliente(String cliente) {
+        return cliente.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // --- Helper ---
+
+    private static void aggiungi(NavigableMap<LocalDate, NavigableMap<Long, String>> indice,
+                                 LocalDate data, long progressivo, String chiave) {
+        indice.computeIfAbsent(data, d -> new ConcurrentSkipListMap<>()).put(progressivo, chiave);
+    }
+
+    private static void rimuovi(NavigableMap<LocalDate, NavigableMap<Long, String>> indice,
+                                LocalDate data, long progressivo) {
+        NavigableMap<Long, String> delGiorno = indice.get(data);
+        if (delGiorno != null && delGiorno.remove(progressivo) != null && delGiorno.isEmpty()) {
+            indice.remove(data); // niente bucket vuoti che si accumulano
+        }
+    }
+
+    private static NavigableMap<LocalDate, NavigableMap<Long, String>> intervallo(
+            NavigableMap<LocalDate, NavigableMap<Long, String>> indice, LocalDate da, LocalDate a) {
+        if (da != null && a != null) {
+            return da.isAfter(a) ? Collections.emptyNavigableMap() : indice.subMap(da, true, a, true);
+        }
+        if (da != null) {
+            return indice.tailMap(da, true);
+        }
+        if (a != null) {
+            return indice.headMap(a, true);
+        }
+        return indice;
+    }
+
+    private static List<String> appiattisci(NavigableMap<LocalDate, NavigableMap<Long, String>> intervallo) {
+        List<String> chiavi = new ArrayList<>();
+        for (NavigableMap<Long, String> delGiorno : intervallo.values()) {
+            chiavi.addAll(delGiorno.values());
+        }
+        return chiavi;
+    }
+}
@@ -1,6 +1,7 @@
 import java.io.Serializable;
 import java.time.LocalDate;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * Classe base astratta che rappresenta un generico intervento tecnico.
@@ -15,34 +16,119 @@ public abstract class Intervento implements Serializable {
     // compatibilità tra versioni diverse della classe durante la deserializzazione.
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Campi la cui modifica interessa a chi possiede l'intervento (il LogManager):
+     * l'ID è la chiave dei suoi indici, tutti i campi finiscono nel journal.
+     */
+    public enum Campo { ID, CLIENTE, DATA, DESCRIZIONE, PEZZO_RICAMBIO, SISTEMA_OPERATIVO }
+
     private String id;
     private String cliente;
     private LocalDate data;
     private String descrizione;
 
+    // transient: il legame con il LogManager non va serializzato, viene
+    // ricostruito quando l'intervento viene aggiunto o ricaricato.
+    private transient OsservatoreModifiche osservatore;
+
+    // Tariffa già calcolata (vedi tariffaDalleRegole): centesimi nei 32 bit bassi, versione
+    // delle regole nei 24 sopra (0 = da calcolare), negli 8 alti un contatore delle modifiche.
+    // transient: dopo la deserializzazione vale 0, si ricalcola.
+    private transient volatile long tariffa;
+    private static final AtomicLongFieldUpdater<Intervento> TARIFFA =
+            AtomicLongFieldUpdater.newUpdater(Intervento.class, "tariffa");
+    private static final long MODIFICHE = 0xFF00_0000_0000_0000L;
+
+    // Date accettate in ingresso (menu, batch, import, API). Un anno come +999999999 non è
+    // un intervento ma un errore di battitura, e farebbe crescere con la distanza tra le date
+    // i totali per mese dei riepiloghi (Colonne).
+    static final LocalDate DATA_MINIMA  = LocalDate.of(1900, 1, 1);
+    static final LocalDate DATA_MASSIMA = LocalDate.of(2099, 12, 31);
+
     public Intervento(String id, String cliente, LocalDate data, String descrizione) {
         // Validazione in ingresso: meglio fallire subito con un messaggio chiaro
         // che scoprire un NPE a runtime due metodi dopo.
         this.id          = Objects.requireNonNull(id,          "id non può essere null");
-        this.cliente     = Objects.requireNonNull(cliente,     "cliente non può essere null");
+        // Cliente dal dizionario: centinaia di interventi dello stesso cliente, una sola stringa.
+        this.cliente     = Dizionario.interna(Objects.requireNonNull(cliente, "cliente non può essere null"));
         this.data        = Objects.requireNonNull(data,        "data non può essere null");
         this.descrizione = Objects.requireNonNull(descrizione, "descrizione non può essere null");
     }
 
+    /**
+     * Controllo per chi legge una data dall'utente o da un file da importare. Costruttori e
+     * setter non lo applicano: i log già salvati si rileggono com'erano.
+     *
+     * @throws IllegalArgumentException se la data è fuori da DATA_MINIMA..DATA_MASSIMA
+     */
+    static LocalDate verificaData(LocalDate data) {
+        if (data.isBefore(DATA_MINIMA) || data.isAfter(DATA_MASSIMA)) {
+            throw new IllegalArgumentException("data fuori dall'intervallo ammesso (" + DATA_MINIMA
+                    + " - " + DATA_MASSIMA + "): " + data);
+        }
+        return data;
+    }
+
     // --- Getters & Setters ---
     // Accesso controllato ai campi: nessun consumer esterno tocca i dati raw.
 
     public String getId()               { return id; }
-    public void   setId(String id)      { this.id = Objects.requireNonNull(id); }
+    public void   setId(String id) {
+        Objects.requireNonNull(id);
+        modifica(Campo.ID, id, () -> this.id = id);
+    }
 
     public String getCliente()                  { return cliente; }
-    public void   setCliente(String cliente)    { this.cliente = Objects.requireNonNull(cliente); }
+    public void   setCliente(String cliente) {
+        String valore = Dizionario.interna(Objects.requireNonNull(cliente));
+        modifica(Campo.CLIENTE, valore, () -> this.cliente = valore);
+    }
 
     public LocalDate getData()               { return data; }
-    public void      setData(LocalDate data) { this.data = Objects.requireNonNull(data); }
+    public void      setData(LocalDate data) {
+        Objects.requireNonNull(data);
+        modifica(Campo.DATA, data, () -> this.data = data);
+    }
 
     public String getDescrizione()                    { return descrizione; }
-    public void   setDescrizione(String descrizione)  { this.descrizione = Objects.requireNonNull(descrizione); }
+    public void   setDescrizione(String descrizione) {
+        Objects.requireNonNull(descrizione);
+        modifica(Campo.DESCRIZIONE, descrizione, () -> this.descrizione = descrizione);
+    }
+
+    // --- Notifica modifiche ---
+
+    /** Usato dal LogManager quando l'intervento entra (o esce, con null) dalla sua lista. */
+    void setOsservatore(OsservatoreModifiche osservatore) { this.osservatore = osservatore; }
+
+    OsservatoreModifiche getOsservatore() { return osservatore; }
+
+    /**
+     * Tutte le modifiche ai campi passano da qui: se l'intervento appartiene
+     * a un LogManager è lui ad applicare l'assegnazione, così può aggiornare i propri
+     * indici (o rifiutare la modifica, ad es. un ID già in uso).
+     */
+    protected final void modifica(Campo campo, Object nuovoValore, Runnable assegnazione) {
+        // La tariffa in cache va invalidata dentro l'assegnazione: il LogManager ricalcola
+        // i totali subito dopo, ancora sotto il suo lock.
+        Runnable completa = campo == Campo.CLIENTE || campo == Campo.DATA || campo == Campo.SISTEMA_OPERATIVO
+                ? () -> { assegnazione.run(); invalidaTariffa(); }
+                : assegnazione;
+        OsservatoreModifiche o = osservatore;
+        if (o == null) {
+            completa.run();
+        } else {
+            o.applicaModifica(this, campo, nuovoValore, completa);
+        }
+    }
+
+    /** Dopo la modifica di un campo da cui dipende la tariffa. */
+    private void invalidaTariffa() {
+        long c;
+        do {
+            c = tariffa;
+        } while (!TARIFFA.compareAndSet(this, c, (c & MODIFICHE) + (1L << 56)));
+    }
 
     /**
      * Polimorfismo in azione: ogni sottoclasse decide come calcolare la propria tariffa.
@@ -50,6 +136,42 @@ public abstract class Intervento implements Serializable {
      */
     public abstract double calcolaTariffa();
 
+    /**
+     * La tariffa secondo le regole del LogManager a cui appartiene l'intervento (vedi Tariffe),
+     * le predefinite se non appartiene a nessuno, per le implementazioni di calcolaTariffa().
+     * Viene calcolata una volta e tenuta qui finché non cambiano le regole o cliente, data e
+     * sistema operativo: i totali e i riepiloghi non rifanno i conti per ogni intervento a ogni
+     * richiesta.
+     *
+     * Si chiama anche senza lock, mentre un altro thread modifica l'intervento: il risultato
+     * entra in cache solo se nel frattempo nessun setter l'ha invalidata (compareAndSet sul
+     * valore letto all'inizio, che include il contatore delle modifiche). Altrimenti un
+     * calcolo fatto con i valori vecchi resterebbe in cache dopo la modifica.
+     */
+    protected final double tariffaDalleRegole() {
+        OsservatoreModifiche o = osservatore;
+        return tariffaSecondo(o != null ? o.getTariffe() : Tariffe.predefinite());
+    }
+
+    private double tariffaSecondo(Tariffe regole) {
+        long c = tariffa;
+        if ((int) (c >>> 32 & 0xFF_FFFF) == regole.getVersione()) {
+            return (int) c / 100.0;
+        }
+        long centesimi = regole.centesimi(this); // legge i campi dopo c: vedi sopra
+        if (centesimi == (int) centesimi) {
+            TARIFFA.compareAndSet(this, c,
+                    (c & MODIFICHE) | (long) regole.getVersione() << 32 | (centesimi & 0xFFFF_FFFFL));
+        }
+        return centesimi / 100.0;
+    }
+
+    /**
+     * Copia con gli stessi valori ma senza osservatore: è la "fotografia" che il LogManager
+     * prende sotto lock per salvare senza bloccare chi continua a modificare gli originali.
+     */
+    abstract Intervento copia();
+
     /**
      * equals() basato sull'ID: due interventi con lo stesso ID sono lo stesso intervento,
      * indipendentemente da dove vivono in memoria. Fondamentale per ArrayList.remove(Object)
@@ -9,9 +9,6 @@ public class InterventoHardware extends Intervento {
 
     private static final long serialVersionUID = 2L;
 
-    // Tariffa oraria fissa per interventi hardware (manodopera)
-    private static final double TARIFFA_ORARIA_HW = 65.0;
-
     private String pezzoRicambio;
 
     public InterventoHardware(String id, String cliente, LocalDate data,
@@ -22,15 +19,23 @@ public class InterventoHardware extends Intervento {
     }
 
     public String getPezzoRicambio()                      { return pezzoRicambio; }
-    public void   setPezzoRicambio(String pezzoRicambio)  { this.pezzoRicambio = Objects.requireNonNull(pezzoRicambio); }
+    public void   setPezzoRicambio(String pezzoRicambio) {
+        Objects.requireNonNull(pezzoRicambio);
+        modifica(Campo.PEZZO_RICAMBIO, pezzoRicambio, () -> this.pezzoRicambio = pezzoRicambio);
+    }
 
     /**
-     * Tariffa HW = tariffa oraria base + supplemento fisso per la trasferta.
-     * Logica volutamente diversa da SW per dimostrare il polimorfismo.
+     * Tariffa HW dalle regole in uso (vedi Tariffe). Con quelle predefinite: tariffa oraria
+     * base più il supplemento fisso per la trasferta, 65 + 25 €.
      */
     @Override
     public double calcolaTariffa() {
-        return TARIFFA_ORARIA_HW + 25.0; // 25€ di rimborso trasferta
+        return tariffaDalleRegole();
+    }
+
+    @Override
+    InterventoHardware copia() {
+        return new InterventoHardware(getId(), getCliente(), getData(), getDescrizione(), pezzoRicambio);
     }
 
     @Override
@@ -10,37 +10,37 @@ public class InterventoSoftware extends Intervento {
 
     private static final long serialVersionUID = 3L;
 
-    private static final double TARIFFA_BASE_SW = 55.0;
-
     private String sistemaOperativo;
 
     public InterventoSoftware(String id, String cliente, LocalDate data,
                               String descrizione, String sistemaOperativo) {
         super(id, cliente, data, descrizione);
-        // FIX BUG #1: validazione esplicita — calcolaTariffa() chiama .toLowerCase()
-        // su questo campo; senza controllo, un null qui causerebbe NPE a runtime.
-        this.sistemaOperativo = Objects.requireNonNull(sistemaOperativo, "sistemaOperativo non può essere null");
+        // FIX BUG #1: validazione esplicita — le regole delle tariffe confrontano questo
+        // campo con i loro modelli; senza controllo, un null qui causerebbe NPE a runtime.
+        this.sistemaOperativo = Dizionario.interna(
+                Objects.requireNonNull(sistemaOperativo, "sistemaOperativo non può essere null"));
     }
 
     public String getSistemaOperativo()                         { return sistemaOperativo; }
-    public void   setSistemaOperativo(String sistemaOperativo)  { this.sistemaOperativo = Objects.requireNonNull(sistemaOperativo); }
+    public void   setSistemaOperativo(String sistemaOperativo) {
+        String valore = Dizionario.interna(Objects.requireNonNull(sistemaOperativo));
+        modifica(Campo.SISTEMA_OPERATIVO, valore, () -> this.sistemaOperativo = valore);
+    }
 
     /**
-     * Tariffa SW variabile: server OS (Windows Server, Linux Server) valgono di più
-     * perché richiedono competenze specifiche. Approccio semplicistico ma realistico
-     * per uno strumento personale.
-     *
-     * Nota: 55.0 * 1.4 in IEEE 754 può produrre 76.999...99 invece di 77.0 esatto,
-     * ma il formato %.2f nel toString arrotonda correttamente — nessun impatto visibile.
+     * Tariffa SW dalle regole in uso (vedi Tariffe), che possono dipendere dal sistema
+     * operativo. Con quelle predefinite: 55 €, +40% per i sistemi server (Windows Server,
+     * Linux Server) perché richiedono competenze specifiche. I conti sono in centesimi,
+     * quindi 77,00 esatti e non 76,999... come con 55.0 * 1.4 in double.
      */
     @Override
     public double calcolaTariffa() {
-        // sistemaOperativo è garantito non-null dal costruttore, toLowerCase() è safe.
-        String soLower = sistemaOperativo.toLowerCase();
-        if (soLower.contains("server")) {
-            return TARIFFA_BASE_SW * 1.4; // +40% per ambienti server
-        }
-        return TARIFFA_BASE_SW;
+        return tariffaDalleRegole();
+    }
+
+    @Override
+    InterventoSoftware copia() {
+        return new InterventoSoftware(getId(), getCliente(), getData(), getDescrizione(), sistemaOperativo);
     }
 
     @Override
@@ -0,0 +1,259 @@
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Journal append-only delle modifiche, usato dal LogManager in modalità JOURNAL.
+ *
+ * Invece di riscrivere tutto il log a ogni salvataggio, si accodano solo le voci
+ * cambiate: il costo di salva() diventa proporzionale alle modifiche, non alla
+ * dimensione dello storico. Periodicamente il LogManager compatta tutto in uno
+ * snapshot (il classico .dat) e il journal riparte da vuoto.
+ *
+ * Formato del file:
+ *   header  = MAGIC (int) + VERSIONE (byte)
+ *   record  = lunghezza payload (int) + CRC32 del payload (int) + payload
+ *   payload = OP_PUT + record di CodecIntervento   oppure   OP_DELETE + ID (stringa del codec)
+ *
+ * La versione 1 usava la serializzazione Java per i PUT e writeUTF per i DELETE:
+ * resta leggibile per migrare i journal esistenti, ma non si accoda più nulla in quel
+ * formato (vedi {@link #isFormatoObsoleto()}).
+ *
+ * Crash-safety: un record scritto a metà (crash durante l'append) ha lunghezza o CRC
+ * non validi. La lettura si ferma lì e tronca la coda, così i record successivi non
+ * finiscono mai dietro a dati corrotti. Il replay è idempotente (PUT = upsert,
+ * DELETE di un ID assente = no-op): se si crasha tra la scrittura dello snapshot
+ * compattato e la cancellazione del journal, rileggerlo non cambia il risultato.
+ */
+final class Journal {
+
+    private static final int  MAGIC                 = 0x50544C4A; // "PTLJ"
+    private static final byte VERSIONE              = 2;
+    private static final byte VERSIONE_SERIALIZZATA = 1;
+    private static final int  HEADER                = Integer.BYTES + 1;
+    private static final int  INTESTAZIONE_RECORD   = 2 * Integer.BYTES;
+
+    private static final byte OP_PUT    = 1;
+    private static final byte OP_DELETE = 2;
+
+    private final Path file;
+    private boolean formatoObsoleto;
+
+    Journal(Path file) {
+        this.file = file;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /** Dimensione corrente del journal in byte (0 se non esiste). */
+    long dimensione() throws IOException {
+        return Files.exists(file) ? Files.size(file) : 0L;
+    }
+
+    /**
+     * true se l'ultimo replay ha letto un journal in un formato precedente: il LogManager
+     * deve compattarlo in uno snapshot invece di accodarci record nel formato nuovo.
+     */
+    boolean isFormatoObsoleto() {
+        return formatoObsoleto;
+    }
+
+    /**
+     * Riapplica i record validi nell'ordine in cui sono stati scritti.
+     *
+     * @return numero di record riapplicati
+     */
+    int riproduci(Consumer<Intervento> put, Consumer<String> delete) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        // Il journal viene compattato periodicamente, quindi resta piccolo:
+        // leggerlo tutto in memoria è più semplice e veloce di uno stream.
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buf.remaining() < HEADER) {
+            tronca(0);
+            return 0;
+        }
+        if (buf.getInt() != MAGIC) {
+            throw new IOException("journal '" + file + "' non riconosciuto");
+        }
+        byte versione = buf.get();
+        if (versione != VERSIONE && versione != VERSIONE_SERIALIZZATA) {
+            throw new IOException("versione del journal non supportata: " + versione);
+        }
+        formatoObsoleto = versione == VERSIONE_SERIALIZZATA;
+
+        int applicati = 0;
+        long fineValida = buf.position();
+        CRC32 crc = new CRC32();
+        while (buf.remaining() >= INTESTAZIONE_RECORD) {
+            int lunghezza = buf.getInt();
+            int checksum  = buf.getInt();
+            if (lunghezza <= 0 || lunghezza > buf.remaining()) {
+                break; // record troncato: crash durante l'ultimo append
+            }
+            crc.reset();
+            crc.update(buf.array(), buf.position(), lunghezza);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            int fine = buf.position() + lunghezza;
+            if (formatoObsoleto) {
+                byte[] payload = new byte[lunghezza];
+                buf.get(payload);
+                applicaSerializzato(payload, put, delete);
+            } else {
+                applica(buf, fine, put, delete);
+            }
+            buf.position(fine);
+            applicati++;
+            fineValida = fine;
+        }
+
+        if (fineValida < buf.capacity()) {
+            System.err.println("  [ATTENZIONE] Journal incompleto: scartati "
+                    + (buf.capacity() - fineValida) + " byte finali.");
+            tronca(fineValida);
+        }
+        return applicati;
+    }
+
+    /**
+     * Codifica le modifiche indicate (ID normalizzato → intervento nello stato attuale,
+     * oppure → null se l'intervento è stato eliminato) in un buffer pronto per appendi().
+     * Separata dalla scrittura perché il LogManager codifica sotto lock, così il record
+     * fotografa uno stato coerente, e scrive su disco dopo averlo rilasciato.
+     */
+    static ByteBuffer codifica(Map<String, Intervento> modifiche) {
+        ByteBuffer buf = ByteBuffer.allocate(Math.max(4096, modifiche.size() * 128));
+        CRC32 crc = new CRC32();
+        for (Map.Entry<String, Intervento> e : modifiche.entrySet()) {
+            while (true) {
+                int inizio = buf.position();
+                try {
+                    codifica(e.getKey(), e.getValue(), buf, crc);
+                    break;
+                } catch (BufferOverflowException overflow) {
+                    buf.position(inizio);
+                    buf = ingrandisci(buf);
+                }
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /** Accoda in un'unica scrittura i record prodotti da codifica(). */
+    void appendi(ByteBuffer record) throws IOException {
+        try (FileChannel canale = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            if (canale.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER).putInt(MAGIC).put(VERSIONE);
+                header.flip();
+                scriviTutto(canale, header);
+            }
+            scriviTutto(canale, record.duplicate());
+            // L'append deve sopravvivere a un crash della macchina, non solo della JVM:
+            // è l'unica copia di queste modifiche finché non c'è una compattazione.
+            canale.force(false);
+        }
+    }
+
+    /** Dopo una compattazione le modifiche sono tutte nello snapshot. */
+    void elimina() throws IOException {
+        Files.deleteIfExists(file);
+        formatoObsoleto = false;
+    }
+
+    // --- Codifica dei record ---
+
+    private static void codifica(String chiave, Intervento i, ByteBuffer buf, CRC32 crc) {
+        if (buf.remaining() < INTESTAZIONE_RECORD) {
+            throw new BufferOverflowException();
+        }
+        int inizio = buf.position();
+        buf.position(inizio + INTESTAZIONE_RECORD); // lunghezza e CRC, completati sotto
+        int inizioPayload = buf.position();
+        if (i == null) {
+            buf.put(OP_DELETE);
+            CodecIntervento.scriviStringa(chiave, buf);
+        } else {
+            buf.put(OP_PUT);
+            CodecIntervento.scrivi(i, buf);
+        }
+        int lunghezza = buf.position() - inizioPayload;
+        crc.reset();
+        crc.update(buf.array(), inizioPayload, lunghezza);
+        buf.putInt(inizio, lunghezza);
+        buf.putInt(inizio + Integer.BYTES, (int) crc.getValue());
+    }
+
+    private static void applica(ByteBuffer buf, int fine, Consumer<Intervento> put, Consumer<String> delete)
+            throws IOException {
+        int limite = buf.limit();
+        buf.limit(fine);
+        try {
+            byte op = buf.get();
+            if (op == OP_DELETE) {
+                delete.accept(CodecIntervento.leggiStringa(buf));
+            } else if (op == OP_PUT) {
+                put.accept(CodecIntervento.leggi(buf));
+            } else {
+                throw new IOException("operazione sconosciuta nel journal: " + op);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | DateTimeException e) {
+            // CRC corretto ma contenuto illeggibile: non è un crash, è un bug o un file alterato.
+            throw new IOException("record del journal corrotto: " + e, e);
+        } finally {
+            buf.limit(limite);
+        }
+    }
+
+    /** Formato della versione 1, mantenuto solo per la migrazione. */
+    private static void applicaSerializzato(byte[] payload, Consumer<Intervento> put, Consumer<String> delete)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        if (op == OP_DELETE) {
+            delete.accept(in.readUTF());
+        } else if (op == OP_PUT) {
+            try (ObjectInputStream ois = new ObjectInputStream(in)) {
+                put.accept((Intervento) ois.readObject());
+            } catch (ClassNotFoundException e) {
+                throw new IOException("record del journal non leggibile", e);
+            }
+        } else {
+            throw new IOException("operazione sconosciuta nel journal: " + op);
+        }
+    }
+
+    private static ByteBuffer ingrandisci(ByteBuffer buf) {
+        ByteBuffer piuGrande = ByteBuffer.allocate(buf.capacity() * 2);
+        buf.flip();
+        piuGrande.put(buf);
+        return piuGrande;
+    }
+
+    private void tronca(long lunghezza) throws IOException {
+        try (FileChannel canale = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            canale.truncate(lunghezza);
+        }
+    }
+
+    private static void scriviTutto(FileChannel canale, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            canale.write(buf);
+        }
+    }
+}
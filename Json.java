@@ -0,0 +1,334 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lettore (e scrittore) JSON minimale scritto a mano, per non introdurre dipendenze
+ * (Gson, Jackson) in un progetto che finora non ne ha nessuna.
+ *
+ * Mappatura dei valori:
+ *   oggetto → LinkedHashMap&lt;String, Object&gt; (ordine delle chiavi preservato)
+ *   array   → ArrayList&lt;Object&gt;
+ *   stringa → String,  numero → Long se intero, altrimenti Double
+ *   true/false → Boolean,  null → null
+ *
+ * Copre tutto lo standard (RFC 8259) tranne le stringhe con surrogate non accoppiati,
+ * che vengono lette così come sono. Non è pensato per documenti enormi: un documento
+ * è una riga di un JSONL o il corpo di una richiesta. Per lo stesso motivo oggetti e
+ * array annidati oltre MAX_PROFONDITA livelli sono rifiutati come JSON non valido:
+ * il parser è ricorsivo e un "[[[[..." lungo abbastanza finirebbe lo stack.
+ *
+ * La scrittura (scrivi) fa il percorso inverso con la stessa mappatura, più Collection
+ * per gli array e qualsiasi Number; il resto viene scritto come stringa con toString().
+ * Scrive direttamente su un Appendable, così una risposta lunga non passa da una String.
+ */
+final class Json {
+
+    /** Livelli di oggetti/array uno dentro l'altro ammessi in un documento. */
+    static final int MAX_PROFONDITA = 64;
+
+    private final String testo;
+    private int pos;
+    private int profondita;
+
+    private Json(String testo) {
+        this.testo = testo;
+    }
+
+    /**
+     * Legge un documento JSON completo.
+     *
+     * @throws IllegalArgumentException se il testo non è JSON valido (il messaggio indica la posizione)
+     */
+    static Object leggi(String testo) {
+        Json parser = new Json(testo);
+        parser.spazi();
+        Object valore = parser.valore();
+        parser.spazi();
+        if (parser.pos != testo.length()) {
+            throw parser.errore("contenuto inatteso dopo la fine del documento");
+        }
+        return valore;
+    }
+
+    /** Come leggi(), ma il documento deve essere un oggetto. */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> leggiOggetto(String testo) {
+        Object valore = leggi(testo);
+        if (!(valore instanceof Map)) {
+            throw new IllegalArgumentException("atteso un oggetto JSON");
+        }
+        return (Map<String, Object>) valore;
+    }
+
+    /** Il valore come JSON compatto. */
+    static String scrivi(Object valore) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            scrivi(sb, valore);
+        } catch (IOException e) {
+            throw new AssertionError(e); // StringBuilder non lancia IOException
+        }
+        return sb.toString();
+    }
+
+    static void scrivi(Appendable out, Object valore) throws IOException {
+        if (valore == null) {
+            out.append("null");
+        } else if (valore instanceof Boolean) {
+            out.append(valore.toString());
+        } else if (valore instanceof Number) {
+            double d = ((Number) valore).doubleValue();
+            // NaN e infiniti non esistono in JSON.
+            out.append(Double.isNaN(d) || Double.isInfinite(d) ? "null" : valore.toString());
+        } else if (valore instanceof Map) {
+            out.append('{');
+            boolean primo = true;
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) valore).entrySet()) {
+                if (!primo) {
+                    out.append(',');
+                }
+                primo = false;
+                scriviStringa(out, String.valueOf(e.getKey()));
+                out.append(':');
+                scrivi(out, e.getValue());
+            }
+            out.append('}');
+        } else if (valore instanceof Collection) {
+            out.append('[');
+            boolean primo = true;
+            for (Object elemento : (Collection<?>) valore) {
+                if (!primo) {
+                    out.append(',');
+                }
+                primo = false;
+                scrivi(out, elemento);
+            }
+            out.append(']');
+        } else {
+            scriviStringa(out, valore.toString());
+        }
+    }
+
+    private static void scriviStringa(Appendable out, String s) throws IOException {
+        out.append('"');
+        int inizio = 0;
+        for (int k = 0; k < s.length(); k++) {
+            char c = s.charAt(k);
+            if (c != '"' && c != '\\' && c >= 0x20) {
+                continue;
+            }
+            out.append(s, inizio, k);
+            switch (c) {
+                case '"':  out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n");  break;
+                case '\r': out.append("\\r");  break;
+                case '\t': out.append("\\t");  break;
+                default:
+                    out.append(String.format("\\u%04x", (int) c));
+            }
+            inizio = k + 1;
+        }
+        out.append(s, inizio, s.length());
+        out.append('"');
+    }
+
+    // --- Parser a discesa ricorsiva ---
+
+    private Object valore() {
+        if (pos >= testo.length()) {
+            throw errore("documento troncato");
+        }
+        char c = testo.charAt(pos);
+        if (c == '{' || c == '[') {
+            if (++profondita > MAX_PROFONDITA) {
+                throw errore("oltre " + MAX_PROFONDITA + " livelli di oggetti/array annidati");
+            }
+            Object contenitore = c == '{' ? oggetto() : array();
+            profondita--;
+            return contenitore;
+        }
+        switch (c) {
+            case '"': return stringa();
+            case 't': return letterale("true", Boolean.TRUE);
+            case 'f': return letterale("false", Boolean.FALSE);
+            case 'n': return letterale("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return numero();
+                }
+                throw errore("carattere inatteso '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> oggetto() {
+        Map<String, Object> oggetto = new LinkedHashMap<>();
+        pos++; // '{'
+        spazi();
+        if (consuma('}')) {
+            return oggetto;
+        }
+        do {
+            spazi();
+            if (pos >= testo.length() || testo.charAt(pos) != '"') {
+                throw errore("attesa una chiave tra virgolette");
+            }
+            String chiave = stringa();
+            spazi();
+            atteso(':');
+            spazi();
+            oggetto.put(chiave, valore());
+            spazi();
+        } while (consuma(','));
+        atteso('}');
+        return oggetto;
+    }
+
+    private List<Object> array() {
+        List<Object> array = new ArrayList<>();
+        pos++; // '['
+        spazi();
+        if (consuma(']')) {
+            return array;
+        }
+        do {
+            spazi();
+            array.add(valore());
+            spazi();
+        } while (consuma(','));
+        atteso(']');
+        return array;
+    }
+
+    private String stringa() {
+        pos++; // '"'
+        StringBuilder sb = null; // allocato solo se la stringa contiene escape
+        int inizio = pos;
+        while (pos < testo.length()) {
+            char c = testo.charAt(pos);
+            if (c == '"') {
+                String s = sb == null ? testo.substring(inizio, pos) : sb.append(testo, inizio, pos).toString();
+                pos++;
+                return s;
+            }
+            if (c == '\\') {
+                if (sb == null) {
+                    sb = new StringBuilder();
+                }
+                sb.append(testo, inizio, pos);
+                pos++;
+                sb.append(escape());
+                inizio = pos;
+            } else if (c < 0x20) {
+                throw errore("carattere di controllo non ammesso in una stringa");
+            } else {
+                pos++;
+            }
+        }
+        throw errore("stringa non terminata");
+    }
+
+    private char escape() {
+        if (pos >= testo.length()) {
+            throw errore("escape troncato");
+        }
+        char c = testo.charAt(pos++);
+        switch (c) {
+            case '"':  return '"';
+            case '\\': return '\\';
+            case '/':  return '/';
+            case 'b':  return '\b';
+            case 'f':  return '\f';
+            case 'n':  return '\n';
+            case 'r':  return '\r';
+            case 't':  return '\t';
+            case 'u':
+                if (pos + 4 > testo.length()) {
+                    throw errore("escape \\u troncato");
+                }
+                try {
+                    char u = (char) Integer.parseInt(testo.substring(pos, pos + 4), 16);
+                    pos += 4;
+                    return u;
+                } catch (NumberFormatException e) {
+                    throw errore("escape \\u non valido");
+                }
+            default:
+                throw errore("escape non valido '\\" + c + "'");
+        }
+    }
+
+    private Object numero() {
+        int inizio = pos;
+        boolean intero = true;
+        if (testo.charAt(pos) == '-') {
+            pos++;
+        }
+        while (pos < testo.length()) {
+            char c = testo.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                pos++;
+            } else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                intero = false;
+                pos++;
+            } else {
+                break;
+            }
+        }
+        String cifre = testo.substring(inizio, pos);
+        try {
+            if (intero) {
+                try {
+                    return Long.parseLong(cifre);
+                } catch (NumberFormatException oltreIlRange) {
+                    // intero oltre il range di long: lo leggiamo come double
+                }
+            }
+            return Double.parseDouble(cifre);
+        } catch (NumberFormatException e) {
+            throw errore("numero non valido '" + cifre + "'");
+        }
+    }
+
+    private Object letterale(String parola, Object valore) {
+        if (!testo.startsWith(parola, pos)) {
+            throw errore("valore non valido");
+        }
+        pos += parola.length();
+        return valore;
+    }
+
+    // --- Helper ---
+
+    private void spazi() {
+        while (pos < testo.length()) {
+            char c = testo.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private boolean consuma(char c) {
+        if (pos < testo.length() && testo.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void atteso(char c) {
+        if (!consuma(c)) {
+            throw errore("atteso '" + c + "'");
+        }
+    }
+
+    private IllegalArgumentException errore(String messaggio) {
+        return new IllegalArgumentException("JSON non valido alla posizione " + pos + ": " + messaggio);
+    }
+}
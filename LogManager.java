@@ -1,12 +1,36 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 /**
  * Gestisce il ciclo di vita della lista interventi: CRUD in memoria + persistenza su disco.
@@ -14,119 +38,1909 @@ import java.util.Objects;
  * Ho separato questa logica dal Main per rispettare il principio di singola responsabilità:
  * il Main si occupa solo dell'interazione con l'utente, LogManager dei dati.
  *
- * Persistenza tramite serializzazione Java binaria: più robusto del CSV per oggetti complessi,
- * e non richiede dipendenze esterne. Limite noto: non human-readable, ma per un tool personale
- * va benissimo.
+ * Persistenza in un formato binario compatto scritto a mano (vedi SnapshotBinario e
+ * CodecIntervento): più robusto del CSV per oggetti complessi, molto più piccolo e veloce
+ * della serializzazione Java usata dalle prime versioni, e non richiede dipendenze esterne.
+ * I vecchi file serializzati vengono ancora letti e convertiti al primo salvataggio.
+ * Limite noto: non human-readable, ma per un tool personale va benissimo.
+ *
+ * Tre modalità di salvataggio (vedi {@link Persistenza}): snapshot completo a ogni salva(),
+ * journal append-only delle sole modifiche con compattazione periodica, oppure un file per
+ * mese riscritto solo se in quel mese è cambiato qualcosa.
+ * Due modalità di caricamento (vedi {@link Caricamento}): tutto in heap all'avvio, oppure
+ * snapshot mappato in memoria con decodifica dei singoli interventi solo quando servono.
+ * Con il caricamento pigro si può anche limitare la memoria (vedi {@link CacheResidenti}):
+ * oltre il limite gli interventi residenti meno usati di recente tornano solo su disco.
+ *
+ * Thread-safety: il manager può essere usato da più thread (già oggi lo shutdown hook
+ * salva mentre il thread del menu può ancora modificare).
+ *   - Letture (cercaPerId, getTutti, ricerche per cliente/periodo/testo) senza lock: gli indici
+ *     sono mappe concorrenti, quindi una lettura vede ogni modifica o prima o dopo.
+ *     L'iterazione di getTutti è "weakly consistent" come quella delle collection concorrenti.
+ *   - Modifiche (aggiungi, elimina, setter degli interventi) serializzate da un unico lock
+ *     di scrittura, tenuto solo per aggiornare gli indici in memoria.
+ *   - salva() fotografa lo stato sotto il lock di scrittura (copie dei soli campi, o i byte
+ *     grezzi per le voci non residenti) e fa tutto l'I/O dopo averlo rilasciato: le letture
+ *     non si fermano mai, le modifiche solo per il tempo della fotografia.
+ * Limite noto: i campi di un singolo Intervento non sono volatile. Un thread che legge un
+ * intervento mentre un altro ci chiama un setter può vedere il valore vecchio per un po';
+ * non vede mai un oggetto a metà (String e LocalDate sono immutabili).
  */
 public class LogManager {
 
-    private static final String FILE_PATH      = "log_interventi.dat";
+    /** Strategia di salvataggio su disco. */
+    public enum Persistenza {
+        /** Ogni salva() riscrive l'intero log: semplice, costo O(dimensione del log). */
+        SNAPSHOT,
+        /** salva() accoda solo le modifiche al journal: costo O(modifiche). */
+        JOURNAL,
+        /**
+         * Un segmento per mese (vedi Segmenti): salva() riscrive solo i mesi con modifiche,
+         * quindi correggere l'intervento di oggi non riscrive anni di storico chiuso.
+         * carica() apre solo i mesi recenti; i più vecchi vengono aperti (mappati, come nel
+         * caricamento pigro) la prima volta che un'operazione ha bisogno di tutto il log.
+         */
+        SEGMENTI
+    }
+
+    /** Strategia di caricamento dello snapshot. */
+    public enum Caricamento {
+        /** Tutti gli interventi decodificati in heap da carica(). */
+        COMPLETO,
+        /**
+         * Lo snapshot viene mappato in memoria e carica() costruisce solo l'indice
+         * ID → posizione: avvio quasi istantaneo anche con anni di storico, e in heap
+         * restano solo gli interventi effettivamente cercati o modificati.
+         */
+        PIGRO
+    }
+
+    /**
+     * Posto di un intervento nell'indice: residente in heap, oppure (caricamento pigro)
+     * ancora solo nello snapshot mappato, alla posizione indicata.
+     *
+     * Mappatura e posizione sono final: una lettura senza lock non può mai vedere la
+     * posizione nuova con la mappatura vecchia. Quando il file cambia (rimappa) la voce
+     * viene sostituita da una nuova con lo stesso progressivo.
+     */
+    private static final class Voce {
+        private static final AtomicReferenceFieldUpdater<Voce, Intervento> RESIDENTE =
+                AtomicReferenceFieldUpdater.newUpdater(Voce.class, Intervento.class, "intervento");
+
+        final long progressivo;   // ordine di inserimento, non cambia nemmeno se cambia l'ID
+        final SnapshotBinario.Mappa mappa; // null se l'intervento non viene da uno snapshot mappato
+        final int posizione;
+        final YearMonth mese;     // mese del segmento mappato (null se non viene da un segmento)
+        String chiave;            // modificata solo sotto il lock di scrittura
+        volatile Intervento intervento;
+        // Valore di contatoreModifiche all'ultima modifica dell'intervento, 0 se mai modificato
+        // da quando la voce esiste. Sotto il lock di scrittura, come la chiave.
+        long ultimaModifica;
+        int colonna = -1;         // posizione in Colonne quando gli indici sono pronti; sotto il lock di scrittura
+
+        Voce(long progressivo, String chiave, Intervento intervento) {
+            this(progressivo, chiave, null, -1, null);
+            this.intervento = intervento;
+        }
+
+        Voce(long progressivo, String chiave, SnapshotBinario.Mappa mappa, int posizione, YearMonth mese) {
+            this.progressivo = progressivo;
+            this.chiave      = chiave;
+            this.mappa       = mappa;
+            this.posizione   = posizione;
+            this.mese        = mese;
+        }
+
+        /**
+         * Rende residente {@code i} se la voce non ha ancora un intervento residente.
+         * Ritorna quello che ha vinto: due letture contemporanee della stessa voce
+         * ottengono così la stessa istanza.
+         */
+        Intervento adotta(Intervento i) {
+            return RESIDENTE.compareAndSet(this, null, i) ? i : intervento;
+        }
+
+        /** L'intervento residente è identico al record nel file mappato: scaricarlo non perde nulla. */
+        boolean scaricabile() {
+            return mappa != null && ultimaModifica == 0;
+        }
+    }
+
+    private static final String FILE_PATH = "log_interventi.dat";
+
+    // Quando il journal supera questa soglia (o metà dello snapshot, se più grande)
+    // conviene compattare: il replay all'avvio resta breve e il file non cresce all'infinito.
+    private static final long SOGLIA_COMPATTAZIONE_BYTES = 1L << 20;
+
+    // In modalità SEGMENTI carica() apre solo i segmenti degli ultimi mesi (0 = tutti).
+    private static final int MESI_RECENTI_PREDEFINITI = 12;
+
+    private final Path fileDati;
     // FIX BUG #5: scrittura su file temporaneo nella stessa directory del target.
     // Se scriviamo e crashiamo a metà, il .dat originale è intatto.
     // Solo quando writeObject() completa con successo, il temp rimpiazza l'originale.
-    private static final String FILE_PATH_TEMP = "log_interventi.dat.tmp";
+    private final Path fileTemp;
+
+    private final Persistenza persistenza;
+    private final Caricamento caricamento;
+    // Il journal viene sempre riletto in carica(), anche in modalità SNAPSHOT:
+    // potrebbe contenere modifiche di una sessione precedente in modalità JOURNAL.
+    private final Journal journal;
+    // Cartella dei segmenti mensili (modalità SEGMENTI), e quanti mesi carica() apre subito.
+    private final Segmenti segmenti;
+    private final int mesiRecenti;
+    // Sequenza degli ID nuovi (vedi nuovoId), salvata accanto al log.
+    private final GeneratoreId generatoreId;
+
+    // Tutte le modifiche in memoria passano da qui, una alla volta. Le letture no.
+    private final ReentrantLock scrittura = new ReentrantLock();
+    // Serializza i salvataggi (es. menu e shutdown hook insieme): due append al journal
+    // non devono mai arrivare su disco in ordine inverso. Si prende sempre PRIMA di scrittura.
+    private final ReentrantLock salvataggio = new ReentrantLock();
+
+    // Indice primario: chiave = ID normalizzato (maiuscolo), valore = voce dell'intervento.
+    // Lookup, inserimento e cancellazione O(1) (nessuno shift dell'array come con
+    // ArrayList.remove); ConcurrentHashMap perché cercaPerId non prende lock.
+    private final Map<String, Voce> perId = new ConcurrentHashMap<>();
+    // Le stesse voci per progressivo: l'ordine di inserimento resta quello di sempre per
+    // visualizzaTutti e per il file salvato, e si può scorrere mentre altri modificano.
+    private final ConcurrentSkipListMap<Long, Voce> ordine = new ConcurrentSkipListMap<>();
+    private long prossimoProgressivo; // sotto il lock di scrittura
+    // I segmenti vecchi aperti dopo carica() prendono progressivi negativi decrescenti:
+    // restano prima di quelli recenti nell'ordine, come sono nel tempo.
+    private long progressivoMinimo;   // sotto il lock di scrittura
+
+    // Modifiche non ancora nel journal: ID normalizzato → stato attuale, oppure null
+    // se l'intervento è stato eliminato. Una voce per ID: più modifiche allo stesso
+    // intervento tra due salvataggi producono un solo record.
+    // Sotto il lock di scrittura; salva() la sostituisce con una mappa vuota.
+    private Map<String, Intervento> modifichePendenti = new LinkedHashMap<>();
+    // true se c'è qualcosa di non ancora salvato, in entrambe le modalità: senza modifiche
+    // salva() non scrive nulla. Sotto il lock di scrittura, come modifichePendenti.
+    private boolean modificato;
+    // Modalità SEGMENTI: i mesi da riscrivere al prossimo salva() (quello vecchio e quello
+    // nuovo se cambia la data). Sotto il lock di scrittura, come modifichePendenti.
+    private Set<YearMonth> mesiModificati = new HashSet<>();
+    // Segmenti su disco non ancora aperti (più vecchi dei mesi recenti). Sotto il lock di
+    // scrittura; storicoCompleto diventa true quando non ne resta nessuno.
+    private final NavigableSet<YearMonth> mesiNonCaricati = new TreeSet<>();
+    private volatile boolean storicoCompleto = true;
+    // Voci lette con un ID già presente (file delle versioni che tiravano gli ID a sorte), in
+    // attesa di un ID nuovo: vedi rinominaDuplicati. Sotto il lock di scrittura.
+    private List<Voce> duplicati = new ArrayList<>();
+    // Avvisato a ogni modifica, sotto il lock di scrittura (vedi SalvataggioAutomatico):
+    // deve solo prendere nota e tornare subito.
+    private volatile Runnable allaModifica;
+
+    // Indici per cliente e per data. Con il caricamento pigro vengono costruiti solo alla
+    // prima ricerca che li usa (richiedono di decodificare tutto lo storico una volta);
+    // finché non sono pronti le modifiche non li toccano.
+    private final IndiciSecondari indici = new IndiciSecondari();
+    // Indice invertito su descrizione, ricambio e sistema operativo: idem.
+    private final IndiceTesto testo = new IndiceTesto();
+    // Totali di fatturazione: stesso ciclo di vita degli indici secondari (e stesso flag).
+    private final Aggregati aggregati = new Aggregati();
+    // Gli stessi dati a colonne di primitivi, per i riepiloghi di un periodo qualsiasi: idem.
+    private final Colonne colonne = new Colonne();
+    private volatile boolean indiciPronti = true;
 
-    // La lista è il cuore del sistema. ArrayList perché accediamo spesso per indice
-    // e non abbiamo bisogno di inserimenti/cancellazioni frequenti in mezzo alla lista.
-    private List<Intervento> interventi;
+    // Limite di memoria (null = nessuno): le voci residenti che si possono scaricare, in
+    // ordine di utilizzo. Numera le modifiche contatoreModifiche, sotto il lock di scrittura:
+    // dopo un salvataggio una voce residente passa al file nuovo solo se non è cambiata
+    // dopo la fotografia (vedi rimappa).
+    private final CacheResidenti<Voce> cache;
+    private long contatoreModifiche;
+
+    // Questi due solo sotto il lock di salvataggio (carica() compreso).
+    private long dimensioneSnapshot;
+    // true quando il prossimo salva() deve riscrivere tutto anche in modalità JOURNAL:
+    // journal illeggibile o dati caricati da un formato obsoleto da convertire.
+    // In modalità SEGMENTI: riscrivere tutti i segmenti.
+    private boolean serveSnapshotCompleto;
+    // true se i dati sono stati letti dall'altra disposizione su disco (segmenti invece del
+    // .dat o viceversa): dopo il primo salvataggio completo riuscito va messa da parte.
+    private boolean daMigrare;
+
+    // Regole delle tariffe di questo log: gli interventi le chiedono all'osservatore.
+    // Cambiano solo in setTariffe, sotto il lock di scrittura.
+    private volatile Tariffe tariffe = Tariffe.predefinite();
+
+    // Un solo osservatore per manager: lo stesso oggetto viene agganciato a ogni
+    // intervento che entra nella mappa e sganciato quando ne esce.
+    private final OsservatoreModifiche osservatore = new OsservatoreModifiche() {
+        @Override
+        public void applicaModifica(Intervento intervento, Intervento.Campo campo,
+                                    Object nuovoValore, Runnable assegnazione) {
+            LogManager.this.applicaModifica(intervento, campo, nuovoValore, assegnazione);
+        }
+
+        @Override
+        public Tariffe getTariffe() {
+            return tariffe;
+        }
+    };
+
+    // Latenze e contatori di ogni operazione pubblica (vedi Metriche): sempre attivi,
+    // costano due nanoTime e qualche incremento atomico per chiamata.
+    private final Metriche metriche;
 
     public LogManager() {
-        this.interventi = new ArrayList<>();
+        this(Persistenza.SNAPSHOT);
+    }
+
+    public LogManager(Persistenza persistenza) {
+        this(Paths.get(FILE_PATH), persistenza);
+    }
+
+    /**
+     * @param fileDati    snapshot su disco; temporaneo e journal vivono nella stessa directory
+     * @param persistenza strategia usata da salva()
+     */
+    public LogManager(Path fileDati, Persistenza persistenza) {
+        this(fileDati, persistenza, Caricamento.COMPLETO);
+    }
+
+    /**
+     * @param caricamento strategia usata da carica()
+     */
+    public LogManager(Path fileDati, Persistenza persistenza, Caricamento caricamento) {
+        this(fileDati, persistenza, caricamento, MESI_RECENTI_PREDEFINITI);
+    }
+
+    /**
+     * @param mesiRecenti solo in modalità SEGMENTI: quanti mesi (fino a quello corrente, più
+     *                    quelli futuri) carica() apre subito; 0 per aprirli tutti
+     */
+    public LogManager(Path fileDati, Persistenza persistenza, Caricamento caricamento, int mesiRecenti) {
+        this(fileDati, persistenza, caricamento, mesiRecenti, 0, 0);
+    }
+
+    /**
+     * Limite di memoria per gli interventi residenti (solo con il caricamento pigro, che li
+     * lascia nel file mappato finché non servono): superato il limite, i meno usati di recente
+     * vengono scaricati e ridecodificati alla lettura successiva. Gli interventi modificati
+     * restano residenti fino al salvataggio che li scrive nello snapshot o nel segmento.
+     *
+     * @param maxResidenti     numero massimo di interventi residenti, 0 = nessun limite
+     * @param maxByteResidenti stima massima in byte della loro occupazione in heap, 0 = nessun limite
+     */
+    public LogManager(Path fileDati, Persistenza persistenza, Caricamento caricamento, int mesiRecenti,
+                      long maxResidenti, long maxByteResidenti) {
+        if (mesiRecenti < 0) {
+            throw new IllegalArgumentException("mesiRecenti non può essere negativo: " + mesiRecenti);
+        }
+        if (maxResidenti < 0 || maxByteResidenti < 0) {
+            throw new IllegalArgumentException("i limiti di memoria non possono essere negativi");
+        }
+        boolean limitato = maxResidenti > 0 || maxByteResidenti > 0;
+        if (limitato && caricamento != Caricamento.PIGRO) {
+            throw new IllegalArgumentException("il limite di memoria richiede il caricamento pigro");
+        }
+        this.fileDati    = Objects.requireNonNull(fileDati, "fileDati non può essere null");
+        this.persistenza = Objects.requireNonNull(persistenza, "persistenza non può essere null");
+        this.caricamento = Objects.requireNonNull(caricamento, "caricamento non può essere null");
+        this.mesiRecenti = mesiRecenti;
+        this.fileTemp    = fileDati.resolveSibling(fileDati.getFileName() + ".tmp");
+        this.journal     = new Journal(fileDati.resolveSibling(fileDati.getFileName() + ".journal"));
+        this.segmenti    = new Segmenti(fileDati);
+        this.generatoreId = new GeneratoreId(fileDati.resolveSibling(fileDati.getFileName() + ".id"));
+        this.cache       = limitato ? new CacheResidenti<>(maxResidenti, maxByteResidenti) : null;
+        this.metriche    = new Metriche(perId::size, cache);
     }
 
     // --- Operazioni CRUD ---
 
+    /**
+     * Aggiunge l'intervento. Gli ID duplicati vengono rifiutati in O(1) grazie all'indice:
+     * due interventi con lo stesso ID renderebbero ambigue ricerca ed eliminazione.
+     */
     public void aggiungi(Intervento i) {
-        interventi.add(i);
+        Objects.requireNonNull(i, "intervento non può essere null");
+        long inizio = Metriche.inizio();
+        assicuraStorico(); // l'ID deve essere unico anche rispetto ai mesi non ancora aperti
+        scrittura.lock();
+        try {
+            if (!inserisciNuovo(i)) {
+                throw new IllegalArgumentException("ID già presente nel log: " + i.getId());
+            }
+        } finally {
+            scrittura.unlock();
+            metriche.registra(Metriche.Operazione.AGGIUNGI, inizio);
+        }
         System.out.println("  [OK] Intervento [" + i.getId() + "] aggiunto.");
     }
 
+    /**
+     * Inserimento in blocco, pensato per l'import: un solo giro di lock per tutto il blocco
+     * e nessun messaggio per singolo intervento. Gli ID duplicati non interrompono il blocco.
+     *
+     * @return gli interventi rifiutati perché il loro ID era già presente
+     *         (nel log o prima, nello stesso blocco), nell'ordine del blocco
+     */
+    public List<Intervento> aggiungiTutti(Collection<? extends Intervento> blocco) {
+        List<Intervento> rifiutati = new ArrayList<>();
+        long inizio = Metriche.inizio();
+        assicuraStorico();
+        scrittura.lock();
+        try {
+            for (Intervento i : blocco) {
+                Objects.requireNonNull(i, "intervento non può essere null");
+                if (!inserisciNuovo(i)) {
+                    rifiutati.add(i);
+                }
+            }
+        } finally {
+            scrittura.unlock();
+            metriche.registra(Metriche.Operazione.AGGIUNGI_TUTTI, inizio);
+        }
+        return rifiutati;
+    }
+
+    /**
+     * Un ID per un intervento nuovo: dalla sequenza di GeneratoreId, saltando quelli già nel
+     * log (importati, scelti a mano, o dati prima di un crash che ha perso il file della
+     * sequenza). Senza lock e senza toccare il log: da più thread si ottengono sempre ID
+     * diversi. Resta possibile, anche se raro, che un ID scelto a mano uguale arrivi tra
+     * questa chiamata e l'inserimento: aggiungi() lo rifiuta come sempre.
+     */
+    public String nuovoId() {
+        assicuraStorico(); // l'ID deve essere libero anche nei mesi non ancora aperti
+        return idLibero();
+    }
+
+    private String idLibero() {
+        String id;
+        do {
+            id = generatoreId.prossimo();
+        } while (perId.containsKey(id)); // già in maiuscolo, come le chiavi
+        return id;
+    }
+
+    /**
+     * Cambia le regole delle tariffe di questo log (vedi Tariffe) e ricalcola i totali che ne
+     * dipendono. Sotto il lock di scrittura, così nessuna modifica toglie dai totali un
+     * intervento con una tariffa diversa da quella con cui era stato sommato.
+     */
+    void setTariffe(Tariffe regole) {
+        Objects.requireNonNull(regole, "regole non può essere null");
+        scrittura.lock();
+        try {
+            tariffe = regole;
+            if (!indiciPronti) {
+                return; // i totali verranno costruiti con le regole nuove
+            }
+            indiciPronti = false; // le letture aspettano il lock in assicuraIndici()
+            aggregati.svuota();
+            colonne.svuota();
+            for (Voce v : ordine.values()) {
+                Intervento i = leggi(v);
+                aggregati.aggiungi(i);
+                v.colonna = colonne.aggiungi(i);
+            }
+            indiciPronti = true;
+        } finally {
+            scrittura.unlock();
+        }
+    }
+
+    /** Sotto il lock di scrittura. false se l'ID è già presente (nulla viene modificato). */
+    private boolean inserisciNuovo(Intervento i) {
+        String chiave = normalizza(i.getId());
+        Voce v = new Voce(prossimoProgressivo++, chiave, i);
+        if (!inserisci(v)) {
+            return false;
+        }
+        i.setOsservatore(osservatore);
+        if (indiciPronti) {
+            indici.aggiungi(chiave, v.progressivo, i);
+            testo.aggiungi(chiave, v.progressivo, i);
+            aggregati.aggiungi(i);
+            v.colonna = colonne.aggiungi(i);
+        }
+        registraModifica(chiave, i);
+        return true;
+    }
+
     /**
      * Cerca per ID e lancia l'eccezione custom se non esiste.
-     * Stream API per trovare il primo match: più espressivo di un for-loop classico.
+     * Lookup sull'indice hash: O(1) indipendentemente dalla dimensione del log.
+     * Con il caricamento pigro l'intervento viene decodificato qui, alla prima ricerca,
+     * e da quel momento resta in heap.
      */
     public Intervento cercaPerId(String id) throws InterventoNonTrovatoException {
-        // Fail-fast su null: equalsIgnoreCase(null) lancerebbe NPE silenzioso
-        // dentro lo stream, rendendo il punto di errore difficile da tracciare.
+        // Fail-fast su null: senza questo controllo l'NPE arriverebbe da normalizza(),
+        // rendendo il punto di errore meno chiaro.
         Objects.requireNonNull(id, "id di ricerca non può essere null");
-        return interventi.stream()
-                .filter(i -> i.getId().equalsIgnoreCase(id))
-                .findFirst()
-                .orElseThrow(() -> new InterventoNonTrovatoException(id));
+        long inizio = Metriche.inizio();
+        try {
+            Voce trovata = perId.get(normalizza(id));
+            if (trovata == null && !storicoCompleto) {
+                // Forse è in un mese vecchio non ancora aperto.
+                assicuraStorico();
+                trovata = perId.get(normalizza(id));
+            }
+            if (trovata == null) {
+                throw new InterventoNonTrovatoException(id);
+            }
+            return materializza(trovata);
+        } finally {
+            metriche.registra(Metriche.Operazione.CERCA_PER_ID, inizio);
+        }
     }
 
     public void elimina(String id) throws InterventoNonTrovatoException {
-        // cercaPerId lancia l'eccezione se non trovato, quindi remove() è safe.
-        // FIX: ora che Intervento.equals() è basato su ID, remove(Object) funziona
-        // anche su oggetti ricaricati da file (reference diversa, stesso ID).
-        Intervento trovato = cercaPerId(id);
-        interventi.remove(trovato);
+        Objects.requireNonNull(id, "id da eliminare non può essere null");
+        long inizio = Metriche.inizio();
+        scrittura.lock();
+        try {
+            if (!rimuoviSottoLock(id)) {
+                throw new InterventoNonTrovatoException(id);
+            }
+        } finally {
+            scrittura.unlock();
+            metriche.registra(Metriche.Operazione.ELIMINA, inizio);
+        }
         System.out.println("  [OK] Intervento [" + id + "] rimosso.");
     }
 
     /**
-     * FIX BUG #4: ritorna una vista non modificabile della lista interna.
+     * Eliminazione in blocco, simmetrica ad aggiungiTutti(): un solo giro di lock e
+     * nessun messaggio per singolo intervento. Gli ID inesistenti non interrompono il blocco.
+     *
+     * @return gli ID non trovati, nell'ordine ricevuto
+     */
+    public List<String> eliminaTutti(Collection<String> ids) {
+        List<String> nonTrovati = new ArrayList<>();
+        long inizio = Metriche.inizio();
+        scrittura.lock();
+        try {
+            for (String id : ids) {
+                Objects.requireNonNull(id, "id da eliminare non può essere null");
+                if (!rimuoviSottoLock(id)) {
+                    nonTrovati.add(id);
+                }
+            }
+        } finally {
+            scrittura.unlock();
+            metriche.registra(Metriche.Operazione.ELIMINA_TUTTI, inizio);
+        }
+        return nonTrovati;
+    }
+
+    /**
+     * Più modifiche allo stesso intervento come un'unica operazione rispetto agli altri
+     * scrittori (es. le richieste concorrenti di ServerHttp): i setter chiamati da
+     * {@code modifiche} passano come sempre da applicaModifica (il lock è rientrante), ma
+     * nessun'altra modifica e nessuna fotografia per il salvataggio si inserisce a metà.
+     * Le letture, senza lock, possono comunque vedere i campi cambiare uno alla volta.
+     * Se {@code modifiche} lancia un'eccezione, i setter già eseguiti restano applicati:
+     * i valori vanno validati prima.
+     *
+     * @return l'intervento modificato
+     */
+    public Intervento modifica(String id, Consumer<? super Intervento> modifiche)
+            throws InterventoNonTrovatoException {
+        Objects.requireNonNull(modifiche, "modifiche non può essere null");
+        scrittura.lock();
+        try {
+            Intervento i = cercaPerId(id);
+            modifiche.accept(i);
+            return i;
+        } finally {
+            scrittura.unlock();
+        }
+    }
+
+    /** Sotto il lock di scrittura. false se l'ID non esiste. */
+    private boolean rimuoviSottoLock(String id) {
+        // Un solo accesso all'indice: remove() ci dice anche se l'ID esisteva.
+        String chiave = normalizza(id);
+        Voce rimossa = perId.remove(chiave);
+        if (rimossa == null && !storicoCompleto) {
+            assicuraStorico(); // il lock è rientrante
+            rimossa = perId.remove(chiave);
+        }
+        if (rimossa == null) {
+            return false;
+        }
+        ordine.remove(rimossa.progressivo);
+        if (cache != null) {
+            cache.rimuovi(rimossa);
+        }
+        segnaMese(meseDi(rimossa));
+        if (indiciPronti) {
+            Intervento i = leggi(rimossa);
+            indici.rimuovi(rimossa.progressivo, i);
+            testo.rimuovi(rimossa.progressivo, i);
+            aggregati.rimuovi(i);
+            colonne.rimuovi(rimossa.colonna);
+        }
+        sgancia(rimossa);
+        registraModifica(chiave, null);
+        return true;
+    }
+
+    /**
+     * FIX BUG #4: ritorna una vista non modificabile degli interventi.
      * Il chiamante può iterare e leggere, ma non può fare add/remove direttamente,
      * preservando l'incapsulamento di LogManager.
+     *
+     * Con il caricamento pigro gli interventi non residenti vengono decodificati durante
+     * l'iterazione ma non trattenuti: scorrere tutto lo storico non riempie l'heap.
+     * Se il chiamante modifica una di queste copie, diventa lei la versione residente.
+     *
+     * L'iterazione non prende lock e non lancia ConcurrentModificationException: riflette
+     * le modifiche fatte nel frattempo da altri thread oppure no, come le collection concorrenti.
+     * In modalità SEGMENTI apre prima gli eventuali mesi vecchi non ancora caricati.
+     */
+    public Collection<Intervento> getTutti() {
+        assicuraStorico();
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Intervento> iterator() {
+                Iterator<Voce> voci = ordine.values().iterator();
+                return new Iterator<>() {
+                    @Override public boolean hasNext()   { return voci.hasNext(); }
+                    @Override public Intervento next()   { return leggi(voci.next()); }
+                };
+            }
+
+            @Override
+            public int size() {
+                return perId.size();
+            }
+        };
+    }
+
+    // --- Ricerche sugli indici secondari ---
+
+    /** Interventi del cliente (case-insensitive), in ordine di data. */
+    public List<Intervento> cercaPerCliente(String cliente) {
+        return cercaPerCliente(cliente, null, null);
+    }
+
+    /**
+     * Interventi del cliente nel periodo, in ordine di data. Estremi inclusi;
+     * null = nessun limite da quel lato.
+     */
+    public List<Intervento> cercaPerCliente(String cliente, LocalDate da, LocalDate a) {
+        Objects.requireNonNull(cliente, "cliente non può essere null");
+        long inizio = Metriche.inizio();
+        try {
+            assicuraIndici();
+            return risolvi(indici.perCliente(cliente, da, a));
+        } finally {
+            metriche.registra(Metriche.Operazione.CERCA_PER_CLIENTE, inizio);
+        }
+    }
+
+    /** Interventi nel periodo, in ordine di data. Estremi inclusi; null = nessun limite. */
+    public List<Intervento> cercaPerPeriodo(LocalDate da, LocalDate a) {
+        long inizio = Metriche.inizio();
+        try {
+            assicuraIndici();
+            return risolvi(indici.perPeriodo(da, a));
+        } finally {
+            metriche.registra(Metriche.Operazione.CERCA_PER_PERIODO, inizio);
+        }
+    }
+
+    /**
+     * Ricerca nel testo (descrizione, ricambio, sistema operativo): interventi che
+     * contengono tutte le parole della ricerca, in ordine di inserimento. Maiuscole e
+     * accenti non contano; "parola*" cerca per prefisso. Vedi IndiceTesto.
+     */
+    public List<Intervento> cercaTesto(String ricerca) {
+        Objects.requireNonNull(ricerca, "ricerca non può essere null");
+        long inizio = Metriche.inizio();
+        try {
+            assicuraIndici();
+            return risolvi(testo.cerca(ricerca));
+        } finally {
+            metriche.registra(Metriche.Operazione.CERCA_TESTO, inizio);
+        }
+    }
+
+    // --- Riepiloghi di fatturazione (aggiornati a ogni modifica, nessun ricalcolo) ---
+
+    /** Numero di interventi e totale fatturabile di tutto il log. */
+    public Aggregati.Totale getTotale() {
+        assicuraIndici();
+        return aggregati.complessivo();
+    }
+
+    /** Totali per tipo di intervento ("HW", "SW"). */
+    public Map<String, Aggregati.Totale> getTotaliPerTipo() {
+        assicuraIndici();
+        return aggregati.perTipo();
+    }
+
+    /** Totali per cliente; la chiave è il nome normalizzato (minuscolo, senza spazi ai lati). */
+    public Map<String, Aggregati.Totale> getTotaliPerCliente() {
+        assicuraIndici();
+        return aggregati.perCliente();
+    }
+
+    /** Totali per mese, in ordine cronologico. */
+    public NavigableMap<YearMonth, Aggregati.Totale> getTotaliPerMese() {
+        assicuraIndici();
+        return aggregati.perMese();
+    }
+
+    /**
+     * Totali degli interventi nel periodo (estremi inclusi, null = nessun limite) per tipo,
+     * mese, cliente e sistema operativo: una scansione delle colonne di primitivi, senza
+     * toccare gli interventi. Per i gruppi fissi (tutto il log, mesi interi) bastano i getTotali.
+     */
+    public Colonne.Riepilogo getRiepilogo(LocalDate da, LocalDate a) {
+        return getRiepilogo(null, da, a);
+    }
+
+    /** Come sopra, solo per il cliente indicato (case-insensitive); null = tutti i clienti. */
+    public Colonne.Riepilogo getRiepilogo(String cliente, LocalDate da, LocalDate a) {
+        long inizio = Metriche.inizio();
+        try {
+            assicuraIndici();
+            return colonne.riepiloga(da, a, cliente);
+        } finally {
+            metriche.registra(Metriche.Operazione.RIEPILOGO, inizio);
+        }
+    }
+
+    private List<Intervento> risolvi(List<String> chiavi) {
+        List<Intervento> risultato = new ArrayList<>(chiavi.size());
+        for (String chiave : chiavi) {
+            Voce v = perId.get(chiave);
+            if (v != null) { // eliminato da un altro thread dopo la ricerca sull'indice
+                risultato.add(leggi(v));
+            }
+        }
+        return risultato;
+    }
+
+    /**
+     * Costruzione differita di indici secondari e totali: una sola passata su tutte le voci.
+     * Sotto il lock di scrittura, perché nel frattempo nessuna modifica deve sfuggire agli indici.
+     */
+    private void assicuraIndici() {
+        assicuraStorico(); // ricerche e totali riguardano tutto il log
+        if (indiciPronti) {
+            return;
+        }
+        scrittura.lock();
+        try {
+            if (indiciPronti) {
+                return; // costruiti da un altro thread mentre aspettavamo il lock
+            }
+            indici.svuota();
+            testo.svuota();
+            aggregati.svuota();
+            colonne.svuota();
+            for (Voce v : ordine.values()) {
+                Intervento i = leggi(v);
+                indici.aggiungi(v.chiave, v.progressivo, i);
+                testo.aggiungi(v.chiave, v.progressivo, i);
+                aggregati.aggiungi(i);
+                v.colonna = colonne.aggiungi(i);
+            }
+            indiciPronti = true;
+        } finally {
+            scrittura.unlock();
+        }
+    }
+
+    // --- Voci residenti e non ---
+
+    /**
+     * L'intervento della voce, decodificato e reso residente se non lo era già.
+     * Con il limite di memoria entra nella cache come usato più di recente.
+     */
+    private Intervento materializza(Voce v) {
+        Intervento i = v.intervento;
+        if (i == null) {
+            i = v.adotta(leggi(v));
+            if (cache != null && v.scaricabile()) {
+                cache.aggiungi(v, pesoInHeap(i));
+                limitaResidenti();
+            }
+        } else if (cache != null) {
+            metriche.cacheHit();
+            cache.usa(v);
+        }
+        return i;
+    }
+
+    /**
+     * L'intervento della voce senza renderlo residente (copia decodificata dal file mappato).
+     * Non cambia l'ordine della cache: scorrere tutto il log non scarica gli interventi
+     * cercati di recente.
+     */
+    private Intervento leggi(Voce v) {
+        Intervento i = v.intervento;
+        if (i != null) {
+            if (cache != null) {
+                metriche.cacheHit();
+            }
+            return i;
+        }
+        if (cache != null) {
+            metriche.cacheMiss();
+        }
+        try {
+            i = SnapshotBinario.leggiA(v.mappa, v.posizione);
+        } catch (IOException e) {
+            // L'indice è stato validato in carica(): qui arriviamo solo se il file è stato alterato.
+            throw new UncheckedIOException("snapshot mappato non leggibile", e);
+        }
+        i.setOsservatore(osservatore);
+        return i;
+    }
+
+    /**
+     * Scarica gli interventi meno usati di recente finché la cache rientra nel limite. Sotto
+     * il lock di scrittura, perché nessuna modifica possa arrivare tra il controllo e lo
+     * scarico; dalle letture solo se il lock è libero, altrimenti ci pensa la prossima.
+     */
+    private void limitaResidenti() {
+        if (!cache.oltreIlLimite() || !scrittura.tryLock()) {
+            return;
+        }
+        try {
+            for (Voce v : cache.eccedenti()) {
+                // Una lettura può averla messa in cache subito dopo una modifica, o dopo che
+                // rimappa l'ha sostituita: la si toglie dalla cache, ma l'intervento resta.
+                if (v.scaricabile() && ordine.get(v.progressivo) == v) {
+                    v.intervento = null; // chi lo ha già in mano lo può ancora modificare (adotta)
+                    metriche.cacheEspulsione();
+                }
+            }
+        } finally {
+            scrittura.unlock();
+        }
+    }
+
+    /**
+     * Stima dei byte in heap che un intervento residente occupa da solo, con le stesse regole
+     * di DiagnosticaStringhe: oggetto, data, ID e descrizione, più la voce della cache.
+     * Cliente e sistema operativo sono condivisi (Dizionario) e non contano; il ricambio è
+     * testo libero e conta come la descrizione.
+     */
+    private static long pesoInHeap(Intervento i) {
+        return 48   // l'intervento: header, sei riferimenti e la tariffa in cache
+                + 24   // LocalDate
+                + 56   // voce della LinkedHashMap della cache e il Long del peso
+                + DiagnosticaStringhe.byteInHeap(i.getId())
+                + DiagnosticaStringhe.byteInHeap(i.getDescrizione())
+                + (i instanceof InterventoHardware
+                        ? DiagnosticaStringhe.byteInHeap(((InterventoHardware) i).getPezzoRicambio()) : 0);
+    }
+
+    private static void sgancia(Voce v) {
+        Intervento i = v.intervento;
+        if (i != null) {
+            i.setOsservatore(null);
+        }
+    }
+
+    /** Sotto il lock di scrittura. false se l'ID è già presente. */
+    private boolean inserisci(Voce v) {
+        if (perId.putIfAbsent(v.chiave, v) != null) {
+            return false;
+        }
+        ordine.put(v.progressivo, v);
+        return true;
+    }
+
+    /** Sotto il lock di scrittura: mette {@code nuova} al posto della voce con lo stesso progressivo. */
+    private void sostituisci(Voce nuova) {
+        perId.put(nuova.chiave, nuova);
+        ordine.put(nuova.progressivo, nuova);
+    }
+
+    /**
+     * Chiave dell'indice: gli ID sono case-insensitive (vedi Intervento.equals),
+     * quindi normalizziamo in maiuscolo. Locale.ROOT per non dipendere dalla lingua
+     * del sistema (es. la "i" turca).
+     */
+    private static String normalizza(String id) {
+        return id.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Invocato dai setter di Intervento. Per l'ID l'indice va riallineato alla nuova
+     * chiave, e un ID già usato da un altro intervento viene rifiutato prima di toccare
+     * il campo. Ogni modifica viene poi segnata per il prossimo salvataggio nel journal.
+     * L'assegnazione avviene sotto il lock di scrittura, insieme all'aggiornamento degli indici.
+     */
+    private void applicaModifica(Intervento i, Intervento.Campo campo,
+                                 Object nuovoValore, Runnable assegnazione) {
+        long inizio = Metriche.inizio();
+        scrittura.lock();
+        try {
+            applicaModificaSottoLock(i, campo, nuovoValore, assegnazione);
+        } finally {
+            scrittura.unlock();
+            metriche.registra(Metriche.Operazione.MODIFICA, inizio);
+        }
+    }
+
+    private void applicaModificaSottoLock(Intervento i, Intervento.Campo campo,
+                                          Object nuovoValore, Runnable assegnazione) {
+        String vecchiaChiave = normalizza(i.getId());
+        Voce voce = perId.get(vecchiaChiave);
+        if (voce == null) {
+            // Copia non residente di un intervento poi eliminato: non è più nel log.
+            assegnazione.run();
+            return;
+        }
+        // Copia ottenuta iterando getTutti(): se la voce non è residente diventa lei la residente.
+        if (voce.adotta(i) != i) {
+            throw new IllegalStateException("copia non aggiornata dell'intervento " + i.getId()
+                    + ": rileggerlo con cercaPerId prima di modificarlo");
+        }
+        // Da qui l'intervento è diverso dal record su disco: non si può più scaricare.
+        voce.ultimaModifica = ++contatoreModifiche;
+        if (cache != null) {
+            cache.rimuovi(voce);
+        }
+        if (campo != Intervento.Campo.ID) {
+            // Indici e totali vanno tolti con i valori vecchi e rimessi con i nuovi.
+            // I totali dipendono anche dai campi che determinano la tariffa, quindi li
+            // riallineiamo per ogni campo tranne la descrizione.
+            boolean indicizzato = indiciPronti
+                    && (campo == Intervento.Campo.CLIENTE || campo == Intervento.Campo.DATA);
+            boolean testuale = indiciPronti && (campo == Intervento.Campo.DESCRIZIONE
+                    || campo == Intervento.Campo.PEZZO_RICAMBIO || campo == Intervento.Campo.SISTEMA_OPERATIVO);
+            boolean aggregato = indiciPronti && campo != Intervento.Campo.DESCRIZIONE;
+            if (indicizzato) {
+                indici.rimuovi(voce.progressivo, i);
+            }
+            if (testuale) {
+                testo.rimuovi(voce.progressivo, i);
+            }
+            if (aggregato) {
+                aggregati.rimuovi(i);
+            }
+            if (campo == Intervento.Campo.DATA) {
+                segnaMese(YearMonth.from(i.getData())); // il mese che l'intervento lascia
+            }
+            assegnazione.run();
+            if (indicizzato) {
+                indici.aggiungi(vecchiaChiave, voce.progressivo, i);
+            }
+            if (testuale) {
+                testo.aggiungi(vecchiaChiave, voce.progressivo, i);
+            }
+            if (aggregato) {
+                aggregati.aggiungi(i);
+                colonne.aggiorna(voce.colonna, i);
+            }
+            registraModifica(vecchiaChiave, i);
+            return;
+        }
+        String nuovaChiave = normalizza((String) nuovoValore);
+        if (vecchiaChiave.equals(nuovaChiave)) {
+            assegnazione.run(); // cambia solo il maiuscolo/minuscolo: indice invariato
+            registraModifica(nuovaChiave, i);
+            return;
+        }
+        assicuraStorico();
+        if (perId.containsKey(nuovaChiave)) {
+            throw new IllegalArgumentException("ID già presente nel log: " + nuovoValore);
+        }
+        if (indiciPronti) {
+            indici.rimuovi(voce.progressivo, i);
+            testo.rimuovi(voce.progressivo, i);
+        }
+        assegnazione.run();
+        // La voce mantiene il suo progressivo, quindi il suo posto nell'ordine (dopo un
+        // riavvio con replay del journal il rinominato finisce però in fondo, come un nuovo ID).
+        perId.remove(vecchiaChiave);
+        voce.chiave = nuovaChiave;
+        perId.put(nuovaChiave, voce);
+        if (indiciPronti) {
+            indici.aggiungi(nuovaChiave, voce.progressivo, i);
+            testo.aggiungi(nuovaChiave, voce.progressivo, i);
+        }
+        // Per il journal un cambio di ID è un'eliminazione più un inserimento.
+        registraModifica(vecchiaChiave, null);
+        registraModifica(nuovaChiave, i);
+    }
+
+    /**
+     * In modalità SNAPSHOT non serve tenere traccia delle singole modifiche, in modalità
+     * SEGMENTI basta il mese. Sotto il lock di scrittura.
+     */
+    private void registraModifica(String chiave, Intervento statoAttuale) {
+        modificato = true;
+        if (persistenza == Persistenza.JOURNAL) {
+            modifichePendenti.put(chiave, statoAttuale);
+        } else if (statoAttuale != null) {
+            segnaMese(YearMonth.from(statoAttuale.getData()));
+        }
+        avvisaModifica();
+    }
+
+    /** Sotto il lock di scrittura: il segmento del mese va riscritto al prossimo salva(). */
+    private void segnaMese(YearMonth mese) {
+        if (persistenza == Persistenza.SEGMENTI) {
+            mesiModificati.add(mese);
+        }
+    }
+
+    /**
+     * Il mese (quindi il segmento) a cui appartiene la voce. Una voce non residente non può
+     * aver cambiato data (un setter la renderebbe residente): è quello del suo segmento.
      */
-    public List<Intervento> getTutti() {
-        return Collections.unmodifiableList(interventi);
+    private static YearMonth meseDi(Voce v) {
+        Intervento i = v.intervento;
+        return i != null ? YearMonth.from(i.getData()) : v.mese;
+    }
+
+    private void avvisaModifica() {
+        Runnable avviso = allaModifica;
+        if (avviso != null) {
+            avviso.run();
+        }
+    }
+
+    /** Da chiamare dopo ogni modifica in memoria (null per smettere); vedi SalvataggioAutomatico. */
+    void setAllaModifica(Runnable avviso) {
+        allaModifica = avviso;
     }
 
     // --- Persistenza ---
 
     /**
-     * FIX BUG #3 + FIX BUG #5:
-     * - Rimosso @SuppressWarnings("unchecked") errato: questa metodo non fa cast generici.
-     * - Scrittura atomica: usiamo un file .tmp, lo scriviamo completamente,
-     *   poi lo rinominiamo sul target con ATOMIC_MOVE + REPLACE_EXISTING.
-     *   Se la JVM crasha a metà scrittura, il file .dat originale è sopravvissuto.
+     * In modalità JOURNAL accoda solo le modifiche dall'ultimo salvataggio, compattando
+     * in uno snapshot quando il journal è diventato troppo grande. In modalità SNAPSHOT
+     * riscrive l'intero log, in modalità SEGMENTI solo i mesi modificati. In tutte, se
+     * dall'ultimo salvataggio non è cambiato nulla non scrive niente.
+     *
+     * Un errore viene segnalato su stderr ("[ERRORE] ..."), le modifiche restano da salvare
+     * e il prossimo salva() ci riprova.
+     *
+     * @return false se le modifiche non sono arrivate su disco
+     */
+    public boolean salva() {
+        return salva(true);
+    }
+
+    /**
+     * Come salva(), ma senza i messaggi "[OK]": per il salvataggio in background, che non
+     * deve scrivere in mezzo al menu. Gli errori vengono comunque segnalati su stderr.
+     */
+    boolean salvaInSilenzio() {
+        return salva(false);
+    }
+
+    private boolean salva(boolean annuncia) {
+        long inizio = Metriche.inizio();
+        salvataggio.lock();
+        try {
+            boolean salvato;
+            if (persistenza == Persistenza.SEGMENTI) {
+                salvato = salvaSegmenti(annuncia);
+            } else if (persistenza == Persistenza.JOURNAL && !serveCompattazione()) {
+                salvato = salvaNelJournal(annuncia);
+            } else {
+                salvato = salvaSnapshot(annuncia);
+            }
+            salvaSequenzaId();
+            return salvato;
+        } finally {
+            salvataggio.unlock();
+            metriche.registra(Metriche.Operazione.SALVA, inizio);
+        }
+    }
+
+    /**
+     * Dopo i dati: ogni ID appena salvato viene da un valore della sequenza minore di quello
+     * scritto qui. Un errore non tocca i dati, già al sicuro: al riavvio la sequenza riparte
+     * più indietro e nuovoId() salta gli ID già usati.
+     */
+    private void salvaSequenzaId() {
+        try {
+            generatoreId.salva();
+        } catch (IOException e) {
+            System.err.println("  [ATTENZIONE] Impossibile salvare la sequenza degli ID in '"
+                    + generatoreId.getFile() + "': " + e.getMessage());
+        }
+    }
+
+    private boolean serveCompattazione() {
+        if (serveSnapshotCompleto) {
+            return true;
+        }
+        try {
+            return journal.dimensione() > sogliaCompattazione();
+        } catch (IOException e) {
+            return true; // nel dubbio uno snapshot completo è sempre corretto
+        }
+    }
+
+    /**
+     * Con il limite di memoria gli interventi scritti nel journal restano residenti fino alla
+     * compattazione (il journal non è mappato): si compatta già alla soglia minima.
      */
-    public void salva() {
-        Path tempPath   = Paths.get(FILE_PATH_TEMP);
-        Path targetPath = Paths.get(FILE_PATH);
+    private long sogliaCompattazione() {
+        return cache != null
+                ? SOGLIA_COMPATTAZIONE_BYTES
+                : Math.max(SOGLIA_COMPATTAZIONE_BYTES, dimensioneSnapshot / 2);
+    }
+
+    private boolean salvaNelJournal(boolean annuncia) {
+        Map<String, Intervento> catturate;
+        ByteBuffer record;
+        int totale;
+        scrittura.lock();
+        try {
+            // Codifica sotto lock: il record fotografa lo stato di adesso anche se subito
+            // dopo qualcuno modifica gli stessi interventi. Costa O(modifiche), non O(log).
+            try {
+                record = Journal.codifica(modifichePendenti);
+            } catch (ArithmeticException e) {
+                // Le modifiche restano pendenti, come per un errore di scrittura.
+                metriche.salvataggioFallito();
+                System.err.println("  [ERRORE] Scrittura del journal fallita: " + e.getMessage());
+                return false;
+            }
+            catturate = modifichePendenti;
+            modifichePendenti = new LinkedHashMap<>();
+            modificato = false;
+            totale = perId.size();
+        } finally {
+            scrittura.unlock();
+        }
+        if (catturate.isEmpty()) {
+            if (annuncia) {
+                System.out.println("  [OK] Nessuna modifica da salvare.");
+            }
+            return true;
+        }
+        int dimensioneRecord = record.remaining();
+        try {
+            journal.appendi(record);
+        } catch (IOException e) {
+            // Le modifiche restano pendenti: il prossimo salva() ci riprova.
+            ripristinaPendenti(catturate);
+            metriche.salvataggioFallito();
+            System.err.println("  [ERRORE] Scrittura del journal fallita: " + e.getMessage());
+            return false;
+        }
+        metriche.scritti(dimensioneRecord);
+        if (annuncia) {
+            System.out.println("  [OK] " + catturate.size() + " modifiche accodate in '"
+                    + journal.getFile() + "' (" + totale + " interventi).");
+        }
+        return true;
+    }
+
+    /** Salvataggio fallito: le modifiche catturate tornano pendenti. */
+    private void ripristinaPendenti(Map<String, Intervento> catturate) {
+        scrittura.lock();
+        try {
+            // Quelle arrivate nel frattempo sono più recenti e vincono sulle catturate.
+            catturate.putAll(modifichePendenti);
+            modifichePendenti = catturate;
+            modificato = true;
+            avvisaModifica(); // per il salvataggio automatico è come una modifica nuova: riprova
+        } finally {
+            scrittura.unlock();
+        }
+    }
+
+    /**
+     * FIX BUG #5 - Scrittura atomica: usiamo un file .tmp, lo scriviamo completamente,
+     * poi lo rinominiamo sul target con ATOMIC_MOVE + REPLACE_EXISTING.
+     * Se la JVM crasha a metà scrittura, il file .dat originale è sopravvissuto.
+     *
+     * Sotto il lock di scrittura si prende solo la fotografia: l'elenco delle voci in ordine
+     * e una copia dei campi di quelle residenti. Codifica e I/O avvengono dopo, mentre
+     * gli altri thread continuano a leggere e modificare.
+     */
+    private boolean salvaSnapshot(boolean annuncia) {
+        Voce[] voci;
+        Intervento[] copie;
+        long fotografia;
+        Map<String, Intervento> catturate;
+        scrittura.lock();
+        try {
+            // Niente da scrivere: il file su disco è già uguale alla memoria. Se il log di
+            // partenza era illeggibile, così non viene nemmeno sovrascritto con un log vuoto.
+            if (!modificato && !serveSnapshotCompleto) {
+                if (annuncia) {
+                    System.out.println("  [OK] Nessuna modifica da salvare.");
+                }
+                return true;
+            }
+            voci  = ordine.values().toArray(new Voce[0]);
+            copie = new Intervento[voci.length];
+            for (int k = 0; k < voci.length; k++) {
+                Intervento i = voci[k].intervento;
+                // Le voci non residenti non servono copie: i loro byte nel file mappato
+                // non cambiano (una modifica renderebbe la voce residente, e qui è bloccata).
+                copie[k] = i != null ? i.copia() : null;
+            }
+            fotografia = contatoreModifiche;
+            catturate = modifichePendenti;
+            modifichePendenti = new LinkedHashMap<>();
+            modificato = false;
+        } finally {
+            scrittura.unlock();
+        }
 
-        try (ObjectOutputStream oos = new ObjectOutputStream(
-                new BufferedOutputStream(new FileOutputStream(FILE_PATH_TEMP)))) {
-            oos.writeObject(interventi);
+        // Posizione di ogni voce nel nuovo file, per rimappare dopo il salvataggio.
+        int[] posizioni;
+        try {
+            posizioni = scriviSnapshot(fileTemp, voci, copie);
         } catch (IOException e) {
+            ripristinaPendenti(catturate);
+            metriche.salvataggioFallito();
             System.err.println("  [ERRORE] Scrittura fallita: " + e.getMessage());
-            return; // non rinominare se la scrittura non è andata a buon fine
+            return false; // non rinominare se la scrittura non è andata a buon fine
         }
 
         // Move atomico: su filesystem locali Linux/macOS è garantito atomico.
         // Su Windows potrebbe non essere atomico ma REPLACE_EXISTING è comunque safe.
         try {
-            Files.move(tempPath, targetPath,
+            Files.move(fileTemp, fileDati,
                     StandardCopyOption.REPLACE_EXISTING,
                     StandardCopyOption.ATOMIC_MOVE);
-            System.out.println("  [OK] Log salvato in '" + FILE_PATH + "' (" + interventi.size() + " interventi).");
+            if (annuncia) {
+                System.out.println("  [OK] Log salvato in '" + fileDati + "' (" + voci.length + " interventi).");
+            }
         } catch (IOException e) {
+            ripristinaPendenti(catturate);
+            metriche.salvataggioFallito();
             System.err.println("  [ERRORE] Impossibile finalizzare il salvataggio: " + e.getMessage());
+            return false;
+        }
+
+        rimappa(fileDati, null, voci, copie, posizioni, fotografia);
+
+        // Lo snapshot contiene ormai tutto ciò che era nel journal: si può azzerare.
+        // Le modifiche successive alla fotografia restano pendenti per il prossimo salva().
+        // Se crashiamo prima di cancellarlo, rileggerlo al prossimo avvio è innocuo
+        // (replay idempotente).
+        try {
+            dimensioneSnapshot = Files.size(fileDati);
+            metriche.scritti(dimensioneSnapshot);
+            journal.elimina();
+            serveSnapshotCompleto = false;
+        } catch (IOException e) {
+            System.err.println("  [ATTENZIONE] Impossibile azzerare il journal: " + e.getMessage());
+        }
+        if (daMigrare) {
+            // I dati venivano dai segmenti: ora sono tutti nel .dat.
+            daMigrare = false;
+            metteDaParte(segmenti.getCartella(), ".migrato");
         }
+        return true;
     }
 
     /**
-     * Caricamento all'avvio: se il file non esiste si parte puliti, nessun crash.
-     * Il cast unchecked è inevitabile con la serializzazione generica, ma è sicuro
-     * perché sappiamo cosa abbiamo scritto noi stessi.
+     * Scrive le voci (copie dei campi per le residenti, byte del file mappato per le altre)
+     * in {@code file}, che viene troncato e forzato su disco.
+     *
+     * @return la posizione di ogni voce nel file, per rimappare
+     */
+    private static int[] scriviSnapshot(Path file, Voce[] voci, Intervento[] copie) throws IOException {
+        // La tabella dei valori ripetuti va nell'header: prima si raccolgono i valori di
+        // tutto ciò che verrà codificato. Le voci mai decodificate si copiano byte per byte
+        // dal file mappato, quindi la tabella nuova estende la sua (stessi codici).
+        SnapshotBinario.Mappa base = mappaDiRiferimento(voci, copie);
+        CodecIntervento.Tabella tabella = base != null
+                ? base.estendiTabella()
+                : new CodecIntervento.Tabella(null);
+        Intervento[] daCodificare = copie.clone();
+        for (int k = 0; k < voci.length; k++) {
+            if (daCodificare[k] == null && voci[k].mappa != base) {
+                // Caso raro (mappatura precedente a un rimappa fallito, un file senza tabella,
+                // segmenti diversi): i codici non valgono nella tabella nuova, si ricodifica.
+                daCodificare[k] = SnapshotBinario.leggiA(voci[k].mappa, voci[k].posizione);
+            }
+            if (daCodificare[k] != null) {
+                tabella.aggiungi(daCodificare[k]);
+            }
+        }
+        int[] posizioni = new int[voci.length];
+        try (SnapshotBinario.Scrittore scrittore = new SnapshotBinario.Scrittore(file, voci.length, tabella)) {
+            for (int k = 0; k < voci.length; k++) {
+                posizioni[k] = daCodificare[k] != null
+                        ? scrittore.scrivi(daCodificare[k])
+                        : scrittore.copia(voci[k].mappa.dati, voci[k].posizione);
+            }
+        }
+        return posizioni;
+    }
+
+    /**
+     * Modalità SEGMENTI: riscrive solo i segmenti dei mesi modificati (tutti, la prima volta
+     * dopo una conversione), ognuno con lo stesso schema del .dat: temporaneo completo e
+     * forzato su disco, poi move atomico. Un mese rimasto vuoto perde il suo segmento.
+     *
+     * Come salvaSnapshot, sotto il lock di scrittura si prende solo la fotografia delle voci
+     * di quei mesi; codifica e I/O avvengono dopo. I mesi di un salvataggio si sostituiscono
+     * tutti insieme (vedi Segmenti): se uno non si riesce a scrivere nessuno cambia, e
+     * restano tutti da salvare.
+     */
+    private boolean salvaSegmenti(boolean annuncia) {
+        boolean completo;
+        long fotografia;
+        Set<YearMonth> mesi;
+        Map<YearMonth, List<Voce>> vociPerMese = new TreeMap<>();
+        Map<Voce, Intervento> copie = new HashMap<>();
+        scrittura.lock();
+        try {
+            if (!modificato && !serveSnapshotCompleto) {
+                if (annuncia) {
+                    System.out.println("  [OK] Nessuna modifica da salvare.");
+                }
+                return true;
+            }
+            completo = serveSnapshotCompleto;
+            if (completo || !Collections.disjoint(mesiModificati, mesiNonCaricati)) {
+                // Un segmento si riscrive per intero: deve essere già aperto (caso raro,
+                // es. un intervento recente spostato con setData in un mese vecchio).
+                assicuraStorico();
+            }
+            mesi = mesiModificati;
+            mesiModificati = new HashSet<>();
+            modificato = false;
+            fotografia = contatoreModifiche;
+            for (Voce v : ordine.values()) {
+                YearMonth mese = meseDi(v);
+                if (completo || mesi.contains(mese)) {
+                    vociPerMese.computeIfAbsent(mese, m -> new ArrayList<>()).add(v);
+                    Intervento i = v.intervento;
+                    if (i != null) {
+                        copie.put(v, i.copia());
+                    }
+                }
+            }
+        } finally {
+            scrittura.unlock();
+        }
+
+        Set<YearMonth> daScrivere = new TreeSet<>(mesi);
+        daScrivere.addAll(vociPerMese.keySet());
+        if (completo) {
+            try {
+                daScrivere.addAll(segmenti.mesi()); // quelli rimasti senza interventi vanno eliminati
+            } catch (IOException e) {
+                System.err.println("  [ATTENZIONE] Cartella dei segmenti non leggibile: " + e.getMessage());
+            }
+        }
+        // Prima tutti i temporanei: finché il piano non è annotato nessun segmento è cambiato,
+        // e un errore lascia su disco il salvataggio precedente intero.
+        List<YearMonth> daSostituire = new ArrayList<>();
+        List<YearMonth> daEliminare = new ArrayList<>();
+        Map<YearMonth, Voce[]> vociScritte = new HashMap<>();
+        Map<YearMonth, Intervento[]> copieScritte = new HashMap<>();
+        Map<YearMonth, int[]> posizioniScritte = new HashMap<>();
+        for (YearMonth mese : daScrivere) {
+            List<Voce> delMese = vociPerMese.get(mese);
+            if (delMese == null) {
+                daEliminare.add(mese);
+                continue;
+            }
+            Voce[] voci = delMese.toArray(new Voce[0]);
+            Intervento[] copieDelMese = new Intervento[voci.length];
+            for (int k = 0; k < voci.length; k++) {
+                copieDelMese[k] = copie.get(voci[k]);
+            }
+            try {
+                posizioniScritte.put(mese, scriviSnapshot(segmenti.temporaneo(mese), voci, copieDelMese));
+            } catch (IOException e) {
+                System.err.println("  [ERRORE] Salvataggio del segmento " + mese + " fallito: " + e.getMessage());
+                // Se era una conversione, serveSnapshotCompleto resta true e la si ripete tutta.
+                ripristinaMesi(daScrivere);
+                metriche.salvataggioFallito();
+                return false;
+            }
+            daSostituire.add(mese);
+            vociScritte.put(mese, voci);
+            copieScritte.put(mese, copieDelMese);
+        }
+        // Poi il piano, e solo dopo le sostituzioni: un crash da qui in avanti viene
+        // completato dal prossimo carica() (vedi Segmenti.completaSalvataggio).
+        try {
+            segmenti.annotaSalvataggio(daSostituire, daEliminare);
+            segmenti.completaSalvataggio();
+        } catch (IOException e) {
+            System.err.println("  [ERRORE] Salvataggio dei segmenti in '" + segmenti.getCartella()
+                    + "' fallito: " + e.getMessage());
+            // I segmenti possono essere già in parte sostituiti: il piano, se è stato annotato,
+            // resta su disco e il prossimo salvataggio li riscrive comunque tutti.
+            ripristinaMesi(daScrivere);
+            metriche.salvataggioFallito();
+            return false;
+        }
+        for (YearMonth mese : daSostituire) {
+            Path file = segmenti.file(mese);
+            try {
+                metriche.scritti(Files.size(file));
+            } catch (IOException e) {
+                // solo per le metriche
+            }
+            rimappa(file, mese, vociScritte.get(mese), copieScritte.get(mese), posizioniScritte.get(mese), fotografia);
+        }
+        int scritti = daSostituire.size();
+        int eliminati = daEliminare.size();
+
+        if (completo) {
+            serveSnapshotCompleto = false;
+        }
+        if (daMigrare) {
+            // I dati venivano dal .dat (ed eventualmente dal journal): ora sono nei segmenti.
+            daMigrare = false;
+            metteDaParte(fileDati, ".migrato");
+            try {
+                journal.elimina();
+            } catch (IOException e) {
+                System.err.println("  [ATTENZIONE] Impossibile eliminare il journal: " + e.getMessage());
+            }
+        }
+        if (annuncia) {
+            System.out.println("  [OK] Log salvato in '" + segmenti.getCartella() + "': " + scritti
+                    + " segmenti mensili riscritti" + (eliminati > 0 ? ", " + eliminati + " eliminati" : "")
+                    + " (" + perId.size() + " interventi).");
+        }
+        return true;
+    }
+
+    /** Salvataggio dei segmenti fallito: quei mesi tornano da salvare. */
+    private void ripristinaMesi(Set<YearMonth> falliti) {
+        scrittura.lock();
+        try {
+            mesiModificati.addAll(falliti);
+            modificato = true;
+            avvisaModifica(); // il salvataggio automatico riprova
+        } finally {
+            scrittura.unlock();
+        }
+    }
+
+    /**
+     * Rinomina un file (o la cartella dei segmenti) aggiungendo {@code suffisso}, senza
+     * cancellare nulla: dopo una conversione tra .dat e segmenti la vecchia disposizione
+     * verrebbe riletta al posto dei dati nuovi, un segmento illeggibile verrebbe sovrascritto
+     * al primo salvataggio di quel mese.
+     */
+    private static void metteDaParte(Path vecchio, String suffisso) {
+        if (!Files.exists(vecchio)) {
+            return;
+        }
+        Path destinazione = vecchio.resolveSibling(vecchio.getFileName() + suffisso);
+        if (Files.exists(destinazione)) {
+            destinazione = vecchio.resolveSibling(vecchio.getFileName() + suffisso + "-" + System.currentTimeMillis());
+        }
+        try {
+            Files.move(vecchio, destinazione, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("  [i] '" + vecchio + "' conservato come '" + destinazione + "'.");
+        } catch (IOException e) {
+            System.err.println("  [ATTENZIONE] Impossibile spostare '" + vecchio + "': " + e.getMessage()
+                    + ". Eliminarlo a mano: contiene dati non più aggiornati.");
+        }
+    }
+
+    /**
+     * Come metteDaParte, ma copia invece di spostare: il file serve ancora (è mappato, o
+     * verrà riscritto) e la copia conserva com'era prima che il salvataggio lo cambi.
+     */
+    private static void conservaCopia(Path file, String suffisso) {
+        Path destinazione = file.resolveSibling(file.getFileName() + suffisso);
+        if (Files.exists(destinazione)) {
+            destinazione = file.resolveSibling(file.getFileName() + suffisso + "-" + System.currentTimeMillis());
+        }
+        try {
+            Files.copy(file, destinazione);
+            System.out.println("  [i] Copia di '" + file + "' com'era conservata come '" + destinazione + "'.");
+        } catch (IOException e) {
+            System.err.println("  [ATTENZIONE] Impossibile copiare '" + file + "': " + e.getMessage());
+        }
+    }
+
+    /** La mappatura con tabella delle voci non residenti nella fotografia (di solito ce n'è una sola), o null. */
+    private static SnapshotBinario.Mappa mappaDiRiferimento(Voce[] voci, Intervento[] copie) {
+        for (int k = 0; k < voci.length; k++) {
+            if (copie[k] == null && voci[k].mappa.haTabella()) {
+                return voci[k].mappa;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Caricamento all'avvio: snapshot (se esiste) più le modifiche accodate nel journal.
+     * Se non esiste nessuno dei due si parte puliti, nessun crash.
      */
-    @SuppressWarnings("unchecked")
     public void carica() {
-        File file = new File(FILE_PATH);
-        if (!file.exists()) {
+        long inizio = Metriche.inizio();
+        salvataggio.lock();
+        scrittura.lock();
+        try {
+            caricaSottoLock();
+        } finally {
+            scrittura.unlock();
+            salvataggio.unlock();
+            metriche.registra(Metriche.Operazione.CARICA, inizio);
+        }
+    }
+
+    /** Lo snapshot su disco (il file potrebbe non esistere ancora). */
+    public Path getFileDati() {
+        return fileDati;
+    }
+
+    /** Latenze e contatori delle operazioni di questo manager (anche via JMX, vedi Main). */
+    public Metriche getMetriche() {
+        return metriche;
+    }
+
+    private void caricaSottoLock() {
+        if (segmenti.esiste()) {
+            try {
+                if (segmenti.completaSalvataggio()) {
+                    System.out.println("  [i] Completato il salvataggio dei segmenti interrotto dall'ultima chiusura.");
+                }
+            } catch (IOException e) {
+                // Si leggono i segmenti come sono: un intervento che compare in due mesi
+                // viene tenuto una volta sola (vedi caricaSegmento).
+                System.err.println("  [ATTENZIONE] Impossibile completare il salvataggio dei segmenti interrotto: "
+                        + e.getMessage());
+            }
+        }
+        boolean esisteSnapshot = Files.exists(fileDati);
+        boolean esisteJournal  = Files.exists(journal.getFile());
+        // La modalità SEGMENTI legge i segmenti se ci sono, le altre il .dat (e il journal):
+        // solo se manca la propria disposizione si converte dall'altra.
+        boolean daSegmenti = segmenti.esiste()
+                && (persistenza == Persistenza.SEGMENTI || (!esisteSnapshot && !esisteJournal));
+        mesiNonCaricati.clear();
+        storicoCompleto = true;
+        try {
+            generatoreId.carica();
+        } catch (IOException e) {
+            // Innocuo: la sequenza riparte dall'inizio e nuovoId() salta gli ID già nel log.
+            System.err.println("  [ATTENZIONE] Sequenza degli ID in '" + generatoreId.getFile()
+                    + "' illeggibile (" + e.getMessage() + "): riparte dall'inizio.");
+        }
+        if (!daSegmenti && !esisteSnapshot && !esisteJournal) {
             System.out.println("  [i] Nessun log precedente trovato. Partenza da zero.");
             return;
         }
-        try (ObjectInputStream ois = new ObjectInputStream(
-                new BufferedInputStream(new FileInputStream(file)))) {
-            interventi = (List<Intervento>) ois.readObject();
-            System.out.println("  [OK] Caricati " + interventi.size() + " interventi dal log.");
+        // Gli indici secondari si ricostruiscono alla fine, non record per record.
+        indiciPronti = false;
+        if (daSegmenti) {
+            caricaSegmenti();
+        } else {
+            if (esisteSnapshot) {
+                caricaSnapshot();
+            }
+            if (esisteJournal) {
+                caricaJournal();
+            }
+        }
+        if (!duplicati.isEmpty()) {
+            rinominaDuplicati();
+            if (persistenza == Persistenza.JOURNAL) {
+                // Accodato al journal, l'ID nuovo resterebbe dietro a uno snapshot che ha ancora
+                // il doppione, che al prossimo avvio riceverebbe un altro ID: si riscrive tutto.
+                serveSnapshotCompleto = true;
+            }
+        }
+        if (daSegmenti != (persistenza == Persistenza.SEGMENTI)) {
+            // Conversione: il prossimo salva() scrive tutto nella disposizione nuova.
+            serveSnapshotCompleto = true;
+            daMigrare = true;
+            System.out.println(daSegmenti
+                    ? "  [i] Log a segmenti mensili: verrà riunito in '" + fileDati + "' al prossimo salvataggio."
+                    : "  [i] Il log verrà diviso in segmenti mensili in '" + segmenti.getCartella()
+                            + "' al prossimo salvataggio.");
+        }
+        // Con mesi vecchi ancora chiusi gli indici aspettano la prima ricerca, che li apre.
+        if (caricamento == Caricamento.COMPLETO && storicoCompleto) {
+            assicuraIndici(); // il lock è rientrante
+        }
+    }
+
+    /**
+     * Modalità SEGMENTI: apre i segmenti dei mesi recenti, in ordine cronologico; gli altri
+     * restano chiusi finché non servono (vedi {@link #assicuraStorico}). Nelle altre modalità
+     * (conversione dai segmenti) li apre tutti.
+     */
+    private void caricaSegmenti() {
+        svuota();
+        NavigableSet<YearMonth> mesi;
+        try {
+            mesi = segmenti.mesi();
+        } catch (IOException e) {
+            System.err.println("  [ATTENZIONE] Cartella dei segmenti non leggibile: " + e.getMessage());
+            System.err.println("  [ATTENZIONE] Partenza da zero. I dati precedenti potrebbero essere persi.");
+            return;
+        }
+        NavigableSet<YearMonth> recenti = mesi;
+        if (persistenza == Persistenza.SEGMENTI && mesiRecenti > 0) {
+            YearMonth primo = YearMonth.now().minusMonths(mesiRecenti - 1L);
+            recenti = mesi.tailSet(primo, true);
+            mesiNonCaricati.addAll(mesi.headSet(primo, false));
+            storicoCompleto = mesiNonCaricati.isEmpty();
+        }
+        for (YearMonth mese : recenti) {
+            caricaSegmento(mese, caricamento == Caricamento.PIGRO, false);
+        }
+        System.out.println("  [OK] Caricati " + (perId.size() + duplicati.size()) + " interventi da "
+                + recenti.size() + " segmenti mensili" + (storicoCompleto ? "." : " (gli altri "
+                + mesiNonCaricati.size() + ", più vecchi, verranno aperti quando servono)."));
+    }
+
+    /**
+     * Apre i segmenti dei mesi vecchi lasciati chiusi da carica(), la prima volta che
+     * un'operazione ha bisogno di tutto il log: ricerche, totali, getTutti, e ogni controllo
+     * di unicità dell'ID (aggiungi, cambio di ID) o ID non trovato tra i mesi recenti.
+     * Li mappa come il caricamento pigro: si leggono solo gli ID, gli interventi vengono
+     * decodificati quando servono.
+     */
+    private void assicuraStorico() {
+        if (storicoCompleto) {
+            return;
+        }
+        scrittura.lock();
+        try {
+            if (storicoCompleto) {
+                return; // aperti da un altro thread mentre aspettavamo il lock
+            }
+            int prima = perId.size() + duplicati.size();
+            // Dal più recente al più vecchio, ognuno davanti a quelli già aperti.
+            for (YearMonth mese : mesiNonCaricati.descendingSet()) {
+                caricaSegmento(mese, true, true);
+            }
+            System.out.println("  [i] Aperti " + mesiNonCaricati.size() + " segmenti mensili di storico ("
+                    + (perId.size() + duplicati.size() - prima) + " interventi).");
+            mesiNonCaricati.clear();
+            indiciPronti = false; // da ricostruire includendo lo storico
+            storicoCompleto = true;
+            // Solo ora ogni ID del log è noto. I mesi dei doppioni vengono segnati da riscrivere.
+            rinominaDuplicati();
+        } finally {
+            scrittura.unlock();
+        }
+    }
+
+    /**
+     * Sotto il lock di scrittura: aggiunge gli interventi di un segmento, tutti o nessuno.
+     * Un segmento illeggibile viene spostato da parte (così un salvataggio di quel mese non
+     * lo sovrascrive) e il caricamento prosegue con gli altri.
+     *
+     * Gli interventi con un ID già presente restano da parte in {@link #duplicati}.
+     *
+     * @param mappato  solo gli ID, come il caricamento pigro, invece di decodificare tutto
+     * @param inTesta  progressivi prima di tutti quelli esistenti (storico aperto dopo)
+     */
+    private void caricaSegmento(YearMonth mese, boolean mappato, boolean inTesta) {
+        Path file = segmenti.file(mese);
+        List<Voce> lette = new ArrayList<>();
+        try {
+            if (mappato) {
+                SnapshotBinario.Mappa m = mappa(file);
+                long[] progressivo = {inTesta ? progressivoMinimo - m.numeroRecord() : prossimoProgressivo};
+                SnapshotBinario.indicizza(m, (id, posizione) ->
+                        lette.add(new Voce(progressivo[0]++, normalizza(id), m, posizione, mese)));
+            } else {
+                List<Intervento> interventi = new ArrayList<>();
+                SnapshotBinario.leggi(file, interventi::add);
+                long progressivo = inTesta ? progressivoMinimo - interventi.size() : prossimoProgressivo;
+                for (Intervento i : interventi) {
+                    lette.add(new Voce(progressivo++, normalizza(i.getId()), i));
+                }
+            }
+            metriche.letti(Files.size(file));
+        } catch (IOException e) {
+            System.err.println("  [ATTENZIONE] Segmento '" + file + "' non leggibile: " + e.getMessage());
+            metteDaParte(file, ".illeggibile");
+            return;
+        }
+        if (inTesta) {
+            progressivoMinimo -= lette.size();
+        } else {
+            prossimoProgressivo += lette.size();
+        }
+        int primoDuplicato = duplicati.size();
+        Set<YearMonth> scartati = new TreeSet<>();
+        for (Voce v : lette) {
+            Voce presente = perId.get(v.chiave);
+            if (presente != null && !mese.equals(meseDi(presente))) {
+                scartati.add(tieniUnaCopia(presente, v, mese));
+            } else if (!inserisci(v)) {
+                duplicati.add(v);
+            } else if (v.intervento != null) {
+                v.intervento.setOsservatore(osservatore);
+            }
+        }
+        if (duplicati.size() > primoDuplicato) {
+            conservaCopia(file, ".duplicati");
+        }
+        for (YearMonth m : scartati) {
+            conservaCopia(segmenti.file(m), ".duplicati");
+        }
+    }
+
+    /**
+     * Lo stesso ID in due segmenti: un salvataggio interrotto tra la sostituzione di un mese e
+     * quella dell'altro (senza il piano di Segmenti, o con il piano non completato), dopo un
+     * cambio di data. Non sono due interventi da rinominare ma due stati dello stesso: resta
+     * la copia del segmento scritto per ultimo, l'altra viene tolta dal suo segmento al
+     * prossimo salvataggio (il chiamante ne conserva una copia in ".duplicati").
+     *
+     * @return il mese della copia scartata
+     */
+    private YearMonth tieniUnaCopia(Voce presente, Voce letta, YearMonth mese) {
+        YearMonth altro = meseDi(presente);
+        boolean piuRecente;
+        try {
+            piuRecente = Files.getLastModifiedTime(segmenti.file(mese))
+                    .compareTo(Files.getLastModifiedTime(segmenti.file(altro))) > 0;
+        } catch (IOException e) {
+            piuRecente = false; // nel dubbio resta quella già letta
+        }
+        if (piuRecente) {
+            perId.remove(presente.chiave);
+            ordine.remove(presente.progressivo);
+            if (cache != null) {
+                cache.rimuovi(presente);
+            }
+            sgancia(presente);
+            inserisci(letta);
+            if (letta.intervento != null) {
+                letta.intervento.setOsservatore(osservatore);
+            }
+        }
+        YearMonth scartato = piuRecente ? altro : mese;
+        System.out.println("  [ATTENZIONE] L'intervento " + letta.chiave + " era sia nel segmento " + altro
+                + " che in " + mese + " (salvataggio interrotto): resta la copia di " + (piuRecente ? mese : altro) + ".");
+        segnaMese(mese);
+        segnaMese(altro);
+        modificato = true;
+        return scartato;
+    }
+
+    /**
+     * Dà un ID nuovo agli interventi rimasti in {@link #duplicati}: i file scritti dalle versioni
+     * che tiravano gli ID a sorte possono avere due interventi con lo stesso ID. La prima
+     * occorrenza tiene il suo (come faceva la vecchia ricerca lineare), le altre prendono il
+     * prossimo della sequenza e vengono elencate, così si può riconoscerle nelle fatture già
+     * emesse. Scartarle le avrebbe cancellate dal disco al primo salvataggio.
+     *
+     * Sotto il lock di scrittura, con gli indici non ancora costruiti (carica(), o lo storico
+     * appena aperto). Un ID nuovo deve essere libero in tutto il log: apre prima lo storico.
+     */
+    private void rinominaDuplicati() {
+        if (duplicati.isEmpty()) {
+            return;
+        }
+        assicuraStorico(); // se apre lo storico, è lui a richiamarci con l'elenco completo
+        List<Voce> daRinominare = duplicati;
+        duplicati = new ArrayList<>();
+        if (daRinominare.isEmpty()) {
+            return;
+        }
+        System.out.println("  [ATTENZIONE] " + daRinominare.size()
+                + " interventi avevano un ID già usato da un altro: ricevono un ID nuovo.");
+        for (Voce doppione : daRinominare) {
+            Intervento i = doppione.intervento;
+            if (i == null) {
+                try {
+                    i = SnapshotBinario.leggiA(doppione.mappa, doppione.posizione);
+                } catch (IOException e) {
+                    // Il record è già stato indicizzato dallo stesso file mappato: non succede.
+                    throw new UncheckedIOException("snapshot mappato non leggibile", e);
+                }
+            }
+            String vecchio = i.getId();
+            i.setId(idLibero()); // nessun osservatore ancora: assegnazione diretta
+            Voce v = new Voce(doppione.progressivo, normalizza(i.getId()), i);
+            inserisci(v);
+            i.setOsservatore(osservatore);
+            registraModifica(v.chiave, i);
+            System.out.println("    - " + vecchio + " -> " + i.getId() + "  (" + i.getCliente() + ", "
+                    + i.getData() + ", " + i.getDescrizione() + ")");
+        }
+    }
+
+    /**
+     * Dopo il salvataggio le voci non residenti puntano ancora al vecchio file (che resta
+     * valido finché è mappato): passiamo al nuovo, di cui conosciamo le posizioni.
+     * La vecchia mappatura viene liberata dal GC quando nessuna voce la usa più.
+     *
+     * Con il limite di memoria passano al file nuovo anche le voci residenti non modificate
+     * dopo la fotografia: il loro intervento coincide con il record appena scritto, quindi
+     * da qui si possono scaricare (entrano nella cache, che poi rientra nel limite).
+     *
+     * @param mese       il mese del segmento, null per il .dat
+     * @param fotografia contatoreModifiche al momento della fotografia
+     */
+    private void rimappa(Path file, YearMonth mese, Voce[] voci, Intervento[] copie, int[] posizioni,
+                         long fotografia) {
+        if (cache == null && Arrays.stream(copie).allMatch(Objects::nonNull)) {
+            return; // tutte residenti: nessuna voce legge dal file
+        }
+        SnapshotBinario.Mappa nuovaMappa;
+        try {
+            nuovaMappa = mappa(file);
+        } catch (IOException e) {
+            System.err.println("  [ATTENZIONE] Impossibile rimappare lo snapshot: " + e.getMessage());
+            return; // le voci restano valide sulla vecchia mappatura
+        }
+        scrittura.lock();
+        try {
+            for (int k = 0; k < voci.length; k++) {
+                Voce v = voci[k];
+                if (ordine.get(v.progressivo) != v) {
+                    continue; // eliminata (o già sostituita) nel frattempo
+                }
+                if (copie[k] != null) {
+                    // Residente alla fotografia: resta com'è, tranne con il limite di memoria
+                    // se non è cambiata dopo (altrimenti la riporta su disco il prossimo salva()).
+                    if (cache == null || v.ultimaModifica > fotografia) {
+                        continue;
+                    }
+                } else if (v.intervento != null && (cache == null || !v.scaricabile())) {
+                    continue; // resa residente dopo la fotografia: non legge dal file
+                }
+                Voce nuova = new Voce(v.progressivo, v.chiave, nuovaMappa, posizioni[k], mese);
+                nuova.colonna = v.colonna;
+                Intervento residente = v.intervento;
+                if (residente != null) {
+                    nuova.adotta(residente); // prima di pubblicarla, per chi ha in mano l'istanza
+                }
+                sostituisci(nuova);
+                // Una lettura può aver decodificato la vecchia voce proprio ora: la sua istanza
+                // resta quella residente, così chi la modifica non trova una "copia non aggiornata".
+                Intervento tardivo = v.intervento;
+                if (tardivo != null) {
+                    nuova.adotta(tardivo);
+                }
+                if (cache != null) {
+                    cache.rimuovi(v);
+                    if (nuova.intervento != null) {
+                        cache.aggiungi(nuova, pesoInHeap(nuova.intervento));
+                    }
+                }
+            }
+            if (cache != null) {
+                limitaResidenti(); // il lock è rientrante
+            }
+        } finally {
+            scrittura.unlock();
+        }
+    }
+
+    private static SnapshotBinario.Mappa mappa(Path file) throws IOException {
+        try (FileChannel canale = FileChannel.open(file, StandardOpenOption.READ)) {
+            // La mappatura resta valida anche dopo la chiusura del canale.
+            return SnapshotBinario.apri(canale.map(FileChannel.MapMode.READ_ONLY, 0, canale.size()));
+        }
+    }
+
+    private void caricaSnapshot() {
+        svuota();
+        Consumer<Intervento> inserisci = i -> {
+            // I file scritti dalle versioni precedenti potevano contenere ID ripetuti:
+            // vedi rinominaDuplicati.
+            Voce v = new Voce(prossimoProgressivo++, normalizza(i.getId()), i);
+            if (inserisci(v)) {
+                i.setOsservatore(osservatore);
+            } else {
+                duplicati.add(v);
+            }
+        };
+        try {
+            boolean binario = SnapshotBinario.riconosce(fileDati);
+            boolean pigro = false;
+            // Verso i segmenti serve la data di ogni intervento: niente caricamento pigro.
+            if (binario && caricamento == Caricamento.PIGRO && persistenza != Persistenza.SEGMENTI
+                    && Files.size(fileDati) <= Integer.MAX_VALUE) {
+                SnapshotBinario.Mappa m = mappa(fileDati);
+                SnapshotBinario.indicizza(m, (id, posizione) -> {
+                    Voce v = new Voce(prossimoProgressivo++, normalizza(id), m, posizione, null);
+                    if (!inserisci(v)) {
+                        duplicati.add(v);
+                    }
+                });
+                pigro = true;
+            } else if (binario) {
+                SnapshotBinario.leggi(fileDati, inserisci);
+            } else {
+                caricaSnapshotSerializzato(inserisci);
+                // Migrazione: il prossimo salvataggio riscrive tutto nel formato binario.
+                serveSnapshotCompleto = true;
+                System.out.println("  [i] Log nel vecchio formato: verrà convertito al prossimo salvataggio.");
+            }
+            dimensioneSnapshot = Files.size(fileDati);
+            metriche.letti(dimensioneSnapshot);
+            int letti = perId.size() + duplicati.size();
+            System.out.println(pigro
+                    ? "  [OK] Indicizzati " + letti + " interventi dal log (caricamento pigro)."
+                    : "  [OK] Caricati " + letti + " interventi dal log.");
+            if (!duplicati.isEmpty()) {
+                conservaCopia(fileDati, ".duplicati");
+            }
         } catch (IOException | ClassNotFoundException e) {
             // Dati non recuperabili: avvisiamo l'utente esplicitamente.
             System.err.println("  [ATTENZIONE] File di log non leggibile o corrotto: " + e.getMessage());
             System.err.println("  [ATTENZIONE] Partenza da zero. I dati precedenti potrebbero essere persi.");
-            // interventi rimane l'ArrayList vuoto del costruttore: stato consistente.
+            // Niente stato a metà: si riparte da vuoto, stato consistente.
+            svuota();
+        }
+    }
+
+    private void svuota() {
+        duplicati.clear();
+        ordine.values().forEach(LogManager::sgancia);
+        if (cache != null) {
+            cache.svuota();
+        }
+        perId.clear();
+        ordine.clear();
+    }
+
+    /**
+     * Formato delle versioni precedenti: una List serializzata con ObjectOutputStream.
+     * Il cast unchecked è inevitabile con la serializzazione generica, ma è sicuro
+     * perché sappiamo cosa abbiamo scritto noi stessi.
+     */
+    @SuppressWarnings("unchecked")
+    private void caricaSnapshotSerializzato(Consumer<Intervento> inserisci)
+            throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new BufferedInputStream(Files.newInputStream(fileDati)))) {
+            ((List<Intervento>) ois.readObject()).forEach(inserisci);
+        }
+    }
+
+    private void caricaJournal() {
+        try {
+            metriche.letti(journal.dimensione());
+            int applicati = journal.riproduci(this::riapplicaPut, this::riapplicaDelete);
+            if (journal.isFormatoObsoleto()) {
+                serveSnapshotCompleto = true; // niente record nuovi dietro un header v1
+            }
+            if (cache != null && journal.dimensione() > sogliaCompattazione()) {
+                // Tutto quello che è nel journal è residente: il prossimo salva() compatta
+                // anche senza modifiche, così da lì in poi si può scaricare.
+                serveSnapshotCompleto = true;
+            }
+            System.out.println("  [OK] Riapplicate " + applicati + " modifiche dal journal ("
+                    + perId.size() + " interventi).");
+        } catch (IOException e) {
+            System.err.println("  [ATTENZIONE] Journal non leggibile: " + e.getMessage());
+            // Non accodiamo altro dietro a un file che non sappiamo rileggere:
+            // il prossimo salva() scrive uno snapshot completo e riparte da un journal nuovo.
+            serveSnapshotCompleto = true;
+            System.err.println("  [ATTENZIONE] Le modifiche successive all'ultimo snapshot potrebbero essere perse.");
+        }
+    }
+
+    /** Upsert: se l'ID esiste già (es. già nello snapshot) il record viene sostituito sul posto. */
+    private void riapplicaPut(Intervento i) {
+        String chiave = normalizza(i.getId());
+        Voce v = perId.get(chiave);
+        if (v == null) {
+            inserisci(new Voce(prossimoProgressivo++, chiave, i));
+        } else {
+            sgancia(v);
+            sostituisci(new Voce(v.progressivo, chiave, i));
+        }
+        i.setOsservatore(osservatore);
+    }
+
+    private void riapplicaDelete(String chiave) {
+        Voce rimossa = perId.remove(chiave);
+        if (rimossa != null) {
+            ordine.remove(rimossa.progressivo);
+            sgancia(rimossa);
         }
     }
 }
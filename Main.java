@@ -1,37 +1,83 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
-import java.util.UUID;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * Entry point del tool. Gestisce il loop principale del menu CLI.
  *
- * L'ID viene generato automaticamente con UUID troncato: in un tool personale
+ * L'ID viene generato automaticamente (vedi LogManager.nuovoId): in un tool personale
  * non ha senso che l'utente se lo inventi a mano, meglio garantire unicità.
  */
 public class Main {
 
-    private static final LogManager logManager = new LogManager();
+    // -Dptl.persistenza=journal abilita il salvataggio incrementale (vedi LogManager.Persistenza),
+    // -Dptl.persistenza=segmenti un file per mese, con -Dptl.segmenti.mesi mesi recenti aperti
+    // all'avvio (0 = tutti), -Dptl.caricamento=pigro il caricamento on-demand da file mappato
+    // (vedi LogManager.Caricamento). -Dptl.memoria.interventi e -Dptl.memoria.mb limitano gli
+    // interventi tenuti in heap (vedi CacheResidenti) e implicano il caricamento pigro.
+    private static final LogManager logManager = creaLogManager();
+
+    // Salvataggio in background (vedi SalvataggioAutomatico): dopo -Dptl.autosave.quiete ms
+    // senza modifiche, o al massimo -Dptl.autosave.max ms dopo la prima non salvata.
+    // quiete=0 lo disattiva. null in modalità batch e se disattivato.
+    private static SalvataggioAutomatico salvataggioAutomatico;
+
+    // Regole delle tariffe (vedi Tariffe): -Dptl.tariffe sceglie un file diverso da tariffe.json.
+    private static final String FILE_TARIFFE = System.getProperty("ptl.tariffe", Tariffe.FILE_PREDEFINITO);
 
     // Scanner non è più static field ma viene creato e chiuso nel main()
     // per evitare resource leak. Lo passiamo come parametro ai metodi helper.
     private static Scanner scanner;
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--server")) {
+            avviaServer(args);
+            return;
+        }
+        // Con argomenti: modalità non interattiva per script (vedi ModalitaBatch),
+        // niente banner, menu o shutdown hook.
+        if (args.length > 0) {
+            if (!args[0].equals("--help") && !args[0].equals("-h")) {
+                caricaTariffe(System.err, false);
+            }
+            System.exit(ModalitaBatch.esegui(args, logManager));
+        }
+
         System.out.println("=========================================");
         System.out.println("   PersonalTechLog — IT Consultant Log   ");
         System.out.println("=========================================");
 
+        caricaTariffe(System.out, false);
         logManager.carica();
+        registraMetricheJmx();
+        avviaSalvataggioAutomatico();
 
         // FIX BUG #7: Shutdown hook — garantisce il salvataggio anche in caso di
         // Ctrl+C, SIGTERM, o chiusura della finestra del terminale.
         // Il JVM lo esegue prima di terminare, tranne in caso di SIGKILL o crash della JVM stessa.
+        // Con il salvataggio automatico resta da scrivere solo l'ultimo intervallo (o niente).
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("\n  [Auto-save] Salvataggio dati in corso...");
-            logManager.salva();
+            salvaEChiudi();
         }, "shutdown-save-hook"));
 
         // FIX BUG #6: Scanner aperto in try-with-resources → chiuso automaticamente
@@ -42,6 +88,49 @@ public class Main {
         }
     }
 
+    /**
+     * Modalità server (vedi ServerHttp): stesso avvio della console (caricamento, JMX,
+     * salvataggio automatico, salvataggio alla chiusura) ma al posto del menu l'API HTTP,
+     * finché il processo non viene fermato (Ctrl+C).
+     */
+    private static void avviaServer(String[] args) {
+        int porta = ServerHttp.PORTA_PREDEFINITA;
+        try {
+            if (args.length > 2) {
+                throw new NumberFormatException();
+            }
+            if (args.length == 2) {
+                porta = Integer.parseInt(args[1]);
+            }
+            if (porta < 0 || porta > 65_535) {
+                throw new NumberFormatException();
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("uso: java Main --server [porta]");
+            System.exit(ModalitaBatch.USO_ERRATO);
+        }
+        caricaTariffe(System.out, false);
+        logManager.carica();
+        registraMetricheJmx();
+        avviaSalvataggioAutomatico();
+        ServerHttp server;
+        try {
+            server = ServerHttp.avvia(logManager, Paths.get(FILE_TARIFFE), porta);
+        } catch (IOException e) {
+            System.out.println("  [X] Impossibile aprire la porta " + porta + ": " + e.getMessage());
+            salvaEChiudi();
+            System.exit(1);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("\n  [Auto-save] Arresto del server e salvataggio dati in corso...");
+            server.ferma();
+            salvaEChiudi();
+        }, "shutdown-save-hook"));
+        System.out.println("  [OK] API in ascolto su http://127.0.0.1:" + server.getPorta()
+                + " (" + server.getDescrizioneEsecutore() + "). Ctrl+C per fermare.");
+    }
+
     private static void runLoop() {
         boolean running = true;
         while (running) {
@@ -67,10 +156,20 @@ public class Main {
                 case "6" -> {
                     // Salvataggio esplicito prima di uscire; lo shutdown hook lo farebbe
                     // comunque, ma è più rapido e fornisce feedback immediato all'utente.
-                    logManager.salva();
+                    salvaEChiudi();
                     System.out.println("\n  Arrivederci.\n");
                     running = false;
                 }
+                case "7" -> cercaPerCliente();
+                case "8" -> cercaPerPeriodo();
+                case "9" -> riepilogoFatturazione();
+                case "10" -> importaDaFile();
+                case "11" -> statistiche();
+                case "12" -> cercaNelTesto();
+                case "13" -> diagnosticaStringhe();
+                case "14" -> riepilogoPeriodo();
+                case "15" -> generaReport();
+                case "16" -> caricaTariffe(System.out, true);
                 default -> System.out.println("  Opzione non valida. Riprova.");
             }
         }
@@ -88,6 +187,16 @@ public class Main {
         System.out.println("  4. Cerca intervento per ID");
         System.out.println("  5. Elimina intervento per ID");
         System.out.println("  6. Salva ed Esci");
+        System.out.println("  7. Cerca interventi per cliente");
+        System.out.println("  8. Cerca interventi per periodo");
+        System.out.println("  9. Riepilogo fatturazione");
+        System.out.println(" 10. Importa da file (CSV/JSONL)");
+        System.out.println(" 11. Statistiche operazioni");
+        System.out.println(" 12. Cerca nel testo (descrizione, ricambio, SO)");
+        System.out.println(" 13. Diagnostica memoria e file (valori ripetuti)");
+        System.out.println(" 14. Riepilogo di un periodo (anche di un cliente)");
+        System.out.println(" 15. Genera fatture e riepilogo (CSV/HTML)");
+        System.out.println(" 16. Ricarica tariffe (" + FILE_TARIFFE + ")");
         System.out.print("  Scelta: ");
     }
 
@@ -102,9 +211,9 @@ public class Main {
         String descrizione = leggiStringa("  Descrizione: ");
         String pezzo       = leggiStringa("  Pezzo di ricambio: ");
 
-        String id = generaId();
+        String id = logManager.nuovoId();
         InterventoHardware hw = new InterventoHardware(id, cliente, data, descrizione, pezzo);
-        logManager.aggiungi(hw);
+        registra(hw);
     }
 
     private static void aggiungiSoftware() {
@@ -114,26 +223,329 @@ public class Main {
         String descrizione = leggiStringa("  Descrizione: ");
         String so          = leggiStringa("  Sistema Operativo: ");
 
-        String id = generaId();
+        String id = logManager.nuovoId();
         InterventoSoftware sw = new InterventoSoftware(id, cliente, data, descrizione, so);
-        logManager.aggiungi(sw);
+        registra(sw);
+    }
+
+    /** Il LogManager rifiuta gli ID duplicati: lo segnaliamo invece di far crashare il menu. */
+    private static void registra(Intervento i) {
+        try {
+            logManager.aggiungi(i);
+        } catch (IllegalArgumentException e) {
+            System.out.println("  [X] " + e.getMessage());
+        }
     }
 
     private static void visualizzaTutti() {
-        List<Intervento> lista = logManager.getTutti();
+        Collection<Intervento> lista = logManager.getTutti();
         if (lista.isEmpty()) {
             System.out.println("\n  Nessun intervento registrato.");
             return;
         }
-        System.out.println("\n-- Interventi registrati (" + lista.size() + ") ----------------");
+        // Totale già mantenuto dal LogManager: niente ricalcolo delle tariffe di tutto lo storico.
+        stampaInterventi("Interventi registrati", lista, logManager.getTotale().getImporto());
+    }
+
+    private static void cercaPerCliente() {
+        String cliente = leggiStringa("\n  Cliente: ");
+        LocalDate da   = leggiDataOpzionale("  Dal (YYYY-MM-DD, invio per nessun limite): ");
+        LocalDate a    = leggiDataOpzionale("  Al  (YYYY-MM-DD, invio per nessun limite): ");
+        List<Intervento> trovati = logManager.cercaPerCliente(cliente, da, a);
+        if (trovati.isEmpty()) {
+            System.out.println("  [X] Nessun intervento trovato per il cliente: " + cliente);
+            return;
+        }
+        stampaInterventi("Interventi di " + cliente, trovati, somma(trovati));
+    }
+
+    private static void cercaPerPeriodo() {
+        LocalDate da = leggiDataOpzionale("\n  Dal (YYYY-MM-DD, invio per nessun limite): ");
+        LocalDate a  = leggiDataOpzionale("  Al  (YYYY-MM-DD, invio per nessun limite): ");
+        List<Intervento> trovati = logManager.cercaPerPeriodo(da, a);
+        if (trovati.isEmpty()) {
+            System.out.println("  [X] Nessun intervento nel periodo indicato.");
+            return;
+        }
+        stampaInterventi("Interventi nel periodo", trovati, somma(trovati));
+    }
+
+    private static void cercaNelTesto() {
+        String ricerca = leggiStringa("\n  Parole da cercare (tutte devono comparire, es. \"ssd samsung\" o \"win*\"): ");
+        long inizio = System.nanoTime();
+        List<Intervento> trovati = logManager.cercaTesto(ricerca);
+        double ms = (System.nanoTime() - inizio) / 1e6;
+        if (trovati.isEmpty()) {
+            System.out.println("  [X] Nessun intervento contiene: " + ricerca);
+            return;
+        }
+        stampaInterventi("Interventi con \"" + ricerca + "\"", trovati, somma(trovati));
+        System.out.printf("  [i] Ricerca completata in %.3f ms.%n", ms);
+    }
+
+    /** Elenco + totale, condiviso da visualizzazione completa e ricerche. */
+    private static void stampaInterventi(String titolo, Collection<Intervento> lista, double totale) {
+        System.out.println("\n-- " + titolo + " (" + lista.size() + ") ----------------");
         // Polimorfismo: toString() chiama la versione giusta (HW o SW) automaticamente.
-        // lista è ora una unmodifiableList, ma forEach è read-only quindi nessun problema.
+        // lista è una vista non modificabile, ma forEach è read-only quindi nessun problema.
         lista.forEach(i -> System.out.println("  " + i));
-
-        double totale = lista.stream().mapToDouble(Intervento::calcolaTariffa).sum();
         System.out.printf("%n  Totale fatturabile stimato: %.2f EUR%n", totale);
     }
 
+    /** Solo per i risultati di una ricerca: sono pochi, il totale si calcola al volo. */
+    private static double somma(Collection<Intervento> lista) {
+        return lista.stream().mapToDouble(Intervento::calcolaTariffa).sum();
+    }
+
+    /** Totali per tipo, mese e cliente letti dagli aggregati del LogManager: nessuna scansione del log. */
+    private static void riepilogoFatturazione() {
+        Aggregati.Totale totale = logManager.getTotale();
+        if (totale.getNumero() == 0) {
+            System.out.println("\n  Nessun intervento registrato.");
+            return;
+        }
+        System.out.println("\n-- Riepilogo fatturazione ----------------------");
+        stampaTotale("Totale", totale);
+
+        System.out.println("\n  Per tipo:");
+        logManager.getTotaliPerTipo().forEach((tipo, t) -> stampaTotale(tipo, t));
+
+        System.out.println("\n  Per mese:");
+        for (Map.Entry<YearMonth, Aggregati.Totale> e : logManager.getTotaliPerMese().entrySet()) {
+            stampaTotale(e.getKey().toString(), e.getValue());
+        }
+
+        System.out.println("\n  Per cliente (dal più fatturato):");
+        stampaPerImporto(logManager.getTotaliPerCliente());
+    }
+
+    /**
+     * Come il riepilogo, ma per un periodo qualsiasi e volendo un solo cliente: una
+     * scansione delle colonne del LogManager (vedi Colonne), non degli interventi.
+     */
+    private static void riepilogoPeriodo() {
+        LocalDate da   = leggiDataOpzionale("\n  Dal (YYYY-MM-DD, invio per nessun limite): ");
+        LocalDate a    = leggiDataOpzionale("  Al  (YYYY-MM-DD, invio per nessun limite): ");
+        String cliente = leggiStringaOpzionale("  Cliente (invio per tutti): ");
+        long inizio = System.nanoTime();
+        Colonne.Riepilogo r = logManager.getRiepilogo(cliente, da, a);
+        long millisecondi = (System.nanoTime() - inizio) / 1_000_000;
+        if (r.getTotale().getNumero() == 0) {
+            System.out.println("  [X] Nessun intervento nel periodo indicato"
+                    + (cliente != null ? " per il cliente: " + cliente : "."));
+            return;
+        }
+        System.out.println("\n-- Riepilogo " + (da != null ? "dal " + da + " " : "") + (a != null ? "al " + a + " " : "")
+                + (cliente != null ? "per " + cliente + " " : "") + "----------------------");
+        stampaTotale("Totale", r.getTotale());
+
+        System.out.println("\n  Per tipo:");
+        r.getPerTipo().forEach((tipo, t) -> stampaTotale(tipo, t));
+
+        System.out.println("\n  Per mese:");
+        r.getPerMese().forEach((mese, t) -> stampaTotale(mese.toString(), t));
+
+        if (cliente == null) {
+            System.out.println("\n  Per cliente (dal più fatturato):");
+            stampaPerImporto(r.getPerCliente());
+        }
+        if (!r.getPerSistema().isEmpty()) {
+            System.out.println("\n  Per sistema operativo (solo SW):");
+            stampaPerImporto(r.getPerSistema());
+        }
+        System.out.printf("%n  [i] Calcolato in %d ms.%n", millisecondi);
+    }
+
+    private static void generaReport() {
+        LocalDate da   = leggiDataOpzionale("\n  Dal (YYYY-MM-DD, invio per nessun limite): ");
+        LocalDate a    = leggiDataOpzionale("  Al  (YYYY-MM-DD, invio per nessun limite): ");
+        String cliente = leggiStringaOpzionale("  Cliente (invio per tutti): ");
+        String predefinita = "report_" + (da != null ? da : "inizio") + "_" + (a != null ? a : "oggi");
+        String scelta = leggiStringaOpzionale("  Cartella (invio per '" + predefinita + "'): ");
+        Path cartella = Paths.get(scelta != null ? scelta : predefinita);
+        long inizio = System.nanoTime();
+        GeneratoreReport.Esito esito;
+        try {
+            esito = new GeneratoreReport(logManager).genera(cartella, da, a, cliente);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("  [X] Report interrotto: " + e.getMessage());
+            return;
+        }
+        long ms = (System.nanoTime() - inizio) / 1_000_000;
+        if (esito.interventi == 0) {
+            System.out.println("  [X] Nessun intervento nel periodo indicato"
+                    + (cliente != null ? " per il cliente: " + cliente : ".") + " Nessun file scritto.");
+            return;
+        }
+        System.out.printf("  [OK] %d fatture (%d interventi, %.2f EUR) scritte in %d ms.%n",
+                esito.clienti, esito.interventi, esito.totale.getImporto(), ms);
+        System.out.println("  [i] Riepilogo: '" + esito.riepilogo + "', fatture in '"
+                + esito.fatture + "'.");
+    }
+
+    private static void stampaPerImporto(Map<String, Aggregati.Totale> gruppi) {
+        gruppi.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue(
+                        Comparator.comparingDouble(Aggregati.Totale::getImporto).reversed()))
+                .forEach(e -> stampaTotale(e.getKey(), e.getValue()));
+    }
+
+    private static void stampaTotale(String etichetta, Aggregati.Totale t) {
+        System.out.printf("    %-22s %5d interventi  %10.2f EUR  (media %.2f)%n",
+                etichetta, t.getNumero(), t.getImporto(), t.getMedia());
+    }
+
+    /** Latenze e contatori di LogManager dall'avvio (gli stessi numeri esposti via JMX). */
+    private static void statistiche() {
+        Metriche m = logManager.getMetriche();
+        System.out.println("\n-- Statistiche operazioni (tempi in microsecondi) --");
+        System.out.printf("    %-16s %9s %10s %10s %10s %10s %12s%n",
+                "operazione", "numero", "media", "p50", "p95", "p99", "max");
+        m.getOperazioni().forEach((nome, st) -> {
+            if (st.getNumero() > 0) {
+                System.out.printf("    %-16s %9d %10.1f %10.1f %10.1f %10.1f %12.1f%n", nome, st.getNumero(),
+                        st.getMediaMicrosecondi(), st.getP50Microsecondi(), st.getP95Microsecondi(),
+                        st.getP99Microsecondi(), st.getMassimoMicrosecondi());
+            }
+        });
+        System.out.printf("%n    Interventi nel log:  %d%n", m.getNumeroInterventi());
+        System.out.printf("    Byte letti:          %d%n", m.getByteLetti());
+        System.out.printf("    Byte scritti:        %d%n", m.getByteScritti());
+        System.out.printf("    Salvataggi falliti:  %d%n", m.getSalvataggiFalliti());
+        if (m.isCacheAttiva()) {
+            long letture = m.getCacheHit() + m.getCacheMiss();
+            System.out.printf("%n    Cache interventi:    %d residenti scaricabili, circa %.1f MB (limite: %s)%n",
+                    m.getCacheInterventi(), m.getCacheByteStimati() / 1048576.0, limiteCache(m));
+            System.out.printf("    Hit / miss:          %d / %d (%s hit)%n", m.getCacheHit(), m.getCacheMiss(),
+                    letture == 0 ? "-" : String.format("%.1f%%", 100.0 * m.getCacheHit() / letture));
+            System.out.printf("    Espulsioni:          %d%n", m.getCacheEspulsioni());
+        }
+    }
+
+    private static String limiteCache(Metriche m) {
+        List<String> limiti = new ArrayList<>();
+        if (m.getCacheLimiteInterventi() > 0) {
+            limiti.add(m.getCacheLimiteInterventi() + " interventi");
+        }
+        if (m.getCacheLimiteByte() > 0) {
+            limiti.add((m.getCacheLimiteByte() >> 20) + " MB");
+        }
+        return String.join(", ", limiti);
+    }
+
+    private static void diagnosticaStringhe() {
+        System.out.println("\n-- Valori ripetuti: dizionario in memoria e tabella nello snapshot --");
+        DiagnosticaStringhe.analizza(logManager.getTutti())
+                .righe(dimensioneFile(logManager.getFileDati()))
+                .forEach(riga -> System.out.println("    " + riga));
+    }
+
+    /** Dimensione del file in byte, -1 se non esiste o non è leggibile. */
+    static long dimensioneFile(Path file) {
+        try {
+            return Files.exists(file) ? Files.size(file) : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Legge le regole delle tariffe e le mette in uso: all'avvio e dal menu ({@code ricarica}),
+     * dopo aver modificato il file. Un file non valido non blocca il programma: c'è un avviso
+     * che dice quale regola correggere e restano le tariffe predefinite (all'avvio) o quelle
+     * già in uso (dal menu). All'avvio le regole vengono annunciate solo se lette da un file.
+     */
+    private static void caricaTariffe(PrintStream out, boolean ricarica) {
+        Tariffe regole;
+        try {
+            regole = Tariffe.leggi(Paths.get(FILE_TARIFFE));
+        } catch (IOException | IllegalArgumentException e) { // InvalidPathException compresa
+            out.println("  [ATTENZIONE] Tariffe da '" + FILE_TARIFFE + "' non valide (" + e.getMessage() + "), "
+                    + (ricarica ? "restano quelle in uso." : "uso le tariffe predefinite."));
+            if (ricarica) {
+                return;
+            }
+            regole = Tariffe.predefinite();
+        }
+        logManager.setTariffe(regole);
+        if (ricarica || !regole.isPredefinite()) {
+            int numero = regole.getNumeroRegole();
+            out.println("  [OK] Tariffe " + (regole.isPredefinite() ? "predefinite" : "da '" + regole.getOrigine() + "'")
+                    + " in uso (" + numero + (numero == 1 ? " regola" : " regole") + ").");
+        }
+    }
+
+    private static void avviaSalvataggioAutomatico() {
+        long quiete = leggiNumero("ptl.autosave.quiete", 2_000, "millisecondi");
+        long massimo = leggiNumero("ptl.autosave.max", 30_000, "millisecondi");
+        if (quiete > 0) {
+            salvataggioAutomatico = SalvataggioAutomatico.avvia(logManager,
+                    Duration.ofMillis(quiete), Duration.ofMillis(massimo));
+        }
+    }
+
+    /** Ferma il salvataggio in background e scrive quello che è rimasto. Chiamabile più volte. */
+    private static void salvaEChiudi() {
+        if (salvataggioAutomatico != null) {
+            salvataggioAutomatico.chiudi();
+        }
+        logManager.salva();
+    }
+
+    /**
+     * Le stesse metriche via JMX (jconsole, VisualVM): solo in modalità interattiva,
+     * dove la sessione dura abbastanza da volerla osservare dall'esterno.
+     */
+    private static void registraMetricheJmx() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(logManager.getMetriche(),
+                    new ObjectName("PersonalTechLog:type=Metriche"));
+        } catch (JMException e) {
+            System.out.println("  [ATTENZIONE] Metriche JMX non disponibili: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Import in blocco (vedi Importatore): nessun messaggio per riga, riepilogo finale
+     * con i primi scarti e un solo salvataggio alla fine invece di uno per intervento.
+     */
+    private static void importaDaFile() {
+        Path file = Paths.get(leggiStringa("\n  File da importare (.csv / .jsonl): "));
+        long inizio = System.nanoTime();
+        Importatore.Esito esito;
+        try {
+            esito = new Importatore(logManager).importa(file);
+        } catch (NoSuchFileException e) {
+            System.out.println("  [X] File non trovato: " + file);
+            return;
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("  [X] Import interrotto: " + e.getMessage());
+            return;
+        }
+        long ms = (System.nanoTime() - inizio) / 1_000_000;
+        if (!esito.codifica.equals(StandardCharsets.UTF_8)) {
+            System.out.println("  [i] Il file non è in UTF-8: letto come " + esito.codifica + " (export di Excel/Windows).");
+        }
+        if (esito.interruzione != null) {
+            System.out.println("  [X] Import interrotto, " + esito.interruzione + ".");
+            System.out.println("  [i] Le righe precedenti sono state importate (vedi sotto) e verranno salvate.");
+        }
+        System.out.printf("  [OK] Importati %d interventi su %d righe in %d ms (%d scartate).%n",
+                esito.importate, esito.lette, ms, esito.scartate);
+        esito.primiScarti.forEach(s -> System.out.println("    - " + s));
+        if (esito.scartate > esito.primiScarti.size()) {
+            System.out.println("    ... e altri " + (esito.scartate - esito.primiScarti.size()) + ".");
+        }
+        if (esito.erroreScarti != null) {
+            System.out.println("  [ATTENZIONE] File delle righe scartate incompleto: " + esito.erroreScarti);
+        } else if (esito.fileScarti != null) {
+            System.out.println("  [i] Righe scartate salvate in '" + esito.fileScarti + "'.");
+        }
+        if (esito.importate > 0) {
+            logManager.salva();
+        }
+    }
+
     private static void cercaIntervento() {
         String id = leggiStringa("\n  ID da cercare: ");
         try {
@@ -172,6 +584,17 @@ public class Main {
         }
     }
 
+    /** Come leggiStringa, ma invio (o fine dell'input) significa "nessun valore" (null). */
+    private static String leggiStringaOpzionale(String prompt) {
+        System.out.print(prompt);
+        try {
+            String input = scanner.nextLine().trim();
+            return input.isEmpty() ? null : input;
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+
     /**
      * Se l'utente preme invio senza digitare nulla, usa la data di oggi.
      * Gestione dell'eccezione di parsing inline: nessun crash per un formato sbagliato.
@@ -183,20 +606,85 @@ public class Main {
             if (input.isEmpty()) {
                 return LocalDate.now();
             }
-            return LocalDate.parse(input);
+            return Intervento.verificaData(LocalDate.parse(input));
         } catch (DateTimeParseException e) {
             System.out.println("  Formato non valido, uso la data di oggi.");
             return LocalDate.now();
+        } catch (IllegalArgumentException e) {
+            System.out.println("  Data fuori dall'intervallo ammesso (" + Intervento.DATA_MINIMA + " - "
+                    + Intervento.DATA_MASSIMA + "), uso la data di oggi.");
+            return LocalDate.now();
         } catch (NoSuchElementException e) {
             return LocalDate.now();
         }
     }
 
-    /**
-     * UUID troncato a 8 caratteri: abbastanza unico per un log personale.
-     * Con ~1000 voci la probabilità di collisione è circa 0.012%, accettabile.
-     */
-    private static String generaId() {
-        return UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+    private static LogManager creaLogManager() {
+        LogManager.Caricamento caricamento = leggiOpzione("ptl.caricamento", LogManager.Caricamento.COMPLETO);
+        long maxInterventi = leggiNumero("ptl.memoria.interventi", 0, "interventi");
+        long maxMegabyte = Math.min(leggiNumero("ptl.memoria.mb", 0, "MB"), Long.MAX_VALUE >> 20);
+        if ((maxInterventi > 0 || maxMegabyte > 0) && caricamento != LogManager.Caricamento.PIGRO) {
+            System.out.println("  [i] Limite di memoria impostato: uso il caricamento pigro.");
+            caricamento = LogManager.Caricamento.PIGRO;
+        }
+        return new LogManager(
+                Paths.get("log_interventi.dat"),
+                leggiOpzione("ptl.persistenza", LogManager.Persistenza.SNAPSHOT),
+                caricamento,
+                (int) Math.min(leggiNumero("ptl.segmenti.mesi", 12, "mesi"), Integer.MAX_VALUE),
+                maxInterventi,
+                maxMegabyte << 20);
+    }
+
+    /** Valore non riconosciuto → modalità di default, con un avviso invece di un crash all'avvio. */
+    private static <E extends Enum<E>> E leggiOpzione(String proprieta, E predefinito) {
+        String valore = System.getProperty(proprieta);
+        if (valore == null) {
+            return predefinito;
+        }
+        try {
+            return Enum.valueOf(predefinito.getDeclaringClass(), valore.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("  [ATTENZIONE] " + proprieta + "='" + valore + "' non valido, uso "
+                    + predefinito.name().toLowerCase(Locale.ROOT) + ".");
+            return predefinito;
+        }
+    }
+
+    /** Intero non negativo da una proprietà di sistema; {@code unita} serve solo al messaggio d'errore. */
+    private static long leggiNumero(String proprieta, long predefinito, String unita) {
+        String valore = System.getProperty(proprieta);
+        if (valore == null) {
+            return predefinito;
+        }
+        try {
+            long numero = Long.parseLong(valore.trim());
+            if (numero >= 0) {
+                return numero;
+            }
+        } catch (NumberFormatException e) {
+            // gestito sotto, come un valore negativo
+        }
+        System.err.println("  [ATTENZIONE] " + proprieta + "='" + valore + "' non valido (" + unita + "), uso "
+                + predefinito + ".");
+        return predefinito;
+    }
+
+    /** Come leggiData, ma invio o formato non valido significano "nessun limite" (null). */
+    private static LocalDate leggiDataOpzionale(String prompt) {
+        System.out.print(prompt);
+        try {
+            String input = scanner.nextLine().trim();
+            return input.isEmpty() ? null : Intervento.verificaData(LocalDate.parse(input));
+        } catch (DateTimeParseException e) {
+            System.out.println("  Formato non valido, nessun limite applicato.");
+            return null;
+        } catch (IllegalArgumentException e) {
+            System.out.println("  Data fuori dall'intervallo ammesso (" + Intervento.DATA_MINIMA + " - "
+                    + Intervento.DATA_MASSIMA + "), nessun limite applicato.");
+            return null;
+        } catch (NoSuchElementException e) {
+            return null;
+        }
     }
 }
@@ -0,0 +1,300 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Contatori e istogrammi di latenza delle operazioni di LogManager.
+ *
+ * Pensati per stare sempre accesi: registrare un campione costa due System.nanoTime()
+ * e qualche incremento atomico, senza lock e senza allocare nulla. Gli istogrammi hanno
+ * bucket log-lineari fissi (8 per ogni potenza di due, quindi errore massimo 12,5% sui
+ * percentili) allocati una volta sola alla creazione.
+ *
+ * La lettura (menu "Statistiche", JMX) non ferma chi registra: i numeri sono una
+ * fotografia approssimata, coerente a meno dei campioni registrati durante la lettura.
+ */
+public final class Metriche implements MetricheMXBean {
+
+    /** Le operazioni misurate, con il nome mostrato nel menu e in JMX. */
+    enum Operazione {
+        AGGIUNGI("aggiungi"),
+        AGGIUNGI_TUTTI("aggiungiTutti"),
+        CERCA_PER_ID("cercaPerId"),
+        CERCA_PER_CLIENTE("cercaPerCliente"),
+        CERCA_PER_PERIODO("cercaPerPeriodo"),
+        CERCA_TESTO("cercaTesto"),
+        RIEPILOGO("riepilogo"),
+        MODIFICA("modifica"),
+        ELIMINA("elimina"),
+        ELIMINA_TUTTI("eliminaTutti"),
+        SALVA("salva"),
+        CARICA("carica");
+
+        final String nome;
+
+        Operazione(String nome) {
+            this.nome = nome;
+        }
+    }
+
+    private final Istogramma[] istogrammi = new Istogramma[Operazione.values().length];
+    private final LongAdder byteScritti = new LongAdder();
+    private final LongAdder byteLetti = new LongAdder();
+    private final LongAdder salvataggiFalliti = new LongAdder();
+    // Letture di un intervento con il limite di memoria (vedi CacheResidenti): già residente
+    // o da decodificare dal file mappato, e interventi scaricati per rientrare nel limite.
+    private final LongAdder cacheHit = new LongAdder();
+    private final LongAdder cacheMiss = new LongAdder();
+    private final LongAdder cacheEspulsioni = new LongAdder();
+    private final IntSupplier numeroInterventi;
+    private final CacheResidenti<?> cache; // null senza limite di memoria
+
+    Metriche(IntSupplier numeroInterventi, CacheResidenti<?> cache) {
+        this.numeroInterventi = numeroInterventi;
+        this.cache = cache;
+        for (int k = 0; k < istogrammi.length; k++) {
+            istogrammi[k] = new Istogramma();
+        }
+    }
+
+    // --- Registrazione (percorsi caldi: niente allocazioni) ---
+
+    /** Da passare a {@link #registra} alla fine dell'operazione. */
+    static long inizio() {
+        return System.nanoTime();
+    }
+
+    void registra(Operazione operazione, long inizio) {
+        istogrammi[operazione.ordinal()].registra(System.nanoTime() - inizio);
+    }
+
+    void scritti(long quanti) {
+        byteScritti.add(quanti);
+    }
+
+    void letti(long quanti) {
+        byteLetti.add(quanti);
+    }
+
+    void salvataggioFallito() {
+        salvataggiFalliti.increment();
+    }
+
+    void cacheHit() {
+        cacheHit.increment();
+    }
+
+    void cacheMiss() {
+        cacheMiss.increment();
+    }
+
+    void cacheEspulsione() {
+        cacheEspulsioni.increment();
+    }
+
+    // --- Lettura ---
+
+    /** Statistiche di una sola operazione, in microsecondi. */
+    Statistiche statistiche(Operazione operazione) {
+        return istogrammi[operazione.ordinal()].statistiche();
+    }
+
+    @Override
+    public int getNumeroInterventi() {
+        return numeroInterventi.getAsInt();
+    }
+
+    @Override
+    public long getByteScritti() {
+        return byteScritti.sum();
+    }
+
+    @Override
+    public long getByteLetti() {
+        return byteLetti.sum();
+    }
+
+    @Override
+    public long getSalvataggiFalliti() {
+        return salvataggiFalliti.sum();
+    }
+
+    @Override
+    public boolean isCacheAttiva() {
+        return cache != null;
+    }
+
+    @Override
+    public long getCacheHit() {
+        return cacheHit.sum();
+    }
+
+    @Override
+    public long getCacheMiss() {
+        return cacheMiss.sum();
+    }
+
+    @Override
+    public long getCacheEspulsioni() {
+        return cacheEspulsioni.sum();
+    }
+
+    @Override
+    public int getCacheInterventi() {
+        return cache != null ? cache.dimensione() : 0;
+    }
+
+    @Override
+    public long getCacheByteStimati() {
+        return cache != null ? cache.getByteStimati() : 0;
+    }
+
+    @Override
+    public long getCacheLimiteInterventi() {
+        return cache != null ? cache.getMaxElementi() : 0;
+    }
+
+    @Override
+    public long getCacheLimiteByte() {
+        return cache != null ? cache.getMaxByte() : 0;
+    }
+
+    @Override
+    public Map<String, Statistiche> getOperazioni() {
+        Map<String, Statistiche> operazioni = new LinkedHashMap<>();
+        for (Operazione o : Operazione.values()) {
+            operazioni.put(o.nome, statistiche(o));
+        }
+        return operazioni;
+    }
+
+    @Override
+    public void azzera() {
+        for (Istogramma i : istogrammi) {
+            i.azzera();
+        }
+        byteScritti.reset();
+        byteLetti.reset();
+        salvataggiFalliti.reset();
+        cacheHit.reset();
+        cacheMiss.reset();
+        cacheEspulsioni.reset();
+    }
+
+    /** Fotografia di un istogramma. Public con getter: JMX la espone come CompositeData. */
+    public static final class Statistiche {
+        private final long numero;
+        private final double media, p50, p95, p99, massimo;
+
+        Statistiche(long numero, double media, double p50, double p95, double p99, double massimo) {
+            this.numero  = numero;
+            this.media   = media;
+            this.p50     = p50;
+            this.p95     = p95;
+            this.p99     = p99;
+            this.massimo = massimo;
+        }
+
+        public long   getNumero()              { return numero; }
+        public double getMediaMicrosecondi()   { return media; }
+        public double getP50Microsecondi()     { return p50; }
+        public double getP95Microsecondi()     { return p95; }
+        public double getP99Microsecondi()     { return p99; }
+        public double getMassimoMicrosecondi() { return massimo; }
+    }
+
+    /**
+     * Istogramma log-lineare in nanosecondi: i valori sotto 16 hanno un bucket ciascuno,
+     * poi ogni potenza di due [2^m, 2^(m+1)) è divisa in 8 bucket uguali. 488 bucket
+     * coprono tutto il range di long.
+     */
+    private static final class Istogramma {
+        private static final int SOTTO_BUCKET_BIT = 3;
+        private static final int SOTTO_BUCKET = 1 << SOTTO_BUCKET_BIT;
+        private static final int BUCKET = (63 - SOTTO_BUCKET_BIT + 1) * SOTTO_BUCKET;
+
+        private final AtomicLongArray conteggi = new AtomicLongArray(BUCKET);
+        private final AtomicLong numero = new AtomicLong();
+        private final AtomicLong somma = new AtomicLong();
+        private final AtomicLong massimo = new AtomicLong();
+
+        void registra(long ns) {
+            if (ns < 0) {
+                ns = 0; // nanoTime non è mai all'indietro, ma non ci fidiamo di ogni JVM
+            }
+            conteggi.incrementAndGet(indice(ns));
+            numero.incrementAndGet();
+            somma.addAndGet(ns);
+            long m;
+            while (ns > (m = massimo.get()) && !massimo.compareAndSet(m, ns)) {
+                // un altro thread ha appena alzato il massimo: riprova
+            }
+        }
+
+        void azzera() {
+            for (int k = 0; k < BUCKET; k++) {
+                conteggi.set(k, 0);
+            }
+            numero.set(0);
+            somma.set(0);
+            massimo.set(0);
+        }
+
+        Statistiche statistiche() {
+            long[] copia = new long[BUCKET];
+            long totale = 0;
+            for (int k = 0; k < BUCKET; k++) {
+                copia[k] = conteggi.get(k);
+                totale += copia[k];
+            }
+            if (totale == 0) {
+                return new Statistiche(0, 0, 0, 0, 0, 0);
+            }
+            long max = massimo.get();
+            return new Statistiche(totale, micro(somma.get() / (double) numero.get()),
+                    micro(percentile(copia, totale, 0.50, max)),
+                    micro(percentile(copia, totale, 0.95, max)),
+                    micro(percentile(copia, totale, 0.99, max)),
+                    micro(max));
+        }
+
+        /** Limite superiore del bucket che contiene il quantile q (mai oltre il massimo visto). */
+        private static long percentile(long[] conteggi, long totale, double q, long massimo) {
+            long soglia = (long) Math.ceil(q * totale);
+            long cumulato = 0;
+            for (int k = 0; k < conteggi.length; k++) {
+                cumulato += conteggi[k];
+                if (cumulato >= soglia) {
+                    return Math.min(limiteSuperiore(k), massimo);
+                }
+            }
+            return massimo;
+        }
+
+        static int indice(long ns) {
+            if (ns < 2 * SOTTO_BUCKET) {
+                return (int) ns;
+            }
+            int bit = 63 - Long.numberOfLeadingZeros(ns);
+            int sotto = (int) (ns >>> (bit - SOTTO_BUCKET_BIT)) & (SOTTO_BUCKET - 1);
+            return (bit - SOTTO_BUCKET_BIT + 1) * SOTTO_BUCKET + sotto;
+        }
+
+        static long limiteSuperiore(int indice) {
+            if (indice < 2 * SOTTO_BUCKET) {
+                return indice;
+            }
+            int bit = indice / SOTTO_BUCKET + SOTTO_BUCKET_BIT - 1;
+            int sotto = indice % SOTTO_BUCKET;
+            long larghezza = 1L << (bit - SOTTO_BUCKET_BIT);
+            return ((long) (SOTTO_BUCKET + sotto) << (bit - SOTTO_BUCKET_BIT)) + larghezza - 1;
+        }
+
+        private static double micro(double ns) {
+            return ns / 1_000;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.Map;
+
+/**
+ * Interfaccia JMX delle metriche di LogManager, registrata da Main come
+ * "PersonalTechLog:type=Metriche" (visibile con jconsole o VisualVM).
+ *
+ * MXBean e non MBean standard: la mappa delle operazioni arriva al client come tabella
+ * di tipi standard, senza bisogno delle nostre classi nel suo classpath.
+ */
+public interface MetricheMXBean {
+
+    /** Interventi attualmente nel log. */
+    int getNumeroInterventi();
+
+    /** Byte scritti su disco da salva() (snapshot e journal). */
+    long getByteScritti();
+
+    /** Byte letti da disco da carica() (snapshot e journal). */
+    long getByteLetti();
+
+    /** Salvataggi terminati con "[ERRORE]": le modifiche restano pendenti. */
+    long getSalvataggiFalliti();
+
+    /** true se il manager ha un limite di memoria: altrimenti i contatori della cache restano a 0. */
+    boolean isCacheAttiva();
+
+    /** Letture di un intervento già residente in heap. */
+    long getCacheHit();
+
+    /** Letture di un intervento non residente, decodificato dal file mappato. */
+    long getCacheMiss();
+
+    /** Interventi scaricati dall'heap per rientrare nel limite (i meno usati di recente). */
+    long getCacheEspulsioni();
+
+    /** Interventi residenti che si possono scaricare (quelli non modificati dopo l'ultimo salvataggio). */
+    int getCacheInterventi();
+
+    /** Stima dei byte in heap di quegli interventi. */
+    long getCacheByteStimati();
+
+    /** Limite in numero di interventi, 0 = nessuno. */
+    long getCacheLimiteInterventi();
+
+    /** Limite in byte stimati, 0 = nessuno. */
+    long getCacheLimiteByte();
+
+    /** Latenze per operazione, chiave = nome dell'operazione (es. "cercaPerId"). */
+    Map<String, Metriche.Statistiche> getOperazioni();
+
+    /** Azzera contatori e istogrammi, es. prima di misurare un carico specifico. */
+    void azzera();
+}
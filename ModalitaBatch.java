@@ -0,0 +1,340 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Modalità non interattiva: esegue comandi uno dopo l'altro senza menu né prompt,
+ * pensata per script e automazioni.
+ *
+ *   java Main --batch comandi.txt     un comando per riga (oppure "-" per lo stdin)
+ *   java Main find A3F1C2D9           un singolo comando dagli argomenti
+ *
+ * Comandi (argomenti separati da spazi, tra virgolette se contengono spazi):
+ *   add-hw &lt;cliente&gt; &lt;data&gt; &lt;descrizione&gt; &lt;pezzoRicambio&gt; [id]
+ *   add-sw &lt;cliente&gt; &lt;data&gt; &lt;descrizione&gt; &lt;sistemaOperativo&gt; [id]
+ *   find &lt;id&gt; | delete &lt;id&gt; | list | save | diag
+ *   report &lt;cartella&gt; [da] [a] [cliente]     fatture e riepilogo CSV/HTML (vedi GeneratoreReport)
+ * La data è YYYY-MM-DD, oppure "oggi"; per report "-" = nessun limite.
+ * Righe vuote e righe che iniziano con # sono ignorate.
+ *
+ * Uscita pensata per essere letta da un programma:
+ *   - stdout contiene solo i risultati: l'ID per add/delete, per find e list una riga
+ *     per intervento con i campi separati da tab (tipo, id, cliente, data, descrizione,
+ *     ricambio o sistema operativo, tariffa), per diag il rapporto sui valori ripetuti
+ *     (vedi DiagnosticaStringhe), per report fatture, interventi, importo e percorso
+ *     del riepilogo HTML separati da tab;
+ *   - stderr contiene gli errori ("riga N: messaggio") e i messaggi del LogManager.
+ * Entrambi sono bufferizzati e scaricati alla fine: nessun flush per comando.
+ * Alla fine, se qualcosa è cambiato, il log viene salvato una volta (save serve solo
+ * per checkpoint intermedi), anche se il file comandi si interrompe a metà per un errore
+ * di lettura: le modifiche dei comandi già eseguiti non vanno perse.
+ *
+ * Codice di uscita: 0 tutto ok, 1 almeno un comando fallito (anche un save non riuscito),
+ * 2 uso errato o file illeggibile (anche solo da una certa riga in poi), 3 salvataggio finale
+ * fallito: le modifiche dei comandi non sono su disco, qualunque sia l'esito dei comandi.
+ */
+final class ModalitaBatch {
+
+    static final int OK              = 0;
+    static final int COMANDO_FALLITO = 1;
+    static final int USO_ERRATO      = 2;
+    static final int NON_SALVATO     = 3;
+
+    private final LogManager logManager;
+    private final PrintWriter out;
+    private final PrintStream err;
+    private boolean fallito;
+    private boolean daSalvare;
+    private boolean nonSalvato;
+
+    private ModalitaBatch(LogManager logManager, PrintWriter out, PrintStream err) {
+        this.logManager = logManager;
+        this.out        = out;
+        this.err        = err;
+    }
+
+    /** Punto d'ingresso da Main.main quando ci sono argomenti. Ritorna il codice di uscita. */
+    static int esegui(String[] args, LogManager logManager) {
+        return esegui(args, logManager, new FileOutputStream(FileDescriptor.out), new FileOutputStream(FileDescriptor.err));
+    }
+
+    /** Come {@link #esegui(String[], LogManager)}, con risultati ed errori sugli stream indicati. */
+    static int esegui(String[] args, LogManager logManager, OutputStream stdout, OutputStream stderr) {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                stdout, StandardCharsets.UTF_8), 1 << 16), false);
+        // Errori e messaggi del LogManager ("[OK] Log salvato...", "[ERRORE] ...") sullo stesso
+        // stream, così restano nell'ordine in cui sono avvenuti, ma non si mescolano ai
+        // risultati su stdout.
+        PrintStream err = new PrintStream(new BufferedOutputStream(stderr, 1 << 16), false, StandardCharsets.UTF_8);
+        PrintStream stdoutOriginale = System.out;
+        PrintStream stderrOriginale = System.err;
+        System.setOut(err);
+        System.setErr(err);
+        try {
+            if (args[0].equals("--help") || args[0].equals("-h")) {
+                uso(out);
+                return OK;
+            }
+            ModalitaBatch batch = new ModalitaBatch(logManager, out, err);
+            int esito = batch.avvia(args);
+            return batch.nonSalvato ? NON_SALVATO : esito != OK ? esito : batch.fallito ? COMANDO_FALLITO : OK;
+        } finally {
+            out.flush();
+            err.flush();
+            System.setOut(stdoutOriginale);
+            System.setErr(stderrOriginale);
+        }
+    }
+
+    private int avvia(String[] args) {
+        if (args[0].equals("--batch") && args.length != 2) {
+            err.println("uso: --batch <file comandi | ->");
+            return USO_ERRATO;
+        }
+        logManager.carica();
+        // Salvataggio in finally: quello che i comandi già eseguiti hanno cambiato va su disco
+        // anche se il file comandi si interrompe a metà o un comando finisce in modo inatteso.
+        try {
+            if (args[0].equals("--batch")) {
+                return leggiComandi(args[1]);
+            }
+            esegui(1, List.of(args));
+            return OK;
+        } finally {
+            if (daSalvare && !logManager.salva()) {
+                nonSalvato = true;
+                err.println("salvataggio fallito: le modifiche non sono state scritte su disco");
+            }
+        }
+    }
+
+    private int leggiComandi(String file) {
+        long numero = 0;
+        try (BufferedReader in = file.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            String riga;
+            while ((riga = in.readLine()) != null) {
+                numero++;
+                String comando = riga.strip();
+                if (comando.isEmpty() || comando.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    esegui(numero, dividi(comando));
+                } catch (IllegalArgumentException e) {
+                    errore(numero, e.getMessage()); // virgolette non chiuse
+                }
+            }
+            return OK;
+        } catch (IOException e) {
+            if (numero == 0) {
+                err.println("file comandi non leggibile: " + e.getMessage());
+            } else {
+                err.println("riga " + (numero + 1) + ": file comandi non leggibile da qui in poi ("
+                        + e.getMessage() + "); eseguite le righe fino alla " + numero);
+            }
+            return USO_ERRATO;
+        }
+    }
+
+    // --- Comandi ---
+
+    private void esegui(long numero, List<String> parole) {
+        String comando = parole.get(0).toLowerCase(Locale.ROOT);
+        List<String> argomenti = parole.subList(1, parole.size());
+        try {
+            switch (comando) {
+                case "add-hw":
+                    aggiungi(numero, argomenti, true);
+                    break;
+                case "add-sw":
+                    aggiungi(numero, argomenti, false);
+                    break;
+                case "find":
+                    richiedi(argomenti, 1, "find <id>");
+                    stampa(logManager.cercaPerId(argomenti.get(0)));
+                    break;
+                case "delete":
+                    richiedi(argomenti, 1, "delete <id>");
+                    if (logManager.eliminaTutti(List.of(argomenti.get(0))).isEmpty()) {
+                        daSalvare = true;
+                        out.println(argomenti.get(0));
+                    } else {
+                        errore(numero, "nessun intervento con ID " + argomenti.get(0));
+                    }
+                    break;
+                case "list":
+                    richiedi(argomenti, 0, "list");
+                    logManager.getTutti().forEach(this::stampa);
+                    break;
+                case "diag":
+                    richiedi(argomenti, 0, "diag");
+                    DiagnosticaStringhe.analizza(logManager.getTutti())
+                            .righe(Main.dimensioneFile(logManager.getFileDati()))
+                            .forEach(out::println);
+                    break;
+                case "report":
+                    report(argomenti);
+                    break;
+                case "save":
+                    richiedi(argomenti, 0, "save");
+                    if (logManager.salva()) {
+                        daSalvare = false;
+                    } else {
+                        // Le modifiche restano da salvare: ci riprova il salvataggio finale.
+                        errore(numero, "salvataggio fallito");
+                    }
+                    break;
+                default:
+                    errore(numero, "comando sconosciuto: " + parole.get(0));
+            }
+        } catch (InterventoNonTrovatoException | IllegalArgumentException | DateTimeParseException e) {
+            errore(numero, e.getMessage());
+        } catch (IOException e) {
+            errore(numero, "report interrotto: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // Un errore che nessun comando si aspetta non ferma gli altri: si segnala con la
+            // sua riga come tutti gli errori.
+            errore(numero, "errore inatteso: " + e);
+        }
+    }
+
+    private void aggiungi(long numero, List<String> a, boolean hardware) {
+        if (a.size() != 4 && a.size() != 5) {
+            throw new IllegalArgumentException("uso: " + (hardware
+                    ? "add-hw <cliente> <data> <descrizione> <pezzoRicambio> [id]"
+                    : "add-sw <cliente> <data> <descrizione> <sistemaOperativo> [id]"));
+        }
+        String id      = a.size() == 5 ? a.get(4) : logManager.nuovoId();
+        LocalDate data = a.get(1).equalsIgnoreCase("oggi")
+                ? LocalDate.now()
+                : Intervento.verificaData(LocalDate.parse(a.get(1)));
+        Intervento i = hardware
+                ? new InterventoHardware(id, a.get(0), data, a.get(2), a.get(3))
+                : new InterventoSoftware(id, a.get(0), data, a.get(2), a.get(3));
+        // aggiungiTutti e non aggiungi: niente messaggio per intervento, il duplicato torna indietro.
+        if (logManager.aggiungiTutti(List.of(i)).isEmpty()) {
+            daSalvare = true;
+            out.println(id);
+        } else {
+            errore(numero, "ID già presente nel log: " + id);
+        }
+    }
+
+    private void report(List<String> a) throws IOException {
+        if (a.isEmpty() || a.size() > 4) {
+            throw new IllegalArgumentException("uso: report <cartella> [da|-] [a|-] [cliente]");
+        }
+        LocalDate da = a.size() > 1 ? dataOpzionale(a.get(1)) : null;
+        LocalDate al = a.size() > 2 ? dataOpzionale(a.get(2)) : null;
+        String cliente = a.size() > 3 ? a.get(3) : null;
+        GeneratoreReport.Esito esito = new GeneratoreReport(logManager).genera(Paths.get(a.get(0)), da, al, cliente);
+        // Un periodo senza interventi non è un errore: 0 fatture e nessun file (percorso vuoto).
+        out.println(esito.clienti + "\t" + esito.interventi + '\t'
+                + String.format(Locale.ROOT, "%.2f", esito.totale.getImporto())
+                + '\t' + (esito.riepilogo != null ? esito.riepilogo : ""));
+    }
+
+    private static LocalDate dataOpzionale(String testo) {
+        return testo.equals("-") ? null
+                : testo.equalsIgnoreCase("oggi") ? LocalDate.now()
+                : Intervento.verificaData(LocalDate.parse(testo));
+    }
+
+    private void stampa(Intervento i) {
+        String dettaglio = i instanceof InterventoHardware
+                ? ((InterventoHardware) i).getPezzoRicambio()
+                : ((InterventoSoftware) i).getSistemaOperativo();
+        out.println(i.getTipo() + '\t' + campo(i.getId()) + '\t' + campo(i.getCliente()) + '\t' + i.getData()
+                + '\t' + campo(i.getDescrizione()) + '\t' + campo(dettaglio)
+                + '\t' + String.format(Locale.ROOT, "%.2f", i.calcolaTariffa()));
+    }
+
+    private void errore(long numero, String messaggio) {
+        fallito = true;
+        err.println("riga " + numero + ": " + messaggio);
+    }
+
+    private static void richiedi(List<String> argomenti, int quanti, String uso) {
+        if (argomenti.size() != quanti) {
+            throw new IllegalArgumentException("uso: " + uso);
+        }
+    }
+
+    // --- Helper ---
+
+    /** Tab e a capo dentro un campo romperebbero il formato a righe e colonne. */
+    private static String campo(String valore) {
+        return valore.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /** Divide sugli spazi; "tra virgolette" è un argomento unico, con \" e \\ come escape. */
+    static List<String> dividi(String riga) {
+        List<String> parole = new ArrayList<>();
+        StringBuilder parola = new StringBuilder();
+        boolean inParola = false;
+        boolean traVirgolette = false;
+        for (int k = 0; k < riga.length(); k++) {
+            char c = riga.charAt(k);
+            if (traVirgolette) {
+                if (c == '\\' && k + 1 < riga.length()
+                        && (riga.charAt(k + 1) == '"' || riga.charAt(k + 1) == '\\')) {
+                    parola.append(riga.charAt(++k));
+                } else if (c == '"') {
+                    traVirgolette = false;
+                } else {
+                    parola.append(c);
+                }
+            } else if (c == '"') {
+                traVirgolette = true;
+                inParola = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inParola) {
+                    parole.add(parola.toString());
+                    parola.setLength(0);
+                    inParola = false;
+                }
+            } else {
+                parola.append(c);
+                inParola = true;
+            }
+        }
+        if (traVirgolette) {
+            throw new IllegalArgumentException("virgolette non chiuse");
+        }
+        if (inParola) {
+            parole.add(parola.toString());
+        }
+        return parole;
+    }
+
+    private static void uso(PrintWriter out) {
+        out.println("uso: java Main                       menu interattivo");
+        out.println("     java Main --batch <file | ->    un comando per riga");
+        out.println("     java Main <comando> [argomenti] un singolo comando");
+        out.println("     java Main --server [porta]      API HTTP/JSON su 127.0.0.1 (default 8080)");
+        out.println("comandi:");
+        out.println("  add-hw <cliente> <data|oggi> <descrizione> <pezzoRicambio> [id]");
+        out.println("  add-sw <cliente> <data|oggi> <descrizione> <sistemaOperativo> [id]");
+        out.println("  find <id> | delete <id> | list | save | diag");
+        out.println("  report <cartella> [da|-] [a|-] [cliente]");
+        out.println("codice di uscita: 0 ok, 1 almeno un comando fallito, 2 uso errato, 3 log non salvato");
+    }
+}
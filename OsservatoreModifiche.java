@@ -0,0 +1,20 @@
+/**
+ * Callback interno con cui un Intervento avvisa il suo proprietario (il LogManager)
+ * che un campo sta per cambiare, e gli chiede le regole delle tariffe.
+ *
+ * Package-private: è un dettaglio di implementazione tra Intervento e LogManager,
+ * nessun consumer esterno deve poterlo agganciare.
+ */
+interface OsservatoreModifiche {
+
+    /**
+     * Applica la modifica eseguendo {@code assegnazione}. L'implementazione può
+     * aggiornare i propri indici prima e dopo, oppure rifiutare la modifica lanciando
+     * un'eccezione senza eseguire l'assegnazione.
+     */
+    void applicaModifica(Intervento intervento, Intervento.Campo campo,
+                         Object nuovoValore, Runnable assegnazione);
+
+    /** Le regole delle tariffe del proprietario (vedi LogManager.setTariffe). */
+    Tariffe getTariffe();
+}
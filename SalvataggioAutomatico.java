@@ -0,0 +1,113 @@
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Salvataggio in background: ogni modifica segna il log come "sporco" e un thread
+ * dedicato lo salva quando le modifiche si fermano per un po' (quiete) oppure, se
+ * continuano ad arrivare, al massimo dopo un ritardo fisso dalla prima non salvata.
+ *
+ * Una raffica di modifiche (un import, una serie di inserimenti dal menu) diventa così
+ * un solo salvataggio: in modalità JOURNAL un solo record con tutte le modifiche.
+ * Un crash o un kill -9 perde al massimo le modifiche dell'ultimo intervallo, e all'uscita
+ * resta da scrivere solo quello che è cambiato dopo l'ultimo salvataggio in background.
+ *
+ * Chi modifica non aspetta mai il disco: {@link #segnala} scrive due campi e, solo al
+ * primo cambiamento dopo un salvataggio, sveglia il thread. Il salvataggio prende il
+ * lock di scrittura solo per la fotografia (vedi LogManager.salva), l'I/O avviene fuori.
+ *
+ * Thread di piattaforma daemon: il progetto gira da Java 14, senza virtual thread, e per
+ * un thread che passa quasi tutto il tempo fermo non farebbe differenza.
+ */
+final class SalvataggioAutomatico {
+
+    private final LogManager logManager;
+    private final long quieteNanos;
+    private final long ritardoMassimoNanos;
+    private final Thread thread;
+
+    private final AtomicBoolean sporco = new AtomicBoolean();
+    private volatile long primaModifica;   // la più vecchia non ancora salvata
+    private volatile long ultimaModifica;
+    private volatile boolean chiuso;
+
+    private SalvataggioAutomatico(LogManager logManager, Duration quiete, Duration ritardoMassimo) {
+        this.logManager          = logManager;
+        this.quieteNanos         = quiete.toNanos();
+        this.ritardoMassimoNanos = Math.max(ritardoMassimo.toNanos(), quieteNanos);
+        this.thread              = new Thread(this::ciclo, "salvataggio-automatico");
+        this.thread.setDaemon(true); // non deve tenere in vita la JVM: all'uscita ci pensa chiudi()
+    }
+
+    /**
+     * Aggancia il salvataggio automatico al log e avvia il thread.
+     *
+     * @param quiete         tempo senza modifiche dopo il quale si salva
+     * @param ritardoMassimo tempo massimo tra la prima modifica non salvata e il salvataggio,
+     *                       anche se le modifiche non si fermano mai
+     */
+    static SalvataggioAutomatico avvia(LogManager logManager, Duration quiete, Duration ritardoMassimo) {
+        if (quiete.isNegative() || quiete.isZero()) {
+            throw new IllegalArgumentException("quiete deve essere positiva: " + quiete);
+        }
+        SalvataggioAutomatico s = new SalvataggioAutomatico(logManager, quiete, ritardoMassimo);
+        logManager.setAllaModifica(s::segnala);
+        s.thread.start();
+        return s;
+    }
+
+    /**
+     * Chiamato dal LogManager a ogni modifica, sotto il suo lock di scrittura:
+     * solo due scritture volatile, e un unpark quando il log passa da pulito a sporco.
+     */
+    private void segnala() {
+        long adesso = System.nanoTime();
+        ultimaModifica = adesso;
+        if (!sporco.get() && sporco.compareAndSet(false, true)) {
+            primaModifica = adesso;
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Ferma il thread aspettando l'eventuale salvataggio in corso. Non salva: il
+     * chiamante fa il salva() finale, che scrive solo quello che resta.
+     */
+    void chiudi() {
+        chiuso = true;
+        logManager.setAllaModifica(null);
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void ciclo() {
+        while (!chiuso) {
+            if (!sporco.get()) {
+                LockSupport.park(this); // fino alla prossima modifica (o a chiudi())
+                continue;
+            }
+            long adesso = System.nanoTime();
+            long scadenza = Math.min(ultimaModifica + quieteNanos, primaModifica + ritardoMassimoNanos);
+            if (scadenza - adesso > 0) {
+                // Una modifica nel frattempo sposta in avanti la quiete: al risveglio si ricalcola.
+                LockSupport.parkNanos(this, scadenza - adesso);
+                continue;
+            }
+            // Prima azzeriamo, poi salviamo: una modifica che arriva durante il salvataggio
+            // (dopo la fotografia) rimette sporco a true e viene salvata al giro dopo.
+            sporco.set(false);
+            try {
+                logManager.salvaInSilenzio();
+            } catch (RuntimeException e) {
+                // Il thread non deve morire: al prossimo giro si riprova.
+                System.err.println("  [ERRORE] Salvataggio automatico fallito: " + e.getMessage());
+                segnala();
+            }
+        }
+    }
+}
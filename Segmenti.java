@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Disposizione su disco della persistenza a segmenti (LogManager.Persistenza.SEGMENTI):
+ * una cartella accanto al .dat con un file per mese, "AAAA-MM.dat", che contiene gli
+ * interventi con la data in quel mese nel formato di SnapshotBinario.
+ *
+ * Qui c'è solo la parte di file system (nomi, elenco, sostituzione atomica): cosa va
+ * in ogni segmento e quando riscriverlo lo decide il LogManager.
+ *
+ * Un salvataggio che tocca più mesi deve arrivare su disco tutto o niente: un intervento
+ * spostato da un mese all'altro sparirebbe (o comparirebbe due volte) se il crash cade tra
+ * la sostituzione di un segmento e quella dell'altro. Per questo il LogManager scrive prima
+ * tutti i temporanei, poi annota in {@link #PIANO} quali mesi sostituire ed eliminare, e
+ * solo allora li sostituisce: se il piano è ancora lì all'avvio, completaSalvataggio() lo
+ * porta a termine prima di leggere i segmenti.
+ */
+final class Segmenti {
+
+    private static final String ESTENSIONE = ".dat";
+    // Senza estensione .dat: mesi() non lo scambia per un segmento.
+    private static final String PIANO = "salvataggio-in-corso";
+
+    private final Path cartella;
+
+    Segmenti(Path fileDati) {
+        this.cartella = fileDati.resolveSibling(fileDati.getFileName() + ".segmenti");
+    }
+
+    Path getCartella() {
+        return cartella;
+    }
+
+    boolean esiste() {
+        return Files.isDirectory(cartella);
+    }
+
+    /** I mesi che hanno un segmento su disco, in ordine cronologico (vuoto se non c'è la cartella). */
+    NavigableSet<YearMonth> mesi() throws IOException {
+        NavigableSet<YearMonth> mesi = new TreeSet<>();
+        if (!esiste()) {
+            return mesi;
+        }
+        try (DirectoryStream<Path> file = Files.newDirectoryStream(cartella, "*" + ESTENSIONE)) {
+            for (Path f : file) {
+                String nome = f.getFileName().toString();
+                try {
+                    mesi.add(YearMonth.parse(nome.substring(0, nome.length() - ESTENSIONE.length())));
+                } catch (DateTimeParseException e) {
+                    // file estraneo nella cartella (es. una copia fatta a mano): non è un segmento
+                }
+            }
+        }
+        return mesi;
+    }
+
+    Path file(YearMonth mese) {
+        return cartella.resolve(mese + ESTENSIONE);
+    }
+
+    /** Il temporaneo accanto al segmento, da scrivere per intero prima di {@link #sostituisci}. */
+    Path temporaneo(YearMonth mese) throws IOException {
+        Files.createDirectories(cartella);
+        return cartella.resolve(mese + ESTENSIONE + ".tmp");
+    }
+
+    /** Stesso schema del .dat: il temporaneo completo prende il posto del segmento con un move atomico. */
+    void sostituisci(YearMonth mese) throws IOException {
+        Files.move(cartella.resolve(mese + ESTENSIONE + ".tmp"), file(mese),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Un mese rimasto senza interventi non ha segmento. */
+    void elimina(YearMonth mese) throws IOException {
+        Files.deleteIfExists(file(mese));
+    }
+
+    /**
+     * Annota i mesi di un salvataggio i cui temporanei sono già tutti completi su disco.
+     * Il piano stesso passa da un temporaneo forzato su disco e da un move atomico: o c'è
+     * intero o non c'è.
+     */
+    void annotaSalvataggio(Collection<YearMonth> daSostituire, Collection<YearMonth> daEliminare)
+            throws IOException {
+        StringBuilder piano = new StringBuilder();
+        daSostituire.forEach(mese -> piano.append("sostituisci ").append(mese).append('\n'));
+        daEliminare.forEach(mese -> piano.append("elimina ").append(mese).append('\n'));
+        Files.createDirectories(cartella);
+        Path temporaneo = cartella.resolve(PIANO + ".tmp");
+        try (FileChannel canale = FileChannel.open(temporaneo, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(piano.toString().getBytes(StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) {
+                canale.write(buf);
+            }
+            canale.force(true);
+        }
+        Files.move(temporaneo, cartella.resolve(PIANO),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Esegue il piano annotato, se c'è: sostituisce i segmenti dei mesi elencati con i loro
+     * temporanei (quelli già sostituiti prima di un crash non hanno più il temporaneo) ed
+     * elimina gli altri, poi toglie il piano. Si può ripetere quante volte si vuole.
+     *
+     * @return false se non c'era nessun piano da completare
+     */
+    boolean completaSalvataggio() throws IOException {
+        Path piano = cartella.resolve(PIANO);
+        if (!Files.exists(piano)) {
+            return false;
+        }
+        List<String> righe = Files.readAllLines(piano, StandardCharsets.UTF_8);
+        for (String riga : righe) {
+            String[] parti = riga.split(" ");
+            YearMonth mese;
+            try {
+                mese = YearMonth.parse(parti[1]);
+            } catch (ArrayIndexOutOfBoundsException | DateTimeParseException e) {
+                throw new IOException("piano di salvataggio non valido: '" + riga + "'", e);
+            }
+            if (parti[0].equals("elimina")) {
+                elimina(mese);
+            } else if (Files.exists(cartella.resolve(mese + ESTENSIONE + ".tmp"))) {
+                sostituisci(mese);
+            }
+        }
+        Files.delete(piano);
+        return true;
+    }
+}
@@ -0,0 +1,490 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * API HTTP/JSON locale sul LogManager, per gli script e i piccoli strumenti che registrano
+ * interventi in contemporanea (la console di Main serve un utente alla volta).
+ *
+ *   java Main --server [porta]     (default 8080, solo su 127.0.0.1)
+ *
+ * Endpoint:
+ *   GET    /interventi                      tutti, in ordine di inserimento
+ *   GET    /interventi?cliente=..&amp;da=..&amp;a=..  per cliente e/o periodo (date YYYY-MM-DD, estremi inclusi)
+ *   GET    /interventi?testo=..             ricerca nel testo (vedi IndiceTesto)
+ *   GET    /interventi/{id}
+ *   POST   /interventi                      crea; il corpo è come una riga JSONL dell'import, id facoltativo
+ *   PATCH  /interventi/{id}                 modifica i campi presenti nel corpo (tipo e id esclusi)
+ *   DELETE /interventi/{id}
+ *   GET    /riepilogo?da=..&amp;a=..&amp;cliente=..   totali del periodo (vedi Colonne)
+ *   POST   /salva                           salvataggio immediato (oltre a quello automatico)
+ *   POST   /tariffe                         rilegge il file delle tariffe (vedi Tariffe); se non è
+ *                                           valido risponde 400 e restano le regole in uso
+ * Errori come {"errore": "..."} con 400 richiesta non valida, 404 non trovato, 405 metodo non
+ * ammesso, 409 ID già presente, 413 corpo oltre MAX_CORPO.
+ *
+ * Concorrenza: nessun lock qui. Il LogManager è già pensato per più thread (letture senza
+ * lock, scritture serializzate dal suo lock, salvataggio con la fotografia); una PATCH con più
+ * campi passa da LogManager.modifica, così due richieste sullo stesso intervento non si
+ * mescolano campo per campo.
+ *
+ * Ogni richiesta ha il suo thread: un virtual thread se la JVM li ha (Java 21+), altrimenti un
+ * pool fisso. Il progetto compila per Java 14, quindi il virtual thread executor si cerca per
+ * reflection all'avvio, una volta sola. Le richieste passano quasi tutto il tempo in I/O di
+ * rete, per cui un thread ciascuna non costa nulla con i virtual thread; il pool fisso limita
+ * invece le richieste servite insieme (le altre aspettano in coda, nessuna viene rifiutata).
+ */
+final class ServerHttp {
+
+    static final int PORTA_PREDEFINITA = 8080;
+    private static final int MAX_CORPO = 1 << 20;
+    private static final int BACKLOG   = 1024;
+
+    private final LogManager logManager;
+    private final Path fileTariffe;
+    private final HttpServer server;
+    private final ExecutorService esecutore;
+    private final String descrizioneEsecutore;
+
+    private ServerHttp(LogManager logManager, Path fileTariffe, HttpServer server, ExecutorService esecutore,
+                       String descrizione) {
+        this.logManager = logManager;
+        this.fileTariffe = fileTariffe;
+        this.server     = server;
+        this.esecutore  = esecutore;
+        this.descrizioneEsecutore = descrizione;
+    }
+
+    /** Apre la porta su 127.0.0.1 e inizia a servire le richieste. */
+    static ServerHttp avvia(LogManager logManager, Path fileTariffe, int porta) throws IOException {
+        // Intestazioni e corpo partono con due write: senza TCP_NODELAY l'algoritmo di Nagle
+        // trattiene il corpo finché il client non conferma le intestazioni, e il client
+        // ritarda la conferma (delayed ACK) di ~40 ms. Va impostata prima del primo HttpServer.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        HttpServer server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), porta), BACKLOG);
+        ExecutorService esecutore;
+        String descrizione;
+        try {
+            esecutore = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            descrizione = "un virtual thread per richiesta";
+        } catch (ReflectiveOperationException e) {
+            int thread = Math.max(16, 4 * Runtime.getRuntime().availableProcessors());
+            esecutore = Executors.newFixedThreadPool(thread);
+            descrizione = "pool di " + thread + " thread, virtual thread solo da Java 21";
+        }
+        ServerHttp s = new ServerHttp(logManager, fileTariffe, server, esecutore, descrizione);
+        server.createContext("/", s::gestisci); // instradamento in instrada(), anche per i 404
+        server.setExecutor(esecutore);
+        server.start();
+        return s;
+    }
+
+    int getPorta() {
+        return server.getAddress().getPort();
+    }
+
+    String getDescrizioneEsecutore() {
+        return descrizioneEsecutore;
+    }
+
+    /** Smette di accettare richieste e aspetta al massimo un secondo quelle in corso. */
+    void ferma() {
+        server.stop(1);
+        esecutore.shutdown();
+        try {
+            esecutore.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --- Instradamento ---
+
+    private void gestisci(HttpExchange scambio) {
+        try {
+            try {
+                instrada(scambio);
+            } catch (InterventoNonTrovatoException e) {
+                rispondi(scambio, 404, errore(e.getMessage()));
+            } catch (CorpoTroppoGrande e) {
+                rispondi(scambio, 413, errore("corpo della richiesta oltre " + MAX_CORPO + " byte"));
+            } catch (IllegalArgumentException | DateTimeException e) {
+                rispondi(scambio, 400, errore(e.getMessage()));
+            } catch (IOException e) {
+                // Il client ha chiuso la connessione: non c'è nessuno a cui rispondere.
+            } catch (RispostaInterrotta e) {
+                // Senza chiudere lo scambio: l'eccezione esce da handle() e il server chiude la
+                // connessione a metà risposta, senza il chunk finale. Il client vede un errore
+                // di trasferimento e non un 200 con un elenco più corto del vero.
+                throw e;
+            } catch (RuntimeException | StackOverflowError e) {
+                rispondi(scambio, 500, errore(e.toString()));
+            }
+        } catch (IOException e) {
+            // come sopra
+        }
+        scambio.close();
+    }
+
+    private void instrada(HttpExchange scambio) throws IOException, InterventoNonTrovatoException {
+        String metodo = scambio.getRequestMethod();
+        String percorso = scambio.getRequestURI().getPath();
+        Map<String, String> parametri = parametri(scambio.getRequestURI().getRawQuery());
+
+        if (percorso.equals("/interventi") || percorso.equals("/interventi/")) {
+            switch (metodo) {
+                case "GET":  elenco(scambio, parametri); return;
+                case "POST": crea(scambio);              return;
+                default:     nonAmmesso(scambio, "GET, POST"); return;
+            }
+        }
+        if (percorso.startsWith("/interventi/")) {
+            String id = percorso.substring("/interventi/".length()); // getPath() è già decodificato
+            switch (metodo) {
+                case "GET":    rispondi(scambio, 200, comeJson(logManager.cercaPerId(id))); return;
+                case "PATCH":  modifica(scambio, id); return;
+                case "DELETE": elimina(scambio, id);  return;
+                default:       nonAmmesso(scambio, "GET, PATCH, DELETE"); return;
+            }
+        }
+        if (percorso.equals("/riepilogo")) {
+            if (!metodo.equals("GET")) {
+                nonAmmesso(scambio, "GET");
+                return;
+            }
+            rispondi(scambio, 200, comeJson(logManager.getRiepilogo(parametri.get("cliente"),
+                    data(parametri.get("da")), data(parametri.get("a")))));
+            return;
+        }
+        if (percorso.equals("/salva")) {
+            if (!metodo.equals("POST")) {
+                nonAmmesso(scambio, "POST");
+                return;
+            }
+            if (logManager.salva()) {
+                rispondi(scambio, 200, Map.of("salvato", true));
+            } else {
+                // Il dettaglio (file, errore di I/O) è già su stderr, nel log del server.
+                rispondi(scambio, 500, errore("salvataggio fallito, le modifiche restano da salvare: "
+                        + "dettagli nel log del server"));
+            }
+            return;
+        }
+        if (percorso.equals("/tariffe")) {
+            if (!metodo.equals("POST")) {
+                nonAmmesso(scambio, "POST");
+                return;
+            }
+            Tariffe regole;
+            try {
+                regole = Tariffe.leggi(fileTariffe); // non valido: 400 da gestisci()
+            } catch (IOException e) {
+                // Qui IOException è del file, non della connessione: gestisci() non risponderebbe.
+                rispondi(scambio, 500, errore("tariffe non leggibili: " + e.getMessage()));
+                return;
+            }
+            logManager.setTariffe(regole);
+            rispondi(scambio, 200, Map.of("origine", regole.getOrigine(), "regole", regole.getNumeroRegole()));
+            return;
+        }
+        rispondi(scambio, 404, errore("percorso sconosciuto: " + percorso));
+    }
+
+    // --- Endpoint ---
+
+    private void elenco(HttpExchange scambio, Map<String, String> p) throws IOException {
+        String testo = p.get("testo");
+        String cliente = p.get("cliente");
+        LocalDate da = data(p.get("da"));
+        LocalDate a  = data(p.get("a"));
+        Collection<Intervento> risultato;
+        if (testo != null) {
+            if (cliente != null || da != null || a != null) {
+                throw new IllegalArgumentException("testo non si combina con cliente, da e a");
+            }
+            risultato = logManager.cercaTesto(testo);
+        } else if (cliente != null) {
+            risultato = logManager.cercaPerCliente(cliente, da, a);
+        } else if (da != null || a != null) {
+            risultato = logManager.cercaPerPeriodo(da, a);
+        } else {
+            risultato = logManager.getTutti();
+        }
+        // Potenzialmente tutto il log: in streaming (chunked), un intervento alla volta.
+        scartaCorpo(scambio);
+        scambio.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        scambio.sendResponseHeaders(200, 0);
+        // Da qui il 200 è partito: un errore non può più diventare un 500, e chiudere il
+        // Writer chiuderebbe il chunked con un elenco troncato ma valido. Niente
+        // try-with-resources: si chiude solo a elenco completo, altrimenti RispostaInterrotta.
+        Writer out = new BufferedWriter(new OutputStreamWriter(scambio.getResponseBody(),
+                StandardCharsets.UTF_8), 1 << 16);
+        try {
+            out.write('[');
+            boolean primo = true;
+            for (Intervento i : risultato) {
+                if (!primo) {
+                    out.write(',');
+                }
+                primo = false;
+                Json.scrivi(out, comeJson(i));
+            }
+            out.write(']');
+            out.close();
+        } catch (IOException | RuntimeException | StackOverflowError e) {
+            throw new RispostaInterrotta(e);
+        }
+    }
+
+    private void crea(HttpExchange scambio) throws IOException {
+        Map<String, String> campi = Importatore.campiJson(corpo(scambio));
+        boolean idGenerato = campi.getOrDefault("id", "").isEmpty();
+        if (idGenerato) {
+            campi.put("id", logManager.nuovoId());
+        }
+        Intervento nuovo = Importatore.crea(campi);
+        // aggiungiTutti e non aggiungi: niente messaggio su console per ogni richiesta.
+        while (!logManager.aggiungiTutti(List.of(nuovo)).isEmpty()) {
+            if (!idGenerato) {
+                rispondi(scambio, 409, errore("ID già presente nel log: " + nuovo.getId()));
+                return;
+            }
+            nuovo.setId(logManager.nuovoId()); // non è ancora nel log: semplice assegnazione
+        }
+        scambio.getResponseHeaders().set("Location", "/interventi/" + nuovo.getId());
+        rispondi(scambio, 201, comeJson(nuovo));
+    }
+
+    private void modifica(HttpExchange scambio, String id) throws IOException, InterventoNonTrovatoException {
+        Map<String, String> campi = Importatore.campiJson(corpo(scambio));
+        // Tutto validato prima di toccare l'intervento: con LogManager.modifica un errore a metà
+        // lascerebbe applicati i campi già impostati.
+        String tipo = campi.remove("tipo");
+        String nuovoId = campi.remove("id");
+        if (nuovoId != null && !nuovoId.equalsIgnoreCase(id)) {
+            throw new IllegalArgumentException("l'ID non si può modificare");
+        }
+        String cliente     = facoltativo(campi, "cliente");
+        LocalDate data     = campi.containsKey("data") ? Importatore.data(facoltativo(campi, "data")) : null;
+        String descrizione = facoltativo(campi, "descrizione");
+        String ricambio    = facoltativo(campi, "pezzoricambio");
+        String sistema     = facoltativo(campi, "sistemaoperativo");
+        String dettaglio   = facoltativo(campi, "dettaglio");
+        if (!campi.isEmpty()) {
+            throw new IllegalArgumentException("campi sconosciuti: " + campi.keySet());
+        }
+        Intervento modificato = logManager.modifica(id, i -> {
+            boolean hardware = i instanceof InterventoHardware;
+            if (tipo != null && !tipo.equalsIgnoreCase(i.getTipo())) {
+                throw new IllegalArgumentException("il tipo non si può modificare (è " + i.getTipo() + ")");
+            }
+            if ((hardware && sistema != null) || (!hardware && ricambio != null)) {
+                throw new IllegalArgumentException("campo non valido per un intervento " + i.getTipo());
+            }
+            if (cliente != null && !cliente.equals(i.getCliente())) {
+                i.setCliente(cliente);
+            }
+            if (data != null && !data.equals(i.getData())) {
+                i.setData(data);
+            }
+            if (descrizione != null && !descrizione.equals(i.getDescrizione())) {
+                i.setDescrizione(descrizione);
+            }
+            String nuovoDettaglio = hardware ? (ricambio != null ? ricambio : dettaglio)
+                                             : (sistema != null ? sistema : dettaglio);
+            if (nuovoDettaglio != null) {
+                if (hardware) {
+                    InterventoHardware hw = (InterventoHardware) i;
+                    if (!nuovoDettaglio.equals(hw.getPezzoRicambio())) {
+                        hw.setPezzoRicambio(nuovoDettaglio);
+                    }
+                } else {
+                    InterventoSoftware sw = (InterventoSoftware) i;
+                    if (!nuovoDettaglio.equals(sw.getSistemaOperativo())) {
+                        sw.setSistemaOperativo(nuovoDettaglio);
+                    }
+                }
+            }
+        });
+        rispondi(scambio, 200, comeJson(modificato));
+    }
+
+    private void elimina(HttpExchange scambio, String id) throws IOException {
+        // eliminaTutti e non elimina: niente messaggio su console per ogni richiesta.
+        if (!logManager.eliminaTutti(List.of(id)).isEmpty()) {
+            rispondi(scambio, 404, errore("Nessun intervento trovato con ID: " + id));
+            return;
+        }
+        scartaCorpo(scambio);
+        scambio.sendResponseHeaders(204, -1);
+    }
+
+    private void nonAmmesso(HttpExchange scambio, String ammessi) throws IOException {
+        scambio.getResponseHeaders().set("Allow", ammessi);
+        rispondi(scambio, 405, errore("metodo non ammesso, usare " + ammessi));
+    }
+
+    // --- Conversioni ---
+
+    private static Map<String, Object> comeJson(Intervento i) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("tipo", i.getTipo());
+        m.put("id", i.getId());
+        m.put("cliente", i.getCliente());
+        m.put("data", i.getData().toString());
+        m.put("descrizione", i.getDescrizione());
+        if (i instanceof InterventoHardware) {
+            m.put("pezzoRicambio", ((InterventoHardware) i).getPezzoRicambio());
+        } else {
+            m.put("sistemaOperativo", ((InterventoSoftware) i).getSistemaOperativo());
+        }
+        m.put("tariffa", importo(Math.round(i.calcolaTariffa() * 100)));
+        return m;
+    }
+
+    private static Map<String, Object> comeJson(Colonne.Riepilogo r) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("totale", comeJson(r.getTotale()));
+        m.put("perTipo", gruppi(r.getPerTipo()));
+        m.put("perMese", gruppi(r.getPerMese()));
+        m.put("perCliente", gruppi(r.getPerCliente()));
+        m.put("perSistema", gruppi(r.getPerSistema()));
+        return m;
+    }
+
+    private static Map<String, Object> gruppi(Map<?, Aggregati.Totale> gruppi) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        gruppi.forEach((chiave, totale) -> m.put(chiave.toString(), comeJson(totale)));
+        return m;
+    }
+
+    private static Map<String, Object> comeJson(Aggregati.Totale t) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("numero", t.getNumero());
+        m.put("importo", importo(Math.round(t.getImporto() * 100)));
+        return m;
+    }
+
+    /** Centesimi come numero con due decimali esatti: 77.00, non 76.99999999999999. */
+    private static BigDecimal importo(long centesimi) {
+        return BigDecimal.valueOf(centesimi, 2);
+    }
+
+    private static Map<String, String> errore(String messaggio) {
+        return Map.of("errore", messaggio == null ? "errore" : messaggio);
+    }
+
+    // --- HTTP ---
+
+    private static void rispondi(HttpExchange scambio, int codice, Object corpo) throws IOException {
+        byte[] byteCorpo = Json.scrivi(corpo).getBytes(StandardCharsets.UTF_8);
+        scartaCorpo(scambio);
+        scambio.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        scambio.sendResponseHeaders(codice, byteCorpo.length);
+        try (OutputStream out = scambio.getResponseBody()) {
+            out.write(byteCorpo);
+        }
+    }
+
+    private static String corpo(HttpExchange scambio) throws IOException {
+        // Non si chiude: lo chiude lo scambio, e scartaCorpo deve poterlo ancora leggere.
+        byte[] letti = scambio.getRequestBody().readNBytes(MAX_CORPO + 1);
+        if (letti.length > MAX_CORPO) {
+            throw new CorpoTroppoGrande();
+        }
+        return new String(letti, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Legge quel che resta del corpo della richiesta (per GET e DELETE, niente) prima di
+     * rispondere. Il server riusa la connessione solo se la richiesta era letta fino in fondo
+     * quando la risposta finisce di partire, e lo controlla subito, non alla chiusura dello
+     * scambio: senza questo chiudeva ogni tanto la connessione e la richiesta successiva del
+     * client falliva. Oltre MAX_CORPO si lascia perdere e la connessione viene chiusa.
+     */
+    private static void scartaCorpo(HttpExchange scambio) throws IOException {
+        InputStream in = scambio.getRequestBody();
+        byte[] buffer = new byte[8192];
+        long letti = 0;
+        int n;
+        while (letti <= MAX_CORPO && (n = in.read(buffer)) >= 0) {
+            letti += n;
+        }
+    }
+
+    /** Il corpo supera MAX_CORPO: 413 invece di leggerlo tutto. */
+    private static final class CorpoTroppoGrande extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        CorpoTroppoGrande() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** Un errore dopo le intestazioni di una risposta in streaming: vedi gestisci(). */
+    private static final class RispostaInterrotta extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        RispostaInterrotta(Throwable causa) {
+            super(causa);
+        }
+    }
+
+    /** "a=1&amp;b=due%20parole" → {a=1, b=due parole}; parametri vuoti = assenti. */
+    private static Map<String, String> parametri(String query) {
+        Map<String, String> parametri = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return parametri;
+        }
+        for (String coppia : query.split("&")) {
+            int uguale = coppia.indexOf('=');
+            String nome = URLDecoder.decode(uguale < 0 ? coppia : coppia.substring(0, uguale), StandardCharsets.UTF_8);
+            String valore = uguale < 0 ? "" : URLDecoder.decode(coppia.substring(uguale + 1), StandardCharsets.UTF_8);
+            if (!valore.isEmpty()) {
+                parametri.put(nome, valore);
+            }
+        }
+        return parametri;
+    }
+
+    private static LocalDate data(String testo) {
+        return testo == null ? null : Importatore.data(testo);
+    }
+
+    /** Il campo se presente (e allora non vuoto), altrimenti null. Lo toglie da campi. */
+    private static String facoltativo(Map<String, String> campi, String nome) {
+        if (!campi.containsKey(nome)) {
+            return null;
+        }
+        String valore = campi.remove(nome);
+        if (valore.isEmpty()) {
+            throw new IllegalArgumentException("campo '" + nome + "' vuoto");
+        }
+        return valore;
+    }
+}
@@ -0,0 +1,472 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Lettura e scrittura dello snapshot (il file .dat) nel formato binario versionato.
+ *
+ * Formato del file (versione 2):
+ *   header = MAGIC (int) + VERSIONE (byte) + numero di record (int)
+ *            + lunghezza della tabella in byte (int) + tabella
+ *   tabella = numero di valori (varint) + valori (stringhe del codec)
+ *   record = lunghezza (int) + record codificato da CodecIntervento con la tabella
+ *
+ * La tabella contiene una volta sola ogni cliente, ricambio e sistema operativo; i record
+ * li indicano con il codice (vedi CodecIntervento.Tabella). La versione 1 non ha tabella
+ * e ripete le stringhe in ogni record: resta leggibile, il prossimo snapshot la converte.
+ *
+ * La lunghezza davanti a ogni record permette di validarlo e di saltarlo senza decodificarlo.
+ * L'I/O passa da FileChannel con un buffer diretto grande: una system call ogni MB
+ * invece che una per campo, e nessuna copia extra heap → buffer nativo.
+ */
+final class SnapshotBinario {
+
+    static final int  MAGIC    = 0x50544C44; // "PTLD"
+    static final byte VERSIONE = 2;
+    static final byte VERSIONE_SENZA_TABELLA = 1;
+    static final int  HEADER   = Integer.BYTES + 1 + Integer.BYTES; // fino al numero di record
+
+    private static final int DIMENSIONE_BUFFER = 1 << 20;
+
+    private SnapshotBinario() {
+    }
+
+    /**
+     * true se il file inizia con il MAGIC di questo formato. I vecchi .dat scritti con
+     * ObjectOutputStream iniziano con 0xACED e vanno letti con la serializzazione Java.
+     */
+    static boolean riconosce(Path file) throws IOException {
+        try (FileChannel canale = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer inizio = ByteBuffer.allocate(Integer.BYTES);
+            while (inizio.hasRemaining() && canale.read(inizio) >= 0) {
+                // continua finché non abbiamo 4 byte o il file finisce
+            }
+            return !inizio.hasRemaining() && inizio.getInt(0) == MAGIC;
+        }
+    }
+
+    /** Scrive (troncandolo) il file indicato e lo forza su disco. */
+    static void scrivi(Path file, Collection<Intervento> interventi) throws IOException {
+        CodecIntervento.Tabella tabella = new CodecIntervento.Tabella(null);
+        interventi.forEach(tabella::aggiungi);
+        try (Scrittore scrittore = new Scrittore(file, interventi.size(), tabella)) {
+            for (Intervento i : interventi) {
+                scrittore.scrivi(i);
+            }
+        }
+    }
+
+    /**
+     * Scrittura record per record, per chi deve mescolare interventi da codificare e record
+     * già codificati (es. quelli mai decodificati del caricamento pigro, copiati così come sono).
+     * Ogni metodo ritorna la posizione del record nel nuovo file. close() svuota il buffer
+     * e forza il file su disco.
+     *
+     * La tabella va all'inizio del file, quindi deve contenere già tutti i valori degli
+     * interventi che verranno scritti.
+     */
+    static final class Scrittore implements Closeable {
+
+        private final FileChannel canale;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(DIMENSIONE_BUFFER);
+        private final CodecIntervento.Tabella tabella;
+        private long scaricati;
+
+        Scrittore(Path file, int numeroRecord, CodecIntervento.Tabella tabella) throws IOException {
+            this.tabella = tabella;
+            canale = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                ByteBuffer valori = codificaTabella(tabella.valori());
+                buf.putInt(MAGIC).put(VERSIONE).putInt(numeroRecord).putInt(valori.remaining());
+                if (valori.remaining() > buf.remaining()) {
+                    svuota();
+                    scaricati += valori.remaining();
+                    scriviTutto(valori);
+                } else {
+                    buf.put(valori);
+                }
+            } catch (IOException | RuntimeException e) {
+                canale.close();
+                throw e;
+            }
+        }
+
+        int scrivi(Intervento i) throws IOException {
+            for (int tentativo = 0; tentativo < 2; tentativo++) {
+                int inizio = buf.position();
+                long posizione = scaricati + inizio;
+                try {
+                    buf.putInt(0); // lunghezza, completata sotto quando il record è scritto
+                    CodecIntervento.scrivi(i, buf, tabella);
+                    buf.putInt(inizio, buf.position() - inizio - Integer.BYTES);
+                    return verificaPosizione(posizione);
+                } catch (BufferOverflowException e) {
+                    buf.position(inizio);
+                    svuota();
+                } catch (ArithmeticException e) {
+                    throw new IOException(e.getMessage(), e); // il salvataggio fallisce, i dati restano in memoria
+                }
+            }
+            return scriviRecordGrande(i);
+        }
+
+        /**
+         * Copia lunghezza + record che iniziano a {@code posizione} in {@code sorgente}.
+         * Il record deve venire da uno snapshot la cui tabella è l'inizio di quella di questo
+         * scrittore (vedi il costruttore di CodecIntervento.Tabella): i codici restano validi.
+         */
+        int copia(ByteBuffer sorgente, int posizione) throws IOException {
+            int totale = Integer.BYTES + sorgente.getInt(posizione);
+            ByteBuffer record = sorgente.duplicate();
+            record.limit(posizione + totale).position(posizione);
+            if (totale > buf.remaining()) {
+                svuota();
+            }
+            long nuova = scaricati + buf.position();
+            if (totale > buf.remaining()) {
+                scriviTutto(record);
+                scaricati += totale;
+            } else {
+                buf.put(record);
+            }
+            return verificaPosizione(nuova);
+        }
+
+        /** Caso raro: un record che non sta nemmeno in un buffer vuoto da 1 MB. */
+        private int scriviRecordGrande(Intervento i) throws IOException {
+            long posizione = scaricati; // il buffer principale è appena stato svuotato
+            for (int capacita = DIMENSIONE_BUFFER * 2; ; capacita *= 2) {
+                ByteBuffer grande = ByteBuffer.allocate(capacita);
+                try {
+                    grande.putInt(0);
+                    CodecIntervento.scrivi(i, grande, tabella);
+                    grande.putInt(0, grande.position() - Integer.BYTES);
+                    grande.flip();
+                    scaricati += grande.remaining();
+                    scriviTutto(grande);
+                    return verificaPosizione(posizione);
+                } catch (BufferOverflowException e) {
+                    // raddoppia e riprova
+                }
+            }
+        }
+
+        /** Numero di valori + valori, in un buffer già pronto da leggere. */
+        private static ByteBuffer codificaTabella(String[] valori) {
+            for (int capacita = DIMENSIONE_BUFFER / 16; ; capacita *= 2) {
+                ByteBuffer codificata = ByteBuffer.allocate(capacita);
+                try {
+                    CodecIntervento.scriviVarint(valori.length, codificata);
+                    for (String v : valori) {
+                        CodecIntervento.scriviStringa(v, codificata);
+                    }
+                    return codificata.flip();
+                } catch (BufferOverflowException e) {
+                    // raddoppia e riprova
+                }
+            }
+        }
+
+        /** Il caricamento pigro indirizza i record con un int: file oltre 2 GB non sono supportati. */
+        private static int verificaPosizione(long posizione) throws IOException {
+            if (posizione > Integer.MAX_VALUE) {
+                throw new IOException("snapshot oltre i 2 GB non supportato");
+            }
+            return (int) posizione;
+        }
+
+        private void svuota() throws IOException {
+            buf.flip();
+            scaricati += buf.remaining();
+            scriviTutto(buf);
+            buf.clear();
+        }
+
+        private void scriviTutto(ByteBuffer dati) throws IOException {
+            while (dati.hasRemaining()) {
+                canale.write(dati);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (canale) {
+                svuota();
+                // Il file verrà rinominato sopra il .dat (e il journal cancellato):
+                // deve essere davvero su disco prima che diventi l'unica copia dei dati.
+                canale.force(false);
+            }
+        }
+    }
+
+    /**
+     * Legge tutti i record passandoli a {@code destinazione} nell'ordine del file.
+     *
+     * @return numero di record letti
+     */
+    static int leggi(Path file, Consumer<Intervento> destinazione) throws IOException {
+        try (FileChannel canale = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(DIMENSIONE_BUFFER);
+            buf.flip(); // buffer vuoto, in modalità lettura
+            if (!garantisci(buf, canale, HEADER) || buf.getInt() != MAGIC) {
+                throw new IOException("'" + file + "' non è uno snapshot binario");
+            }
+            byte versione = verificaVersione(buf.get());
+            int attesi = buf.getInt();
+            String[] valori = null;
+            if (versione != VERSIONE_SENZA_TABELLA) {
+                if (!garantisci(buf, canale, Integer.BYTES)) {
+                    throw new IOException("snapshot troncato nell'header");
+                }
+                int lunghezza = buf.getInt();
+                valori = leggiTabella(leggiBlocco(buf, canale, lunghezza, "tabella"), lunghezza);
+            }
+            for (int letti = 0; letti < attesi; letti++) {
+                if (!garantisci(buf, canale, Integer.BYTES)) {
+                    throw new IOException("snapshot troncato dopo " + letti + " record su " + attesi);
+                }
+                int lunghezza = buf.getInt();
+                destinazione.accept(leggiRecord(buf, canale, lunghezza, valori));
+            }
+            return attesi;
+        }
+    }
+
+    // --- Caricamento pigro (file mappato in memoria) ---
+
+    /**
+     * Uno snapshot mappato in memoria con la sua tabella già decodificata: i record si
+     * decodificano uno alla volta, quando servono, e si possono copiare così come sono in
+     * uno snapshot nuovo che estende la stessa tabella.
+     */
+    static final class Mappa {
+        final ByteBuffer dati;
+        private final String[] valori;  // null per uno snapshot senza tabella (versione 1)
+        private final int numeroRecord;
+        private final int primoRecord;
+
+        private Mappa(ByteBuffer dati, String[] valori, int numeroRecord, int primoRecord) {
+            this.dati         = dati;
+            this.valori       = valori;
+            this.numeroRecord = numeroRecord;
+            this.primoRecord  = primoRecord;
+        }
+
+        int numeroRecord() {
+            return numeroRecord;
+        }
+
+        /** true se i record si possono copiare in un file scritto con {@link #estendiTabella}. */
+        boolean haTabella() {
+            return valori != null;
+        }
+
+        /** Tabella nuova che parte da questa: i codici dei record di questa mappa restano validi. */
+        CodecIntervento.Tabella estendiTabella() {
+            return new CodecIntervento.Tabella(valori);
+        }
+    }
+
+    /** Legge header e tabella di uno snapshot mappato. */
+    static Mappa apri(ByteBuffer dati) throws IOException {
+        ByteBuffer buf = dati.duplicate();
+        if (buf.remaining() < HEADER || buf.getInt() != MAGIC) {
+            throw new IOException("il file non è uno snapshot binario");
+        }
+        byte versione = verificaVersione(buf.get());
+        int attesi = buf.getInt();
+        String[] valori = null;
+        try {
+            if (versione != VERSIONE_SENZA_TABELLA) {
+                int lunghezza = buf.getInt();
+                if (lunghezza < 0 || lunghezza > buf.remaining()) {
+                    throw new IOException("tabella troncata");
+                }
+                ByteBuffer tabella = buf.slice();
+                tabella.limit(lunghezza);
+                valori = leggiTabella(tabella, lunghezza);
+                buf.position(buf.position() + lunghezza);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("snapshot troncato nell'header", e);
+        }
+        return new Mappa(dati, valori, attesi, buf.position());
+    }
+
+    /**
+     * Scorre uno snapshot mappato leggendo solo lunghezza e ID di ogni record: è tutto
+     * ciò che serve per costruire l'indice ID → posizione senza decodificare gli interventi.
+     *
+     * @return numero di record indicizzati
+     */
+    static int indicizza(Mappa mappa, IndiceRecord destinazione) throws IOException {
+        ByteBuffer buf = mappa.dati.duplicate();
+        buf.position(mappa.primoRecord);
+        int attesi = mappa.numeroRecord;
+        try {
+            for (int letti = 0; letti < attesi; letti++) {
+                int posizione = buf.position();
+                int lunghezza = buf.getInt();
+                if (lunghezza <= 0 || lunghezza > buf.remaining()) {
+                    throw new IOException("snapshot troncato dopo " + letti + " record su " + attesi);
+                }
+                int fine = buf.position() + lunghezza;
+                buf.get(); // tipo: non serve per l'indice
+                destinazione.record(CodecIntervento.leggiStringa(buf), posizione);
+                buf.position(fine);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("record corrotto: " + e, e);
+        }
+        return attesi;
+    }
+
+    /** Decodifica il record che inizia a {@code posizione} (quella ricevuta da indicizza). */
+    static Intervento leggiA(Mappa mappa, int posizione) throws IOException {
+        ByteBuffer buf = mappa.dati.duplicate();
+        buf.position(posizione);
+        int lunghezza = buf.getInt();
+        if (lunghezza <= 0 || lunghezza > buf.remaining()) {
+            throw new IOException("lunghezza di record non valida: " + lunghezza);
+        }
+        return decodifica(buf, lunghezza, mappa.valori);
+    }
+
+    /** Ricevente di indicizza(): ID del record e posizione nel file. */
+    @FunctionalInterface
+    interface IndiceRecord {
+        void record(String id, int posizione);
+    }
+
+    // --- Lettura ---
+
+    private static byte verificaVersione(byte versione) throws IOException {
+        if (versione != VERSIONE && versione != VERSIONE_SENZA_TABELLA) {
+            throw new IOException("versione dello snapshot non supportata: " + versione);
+        }
+        return versione;
+    }
+
+    private static Intervento leggiRecord(ByteBuffer buf, FileChannel canale, int lunghezza, String[] valori)
+            throws IOException {
+        if (lunghezza <= 0) {
+            throw new IOException("lunghezza di record non valida: " + lunghezza);
+        }
+        return decodifica(leggiBlocco(buf, canale, lunghezza, "record"), lunghezza, valori);
+    }
+
+    /**
+     * Rende disponibili i prossimi {@code lunghezza} byte: nel buffer principale, o in uno
+     * dedicato se non ci stanno nemmeno a buffer vuoto.
+     */
+    private static ByteBuffer leggiBlocco(ByteBuffer buf, FileChannel canale, int lunghezza, String cosa)
+            throws IOException {
+        if (lunghezza < 0) {
+            throw new IOException("lunghezza di " + cosa + " non valida: " + lunghezza);
+        }
+        if (lunghezza > buf.capacity()) {
+            return leggiRecordGrande(buf, canale, lunghezza);
+        }
+        if (!garantisci(buf, canale, lunghezza)) {
+            throw new IOException("snapshot troncato a metà di un " + cosa);
+        }
+        return buf;
+    }
+
+    /**
+     * Decodifica i {@code lunghezza} byte della tabella. I record dello stesso file che
+     * indicano lo stesso codice ricevono la stessa istanza; cliente e sistema operativo
+     * passano poi dal Dizionario nei costruttori, e sono condivisi anche con gli interventi
+     * creati dopo (import, menu).
+     */
+    private static String[] leggiTabella(ByteBuffer buf, int lunghezza) throws IOException {
+        int limite = buf.limit();
+        int fine   = buf.position() + lunghezza;
+        buf.limit(fine);
+        try {
+            int numero = CodecIntervento.leggiVarint(buf);
+            // Ogni valore occupa almeno un byte: un numero più grande è un file corrotto,
+            // da non usare come dimensione di un array.
+            if (numero > buf.remaining()) {
+                throw new IOException("tabella corrotta: " + numero + " valori in " + lunghezza + " byte");
+            }
+            String[] valori = new String[numero];
+            for (int k = 0; k < numero; k++) {
+                valori[k] = CodecIntervento.leggiStringa(buf);
+            }
+            if (buf.position() != fine) {
+                throw new IOException("tabella di lunghezza inattesa");
+            }
+            return valori;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("tabella corrotta: " + e, e);
+        } finally {
+            buf.limit(limite);
+            buf.position(Math.min(fine, limite));
+        }
+    }
+
+    /**
+     * Decodifica esattamente {@code lunghezza} byte: il limite temporaneo impedisce al
+     * codec di sconfinare nel record successivo se il dato è corrotto.
+     */
+    static Intervento decodifica(ByteBuffer buf, int lunghezza, String[] valori) throws IOException {
+        int limite = buf.limit();
+        int fine   = buf.position() + lunghezza;
+        buf.limit(fine);
+        try {
+            Intervento i = CodecIntervento.leggi(buf, valori);
+            if (buf.position() != fine) {
+                throw new IOException("record di lunghezza inattesa");
+            }
+            return i;
+        } catch (BufferUnderflowException | IllegalArgumentException | DateTimeException e) {
+            throw new IOException("record corrotto: " + e, e);
+        } finally {
+            buf.limit(limite);
+            buf.position(Math.min(fine, limite));
+        }
+    }
+
+    private static ByteBuffer leggiRecordGrande(ByteBuffer buf, FileChannel canale, int lunghezza)
+            throws IOException {
+        ByteBuffer grande = ByteBuffer.allocate(lunghezza);
+        grande.put(buf);
+        while (grande.hasRemaining()) {
+            if (canale.read(grande) < 0) {
+                throw new IOException("snapshot troncato a metà di un record");
+            }
+        }
+        grande.flip();
+        buf.clear().flip(); // il buffer principale è stato consumato
+        return grande;
+    }
+
+    /**
+     * Assicura che nel buffer (in modalità lettura) ci siano almeno {@code n} byte,
+     * ricaricandolo dal canale se serve. false se il file finisce prima.
+     */
+    private static boolean garantisci(ByteBuffer buf, FileChannel canale, int n) throws IOException {
+        if (buf.remaining() >= n) {
+            return true;
+        }
+        buf.compact();
+        while (buf.position() < n) {
+            if (canale.read(buf) < 0) {
+                buf.flip();
+                return false;
+            }
+        }
+        buf.flip();
+        return true;
+    }
+}
@@ -0,0 +1,304 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Regole delle tariffe, lette da un file JSON (tariffe.json, vedi -Dptl.tariffe in Main) invece
+ * che scritte nel codice: cambiare un prezzo non richiede di ricompilare.
+ *
+ *   {"regole": [
+ *     {"tipo": "HW", "tariffa": 65, "supplemento": 25, "nota": "manodopera + trasferta"},
+ *     {"tipo": "SW", "tariffa": 55},
+ *     {"tipo": "SW", "sistema": "*server*", "percentuale": 40},
+ *     {"cliente": "Rossi Srl", "da": "2025-01-01", "percentuale": -10}
+ *   ]}
+ *
+ * Condizioni (tutte facoltative, assenti = qualsiasi valore): tipo (HW/SW), sistema (solo SW,
+ * con * e ? come caratteri jolly, maiuscole indifferenti), cliente (maiuscole e spazi ai lati
+ * indifferenti), da e a (date, estremi inclusi). Effetti, in quest'ordine: tariffa sostituisce
+ * l'importo, percentuale lo aumenta o lo riduce, supplemento ci aggiunge (o toglie) un importo
+ * fisso. Si parte da 0 e si applicano, nell'ordine del file, tutte le regole che valgono per
+ * l'intervento. Importi in euro e percentuali con al massimo due decimali; i conti sono in
+ * centesimi, quindi 55 + 40% fa 77,00 esatti. Senza file valgono le regole qui sopra senza
+ * l'ultima, cioè le tariffe storiche del programma.
+ *
+ * Le regole vengono compilate una volta: divise per tipo, con i modelli del sistema operativo
+ * convertiti in espressioni regolari, e per gli SW l'elenco delle regole che valgono per un
+ * certo sistema operativo viene ricordato alla prima richiesta (i valori diversi sono pochi,
+ * e grazie al Dizionario sono sempre le stesse stringhe). Per un intervento restano da
+ * controllare solo cliente e date. Il risultato viene poi tenuto nell'intervento stesso (vedi
+ * Intervento.tariffaDalleRegole) finché non cambiano le regole o un campo che le riguarda.
+ *
+ * Ogni LogManager ha le sue regole e le cambia con LogManager.setTariffe, che riallinea anche
+ * i suoi totali già calcolati; un intervento usa quelle del LogManager a cui appartiene, le
+ * predefinite se non appartiene a nessuno. Immutabile.
+ */
+final class Tariffe {
+
+    static final String FILE_PREDEFINITO = "tariffe.json";
+
+    private static final String ORIGINE_PREDEFINITE = "predefinite";
+    private static final String JSON_PREDEFINITE = "{\"regole\": ["
+            + "{\"tipo\": \"HW\", \"tariffa\": 65, \"supplemento\": 25, \"nota\": \"manodopera + trasferta\"},"
+            + "{\"tipo\": \"SW\", \"tariffa\": 55},"
+            + "{\"tipo\": \"SW\", \"sistema\": \"*server*\", \"percentuale\": 40, \"nota\": \"ambienti server\"}"
+            + "]}";
+
+    private static final Set<String> CHIAVI = Set.of(
+            "tipo", "sistema", "cliente", "da", "a", "tariffa", "percentuale", "supplemento", "nota");
+
+    // Oltre, i centesimi di una tariffa potrebbero non stare in un int (vedi Intervento).
+    private static final BigDecimal MAX_IMPORTO = BigDecimal.valueOf(1_000_000);
+
+    // Limite alle voci ricordate per sistema operativo: oltre si ricalcola e basta.
+    private static final int MAX_SISTEMI = 4096;
+
+    // La versione è nella cache di ogni intervento, su 24 bit; 0 = tariffa da calcolare.
+    private static final int MAX_VERSIONE = (1 << 24) - 1;
+    private static final AtomicInteger ULTIMA_VERSIONE = new AtomicInteger();
+
+    // Dopo ULTIMA_VERSIONE, che il costruttore usa.
+    private static final Tariffe PREDEFINITE = compila(JSON_PREDEFINITE, ORIGINE_PREDEFINITE);
+
+    private final int versione;
+    private final String origine;
+    private final int numeroRegole;
+    private final Regola[] perHardware;
+    private final Regola[] perSoftware;
+    private final Map<String, Regola[]> perSistema = new ConcurrentHashMap<>();
+
+    private Tariffe(List<Regola> regole, String origine) {
+        this.versione     = ULTIMA_VERSIONE.updateAndGet(v -> v == MAX_VERSIONE ? 1 : v + 1);
+        this.origine      = origine;
+        this.numeroRegole = regole.size();
+        this.perHardware  = regole.stream().filter(r -> r.hardware != Boolean.FALSE).toArray(Regola[]::new);
+        this.perSoftware  = regole.stream().filter(r -> r.hardware != Boolean.TRUE).toArray(Regola[]::new);
+    }
+
+    /** Le tariffe storiche del programma: HW 65 + 25 €, SW 55 €, +40% per i sistemi server. */
+    static Tariffe predefinite() {
+        return PREDEFINITE;
+    }
+
+    /**
+     * Legge e compila il file delle regole; se non esiste, le regole predefinite.
+     *
+     * @throws IOException              se il file esiste ma non si riesce a leggere
+     * @throws IllegalArgumentException se il file non è valido (il messaggio indica la regola)
+     */
+    static Tariffe leggi(Path file) throws IOException {
+        String testo;
+        try {
+            testo = Files.readString(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return predefinite();
+        }
+        if (!testo.isEmpty() && testo.charAt(0) == '\uFEFF') {
+            testo = testo.substring(1); // BOM dei file salvati dal Blocco note
+        }
+        return compila(testo, file.toString());
+    }
+
+    private static Tariffe compila(String json, String origine) {
+        Object regole = Json.leggiOggetto(json).get("regole");
+        if (!(regole instanceof List)) {
+            throw new IllegalArgumentException("manca l'elenco \"regole\"");
+        }
+        List<Regola> compilate = new ArrayList<>();
+        for (Object regola : (List<?>) regole) {
+            try {
+                if (!(regola instanceof Map)) {
+                    throw new IllegalArgumentException("atteso un oggetto");
+                }
+                compilate.add(new Regola((Map<?, ?>) regola));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("regola " + (compilate.size() + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return new Tariffe(compilate, origine);
+    }
+
+    int getVersione() {
+        return versione;
+    }
+
+    /** Il file da cui vengono le regole, oppure "predefinite". */
+    String getOrigine() {
+        return origine;
+    }
+
+    /** true per le regole predefinite (nessun file, o file non valido). */
+    boolean isPredefinite() {
+        return origine.equals(ORIGINE_PREDEFINITE);
+    }
+
+    int getNumeroRegole() {
+        return numeroRegole;
+    }
+
+    /** Tariffa dell'intervento in centesimi, con i suoi valori di adesso. */
+    long centesimi(Intervento i) {
+        Regola[] regole;
+        if (i instanceof InterventoSoftware) {
+            String sistema = ((InterventoSoftware) i).getSistemaOperativo();
+            regole = perSistema.get(sistema);
+            if (regole == null) {
+                regole = perSistema(sistema);
+                if (perSistema.size() < MAX_SISTEMI) {
+                    perSistema.put(sistema, regole);
+                }
+            }
+        } else {
+            regole = perHardware;
+        }
+        String cliente = i.getCliente();
+        long giorno = i.getData().toEpochDay();
+        long centesimi = 0;
+        for (Regola r : regole) {
+            if (r.vale(cliente, giorno)) {
+                centesimi = r.applica(centesimi);
+            }
+        }
+        return centesimi;
+    }
+
+    private Regola[] perSistema(String sistema) {
+        return Arrays.stream(perSoftware).filter(r -> r.valePerSistema(sistema)).toArray(Regola[]::new);
+    }
+
+    /** Una regola compilata. */
+    private static final class Regola {
+        final Boolean hardware;   // null = entrambi i tipi
+        final Pattern sistema;    // null = qualsiasi
+        final String cliente;     // senza spazi ai lati; null = qualsiasi
+        final long da;            // giorni dall'epoch, estremi inclusi
+        final long a;
+        final long tariffa;       // centesimi; -1 = invariata
+        final long percentuale;   // centesimi di punto: 40% = 4000
+        final long supplemento;   // centesimi
+
+        Regola(Map<?, ?> campi) {
+            for (Object chiave : campi.keySet()) {
+                if (!CHIAVI.contains(chiave)) {
+                    throw new IllegalArgumentException("chiave sconosciuta '" + chiave + "' (ammesse: tipo, sistema, "
+                            + "cliente, da, a, tariffa, percentuale, supplemento, nota)");
+                }
+            }
+            String tipo = testo(campi, "tipo");
+            String modello = testo(campi, "sistema");
+            if (tipo == null) {
+                hardware = modello != null ? Boolean.FALSE : null;
+            } else {
+                switch (tipo.toLowerCase(Locale.ROOT)) {
+                    case "hw": case "hardware": hardware = Boolean.TRUE;  break;
+                    case "sw": case "software": hardware = Boolean.FALSE; break;
+                    default: throw new IllegalArgumentException("tipo non riconosciuto: '" + tipo + "'");
+                }
+            }
+            if (hardware == Boolean.TRUE && modello != null) {
+                throw new IllegalArgumentException("il sistema operativo vale solo per gli interventi SW");
+            }
+            sistema = modello == null ? null : modello(modello);
+            cliente = testo(campi, "cliente");
+            String inizio = testo(campi, "da");
+            String fine = testo(campi, "a");
+            da = inizio == null ? Long.MIN_VALUE : Importatore.data(inizio).toEpochDay();
+            a  = fine == null ? Long.MAX_VALUE : Importatore.data(fine).toEpochDay();
+            if (da > a) {
+                throw new IllegalArgumentException("'da' è dopo 'a'");
+            }
+            tariffa     = campi.containsKey("tariffa") ? centesimi(campi, "tariffa", false) : -1;
+            percentuale = campi.containsKey("percentuale") ? centesimi(campi, "percentuale", true) : 0;
+            supplemento = campi.containsKey("supplemento") ? centesimi(campi, "supplemento", true) : 0;
+            if (tariffa < 0 && !campi.containsKey("percentuale") && !campi.containsKey("supplemento")) {
+                throw new IllegalArgumentException("serve almeno uno tra tariffa, percentuale e supplemento");
+            }
+            if (percentuale < -10_000) {
+                throw new IllegalArgumentException("percentuale sotto -100");
+            }
+        }
+
+        boolean valePerSistema(String valore) {
+            return sistema == null || sistema.matcher(valore).matches();
+        }
+
+        /** Tipo e sistema operativo sono già stati controllati (vedi perHardware e perSistema). */
+        boolean vale(String valoreCliente, long giorno) {
+            return giorno >= da && giorno <= a
+                    && (cliente == null || cliente.equalsIgnoreCase(valoreCliente.trim()));
+        }
+
+        long applica(long centesimi) {
+            if (tariffa >= 0) {
+                centesimi = tariffa;
+            }
+            if (percentuale != 0) {
+                centesimi = Math.round(centesimi * (10_000 + percentuale) / 10_000.0);
+            }
+            return centesimi + supplemento;
+        }
+
+        /** "*server*" → .*\Qserver\E.* , senza distinguere maiuscole e minuscole. */
+        private static Pattern modello(String modello) {
+            StringBuilder regex = new StringBuilder();
+            StringBuilder letterale = new StringBuilder();
+            for (char c : modello.toCharArray()) {
+                if (c == '*' || c == '?') {
+                    if (letterale.length() > 0) {
+                        regex.append(Pattern.quote(letterale.toString()));
+                        letterale.setLength(0);
+                    }
+                    regex.append(c == '*' ? ".*" : ".");
+                } else {
+                    letterale.append(c);
+                }
+            }
+            if (letterale.length() > 0) {
+                regex.append(Pattern.quote(letterale.toString()));
+            }
+            return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL);
+        }
+
+        private static String testo(Map<?, ?> campi, String chiave) {
+            Object valore = campi.get(chiave);
+            if (valore == null) {
+                return null;
+            }
+            if (!(valore instanceof String) || ((String) valore).isBlank()) {
+                throw new IllegalArgumentException("'" + chiave + "' deve essere un testo non vuoto");
+            }
+            return ((String) valore).trim();
+        }
+
+        /** Importo in euro (o percentuale) con al massimo due decimali, in centesimi. */
+        private static long centesimi(Map<?, ?> campi, String chiave, boolean negativo) {
+            Object valore = campi.get(chiave);
+            if (!(valore instanceof Number)) {
+                throw new IllegalArgumentException("'" + chiave + "' deve essere un numero");
+            }
+            BigDecimal numero = new BigDecimal(valore.toString());
+            if (numero.stripTrailingZeros().scale() > 2) {
+                throw new IllegalArgumentException("'" + chiave + "' ha più di due decimali: " + valore);
+            }
+            if (!negativo && numero.signum() < 0) {
+                throw new IllegalArgumentException("'" + chiave + "' non può essere sotto zero");
+            }
+            if (numero.abs().compareTo(MAX_IMPORTO) > 0) {
+                throw new IllegalArgumentException("'" + chiave + "' fuori scala: " + valore);
+            }
+            return numero.movePointRight(2).longValueExact();
+        }
+    }
+}
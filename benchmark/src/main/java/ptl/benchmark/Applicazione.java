@@ -0,0 +1,244 @@
+package ptl.benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Ponte verso le classi dell'applicazione, che stanno nel package di default.
+ *
+ * Java non permette di importare una classe del package di default da un package con
+ * nome, e JMH non accetta benchmark nel package di default: le chiamate passano quindi
+ * da MethodHandle. Sono static final, per cui il JIT le tratta come costanti e le
+ * inlinea: il costo misurato è quello della chiamata diretta, non della reflection.
+ *
+ * Gli oggetti dell'applicazione (LogManager, Intervento) circolano come Object.
+ */
+final class Applicazione {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private static final Class<?> LOG_MANAGER  = classe("LogManager");
+    private static final Class<?> INTERVENTO   = classe("Intervento");
+    private static final Class<?> PERSISTENZA  = classe("LogManager$Persistenza");
+    private static final Class<?> CARICAMENTO  = classe("LogManager$Caricamento");
+
+    private static final MethodHandle NUOVO_LOG_MANAGER = costruttore(LOG_MANAGER,
+            MethodType.methodType(void.class, Path.class, PERSISTENZA, CARICAMENTO),
+            MethodType.methodType(Object.class, Path.class, Object.class, Object.class));
+    private static final MethodHandle NUOVO_HARDWARE = costruttore(classe("InterventoHardware"),
+            MethodType.methodType(void.class, String.class, String.class, LocalDate.class, String.class, String.class),
+            MethodType.methodType(Object.class, String.class, String.class, LocalDate.class, String.class, String.class));
+    private static final MethodHandle NUOVO_SOFTWARE = costruttore(classe("InterventoSoftware"),
+            MethodType.methodType(void.class, String.class, String.class, LocalDate.class, String.class, String.class),
+            MethodType.methodType(Object.class, String.class, String.class, LocalDate.class, String.class, String.class));
+
+    private static final MethodHandle AGGIUNGI       = metodo(LOG_MANAGER, "aggiungi",
+            MethodType.methodType(void.class, INTERVENTO));
+    private static final MethodHandle AGGIUNGI_TUTTI = metodo(LOG_MANAGER, "aggiungiTutti",
+            MethodType.methodType(List.class, Collection.class));
+    private static final MethodHandle CERCA_PER_ID   = metodo(LOG_MANAGER, "cercaPerId",
+            MethodType.methodType(INTERVENTO, String.class));
+    private static final MethodHandle ELIMINA        = metodo(LOG_MANAGER, "elimina",
+            MethodType.methodType(void.class, String.class));
+    private static final MethodHandle ELIMINA_TUTTI  = metodo(LOG_MANAGER, "eliminaTutti",
+            MethodType.methodType(List.class, Collection.class));
+    private static final MethodHandle GET_TUTTI      = metodo(LOG_MANAGER, "getTutti",
+            MethodType.methodType(Collection.class));
+    private static final MethodHandle GET_TOTALE     = metodo(LOG_MANAGER, "getTotale",
+            MethodType.methodType(classe("Aggregati$Totale")));
+    private static final MethodHandle SALVA          = metodo(LOG_MANAGER, "salva",
+            MethodType.methodType(void.class));
+    private static final MethodHandle CARICA         = metodo(LOG_MANAGER, "carica",
+            MethodType.methodType(void.class));
+
+    private static final MethodHandle SET_DESCRIZIONE = metodo(INTERVENTO, "setDescrizione",
+            MethodType.methodType(void.class, String.class));
+    private static final MethodHandle CALCOLA_TARIFFA = metodo(INTERVENTO, "calcolaTariffa",
+            MethodType.methodType(double.class));
+
+    private Applicazione() {
+    }
+
+    // --- LogManager ---
+
+    /** @param persistenza "SNAPSHOT" o "JOURNAL"; @param caricamento "COMPLETO" o "PIGRO" */
+    static Object nuovoLogManager(Path fileDati, String persistenza, String caricamento) {
+        try {
+            return (Object) NUOVO_LOG_MANAGER.invokeExact(fileDati,
+                    costante(PERSISTENZA, persistenza), costante(CARICAMENTO, caricamento));
+        } catch (Throwable t) {
+            throw rilancia(t);
+        }
+    }
+
+    static void aggiungi(Object logManager, Object intervento) {
+        try {
+            AGGIUNGI.invokeExact(logManager, intervento);
+        } catch (Throwable t) {
+            throw rilancia(t);
+        }
+    }
+
+    static List<?> aggiungiTutti(Object logManager, Collection<?> interventi) {
+        try {
+            return (List<?>) AGGIUNGI_TUTTI.invokeExact(logManager, interventi);
+        } catch (Throwable t) {
+            throw rilancia(t);
+        }
+    }
+
+    /** Propaga anche InterventoNonTrovatoException (checked nell'applicazione). */
+    static Object cercaPerId(Object logManager, String id) throws Exception {
+        try {
+            return (Object) CERCA_PER_ID.invokeExact(logManager, id);
+        } catch (Exception e) {
+            throw e;
+        } catch (Throwable t) {
+            throw rilancia(t);
+        }
+    }
+
+    static void elimina(Object logManager, String id) throws Exception {
+        try {
+            ELIMINA.invokeExact(logManager, id);
+        } catch (Exception e) {
+            throw e;
+        } catch (Throwable t) {
+            throw rilancia(t);
+        }
+    }
+
+    static List<?> eliminaTutti(Object logManager, Collection<String> ids) {
+        try {
+            return (List<?>) ELIMINA_TUTTI.invokeExact(logManager, ids);
+        } catch (Throwable t) {
+            throw rilancia(t);
+        }
+    }
+
+    static Collection<?> getTutti(Object logManager) {
+        try {
+            return (Collection<?>) GET_TUTTI.invokeExact(logManager);
+        } catch (Throwable t) {
+            throw rilancia(t);
+        }
+    }
+
+    static Object getTotale(Object logManager) {
+        try {
+            return (Object) GET_TOTALE.invokeExact(logManager);
+        } catch (Throwable t) {
+            throw rilancia(t);
+        }
+    }
+
+    static void salva(Object logManager) {
+        try {
+            SALVA.invokeExact(logManager);
+        } catch (Throwable t) {
+            throw rilancia(t);
+        }
+    }
+
+    static void carica(Object logManager) {
+        try {
+            CARICA.invokeExact(logManager);
+        } catch (Throwable t) {
+            throw rilancia(t);
+        }
+    }
+
+    // --- Intervento ---
+
+    static Object nuovoHardware(String id, String cliente, LocalDate data, String descrizione, String pezzo) {
+        try {
+            return (Object) NUOVO_HARDWARE.invokeExact(id, cliente, data, descrizione, pezzo);
+        } catch (Throwable t) {
+            throw rilancia(t);
+        }
+    }
+
+    static Object nuovoSoftware(String id, String cliente, LocalDate data, String descrizione, String so) {
+        try {
+            return (Object) NUOVO_SOFTWARE.invokeExact(id, cliente, data, descrizione, so);
+        } catch (Throwable t) {
+            throw rilancia(t);
+        }
+    }
+
+    static void setDescrizione(Object intervento, String descrizione) {
+        try {
+            SET_DESCRIZIONE.invokeExact(intervento, descrizione);
+        } catch (Throwable t) {
+            throw rilancia(t);
+        }
+    }
+
+    static double calcolaTariffa(Object intervento) {
+        try {
+            return (double) CALCOLA_TARIFFA.invokeExact(intervento);
+        } catch (Throwable t) {
+            throw rilancia(t);
+        }
+    }
+
+    // --- Risoluzione ---
+
+    private static Class<?> classe(String nome) {
+        try {
+            return Class.forName(nome);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("classe " + nome + " non trovata: manca personaltechlog.jar nel classpath?", e);
+        }
+    }
+
+    private static MethodHandle costruttore(Class<?> classe, MethodType firma, MethodType cancellata) {
+        try {
+            return LOOKUP.findConstructor(classe, firma).asType(cancellata);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("costruttore di " + classe.getName() + " non trovato", e);
+        }
+    }
+
+    /** Handle con ricevente e argomenti dell'applicazione ridotti a Object (tipi primitivi e JDK invariati). */
+    private static MethodHandle metodo(Class<?> classe, String nome, MethodType firma) {
+        try {
+            MethodHandle h = LOOKUP.findVirtual(classe, nome, firma);
+            MethodType cancellata = h.type().changeReturnType(cancella(h.type().returnType()));
+            for (int k = 0; k < cancellata.parameterCount(); k++) {
+                cancellata = cancellata.changeParameterType(k, cancella(cancellata.parameterType(k)));
+            }
+            return h.asType(cancellata);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("metodo " + classe.getName() + "." + nome + " non trovato", e);
+        }
+    }
+
+    private static Class<?> cancella(Class<?> tipo) {
+        return tipo.isPrimitive() || tipo.getName().startsWith("java.") ? tipo : Object.class;
+    }
+
+    private static Object costante(Class<?> enumerazione, String nome) {
+        for (Object c : enumerazione.getEnumConstants()) {
+            if (((Enum<?>) c).name().equals(nome)) {
+                return c;
+            }
+        }
+        throw new IllegalArgumentException(enumerazione.getSimpleName() + " sconosciuta: " + nome);
+    }
+
+    private static RuntimeException rilancia(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
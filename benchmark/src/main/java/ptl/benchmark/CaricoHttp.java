@@ -0,0 +1,285 @@
+package ptl.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Prova di carico dell'API HTTP (java Main --server): N client in parallelo, ognuno con
+ * una richiesta alla volta, per una durata fissa dopo un riscaldamento non misurato.
+ *
+ *   java -cp benchmarks.jar ptl.benchmark.CaricoHttp [url] [client] [secondi] [riscaldamento]
+ *   (default http://127.0.0.1:8080, 16 client, 20 s, 5 s)
+ *
+ * Miscela di richieste, pensata sull'uso da parte dei tecnici (molte letture, scritture
+ * frequenti): 20% POST nuovo intervento, 45% GET per ID, 15% PATCH della descrizione,
+ * 15% GET per cliente in un periodo, 5% DELETE. Lettura, modifica ed eliminazione usano
+ * gli interventi creati dallo stesso client, così ogni richiesta ha successo.
+ *
+ * Stampa per tipo di richiesta numero, errori e latenza (p50, p99, max) e il throughput
+ * complessivo. Gli interventi creati restano nel log del server (tranne quelli eliminati
+ * dalla miscela): va lanciato su un server avviato in una cartella di prova.
+ *
+ * Codice di uscita: 0 nessun errore, 1 almeno una richiesta fallita, 2 uso errato.
+ */
+public final class CaricoHttp {
+
+    private static final String[] OPERAZIONI = { "POST nuovo", "GET per ID", "PATCH", "GET per cliente", "DELETE" };
+    private static final int[] PERCENTUALI = { 20, 45, 15, 15, 5 };
+    private static final int CLIENTI_DATI = 200;
+
+    private static final Pattern ID = Pattern.compile("\"id\":\"([^\"]+)\"");
+
+    private CaricoHttp() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 4) {
+            System.err.println("uso: CaricoHttp [url] [client] [secondi] [riscaldamento]");
+            System.exit(2);
+        }
+        String url = args.length > 0 ? args[0].replaceAll("/+$", "") : "http://127.0.0.1:8080";
+        int client = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int secondi = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int riscaldamento = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        System.out.printf(Locale.ROOT, "%s: %d client, %d s (+%d s di riscaldamento)%n",
+                url, client, secondi, riscaldamento);
+
+        long inizioMisura = System.nanoTime() + riscaldamento * 1_000_000_000L;
+        long fine = inizioMisura + secondi * 1_000_000_000L;
+        List<Client> clienti = new ArrayList<>();
+        CountDownLatch finiti = new CountDownLatch(client);
+        for (int k = 0; k < client; k++) {
+            Client c = new Client(http, url, k, inizioMisura, fine);
+            clienti.add(c);
+            Thread t = new Thread(() -> {
+                try {
+                    c.esegui();
+                } finally {
+                    finiti.countDown();
+                }
+            }, "carico-" + k);
+            t.setDaemon(true);
+            t.start();
+        }
+        finiti.await();
+
+        long totale = 0;
+        long errori = 0;
+        System.out.printf(Locale.ROOT, "%n%-16s %10s %8s %10s %10s %10s%n", "richiesta", "numero", "errori",
+                "p50 ms", "p99 ms", "max ms");
+        for (int o = 0; o < OPERAZIONI.length; o++) {
+            Latenze tutte = new Latenze();
+            long erroriOperazione = 0;
+            for (Client c : clienti) {
+                tutte.unisci(c.latenze[o]);
+                erroriOperazione += c.errori[o];
+            }
+            long[] ordinate = tutte.ordinate();
+            totale += ordinate.length;
+            errori += erroriOperazione;
+            System.out.printf(Locale.ROOT, "%-16s %10d %8d %10.2f %10.2f %10.2f%n", OPERAZIONI[o], ordinate.length,
+                    erroriOperazione, percentile(ordinate, 0.50), percentile(ordinate, 0.99),
+                    ordinate.length == 0 ? 0.0 : ordinate[ordinate.length - 1] / 1e6);
+        }
+        Latenze tutte = new Latenze();
+        clienti.forEach(c -> Arrays.stream(c.latenze).forEach(tutte::unisci));
+        long[] ordinate = tutte.ordinate();
+        System.out.printf(Locale.ROOT, "%-16s %10d %8d %10.2f %10.2f %10.2f%n", "tutte", totale, errori,
+                percentile(ordinate, 0.50), percentile(ordinate, 0.99),
+                ordinate.length == 0 ? 0.0 : ordinate[ordinate.length - 1] / 1e6);
+        System.out.printf(Locale.ROOT, "%nthroughput: %.0f richieste/s%n", totale / (double) secondi);
+        if (errori > 0) {
+            System.out.println("[X] " + errori + " richieste fallite (primo errore: " + primoErrore(clienti) + ")");
+            System.exit(1);
+        }
+    }
+
+    private static String primoErrore(List<Client> clienti) {
+        return clienti.stream().map(c -> c.primoErrore).filter(e -> e != null).findFirst().orElse("?");
+    }
+
+    /** Percentile in millisecondi (nearest-rank). */
+    private static double percentile(long[] ordinate, double p) {
+        if (ordinate.length == 0) {
+            return 0.0;
+        }
+        int indice = (int) Math.ceil(p * ordinate.length) - 1;
+        return ordinate[Math.max(0, indice)] / 1e6;
+    }
+
+    /** Un client: una richiesta alla volta, con i suoi interventi e le sue misure. */
+    private static final class Client {
+        final HttpClient http;
+        final String url;
+        final SplittableRandom caso;
+        final long inizioMisura;
+        final long fine;
+        final Latenze[] latenze = new Latenze[OPERAZIONI.length];
+        final long[] errori = new long[OPERAZIONI.length];
+        final List<String> creati = new ArrayList<>();
+        String primoErrore;
+        int progressivo;
+
+        Client(HttpClient http, String url, int numero, long inizioMisura, long fine) {
+            this.http = http;
+            this.url = url;
+            this.caso = new SplittableRandom(GeneratoreDati.SEME + numero);
+            this.inizioMisura = inizioMisura;
+            this.fine = fine;
+            for (int o = 0; o < latenze.length; o++) {
+                latenze[o] = new Latenze();
+            }
+        }
+
+        void esegui() {
+            long adesso;
+            while ((adesso = System.nanoTime()) < fine) {
+                int operazione = scegli();
+                long inizio = System.nanoTime();
+                boolean ok;
+                try {
+                    ok = richiesta(operazione);
+                } catch (IOException e) {
+                    ok = false;
+                    segnala(e.toString());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                long durata = System.nanoTime() - inizio;
+                if (adesso >= inizioMisura) {
+                    latenze[operazione].aggiungi(durata);
+                    if (!ok) {
+                        errori[operazione]++;
+                    }
+                }
+            }
+        }
+
+        /** Senza interventi propri si può solo crearne uno. */
+        private int scegli() {
+            if (creati.isEmpty()) {
+                return 0;
+            }
+            int x = caso.nextInt(100);
+            for (int o = 0; o < PERCENTUALI.length; o++) {
+                x -= PERCENTUALI[o];
+                if (x < 0) {
+                    return o;
+                }
+            }
+            return 0;
+        }
+
+        private boolean richiesta(int operazione) throws IOException, InterruptedException {
+            switch (operazione) {
+                case 0: {
+                    boolean hardware = caso.nextBoolean();
+                    String corpo = "{\"tipo\":\"" + (hardware ? "HW" : "SW") + "\",\"cliente\":\"" + cliente()
+                            + "\",\"data\":\"" + data() + "\",\"descrizione\":\"Intervento di prova "
+                            + (progressivo++) + "\",\"dettaglio\":\"" + (hardware ? "SSD 1TB" : "Windows 11 Pro") + "\"}";
+                    HttpResponse<String> r = invia(HttpRequest.newBuilder(URI.create(url + "/interventi"))
+                            .POST(HttpRequest.BodyPublishers.ofString(corpo)));
+                    Matcher m = ID.matcher(r.body());
+                    if (r.statusCode() != 201 || !m.find()) {
+                        return fallita(r);
+                    }
+                    creati.add(m.group(1));
+                    return true;
+                }
+                case 1:
+                    return verifica(invia(HttpRequest.newBuilder(URI.create(url + "/interventi/" + uno())).GET()), 200);
+                case 2:
+                    return verifica(invia(HttpRequest.newBuilder(URI.create(url + "/interventi/" + uno()))
+                            .method("PATCH", HttpRequest.BodyPublishers.ofString(
+                                    "{\"descrizione\":\"Modificato " + (progressivo++) + "\"}"))), 200);
+                case 3: {
+                    LocalDate da = data();
+                    return verifica(invia(HttpRequest.newBuilder(URI.create(url + "/interventi?cliente="
+                            + URLEncoder.encode(cliente(), StandardCharsets.UTF_8)
+                            + "&da=" + da + "&a=" + da.plusMonths(3))).GET()), 200);
+                }
+                default: {
+                    String id = creati.remove(caso.nextInt(creati.size()));
+                    return verifica(invia(HttpRequest.newBuilder(URI.create(url + "/interventi/" + id)).DELETE()), 204);
+                }
+            }
+        }
+
+        private HttpResponse<String> invia(HttpRequest.Builder richiesta) throws IOException, InterruptedException {
+            return http.send(richiesta.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofString());
+        }
+
+        private boolean verifica(HttpResponse<String> r, int atteso) {
+            return r.statusCode() == atteso || fallita(r);
+        }
+
+        private boolean fallita(HttpResponse<String> r) {
+            segnala(r.request().method() + " " + r.uri() + " -> " + r.statusCode() + " " + r.body());
+            return false;
+        }
+
+        private void segnala(String errore) {
+            if (primoErrore == null) {
+                primoErrore = errore;
+            }
+        }
+
+        private String uno() {
+            return creati.get(caso.nextInt(creati.size()));
+        }
+
+        private String cliente() {
+            return String.format(Locale.ROOT, "Cliente Prova %03d", caso.nextInt(CLIENTI_DATI));
+        }
+
+        private LocalDate data() {
+            return LocalDate.of(2024, 1, 1).plusDays(caso.nextInt(365));
+        }
+    }
+
+    /** Durate in nanosecondi, in un array che cresce: nessun oggetto per misura. */
+    private static final class Latenze {
+        private long[] valori = new long[1024];
+        private int numero;
+
+        void aggiungi(long nanosecondi) {
+            if (numero == valori.length) {
+                valori = Arrays.copyOf(valori, numero * 2);
+            }
+            valori[numero++] = nanosecondi;
+        }
+
+        void unisci(Latenze altre) {
+            for (int k = 0; k < altre.numero; k++) {
+                aggiungi(altre.valori[k]);
+            }
+        }
+
+        long[] ordinate() {
+            long[] copia = Arrays.copyOf(valori, numero);
+            Arrays.sort(copia);
+            return copia;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package ptl.benchmark;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Confronta due risultati JMH in formato JSON (opzione -rf json) e segnala le regressioni.
+ *
+ *   java -cp benchmarks.jar ptl.benchmark.ConfrontaBaseline baseline.json risultati.json [soglia%]
+ *
+ * Un benchmark è in regressione se è peggiorato più della soglia (default 10%) e la
+ * differenza supera anche la somma degli errori delle due misure: con poche iterazioni
+ * il rumore da solo può valere più del 10%. "Peggiorato" dipende dalla modalità:
+ * più tempo per avgt/sample/ss, meno operazioni per thrpt.
+ *
+ * Codice di uscita: 0 nessuna regressione, 1 almeno una regressione, 2 uso errato.
+ */
+public final class ConfrontaBaseline {
+
+    private ConfrontaBaseline() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("uso: ConfrontaBaseline <baseline.json> <risultati.json> [soglia%]");
+            System.exit(2);
+        }
+        Map<String, Misura> baseline = leggi(Paths.get(args[0]));
+        Map<String, Misura> attuali  = leggi(Paths.get(args[1]));
+        double soglia = args.length == 3 ? Double.parseDouble(args[2]) / 100 : 0.10;
+
+        int regressioni = 0;
+        System.out.printf(Locale.ROOT, "%-76s %14s %14s %9s%n", "benchmark", "baseline", "attuale", "diff");
+        for (Map.Entry<String, Misura> e : attuali.entrySet()) {
+            Misura attuale = e.getValue();
+            Misura prima = baseline.get(e.getKey());
+            if (prima == null) {
+                System.out.printf(Locale.ROOT, "%-76s %14s %14s %9s%n", e.getKey(), "-",
+                        formatta(attuale), "nuovo");
+                continue;
+            }
+            // Variazione positiva = peggioramento, qualunque sia la modalità.
+            double peggioramento = attuale.piuAltoEMeglio
+                    ? (prima.punteggio - attuale.punteggio) / prima.punteggio
+                    : (attuale.punteggio - prima.punteggio) / prima.punteggio;
+            boolean oltreErrore = Math.abs(attuale.punteggio - prima.punteggio) > attuale.errore + prima.errore;
+            boolean regressione = peggioramento > soglia && oltreErrore;
+            if (regressione) {
+                regressioni++;
+            }
+            System.out.printf(Locale.ROOT, "%-76s %14s %14s %+8.1f%%%s%n", e.getKey(), formatta(prima),
+                    formatta(attuale), peggioramento * 100, regressione ? "  [X] REGRESSIONE" : "");
+        }
+        for (String mancante : baseline.keySet()) {
+            if (!attuali.containsKey(mancante)) {
+                System.out.printf(Locale.ROOT, "%-76s %14s %14s %9s%n", mancante,
+                        formatta(baseline.get(mancante)), "-", "assente");
+            }
+        }
+        if (regressioni > 0) {
+            System.out.println("[ERRORE] " + regressioni + " benchmark peggiorati oltre il "
+                    + Math.round(soglia * 100) + "%.");
+            System.exit(1);
+        }
+        System.out.println("[OK] Nessuna regressione oltre il " + Math.round(soglia * 100) + "%.");
+    }
+
+    // --- Lettura dei risultati JMH ---
+
+    private static final class Misura {
+        double punteggio;
+        double errore;
+        String unita;
+        boolean piuAltoEMeglio;
+    }
+
+    /** Chiave: nome del benchmark con i parametri in ordine, es. "RicercaBenchmark.cercaPerIdPresente dimensione=10000". */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Misura> leggi(Path file) throws Exception {
+        Object documento = leggiJson(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        if (!(documento instanceof List)) {
+            throw new IllegalArgumentException(file + ": atteso l'array prodotto da JMH con -rf json");
+        }
+        Map<String, Misura> misure = new LinkedHashMap<>();
+        for (Object elemento : (List<Object>) documento) {
+            Map<String, Object> risultato = (Map<String, Object>) elemento;
+            String nome = (String) risultato.get("benchmark");
+            nome = nome.substring(nome.lastIndexOf('.', nome.lastIndexOf('.') - 1) + 1);
+            StringBuilder chiave = new StringBuilder(nome);
+            Object parametri = risultato.get("params");
+            if (parametri instanceof Map) {
+                new TreeMap<>((Map<String, Object>) parametri)
+                        .forEach((k, v) -> chiave.append(' ').append(k).append('=').append(v));
+            }
+            Map<String, Object> primaria = (Map<String, Object>) risultato.get("primaryMetric");
+            Misura m = new Misura();
+            m.punteggio = numero(primaria.get("score"));
+            m.errore = numero(primaria.get("scoreError"));
+            m.unita = (String) primaria.get("scoreUnit");
+            m.piuAltoEMeglio = "thrpt".equals(risultato.get("mode"));
+            misure.put(chiave.toString(), m);
+        }
+        return misure;
+    }
+
+    /** JMH scrive "NaN" (stringa) come errore quando c'è una sola iterazione. */
+    private static double numero(Object valore) {
+        return valore instanceof Number ? ((Number) valore).doubleValue() : 0;
+    }
+
+    private static String formatta(Misura m) {
+        return String.format(Locale.ROOT, "%.3f %s", m.punteggio, m.unita);
+    }
+
+    /** Il lettore JSON dell'applicazione (Json, package di default e package-private). */
+    private static Object leggiJson(String testo) throws Exception {
+        Method leggi = Class.forName("Json").getDeclaredMethod("leggi", String.class);
+        leggi.setAccessible(true);
+        try {
+            return leggi.invoke(null, testo);
+        } catch (InvocationTargetException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+}
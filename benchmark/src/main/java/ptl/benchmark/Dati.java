@@ -0,0 +1,66 @@
+package ptl.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/** Preparazione comune ai benchmark: log popolati, cartelle temporanee, stdout silenziato. */
+final class Dati {
+
+    private static PrintStream stdoutOriginale;
+
+    private Dati() {
+    }
+
+    /** Un LogManager con i primi n interventi sintetici, in memoria (non ancora salvato). */
+    static Object logPopolato(Path fileDati, String persistenza, String caricamento, int n) {
+        Object log = Applicazione.nuovoLogManager(fileDati, persistenza, caricamento);
+        Applicazione.aggiungiTutti(log, GeneratoreDati.interventi(n, GeneratoreDati.SEME));
+        // Il primo riepilogo costruisce indici e aggregati, che da lì in poi vengono
+        // mantenuti a ogni modifica: misuriamo il regime, non la sessione appena aperta.
+        Applicazione.getTotale(log);
+        return log;
+    }
+
+    static Path cartellaTemporanea() {
+        try {
+            return Files.createTempDirectory("ptl-bench");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void elimina(Path cartella) {
+        if (cartella == null) {
+            return;
+        }
+        try (Stream<Path> percorsi = Files.walk(cartella)) {
+            percorsi.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * I messaggi "[OK] ..." di aggiungi/elimina/salva finirebbero nel terminale di JMH:
+     * vanno in uno stream nullo (il costo di comporli resta nella misura, come nell'app).
+     */
+    static synchronized void silenziaStdout() {
+        if (stdoutOriginale == null) {
+            stdoutOriginale = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+    }
+
+    static synchronized void ripristinaStdout() {
+        if (stdoutOriginale != null) {
+            System.setOut(stdoutOriginale);
+            stdoutOriginale = null;
+        }
+    }
+}
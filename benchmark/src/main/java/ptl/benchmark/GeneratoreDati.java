@@ -0,0 +1,132 @@
+package ptl.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Dati sintetici deterministici: stesso numero e stesso seme danno sempre gli stessi
+ * interventi, così i risultati di due esecuzioni sono confrontabili.
+ *
+ * Distribuzione pensata per assomigliare a un log reale: 2.000 clienti (pochi molto
+ * frequenti, molti occasionali), date sugli ultimi sei anni, 60% hardware e 40% software,
+ * descrizioni di 30-80 caratteri.
+ *
+ * Da riga di comando scrive un CSV importabile con l'opzione 10 del menu:
+ *   java -cp benchmarks.jar ptl.benchmark.GeneratoreDati 100000 dati.csv [seme]
+ */
+public final class GeneratoreDati {
+
+    static final long SEME = 20240601L;
+
+    private static final int CLIENTI = 2_000;
+    private static final LocalDate INIZIO = LocalDate.of(2019, 1, 1);
+    private static final int GIORNI = 6 * 365;
+
+    private static final String[] AZIONI = {
+        "Sostituzione", "Verifica", "Pulizia", "Installazione", "Diagnosi guasto", "Aggiornamento",
+        "Configurazione", "Ripristino", "Manutenzione programmata", "Migrazione"
+    };
+    private static final String[] OGGETTI = {
+        "workstation ufficio amministrazione", "server di rete al piano terra", "notebook del titolare",
+        "stampante multifunzione", "NAS per i backup notturni", "firewall perimetrale",
+        "postazione reception", "switch del rack principale", "PC del magazzino", "tablet dei tecnici"
+    };
+    private static final String[] RICAMBI = {
+        "SSD 1TB", "RAM 16GB DDR4", "Alimentatore 650W", "Scheda madre", "Ventola CPU",
+        "Disco 4TB NAS", "Batteria notebook", "Tastiera", "Monitor 24\"", "Scheda di rete 2.5G"
+    };
+    private static final String[] SISTEMI = {
+        "Windows 11 Pro", "Windows 10 Pro", "Windows Server 2022", "Ubuntu 22.04 LTS",
+        "Debian 12", "macOS Sonoma", "Windows Server 2019", "Fedora 39"
+    };
+
+    private GeneratoreDati() {
+    }
+
+    /** Gli interventi 0..n-1 (oggetti dell'applicazione, vedi {@link Applicazione}). */
+    static List<Object> interventi(int n, long seme) {
+        List<Object> interventi = new ArrayList<>(n);
+        SplittableRandom caso = new SplittableRandom(seme);
+        for (int k = 0; k < n; k++) {
+            Riga r = riga(k, caso);
+            interventi.add(r.hardware
+                    ? Applicazione.nuovoHardware(r.id, r.cliente, r.data, r.descrizione, r.dettaglio)
+                    : Applicazione.nuovoSoftware(r.id, r.cliente, r.data, r.descrizione, r.dettaglio));
+        }
+        return interventi;
+    }
+
+    /** Gli ID degli interventi 0..n-1, nello stesso ordine di {@link #interventi}. */
+    static String[] ids(int n) {
+        String[] ids = new String[n];
+        for (int k = 0; k < n; k++) {
+            ids[k] = id(k);
+        }
+        return ids;
+    }
+
+    /**
+     * ID di 8 cifre esadecimali come quelli generati dal menu. La moltiplicazione per una
+     * costante dispari è una biiezione modulo 2^32: ID distinti e sparsi, non in sequenza.
+     */
+    static String id(int k) {
+        return String.format("%08X", (k * 0x9E3779B1L) & 0xFFFFFFFFL);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("uso: GeneratoreDati <numero interventi> <file.csv> [seme]");
+            System.exit(2);
+        }
+        int n = Integer.parseInt(args[0]);
+        Path file = Paths.get(args[1]);
+        long seme = args.length == 3 ? Long.parseLong(args[2]) : SEME;
+        SplittableRandom caso = new SplittableRandom(seme);
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("tipo,id,cliente,data,descrizione,dettaglio");
+            out.newLine();
+            for (int k = 0; k < n; k++) {
+                Riga r = riga(k, caso);
+                out.write((r.hardware ? "HW" : "SW") + ',' + r.id + ',' + csv(r.cliente) + ',' + r.data
+                        + ',' + csv(r.descrizione) + ',' + csv(r.dettaglio));
+                out.newLine();
+            }
+        }
+        System.out.println("[OK] " + n + " interventi scritti in " + file);
+    }
+
+    // --- Helper ---
+
+    private static final class Riga {
+        String id, cliente, descrizione, dettaglio;
+        LocalDate data;
+        boolean hardware;
+    }
+
+    private static Riga riga(int k, SplittableRandom caso) {
+        Riga r = new Riga();
+        r.id = id(k);
+        // Il quadrato di un uniforme concentra i clienti sui numeri bassi: pochi clienti abituali.
+        double u = caso.nextDouble();
+        r.cliente = String.format("Cliente %04d Srl", (int) (u * u * CLIENTI));
+        r.data = INIZIO.plusDays(caso.nextInt(GIORNI));
+        r.descrizione = AZIONI[caso.nextInt(AZIONI.length)] + " " + OGGETTI[caso.nextInt(OGGETTI.length)];
+        r.hardware = caso.nextInt(10) < 6;
+        r.dettaglio = r.hardware ? RICAMBI[caso.nextInt(RICAMBI.length)] : SISTEMI[caso.nextInt(SISTEMI.length)];
+        return r;
+    }
+
+    private static String csv(String valore) {
+        return valore.indexOf(',') < 0 && valore.indexOf('"') < 0
+                ? valore
+                : '"' + valore.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,83 @@
+package ptl.benchmark;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * aggiungi seguito da elimina sullo stesso ID, su un log già popolato: la dimensione del
+ * log resta costante e ogni operazione aggiorna mappa, ordine, indici e aggregati.
+ * La variante in blocco misura aggiungiTutti/eliminaTutti (il percorso dell'import),
+ * con il tempo riportato per singolo intervento.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class ModificaBenchmark {
+
+    private static final int BLOCCO = 1000;
+
+    @Param({"10000", "100000", "1000000"})
+    int dimensione;
+
+    private Path cartella;
+    private Object log;
+    // Interventi costruiti in anticipo: si misura il log, non la costruzione degli oggetti.
+    // ID fuori dallo spazio di GeneratoreDati (9 caratteri), quindi mai duplicati.
+    private final List<Object> blocco = new ArrayList<>(BLOCCO);
+    private final List<String> idBlocco = new ArrayList<>(BLOCCO);
+    private int prossimo;
+
+    @Setup(Level.Trial)
+    public void prepara() {
+        Dati.silenziaStdout();
+        cartella = Dati.cartellaTemporanea();
+        log = Dati.logPopolato(cartella.resolve("log.dat"), "SNAPSHOT", "COMPLETO", dimensione);
+        for (int k = 0; k < BLOCCO; k++) {
+            String id = String.format("N%08X", k);
+            idBlocco.add(id);
+            blocco.add(Applicazione.nuovoHardware(id, "Cliente Benchmark Srl", LocalDate.of(2024, 6, 1),
+                    "Sostituzione disco di sistema", "SSD 1TB"));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void chiudi() {
+        Dati.ripristinaStdout();
+        Dati.elimina(cartella);
+    }
+
+    @Benchmark
+    public void aggiungiElimina() throws Exception {
+        int k = prossimo++ % BLOCCO;
+        Applicazione.aggiungi(log, blocco.get(k));
+        Applicazione.elimina(log, idBlocco.get(k));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCCO)
+    public List<?> aggiungiTuttiEliminaTutti() {
+        Applicazione.aggiungiTutti(log, blocco);
+        return Applicazione.eliminaTutti(log, idBlocco);
+    }
+}
@@ -0,0 +1,104 @@
+package ptl.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * salva e carica nelle varie modalità:
+ *   salvaSnapshot  riscrittura completa del file (modalità SNAPSHOT, o compattazione)
+ *   salvaJournal   una modifica e il suo append al journal (modalità JOURNAL)
+ *   carica         apertura di un file già salvato, COMPLETO o PIGRO
+ * I file stanno nella cartella temporanea di sistema: su tmpfs il costo del disco sparisce.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class PersistenzaBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int dimensione;
+
+    @Param({"COMPLETO", "PIGRO"})
+    String caricamento;
+
+    private Path cartella;
+    private Path salvato;       // scritto una volta nel setup, solo letto da carica
+    private Path lavoro;        // copia su cui salvano i benchmark di scrittura
+    private Object logSnapshot;
+    private Object logJournal;
+    private Iterator<?> daModificare;
+    private int modifiche;
+
+    @Setup(Level.Trial)
+    public void prepara() throws Exception {
+        Dati.silenziaStdout();
+        cartella = Dati.cartellaTemporanea();
+        salvato = cartella.resolve("salvato.dat");
+        lavoro = cartella.resolve("lavoro.dat");
+        Object log = Dati.logPopolato(salvato, "SNAPSHOT", "COMPLETO", dimensione);
+        Applicazione.salva(log);
+        logSnapshot = Dati.logPopolato(lavoro, "SNAPSHOT", caricamento, dimensione);
+    }
+
+    /**
+     * Ogni iterazione riparte da uno snapshot appena scritto e da un journal vuoto,
+     * altrimenti il journal crescerebbe fino alla soglia di compattazione e alcune
+     * misure includerebbero una riscrittura completa.
+     */
+    @Setup(Level.Iteration)
+    public void preparaJournal() throws Exception {
+        Path journal = cartella.resolve("journal.dat");
+        Files.copy(salvato, journal, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(cartella.resolve("journal.dat.journal"));
+        logJournal = Applicazione.nuovoLogManager(journal, "JOURNAL", caricamento);
+        Applicazione.carica(logJournal);
+        daModificare = null;
+    }
+
+    @TearDown(Level.Trial)
+    public void chiudi() {
+        Dati.ripristinaStdout();
+        Dati.elimina(cartella);
+    }
+
+    @Benchmark
+    public void salvaSnapshot() {
+        Applicazione.salva(logSnapshot);
+    }
+
+    @Benchmark
+    public void salvaJournal() {
+        if (daModificare == null || !daModificare.hasNext()) {
+            daModificare = Applicazione.getTutti(logJournal).iterator();
+        }
+        Applicazione.setDescrizione(daModificare.next(), "Modifica " + modifiche++);
+        Applicazione.salva(logJournal);
+    }
+
+    @Benchmark
+    public Object carica() {
+        Object log = Applicazione.nuovoLogManager(salvato, "SNAPSHOT", caricamento);
+        Applicazione.carica(log);
+        return log;
+    }
+}
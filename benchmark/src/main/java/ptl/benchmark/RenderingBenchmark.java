@@ -0,0 +1,75 @@
+package ptl.benchmark;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Il lavoro di "Visualizza tutti": toString di ogni intervento e totale fatturato.
+ *   toString            un intervento (alternando HW e SW)
+ *   totaleRicalcolato   somma di calcolaTariffa su tutto il log, come faceva il menu
+ *   totaleAggregato     getTotale(), mantenuto incrementalmente dal LogManager
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class RenderingBenchmark {
+
+    private static final int CAMPIONE = 1024;
+
+    @Param({"10000", "100000", "1000000"})
+    int dimensione;
+
+    private Path cartella;
+    private Object log;
+    private List<Object> campione;
+    private int prossimo;
+
+    @Setup(Level.Trial)
+    public void prepara() {
+        cartella = Dati.cartellaTemporanea();
+        log = Dati.logPopolato(cartella.resolve("log.dat"), "SNAPSHOT", "COMPLETO", dimensione);
+        campione = GeneratoreDati.interventi(CAMPIONE, GeneratoreDati.SEME);
+    }
+
+    @TearDown(Level.Trial)
+    public void chiudi() {
+        Dati.elimina(cartella);
+    }
+
+    @Benchmark
+    public String toStringIntervento() {
+        return campione.get(prossimo++ & (CAMPIONE - 1)).toString();
+    }
+
+    @Benchmark
+    public double totaleRicalcolato() {
+        double totale = 0;
+        for (Object i : Applicazione.getTutti(log)) {
+            totale += Applicazione.calcolaTariffa(i);
+        }
+        return totale;
+    }
+
+    @Benchmark
+    public Object totaleAggregato() {
+        return Applicazione.getTotale(log);
+    }
+}
@@ -0,0 +1,77 @@
+package ptl.benchmark;
+
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * cercaPerId su ID presenti (sparsi, non in ordine di inserimento) e assenti. L'assente
+ * misura anche il costo dell'eccezione, che è quello che paga il menu su un ID sbagliato.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class RicercaBenchmark {
+
+    private static final int CAMPIONE = 4096; // potenza di due: indice con una maschera
+
+    @Param({"10000", "100000", "1000000"})
+    int dimensione;
+
+    private Path cartella;
+    private Object log;
+    private final String[] presenti = new String[CAMPIONE];
+    private final String[] assenti  = new String[CAMPIONE];
+
+    @State(Scope.Thread)
+    public static class Cursore {
+        int k;
+    }
+
+    @Setup(Level.Trial)
+    public void prepara() {
+        cartella = Dati.cartellaTemporanea();
+        log = Dati.logPopolato(cartella.resolve("log.dat"), "SNAPSHOT", "COMPLETO", dimensione);
+        SplittableRandom caso = new SplittableRandom(GeneratoreDati.SEME);
+        for (int k = 0; k < CAMPIONE; k++) {
+            presenti[k] = GeneratoreDati.id(caso.nextInt(dimensione));
+            assenti[k]  = GeneratoreDati.id(dimensione + caso.nextInt(dimensione));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void chiudi() {
+        Dati.elimina(cartella);
+    }
+
+    @Benchmark
+    public Object cercaPerIdPresente(Cursore c) throws Exception {
+        return Applicazione.cercaPerId(log, presenti[c.k++ & (CAMPIONE - 1)]);
+    }
+
+    @Benchmark
+    public Object cercaPerIdAssente(Cursore c) {
+        try {
+            return Applicazione.cercaPerId(log, assenti[c.k++ & (CAMPIONE - 1)]);
+        } catch (Exception e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Sequenza degli ID: permutazione senza collisioni, contatore che sopravvive ai riavvii nel
+ * file ".id", ID già nel log saltati quando il file è indietro o illeggibile.
+ */
+class GeneratoreIdTest {
+
+    @TempDir
+    Path cartella;
+
+    /** Il file ".id" come lo scrive GeneratoreId.salva(). */
+    private Path fileId(int scostamento, long prossimo) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(17).putInt(0x50544C49).put((byte) 1).putInt(scostamento).putLong(prossimo);
+        return Files.write(cartella.resolve("log.dat.id"), buf.array());
+    }
+
+    private LogManager apri() {
+        LogManager m = new LogManager(cartella.resolve("log.dat"), LogManager.Persistenza.SNAPSHOT);
+        m.carica();
+        return m;
+    }
+
+    private static Intervento intervento(String id) {
+        return new InterventoSoftware(id, "Bianchi", LocalDate.of(2024, 2, 1), "Aggiornamento", "Linux");
+    }
+
+    @Test
+    void permutazioneSenzaCollisioni() {
+        // Valori consecutivi, anche a cavallo del giro dei 32 bit con lo scostamento.
+        for (int scostamento : new int[] {0, -(1 << 19), 0x7FFFFFFF}) {
+            int n = 1 << 20;
+            long[] valori = new long[n];
+            for (int k = 0; k < n; k++) {
+                String id = GeneratoreId.formatta(k + 1, scostamento);
+                assertEquals(8, id.length());
+                valori[k] = Long.parseLong(id, 16);
+            }
+            Arrays.sort(valori);
+            for (int k = 1; k < n; k++) {
+                assertNotEquals(valori[k - 1], valori[k], "scostamento " + scostamento);
+            }
+        }
+        assertTrue(GeneratoreId.formatta(1, 0).matches("[0-9A-F]{8}"));
+        // Due ID consecutivi non differiscono per una sola cifra.
+        for (long v = 1; v < 10_000; v++) {
+            String a = GeneratoreId.formatta(v, 0);
+            String b = GeneratoreId.formatta(v + 1, 0);
+            int diverse = 0;
+            for (int k = 0; k < 8; k++) {
+                diverse += a.charAt(k) != b.charAt(k) ? 1 : 0;
+            }
+            assertTrue(diverse > 1, a + " " + b);
+        }
+    }
+
+    @Test
+    void contatoreSopravviveAlRiavvio() throws IOException {
+        Path file = cartella.resolve("log.dat.id");
+        GeneratoreId primo = new GeneratoreId(file);
+        primo.carica(); // nessun file: sequenza nuova
+        Set<String> dati = new HashSet<>(List.of(primo.prossimo(), primo.prossimo(), primo.prossimo()));
+        assertEquals(3, dati.size());
+        primo.salva();
+        assertEquals(17, Files.size(file));
+
+        GeneratoreId riavviato = new GeneratoreId(file);
+        riavviato.carica();
+        String dopo = riavviato.prossimo();
+        assertFalse(dati.contains(dopo));
+        assertEquals(primo.prossimo(), dopo); // stesso scostamento, stesso punto della sequenza
+
+        // Una sequenza nuova ha il suo scostamento: log diversi non partono dagli stessi ID.
+        Files.delete(file);
+        GeneratoreId nuovo = new GeneratoreId(file);
+        nuovo.carica();
+        GeneratoreId altro = new GeneratoreId(cartella.resolve("altro.id"));
+        altro.carica();
+        assertNotEquals(nuovo.prossimo(), altro.prossimo());
+    }
+
+    @Test
+    void fileNonValido() throws IOException {
+        GeneratoreId g = new GeneratoreId(cartella.resolve("log.dat.id"));
+        fileId(0, 0);
+        assertThrows(IOException.class, g::carica);
+        fileId(0, (1L << 32) + 1);
+        assertThrows(IOException.class, g::carica);
+        Files.write(cartella.resolve("log.dat.id"), new byte[] {0x50, 0x54, 0x4C, 0x49, 1, 0});
+        assertThrows(IOException.class, g::carica);
+        Files.write(cartella.resolve("log.dat.id"), new byte[17]);
+        assertThrows(IOException.class, g::carica);
+
+        // Ultimo valore della sequenza: un ID, poi più nessuno.
+        fileId(0, (1L << 32) - 1);
+        g.carica();
+        assertEquals(GeneratoreId.formatta((1L << 32) - 1, 0), g.prossimo());
+        assertThrows(IllegalStateException.class, g::prossimo);
+    }
+
+    @Test
+    void idDatiNonSiRipetonoDopoIlRiavvio() {
+        LogManager m = apri();
+        Set<String> dati = new HashSet<>();
+        for (int k = 0; k < 5; k++) {
+            dati.add(m.nuovoId()); // dati ma non usati: la sequenza non li ridà comunque
+        }
+        m.aggiungiTutti(List.of(intervento(m.nuovoId())));
+        assertTrue(m.salva());
+
+        LogManager riaperto = apri();
+        for (int k = 0; k < 100; k++) {
+            String id = riaperto.nuovoId();
+            assertFalse(dati.contains(id), id);
+            assertTrue(dati.add(id), id);
+        }
+    }
+
+    @Test
+    void fileIndietroSaltaGliIdNelLog() throws Exception {
+        // Crash dopo il salvataggio dei dati e prima del ".id": la sequenza ridarebbe 1 e 2.
+        LogManager m = apri();
+        m.aggiungiTutti(List.of(intervento(GeneratoreId.formatta(1, 0)), intervento(GeneratoreId.formatta(2, 0))));
+        assertTrue(m.salva());
+        fileId(0, 1);
+
+        LogManager riaperto = apri();
+        assertEquals(GeneratoreId.formatta(3, 0), riaperto.nuovoId());
+    }
+
+    @Test
+    void fileIlleggibileSequenzaNuovaSenzaDoppioni() throws Exception {
+        LogManager m = apri();
+        Set<String> nelLog = new HashSet<>();
+        for (int k = 0; k < 1000; k++) {
+            String id = m.nuovoId();
+            nelLog.add(id);
+            m.aggiungiTutti(List.of(intervento(id)));
+        }
+        assertTrue(m.salva());
+        Path file = cartella.resolve("log.dat.id");
+        Files.write(file, Arrays.copyOf(Files.readAllBytes(file), 11)); // troncato
+
+        // La sequenza riparte da capo: nessun ID nuovo coincide con quelli del log.
+        LogManager riaperto = apri();
+        for (int k = 0; k < 1000; k++) {
+            String id = riaperto.nuovoId();
+            assertFalse(nelLog.contains(id), id);
+            riaperto.aggiungiTutti(List.of(intervento(id)));
+        }
+        assertEquals(2000, riaperto.getTutti().size());
+        // Il salvataggio successivo riscrive un file valido.
+        assertTrue(riaperto.salva());
+        assertEquals(17, Files.size(file));
+        GeneratoreId letto = new GeneratoreId(file);
+        letto.carica();
+        assertFalse(nelLog.contains(letto.prossimo()));
+    }
+}
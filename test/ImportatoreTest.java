@@ -0,0 +1,201 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Import da CSV e JSONL: separatore e intestazione riconosciuti dalla prima riga, campi tra
+ * virgolette, ripiego su Windows-1252, righe scartate nel file ".scarti" e ID generati che
+ * collidono con un ID del file.
+ */
+class ImportatoreTest {
+
+    @TempDir
+    Path cartella;
+
+    private LogManager apri() {
+        LogManager m = new LogManager(cartella.resolve("log.dat"), LogManager.Persistenza.SNAPSHOT);
+        m.carica();
+        return m;
+    }
+
+    private Path scrivi(String nome, String... righe) throws IOException {
+        Path file = cartella.resolve(nome);
+        Files.write(file, List.of(righe), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    void divisioneCsv() {
+        assertEquals(List.of("a", "b, c", "d \"e\"", ""), Importatore.dividiCsv("a,\"b, c\",\"d \"\"e\"\"\",", ','));
+        assertEquals(List.of("a,b", "c;d"), Importatore.dividiCsv("a,b;\"c;d\"", ';'));
+        assertThrows(IllegalArgumentException.class, () -> Importatore.dividiCsv("a,\"b", ','));
+    }
+
+    @Test
+    void intestazioneConPuntoEVirgola() throws Exception {
+        // Export di Excel italiano: ';', nomi di colonna con maiuscole, spazi e underscore.
+        Path file = scrivi("ticket.csv",
+                "\uFEFFTipo;Cliente;ID;Data;Descrizione;Pezzo_Ricambio;Sistema Operativo",
+                "HW;Rossi Srl;AB000001;15/01/2024;\"Sostituzione RAM; 2 banchi\";Crucial 2x16GB;",
+                "software;\"Studio \"\"Bianchi\"\"\";AB000002;2024-02-29;Reinstallazione;;Windows 11");
+        LogManager m = apri();
+
+        Importatore.Esito esito = new Importatore(m).importa(file);
+        assertEquals(2, esito.lette);
+        assertEquals(2, esito.importate);
+        assertEquals(0, esito.scartate);
+        assertEquals(StandardCharsets.UTF_8, esito.codifica);
+        assertNull(esito.fileScarti);
+
+        InterventoHardware hw = (InterventoHardware) m.cercaPerId("AB000001");
+        assertEquals("Rossi Srl", hw.getCliente());
+        assertEquals(LocalDate.of(2024, 1, 15), hw.getData());
+        assertEquals("Sostituzione RAM; 2 banchi", hw.getDescrizione());
+        assertEquals("Crucial 2x16GB", hw.getPezzoRicambio());
+        InterventoSoftware sw = (InterventoSoftware) m.cercaPerId("AB000002");
+        assertEquals("Studio \"Bianchi\"", sw.getCliente());
+        assertEquals("Windows 11", sw.getSistemaOperativo());
+    }
+
+    @Test
+    void senzaIntestazioneColonnePosizionali() throws Exception {
+        // Prima cella diversa da "tipo": tipo, id, cliente, data, descrizione, dettaglio.
+        Path file = scrivi("vecchio.csv",
+                "HW,AB000001,Rossi Srl,2024-01-15,\"Sostituzione RAM, 2 banchi\",Crucial 2x16GB",
+                "SW,AB000002,Bianchi,3/4/2024,Aggiornamento,Linux");
+        LogManager m = apri();
+
+        Importatore.Esito esito = new Importatore(m).importa(file);
+        assertEquals(2, esito.importate);
+        InterventoHardware hw = (InterventoHardware) m.cercaPerId("AB000001");
+        assertEquals("Sostituzione RAM, 2 banchi", hw.getDescrizione());
+        assertEquals("Crucial 2x16GB", hw.getPezzoRicambio());
+        InterventoSoftware sw = (InterventoSoftware) m.cercaPerId("AB000002");
+        assertEquals(LocalDate.of(2024, 4, 3), sw.getData());
+        assertEquals("Linux", sw.getSistemaOperativo());
+    }
+
+    @Test
+    void fileNonUtf8LettoComeWindows1252() throws Exception {
+        Charset windows1252 = Charset.forName("windows-1252");
+        Path file = cartella.resolve("excel.csv");
+        Files.write(file, ("tipo;id;cliente;data;descrizione;dettaglio\r\n"
+                + "HW;AB000001;Città Nuova;2024-01-15;Perché non parte? €50;SSD\r\n").getBytes(windows1252));
+        LogManager m = apri();
+
+        Importatore.Esito esito = new Importatore(m).importa(file);
+        assertEquals(windows1252, esito.codifica);
+        assertEquals(1, esito.importate);
+        Intervento i = m.cercaPerId("AB000001");
+        assertEquals("Città Nuova", i.getCliente());
+        assertEquals("Perché non parte? €50", i.getDescrizione());
+
+        // Lo stesso testo in UTF-8 resta UTF-8, anche con il carattere a cavallo di due blocchi letti.
+        StringBuilder lungo = new StringBuilder("tipo,id,cliente,data,descrizione,dettaglio\n");
+        while (lungo.length() < (1 << 16) - 1) {
+            lungo.append('x');
+        }
+        lungo.append("à\n");
+        Files.write(file, lungo.toString().getBytes(StandardCharsets.UTF_8));
+        assertEquals(StandardCharsets.UTF_8, new Importatore(apri()).importa(file).codifica);
+    }
+
+    @Test
+    void righeScartateNelFileScarti() throws Exception {
+        String[] righe = {
+            "tipo,id,cliente,data,descrizione,dettaglio",
+            "HW,AB000001,Rossi Srl,2024-01-15,Sostituzione RAM,Crucial",
+            "HW,AB000002,Rossi Srl,2024-13-01,Data sbagliata,Crucial",
+            "XX,AB000003,Rossi Srl,2024-01-15,Tipo sconosciuto,Crucial",
+            "SW,AB000004,,2024-01-15,Senza cliente,Linux",
+            "",
+            "SW,ab000001,Bianchi,2024-01-16,ID già usato sopra,Linux",
+            "SW,AB000005,Bianchi,+999999999-01-01,Data fuori intervallo,Linux",
+            "SW,AB000006,\"Bianchi,2024-01-16,Virgolette non chiuse,Linux",
+            "SW,AB000007,Bianchi,2024-01-17,Ultima valida,Linux",
+        };
+        Path file = scrivi("misto.csv", righe);
+        LogManager m = apri();
+
+        Importatore.Esito esito = new Importatore(m).importa(file);
+        assertEquals(8, esito.lette); // la riga vuota non conta
+        assertEquals(2, esito.importate);
+        assertEquals(6, esito.scartate);
+        assertEquals(6, esito.primiScarti.size());
+        assertEquals(List.of(3L, 4L, 5L, 8L, 9L, 7L),
+                esito.primiScarti.stream().map(s -> s.riga).collect(Collectors.toList()));
+        assertEquals(2, m.getTutti().size());
+
+        Path scarti = cartella.resolve("misto.csv.scarti");
+        assertEquals(scarti, esito.fileScarti);
+        List<String> contenuto = Files.readAllLines(scarti, StandardCharsets.UTF_8);
+        assertEquals(12, contenuto.size());
+        assertEquals("# riga 3: data non valida: '2024-13-01'", contenuto.get(0));
+        assertEquals(righe[2], contenuto.get(1));
+        assertTrue(contenuto.get(2).startsWith("# riga 4: tipo non riconosciuto"), contenuto.get(2));
+        assertEquals("# riga 5: campo 'cliente' mancante", contenuto.get(4));
+        // Il doppione viene scoperto all'inserimento, dopo gli scarti dell'analisi del blocco.
+        assertEquals("# riga 7: ID già presente: ab000001", contenuto.get(10));
+        assertEquals(righe[6], contenuto.get(11));
+
+        // Un import successivo senza scarti toglie il file, che non sarebbe più attuale.
+        Path pulito = scrivi("misto.csv", righe[0], "SW,AB000009,Verdi,2024-01-18,Nuovo,Linux");
+        Importatore.Esito secondo = new Importatore(m).importa(pulito);
+        assertEquals(1, secondo.importate);
+        assertNull(secondo.fileScarti);
+        assertFalse(Files.exists(scarti));
+    }
+
+    @Test
+    void idGeneratoCheCollideVieneRigenerato() throws Exception {
+        // Sequenza degli ID nota: scostamento 0, prossimo valore 1.
+        ByteBuffer sequenza = ByteBuffer.allocate(17).putInt(0x50544C49).put((byte) 1).putInt(0).putLong(1);
+        Files.write(cartella.resolve("log.dat.id"), sequenza.array());
+        String primo = GeneratoreId.formatta(1, 0);
+        String secondo = GeneratoreId.formatta(2, 0);
+        // L'ID vuoto riceve il primo della sequenza mentre il blocco viene analizzato, ma la
+        // riga prima, che lo ha esplicito, viene inserita per prima.
+        Path file = scrivi("generati.csv",
+                "tipo,id,cliente,data,descrizione,dettaglio",
+                "HW," + primo + ",Rossi Srl,2024-01-15,ID esplicito,Crucial",
+                "SW,,Bianchi,2024-01-16,ID da generare,Linux");
+        LogManager m = apri();
+
+        Importatore.Esito esito = new Importatore(m).importa(file);
+        assertEquals(2, esito.importate);
+        assertEquals(0, esito.scartate);
+        assertEquals("ID esplicito", m.cercaPerId(primo).getDescrizione());
+        assertEquals("ID da generare", m.cercaPerId(secondo).getDescrizione());
+        assertNotEquals(primo, secondo);
+    }
+
+    @Test
+    void jsonl() throws Exception {
+        Path file = scrivi("export.jsonl",
+                "{\"tipo\": \"SW\", \"id\": 12345678, \"cliente\": \"Rossi Srl\", \"data\": \"2024-01-15\","
+                        + " \"descrizione\": \"Aggiornamento\", \"sistema_operativo\": \"Linux\", \"allegati\": [1, 2]}",
+                "{\"tipo\": \"HW\", \"cliente\": \"Rossi Srl\"}");
+        LogManager m = apri();
+
+        Importatore.Esito esito = new Importatore(m).importa(file);
+        assertEquals(1, esito.importate);
+        assertEquals(1, esito.scartate);
+        assertEquals("Linux", ((InterventoSoftware) m.cercaPerId("12345678")).getSistemaOperativo());
+    }
+}
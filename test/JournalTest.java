@@ -0,0 +1,157 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Journal: riproduzione dei record, coda troncata da un crash, migrazione dalla versione 1. */
+class JournalTest {
+
+    @TempDir
+    Path cartella;
+
+    private Journal journal;
+    private final List<String> operazioni = new ArrayList<>();
+
+    @BeforeEach
+    void prepara() {
+        journal = new Journal(cartella.resolve("log.dat.journal"));
+    }
+
+    private int riproduci() throws IOException {
+        operazioni.clear();
+        return journal.riproduci(i -> operazioni.add("put " + i), id -> operazioni.add("delete " + id));
+    }
+
+    private static Map<String, Intervento> modifiche(Object... coppie) {
+        Map<String, Intervento> modifiche = new LinkedHashMap<>();
+        for (int k = 0; k < coppie.length; k += 2) {
+            modifiche.put((String) coppie[k], (Intervento) coppie[k + 1]);
+        }
+        return modifiche;
+    }
+
+    private static final Intervento HW = new InterventoHardware("0000000A", "Rossi", LocalDate.of(2024, 3, 1), "RAM", "16GB");
+    private static final Intervento SW = new InterventoSoftware("0000000B", "Città", LocalDate.of(2024, 3, 2), "è", "Linux");
+
+    @Test
+    void journalAssente() throws IOException {
+        assertEquals(0, riproduci());
+        assertTrue(operazioni.isEmpty());
+    }
+
+    @Test
+    void recordRiprodottiInOrdine() throws IOException {
+        journal.appendi(Journal.codifica(modifiche("0000000a", HW, "0000000b", SW)));
+        journal.appendi(Journal.codifica(modifiche("0000000a", null)));
+
+        assertEquals(3, riproduci());
+        assertEquals(List.of("put " + HW, "put " + SW, "delete 0000000a"), operazioni);
+        assertFalse(journal.isFormatoObsoleto());
+    }
+
+    @Test
+    void codaTroncataScartataEPoiAccodabile() throws IOException {
+        journal.appendi(Journal.codifica(modifiche("0000000a", HW)));
+        long valida = journal.dimensione();
+        journal.appendi(Journal.codifica(modifiche("0000000b", SW)));
+        byte[] completo = Files.readAllBytes(journal.getFile());
+
+        // Crash a ogni punto dell'ultimo append: resta il primo record e la coda viene tolta.
+        for (long taglio = valida; taglio < completo.length; taglio++) {
+            Files.write(journal.getFile(), Arrays.copyOf(completo, (int) taglio));
+            assertEquals(1, riproduci(), "troncato a " + taglio);
+            assertEquals(List.of("put " + HW), operazioni);
+            assertEquals(valida, journal.dimensione());
+        }
+
+        // Il record accodato dopo il taglio non finisce dietro ai byte corrotti.
+        journal.appendi(Journal.codifica(modifiche("0000000a", null)));
+        assertEquals(2, riproduci());
+        assertEquals(List.of("put " + HW, "delete 0000000a"), operazioni);
+    }
+
+    @Test
+    void checksumErrataFermaLaLettura() throws IOException {
+        journal.appendi(Journal.codifica(modifiche("0000000a", HW)));
+        long primo = journal.dimensione();
+        journal.appendi(Journal.codifica(modifiche("0000000b", SW)));
+        byte[] dati = Files.readAllBytes(journal.getFile());
+        dati[dati.length - 1] ^= 1;
+        Files.write(journal.getFile(), dati);
+
+        assertEquals(1, riproduci());
+        assertEquals(primo, journal.dimensione());
+    }
+
+    @Test
+    void versioneSerializzataAncoraLeggibile() throws IOException {
+        // Versione 1: PUT con la serializzazione Java, DELETE con writeUTF.
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(file);
+        out.writeInt(0x50544C4A);
+        out.writeByte(1);
+        scriviRecordV1(out, payloadV1(1, HW));
+        scriviRecordV1(out, payloadV1(1, SW));
+        scriviRecordV1(out, payloadV1(2, "0000000a"));
+        Files.write(journal.getFile(), file.toByteArray());
+
+        assertEquals(3, riproduci());
+        assertEquals(List.of("put " + HW, "put " + SW, "delete 0000000a"), operazioni);
+        assertTrue(journal.isFormatoObsoleto());
+    }
+
+    private static byte[] payloadV1(int op, Object valore) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeByte(op);
+        if (valore instanceof String) {
+            out.writeUTF((String) valore);
+        } else {
+            ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeObject(valore);
+            oos.flush();
+        }
+        out.flush();
+        return payload.toByteArray();
+    }
+
+    private static void scriviRecordV1(DataOutputStream out, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+    }
+
+    @Test
+    void codificaDiMoltiRecordCresceIlBuffer() throws IOException {
+        Map<String, Intervento> tante = new LinkedHashMap<>();
+        for (int k = 0; k < 2000; k++) {
+            String id = String.format("%08X", k);
+            tante.put(id.toLowerCase(), new InterventoHardware(id, "c" + k, LocalDate.of(2024, 1, 1), "d".repeat(k % 300), "p"));
+        }
+        ByteBuffer record = Journal.codifica(tante);
+        journal.appendi(record);
+
+        assertEquals(2000, riproduci());
+        assertEquals("put " + tante.get("000007cf"), operazioni.get(1999));
+    }
+}
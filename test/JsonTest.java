@@ -0,0 +1,62 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/** Lettura e scrittura JSON: mappatura dei valori, escape, errori e limite di annidamento. */
+class JsonTest {
+
+    @Test
+    void andataERitorno() {
+        String testo = "{\"a\":1,\"b\":-2.5,\"c\":\"tab\\tvirgolette\\\"a capo\\n\\u0001\",\"d\":[true,false,null],\"e\":{}}";
+        Map<String, Object> oggetto = Json.leggiOggetto(testo);
+        assertEquals(List.of("a", "b", "c", "d", "e"), List.copyOf(oggetto.keySet()));
+        assertEquals(1L, oggetto.get("a"));
+        assertEquals(-2.5, oggetto.get("b"));
+        assertEquals("tab\tvirgolette\"a capo\n\u0001", oggetto.get("c"));
+        assertEquals(Arrays.asList(true, false, null), oggetto.get("d"));
+        assertEquals(testo, Json.scrivi(oggetto));
+    }
+
+    @Test
+    void valoriScritti() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("importo", BigDecimal.valueOf(7700, 2));
+        m.put("nan", Double.NaN);
+        m.put("data", java.time.LocalDate.of(2024, 1, 15));
+        m.put("lista", List.of(1, "due"));
+        assertEquals("{\"importo\":77.00,\"nan\":null,\"data\":\"2024-01-15\",\"lista\":[1,\"due\"]}", Json.scrivi(m));
+        assertEquals(Long.MAX_VALUE, Json.leggi(" " + Long.MAX_VALUE + " "));
+        assertEquals(1e19, Json.leggi("10000000000000000000"));
+    }
+
+    @Test
+    void jsonNonValido() {
+        for (String testo : new String[] {"", "{", "[1,]", "{\"a\" 1}", "{a:1}", "\"non chiusa", "\"a\nb\"",
+                "\"\\x\"", "\"\\u12\"", "tru", "1 2", "--1", "{\"a\":1}}"}) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> Json.leggi(testo), testo);
+            assertTrue(e.getMessage().startsWith("JSON non valido alla posizione "), e.getMessage());
+        }
+        assertThrows(IllegalArgumentException.class, () -> Json.leggiOggetto("[1]"));
+    }
+
+    @Test
+    void annidamentoOltreIlLimite() {
+        String alLimite = "[".repeat(Json.MAX_PROFONDITA) + "]".repeat(Json.MAX_PROFONDITA);
+        Json.leggi(alLimite);
+        Json.leggi("{\"a\":" + alLimite.substring(1, alLimite.length() - 1) + "}");
+
+        String oltre = "[".repeat(Json.MAX_PROFONDITA + 1) + "]".repeat(Json.MAX_PROFONDITA + 1);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> Json.leggi(oltre));
+        assertTrue(e.getMessage().contains("livelli"), e.getMessage());
+        // Senza limite questo finirebbe lo stack invece di essere un 400.
+        assertThrows(IllegalArgumentException.class, () -> Json.leggi("[".repeat(1_000_000)));
+    }
+}
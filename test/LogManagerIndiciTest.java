@@ -0,0 +1,234 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * Gli indici del LogManager restano allineati agli interventi mentre questi cambiano con i
+ * setter, modifica(), setId ed eliminazioni: ogni ricerca e ogni totale viene confrontato
+ * con lo stesso calcolo fatto scorrendo tutti gli interventi.
+ */
+class LogManagerIndiciTest {
+
+    @TempDir
+    Path cartella;
+
+    private static final String[] CLIENTI = {"Rossi Srl", "ROSSI SRL ", "Bianchi", "Verdi & Figli", "Città"};
+    private static final String[] PAROLE  = {"ram", "disco", "rete", "stampante", "virus", "backup"};
+    private static final String[] SISTEMI = {"Windows 11", "Linux", "Windows Server 2022", "macOS"};
+
+    private final Random caso = new Random(20240101);
+
+    private String parole() {
+        return PAROLE[caso.nextInt(PAROLE.length)] + " " + PAROLE[caso.nextInt(PAROLE.length)];
+    }
+
+    private LocalDate data() {
+        return LocalDate.of(2022, 1, 1).plusDays(caso.nextInt(900));
+    }
+
+    private Intervento nuovo(String id) {
+        String cliente = CLIENTI[caso.nextInt(CLIENTI.length)];
+        return caso.nextBoolean()
+                ? new InterventoHardware(id, cliente, data(), parole(), PAROLE[caso.nextInt(PAROLE.length)])
+                : new InterventoSoftware(id, cliente, data(), parole(), SISTEMI[caso.nextInt(SISTEMI.length)]);
+    }
+
+    /**
+     * COMPLETO in memoria; PIGRO dopo un giro salva/carica, con un limite di residenti
+     * basso, così le modifiche toccano anche interventi ridecodificati dal file.
+     */
+    private LogManager prepara(LogManager.Caricamento caricamento) {
+        Path file = cartella.resolve("log.dat");
+        LogManager m = new LogManager(file, LogManager.Persistenza.SNAPSHOT);
+        m.carica();
+        for (int k = 0; k < 400; k++) {
+            m.aggiungi(nuovo(String.format("%08X", k + 1)));
+        }
+        if (caricamento == LogManager.Caricamento.COMPLETO) {
+            return m;
+        }
+        m.salva();
+        LogManager pigro = new LogManager(file, LogManager.Persistenza.SNAPSHOT, caricamento, 0, 50, 0);
+        pigro.carica();
+        return pigro;
+    }
+
+    @ParameterizedTest
+    @EnumSource(LogManager.Caricamento.class)
+    void indiciAllineatiDopoLeModifiche(LogManager.Caricamento caricamento) throws Exception {
+        LogManager m = prepara(caricamento);
+        List<String> id = new ArrayList<>();
+        m.getTutti().forEach(i -> id.add(i.getId()));
+        int prossimo = 10_000;
+
+        for (int passo = 1; passo <= 3000; passo++) {
+            int k = caso.nextInt(id.size());
+            // Sempre dal LogManager: un riferimento tenuto da prima potrebbe essere stato
+            // scaricato dalla cache (caricamento pigro) e non più collegato al log.
+            Intervento i = m.cercaPerId(id.get(k));
+            switch (caso.nextInt(9)) {
+                case 0:
+                    i.setCliente(CLIENTI[caso.nextInt(CLIENTI.length)]);
+                    break;
+                case 1:
+                    i.setData(data());
+                    break;
+                case 2:
+                    i.setDescrizione(parole());
+                    break;
+                case 3:
+                    if (i instanceof InterventoHardware) {
+                        ((InterventoHardware) i).setPezzoRicambio(PAROLE[caso.nextInt(PAROLE.length)]);
+                    } else {
+                        ((InterventoSoftware) i).setSistemaOperativo(SISTEMI[caso.nextInt(SISTEMI.length)]);
+                    }
+                    break;
+                case 4: {
+                    String nuovoId = m.nuovoId();
+                    String vecchioId = i.getId();
+                    i.setId(nuovoId);
+                    id.set(k, nuovoId);
+                    assertThrows(InterventoNonTrovatoException.class, () -> m.cercaPerId(vecchioId));
+                    break;
+                }
+                case 5:
+                    m.modifica(id.get(k), x -> {
+                        x.setCliente(CLIENTI[caso.nextInt(CLIENTI.length)]);
+                        x.setData(data());
+                        x.setDescrizione(parole());
+                    });
+                    break;
+                case 6:
+                    m.elimina(id.remove(k));
+                    break;
+                case 7: {
+                    String nuovoId = String.format("%08X", prossimo++);
+                    m.aggiungi(nuovo(nuovoId));
+                    id.add(nuovoId);
+                    break;
+                }
+                default:
+                    // Stesso valore di prima: non deve cambiare nulla.
+                    i.setCliente(i.getCliente());
+            }
+            if (passo % 250 == 0) {
+                verifica(m, id);
+            }
+        }
+        m.salva();
+        verifica(m, id);
+    }
+
+    private void verifica(LogManager m, List<String> id) throws InterventoNonTrovatoException {
+        List<Intervento> tutti = new ArrayList<>(m.getTutti());
+        assertEquals(new TreeSet<>(id), idDi(tutti));
+        for (String x : id) {
+            assertEquals(x, m.cercaPerId(x.toLowerCase(Locale.ROOT)).getId());
+        }
+
+        LocalDate da = data();
+        LocalDate a = da.plusDays(caso.nextInt(200));
+        for (String cliente : CLIENTI) {
+            String chiave = IndiciSecondari.normalizzaCliente(cliente);
+            Predicate<Intervento> delCliente = i -> IndiciSecondari.normalizzaCliente(i.getCliente()).equals(chiave);
+            assertEquals(filtra(tutti, delCliente), idDi(m.cercaPerCliente(cliente)), cliente);
+            assertEquals(filtra(tutti, delCliente.and(i -> nelPeriodo(i, da, a))),
+                    idDi(m.cercaPerCliente(cliente, da, a)), cliente + " " + da + ".." + a);
+            assertTotale(tutti, delCliente.and(i -> nelPeriodo(i, da, a)),
+                    m.getRiepilogo(cliente, da, a).getTotale());
+        }
+        assertEquals(filtra(tutti, i -> nelPeriodo(i, da, a)), idDi(m.cercaPerPeriodo(da, a)));
+        assertEquals(filtra(tutti, i -> nelPeriodo(i, null, a)), idDi(m.cercaPerPeriodo(null, a)));
+        assertTotale(tutti, i -> nelPeriodo(i, da, a), m.getRiepilogo(da, a).getTotale());
+
+        for (String parola : PAROLE) {
+            assertEquals(filtra(tutti, i -> testo(i).contains(parola)), idDi(m.cercaTesto(parola)), parola);
+        }
+        assertEquals(filtra(tutti, i -> testo(i).contains("windows") && testo(i).contains("rete")),
+                idDi(m.cercaTesto("WINDOWS rete")));
+
+        assertTotale(tutti, i -> true, m.getTotale());
+        assertTotali(tutti, i -> IndiciSecondari.normalizzaCliente(i.getCliente()), m.getTotaliPerCliente());
+        assertTotali(tutti, i -> YearMonth.from(i.getData()), m.getTotaliPerMese());
+        assertTotali(tutti, Intervento::getTipo, m.getTotaliPerTipo());
+    }
+
+    private static boolean nelPeriodo(Intervento i, LocalDate da, LocalDate a) {
+        return (da == null || !i.getData().isBefore(da)) && (a == null || !i.getData().isAfter(a));
+    }
+
+    /** Le parole su cui lavora l'indice del testo (qui sono tutte ASCII). */
+    private static List<String> testo(Intervento i) {
+        String specifico = CodecIntervento.specifico(i);
+        List<String> parole = new ArrayList<>();
+        for (String p : (i.getDescrizione() + " " + specifico).toLowerCase(Locale.ROOT).split("[^a-z0-9]+")) {
+            parole.add(p);
+        }
+        return parole;
+    }
+
+    private static TreeSet<String> idDi(List<Intervento> interventi) {
+        TreeSet<String> id = new TreeSet<>();
+        interventi.forEach(i -> id.add(i.getId()));
+        return id;
+    }
+
+    private static TreeSet<String> filtra(List<Intervento> tutti, Predicate<Intervento> condizione) {
+        TreeSet<String> id = new TreeSet<>();
+        for (Intervento i : tutti) {
+            if (condizione.test(i)) {
+                id.add(i.getId());
+            }
+        }
+        return id;
+    }
+
+    private static long centesimi(Intervento i) {
+        return Math.round(i.calcolaTariffa() * 100);
+    }
+
+    private static void assertTotale(List<Intervento> tutti, Predicate<Intervento> condizione, Aggregati.Totale totale) {
+        long numero = 0;
+        long importo = 0;
+        for (Intervento i : tutti) {
+            if (condizione.test(i)) {
+                numero++;
+                importo += centesimi(i);
+            }
+        }
+        assertEquals(numero, totale.getNumero());
+        assertEquals(importo, Math.round(totale.getImporto() * 100));
+    }
+
+    private static <K> void assertTotali(List<Intervento> tutti, Function<Intervento, K> gruppo,
+                                         Map<K, Aggregati.Totale> totali) {
+        Map<K, long[]> attesi = new HashMap<>();
+        for (Intervento i : tutti) {
+            long[] t = attesi.computeIfAbsent(gruppo.apply(i), g -> new long[2]);
+            t[0]++;
+            t[1] += centesimi(i);
+        }
+        Map<K, String> atteso = new HashMap<>();
+        attesi.forEach((g, t) -> atteso.put(g, t[0] + " " + t[1]));
+        Map<K, String> effettivo = new HashMap<>();
+        totali.forEach((g, t) -> effettivo.put(g, t.getNumero() + " " + Math.round(t.getImporto() * 100)));
+        assertEquals(new TreeMap<>(atteso).toString(), new TreeMap<>(effettivo).toString());
+    }
+}
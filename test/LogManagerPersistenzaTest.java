@@ -0,0 +1,355 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Salvataggio e caricamento del LogManager in ogni combinazione di persistenza e
+ * caricamento elencata in modalita(): quello che si rilegge è quello che c'era, anche dopo
+ * modifiche, migrazioni dai formati precedenti e salvataggi interrotti.
+ */
+class LogManagerPersistenzaTest {
+
+    @TempDir
+    Path cartella;
+
+    static Stream<Arguments> modalita() {
+        return Stream.of(
+                Arguments.of(LogManager.Persistenza.SNAPSHOT, LogManager.Caricamento.COMPLETO),
+                Arguments.of(LogManager.Persistenza.SNAPSHOT, LogManager.Caricamento.PIGRO),
+                Arguments.of(LogManager.Persistenza.JOURNAL, LogManager.Caricamento.COMPLETO),
+                Arguments.of(LogManager.Persistenza.JOURNAL, LogManager.Caricamento.PIGRO),
+                Arguments.of(LogManager.Persistenza.SEGMENTI, LogManager.Caricamento.COMPLETO),
+                Arguments.of(LogManager.Persistenza.SEGMENTI, LogManager.Caricamento.PIGRO));
+    }
+
+    private Path fileDati() {
+        return cartella.resolve("log.dat");
+    }
+
+    /** Due mesi recenti: in modalità SEGMENTI lo storico resta chiuso finché non serve. */
+    private LogManager apri(LogManager.Persistenza p, LogManager.Caricamento c) {
+        LogManager m = new LogManager(fileDati(), p, c, 2);
+        m.carica();
+        return m;
+    }
+
+    /** Tutto il contenuto del log, per ID: tipo, campi e tariffa. */
+    static Map<String, String> stato(LogManager m) {
+        Map<String, String> stato = new TreeMap<>();
+        for (Intervento i : m.getTutti()) {
+            stato.put(i.getId(), i.getClass().getSimpleName() + "|" + i);
+        }
+        return stato;
+    }
+
+    /** Interventi sparsi su più anni, con il mese corrente e qualcuno nel futuro. */
+    static List<Intervento> storico(int quanti) {
+        List<Intervento> storico = new ArrayList<>();
+        LocalDate oggi = LocalDate.now();
+        for (int k = 0; k < quanti; k++) {
+            String id = String.format("%08X", 0x1000 + k);
+            LocalDate data = k % 10 == 0 ? oggi.plusDays(k % 40) : oggi.minusDays(37L * k % 2500);
+            storico.add(k % 2 == 0
+                    ? new InterventoHardware(id, "Cliente " + (k % 13), data, "Riparazione n. " + k, "Pezzo " + (k % 5))
+                    : new InterventoSoftware(id, "Cliente " + (k % 13), data, "Installazione n. " + k,
+                            k % 3 == 0 ? "Windows Server" : "Linux"));
+        }
+        return storico;
+    }
+
+    @ParameterizedTest
+    @MethodSource("modalita")
+    void salvaECarica(LogManager.Persistenza p, LogManager.Caricamento c) {
+        LogManager m = apri(p, c);
+        m.aggiungiTutti(storico(300));
+        Map<String, String> atteso = stato(m);
+        m.salva();
+
+        assertEquals(atteso, stato(apri(p, c)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("modalita")
+    void modificheDopoIlCaricamento(LogManager.Persistenza p, LogManager.Caricamento c) throws Exception {
+        LogManager m = apri(p, c);
+        m.aggiungiTutti(storico(300));
+        m.salva();
+
+        for (int giro = 0; giro < 3; giro++) {
+            m = apri(p, c);
+            m.cercaPerId(String.format("%08X", 0x1000 + giro)).setCliente("Spostato " + giro);
+            // Cambio di mese: in modalità SEGMENTI l'intervento passa da un segmento all'altro.
+            m.cercaPerId(String.format("%08X", 0x1010 + giro)).setData(LocalDate.of(2001, 1, 1 + giro));
+            m.cercaPerId(String.format("%08X", 0x1020 + giro)).setDescrizione("Descrizione nuova");
+            m.cercaPerId(String.format("%08X", 0x1030 + giro)).setId("NUOVO00" + giro);
+            m.elimina(String.format("%08X", 0x1040 + giro));
+            m.aggiungi(new InterventoSoftware("AGGIUNTO" + giro, "Nuovo", LocalDate.now(), "x", "macOS"));
+            Map<String, String> atteso = stato(m);
+            m.salva();
+
+            assertEquals(atteso, stato(apri(p, c)), "giro " + giro);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("modalita")
+    void migrazioneDallaSerializzazioneJava(LogManager.Persistenza p, LogManager.Caricamento c) throws IOException {
+        List<Intervento> vecchi = storico(50);
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(fileDati()))) {
+            out.writeObject(new ArrayList<>(vecchi));
+        }
+        LogManager m = apri(p, c);
+        Map<String, String> atteso = statoDi(vecchi);
+        assertEquals(atteso, stato(m));
+
+        m.salva();
+        if (p == LogManager.Persistenza.SEGMENTI) {
+            assertTrue(new Segmenti(fileDati()).esiste());
+        } else {
+            assertTrue(SnapshotBinario.riconosce(fileDati()));
+        }
+        assertEquals(atteso, stato(apri(p, c)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("modalita")
+    void migrazioneDalloSnapshotSenzaTabella(LogManager.Persistenza p, LogManager.Caricamento c) throws Exception {
+        List<Intervento> vecchi = storico(50);
+        try (FileChannel canale = FileChannel.open(fileDati(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+            buf.putInt(SnapshotBinario.MAGIC).put(SnapshotBinario.VERSIONE_SENZA_TABELLA).putInt(vecchi.size());
+            for (Intervento i : vecchi) {
+                int inizio = buf.position();
+                buf.putInt(0);
+                CodecIntervento.scrivi(i, buf);
+                buf.putInt(inizio, buf.position() - inizio - Integer.BYTES);
+            }
+            buf.flip();
+            canale.write(buf);
+        }
+        LogManager m = apri(p, c);
+        Map<String, String> atteso = statoDi(vecchi);
+        assertEquals(atteso, stato(m));
+
+        m.cercaPerId(vecchi.get(0).getId()).setCliente("Modificato");
+        atteso = stato(m);
+        m.salva();
+        assertEquals(atteso, stato(apri(p, c)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("modalita")
+    void temporaneoDiUnSalvataggioInterrottoIgnorato(LogManager.Persistenza p, LogManager.Caricamento c)
+            throws IOException {
+        LogManager m = apri(p, c);
+        m.aggiungiTutti(storico(100));
+        Map<String, String> atteso = stato(m);
+        m.salva();
+
+        // Crash a metà della scrittura del temporaneo: il rename non è mai avvenuto.
+        byte[] troncato = {0x50, 0x54, 0x4C, 0x44, 2, 0, 0};
+        Files.write(cartella.resolve("log.dat.tmp"), troncato);
+        if (p == LogManager.Persistenza.SEGMENTI) {
+            Files.write(new Segmenti(fileDati()).temporaneo(YearMonth.now()), troncato);
+        }
+        assertEquals(atteso, stato(apri(p, c)));
+    }
+
+    @Test
+    void journalTroncatoRiportaAllUltimoRecordCompleto() throws Exception {
+        LogManager.Persistenza p = LogManager.Persistenza.JOURNAL;
+        LogManager m = apri(p, LogManager.Caricamento.COMPLETO);
+        m.aggiungiTutti(storico(100));
+        m.salva();
+        m = apri(p, LogManager.Caricamento.COMPLETO);
+        m.cercaPerId("00001001").setCliente("Prima modifica");
+        Map<String, String> primo = stato(m);
+        m.salva();
+
+        Path journal = cartella.resolve("log.dat.journal");
+        long dimensione = Files.size(journal);
+        m.cercaPerId("00001002").setCliente("Seconda modifica");
+        m.elimina("00001003");
+        m.salva();
+        long completo = Files.size(journal);
+        assertTrue(completo > dimensione, "il secondo salvataggio deve accodare al journal");
+
+        // Crash durante l'ultimo append: il replay si ferma all'ultimo record intero.
+        byte[] dati = Files.readAllBytes(journal);
+        for (int taglio = (int) dimensione; taglio < completo; taglio += 5) {
+            Files.write(journal, Arrays.copyOf(dati, taglio));
+            LogManager riletto = apri(p, LogManager.Caricamento.COMPLETO);
+            Map<String, String> stato = stato(riletto);
+            // L'append scrive un record per intervento: al più uno dei due è arrivato.
+            stato.remove("00001002");
+            stato.remove("00001003");
+            Map<String, String> atteso = new TreeMap<>(primo);
+            atteso.remove("00001002");
+            atteso.remove("00001003");
+            assertEquals(atteso, stato, "troncato a " + taglio);
+        }
+
+        // Dopo il taglio si continua ad accodare e a rileggere senza perdere nulla.
+        LogManager ripreso = apri(p, LogManager.Caricamento.COMPLETO);
+        ripreso.cercaPerId("00001004").setCliente("Dopo il crash");
+        Map<String, String> atteso = stato(ripreso);
+        ripreso.salva();
+        assertEquals(atteso, stato(apri(p, LogManager.Caricamento.COMPLETO)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("modalita")
+    void idRipetutiRicevonoUnIdNuovo(LogManager.Persistenza p, LogManager.Caricamento c) throws Exception {
+        // Log di una versione che tirava gli ID a sorte: due ID compaiono due volte.
+        List<Intervento> vecchi = new ArrayList<>(storico(20));
+        vecchi.add(new InterventoHardware("00001003", "Doppione", LocalDate.now(), "Stesso ID", "Alimentatore"));
+        vecchi.add(new InterventoSoftware("00001005", "Doppione", LocalDate.now(), "Stesso ID", "Linux"));
+        SnapshotBinario.scrivi(fileDati(), vecchi);
+        Map<String, String> primi = statoDi(storico(20));
+
+        LogManager m = apri(p, c);
+        Map<String, String> letto = stato(m);
+        assertEquals(22, letto.size());
+        // La prima occorrenza tiene il suo ID, le altre ne ricevono uno nuovo.
+        primi.forEach((id, stato) -> assertEquals(stato, letto.get(id), id));
+        List<Intervento> rinominati = m.cercaPerCliente("Doppione");
+        assertEquals(2, rinominati.size());
+        for (Intervento i : rinominati) {
+            assertFalse(primi.containsKey(i.getId()), i.getId());
+        }
+        assertTrue(Files.exists(cartella.resolve("log.dat.duplicati")));
+
+        m.salva();
+        if (p != LogManager.Persistenza.SEGMENTI) {
+            // Anche in modalità JOURNAL uno snapshot completo: accodato al journal, l'ID nuovo
+            // resterebbe dietro a uno snapshot che ha ancora il doppione.
+            assertFalse(Files.exists(cartella.resolve("log.dat.journal")));
+            List<Intervento> salvati = new ArrayList<>();
+            SnapshotBinario.leggi(fileDati(), salvati::add);
+            assertEquals(letto, statoDi(salvati));
+        }
+        // Riaprendo gli ID restano quelli assegnati: nessun doppione da rinominare di nuovo.
+        assertEquals(letto, stato(apri(p, c)));
+        assertEquals(letto, stato(apri(p, c)));
+    }
+
+    /**
+     * 00001001 passa dal mese a al mese b e, con {@code scambio}, 00001003 da b ad a: tra la
+     * sostituzione di un segmento e quella dell'altro uno dei due non sarebbe in nessun
+     * segmento. Restituisce i due mesi, con lo stato atteso in {@code atteso} e i segmenti di
+     * prima in {@code prima}.
+     */
+    private YearMonth[] spostaDiMese(Map<String, String> atteso, Path prima, boolean scambio) throws Exception {
+        LogManager m = apri(LogManager.Persistenza.SEGMENTI, LogManager.Caricamento.COMPLETO);
+        m.aggiungiTutti(storico(100));
+        m.salva();
+        Intervento x = m.cercaPerId("00001001");
+        Intervento y = m.cercaPerId("00001003");
+        YearMonth a = YearMonth.from(x.getData());
+        YearMonth b = YearMonth.from(y.getData());
+        copia(new Segmenti(fileDati()).getCartella(), prima);
+        LocalDate dataX = x.getData();
+        x.setData(y.getData());
+        if (scambio) {
+            y.setData(dataX);
+        }
+        atteso.putAll(stato(m));
+        m.salva();
+        return new YearMonth[] {a, b};
+    }
+
+    @Test
+    void salvataggioDeiSegmentiInterrottoVieneCompletato() throws Exception {
+        Map<String, String> atteso = new TreeMap<>();
+        Path prima = cartella.resolve("prima");
+        YearMonth[] mesi = spostaDiMese(atteso, prima, true);
+        Segmenti segmenti = new Segmenti(fileDati());
+        Path dopo = cartella.resolve("dopo");
+        copia(segmenti.getCartella(), dopo);
+
+        // Crash dopo la sostituzione del primo segmento: il secondo è ancora il temporaneo.
+        copia(prima, segmenti.getCartella());
+        for (YearMonth mese : mesi) {
+            Files.copy(dopo.resolve(mese + ".dat"), segmenti.temporaneo(mese));
+        }
+        segmenti.annotaSalvataggio(List.of(mesi), List.of());
+        segmenti.sostituisci(mesi[0]);
+
+        assertEquals(atteso, stato(apri(LogManager.Persistenza.SEGMENTI, LogManager.Caricamento.COMPLETO)));
+        for (YearMonth mese : mesi) {
+            assertFalse(Files.exists(segmenti.temporaneo(mese)));
+            assertEquals(Arrays.toString(Files.readAllBytes(dopo.resolve(mese + ".dat"))),
+                    Arrays.toString(Files.readAllBytes(segmenti.file(mese))), mese.toString());
+        }
+    }
+
+    @Test
+    void interventoInDueSegmentiTenutoUnaVolta() throws Exception {
+        Map<String, String> atteso = new TreeMap<>();
+        Path prima = cartella.resolve("prima");
+        YearMonth[] mesi = spostaDiMese(atteso, prima, false);
+        Segmenti segmenti = new Segmenti(fileDati());
+        byte[] secondo = Files.readAllBytes(segmenti.file(mesi[1]));
+
+        // Crash senza piano (versione precedente): il mese b è già nuovo, il mese a è ancora
+        // quello di prima, e 00001001 è in entrambi.
+        copia(prima, segmenti.getCartella());
+        Files.write(segmenti.file(mesi[1]), secondo);
+        Files.setLastModifiedTime(segmenti.file(mesi[0]), FileTime.fromMillis(1_000_000_000_000L));
+
+        LogManager m = apri(LogManager.Persistenza.SEGMENTI, LogManager.Caricamento.COMPLETO);
+        Map<String, String> letto = stato(m);
+        assertEquals(atteso.keySet(), letto.keySet());
+        assertEquals(atteso.get("00001001"), letto.get("00001001"));
+        assertTrue(Files.exists(segmenti.file(mesi[0]).resolveSibling(mesi[0] + ".dat.duplicati")));
+
+        m.salva();
+        assertEquals(letto, stato(apri(LogManager.Persistenza.SEGMENTI, LogManager.Caricamento.COMPLETO)));
+    }
+
+    private static void copia(Path da, Path a) throws IOException {
+        Files.createDirectories(a);
+        try (Stream<Path> vecchi = Files.list(a)) {
+            for (Path f : (Iterable<Path>) vecchi::iterator) {
+                Files.delete(f);
+            }
+        }
+        try (Stream<Path> file = Files.list(da)) {
+            for (Path f : (Iterable<Path>) file::iterator) {
+                Files.copy(f, a.resolve(f.getFileName()), StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        }
+    }
+
+    private static Map<String, String> statoDi(List<Intervento> interventi) {
+        Map<String, String> stato = new TreeMap<>();
+        for (Intervento i : interventi) {
+            stato.put(i.getId(), i.getClass().getSimpleName() + "|" + i);
+        }
+        return stato;
+    }
+}
@@ -0,0 +1,170 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Modalità batch su un file comandi: codici di uscita, risultati su stdout ed errori su
+ * stderr, salvataggio finale anche quando il file si interrompe a metà.
+ */
+class ModalitaBatchTest {
+
+    @TempDir
+    Path cartella;
+
+    private final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+
+    private LogManager logManager(Path file) {
+        return new LogManager(file, LogManager.Persistenza.SNAPSHOT);
+    }
+
+    private int esegui(Path log, String... args) {
+        return ModalitaBatch.esegui(args, logManager(log), stdout, stderr);
+    }
+
+    private Path comandi(String... righe) throws IOException {
+        Path file = cartella.resolve("comandi.txt");
+        Files.write(file, List.of(righe), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private List<String> righe(ByteArrayOutputStream stream) {
+        String testo = stream.toString(StandardCharsets.UTF_8);
+        return testo.isEmpty() ? List.of() : Arrays.asList(testo.split("\r?\n"));
+    }
+
+    private LogManager riapri(Path log) {
+        LogManager m = logManager(log);
+        m.carica();
+        return m;
+    }
+
+    @Test
+    void risultatiSuStdoutErroriSuStderr() throws Exception {
+        Path log = cartella.resolve("log.dat");
+        Path file = comandi(
+                "# commento",
+                "add-hw \"Rossi Srl\" 2024-01-15 \"Sostituzione RAM\" Crucial AB000001",
+                "",
+                "add-sw Bianchi 2024-02-01 Aggiornamento \"Windows 11\" AB000002",
+                "find AB000001",
+                "find ZZ999999",
+                "add-sw Bianchi 2024-02-01 Doppione Linux ab000002",
+                "boh",
+                "add-sw Bianchi 2024-13-01 \"Data sbagliata\" Linux",
+                "delete AB000002",
+                "list");
+
+        assertEquals(ModalitaBatch.COMANDO_FALLITO, esegui(log, "--batch", file.toString()));
+
+        List<String> risultati = righe(stdout);
+        assertEquals(5, risultati.size(), risultati.toString());
+        assertEquals("AB000001", risultati.get(0));
+        assertEquals("AB000002", risultati.get(1));
+        assertTrue(risultati.get(2).startsWith("HW\tAB000001\tRossi Srl\t2024-01-15\tSostituzione RAM\tCrucial\t"),
+                risultati.get(2));
+        assertEquals("AB000002", risultati.get(3));
+        assertEquals(risultati.get(2), risultati.get(4));
+
+        List<String> errori = righe(stderr).stream().filter(r -> r.startsWith("riga ")).collect(Collectors.toList());
+        assertEquals(4, errori.size(), errori.toString());
+        assertTrue(errori.get(0).startsWith("riga 6: "), errori.get(0));
+        assertEquals("riga 7: ID già presente nel log: ab000002", errori.get(1));
+        assertEquals("riga 8: comando sconosciuto: boh", errori.get(2));
+        assertTrue(errori.get(3).startsWith("riga 9: "), errori.get(3));
+        // I messaggi del LogManager vanno su stderr, mai tra i risultati.
+        assertTrue(righe(stderr).stream().anyMatch(r -> r.strip().startsWith("[OK] Log salvato")), righe(stderr).toString());
+        assertTrue(risultati.stream().noneMatch(r -> r.strip().startsWith("[")), risultati.toString());
+
+        // Nessun save nel file: il salvataggio finale ha scritto le modifiche.
+        LogManager m = riapri(log);
+        assertEquals(1, m.getTutti().size());
+        assertEquals("Sostituzione RAM", m.cercaPerId("AB000001").getDescrizione());
+    }
+
+    @Test
+    void tuttoOkESenzaModificheNessunSalvataggio() throws Exception {
+        Path log = cartella.resolve("log.dat");
+        assertEquals(ModalitaBatch.OK, esegui(log, "--batch", comandi("list", "# solo lettura").toString()));
+        assertTrue(righe(stdout).isEmpty());
+        assertFalse(Files.exists(log));
+
+        assertEquals(ModalitaBatch.OK, esegui(log, "add-sw", "Bianchi", "2024-02-01", "Aggiornamento", "Linux", "AB000001"));
+        assertEquals(ModalitaBatch.OK, esegui(log, "find", "AB000001"));
+        List<String> risultati = righe(stdout);
+        assertEquals("AB000001", risultati.get(0));
+        assertTrue(risultati.get(1).startsWith("SW\tAB000001\tBianchi\t"), risultati.get(1));
+    }
+
+    @Test
+    void usoErrato() throws Exception {
+        Path log = cartella.resolve("log.dat");
+        assertEquals(ModalitaBatch.USO_ERRATO, esegui(log, "--batch"));
+        assertEquals(ModalitaBatch.USO_ERRATO, esegui(log, "--batch", cartella.resolve("manca.txt").toString()));
+        assertEquals(ModalitaBatch.COMANDO_FALLITO, esegui(log, "find"));
+        assertTrue(righe(stdout).isEmpty());
+        // Senza i messaggi del LogManager ("[i] ..."), che qui non interessano.
+        List<String> errori = righe(stderr).stream()
+                .filter(r -> !r.strip().startsWith("[")).collect(Collectors.toList());
+        assertEquals(3, errori.size(), errori.toString());
+        assertEquals("uso: --batch <file comandi | ->", errori.get(0));
+        assertTrue(errori.get(1).startsWith("file comandi non leggibile: "), errori.get(1));
+        assertEquals("riga 1: uso: find <id>", errori.get(2));
+    }
+
+    @Test
+    void fileInterrottoAMetaSalvaLeRigheGiaEseguite() throws Exception {
+        // Un byte non UTF-8 dopo il primo blocco letto: le righe prima vengono eseguite.
+        Path log = cartella.resolve("log.dat");
+        Path file = cartella.resolve("comandi.txt");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write("add-hw Rossi 2024-01-15 RAM Crucial AB000001\n".getBytes(StandardCharsets.UTF_8));
+            byte[] commento = "# riempitivo per superare il buffer\n".getBytes(StandardCharsets.UTF_8);
+            for (int k = 0; k < 1000; k++) {
+                out.write(commento);
+            }
+            out.write(new byte[] {'f', 'i', 'n', 'd', ' ', (byte) 0xFF, '\n'});
+            out.write("add-sw Bianchi 2024-02-01 Mai Linux AB000002\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEquals(ModalitaBatch.USO_ERRATO, esegui(log, "--batch", file.toString()));
+        assertEquals(List.of("AB000001"), righe(stdout));
+        assertTrue(righe(stderr).stream().anyMatch(r -> r.contains("file comandi non leggibile da qui in poi")),
+                righe(stderr).toString());
+
+        LogManager m = riapri(log);
+        assertEquals(1, m.getTutti().size());
+        assertEquals("RAM", m.cercaPerId("AB000001").getDescrizione());
+    }
+
+    @Test
+    void salvataggioFallitoHaLaPrecedenza() throws Exception {
+        // La cartella del log è un file: né save né il salvataggio finale possono riuscire.
+        Path nonCartella = Files.createFile(cartella.resolve("file"));
+        Path log = nonCartella.resolve("log.dat");
+        Path file = comandi(
+                "add-hw Rossi 2024-01-15 RAM Crucial AB000001",
+                "save",
+                "find ZZ999999");
+
+        assertEquals(ModalitaBatch.NON_SALVATO, esegui(log, "--batch", file.toString()));
+        assertEquals(List.of("AB000001"), righe(stdout));
+        List<String> errori = righe(stderr);
+        assertTrue(errori.contains("riga 2: salvataggio fallito"), errori.toString());
+        assertEquals("salvataggio fallito: le modifiche non sono state scritte su disco",
+                errori.get(errori.size() - 1));
+    }
+}
@@ -0,0 +1,205 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * API HTTP su una porta libera: percorsi e codici di stato, PATCH che non tocca l'intervento
+ * se un campo non è valido, corpo troppo annidato o troppo grande, elenco interrotto.
+ */
+class ServerHttpTest {
+
+    @TempDir
+    Path cartella;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private ServerHttp server;
+    private LogManager logManager;
+
+    private void avvia(Path fileDati) throws IOException {
+        logManager = new LogManager(fileDati, LogManager.Persistenza.SNAPSHOT);
+        logManager.carica();
+        server = ServerHttp.avvia(logManager, null, 0);
+    }
+
+    @AfterEach
+    void ferma() {
+        if (server != null) {
+            server.ferma();
+        }
+    }
+
+    private HttpResponse<String> invia(String metodo, String percorso, String corpo) throws Exception {
+        HttpRequest richiesta = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPorta() + percorso))
+                .method(metodo, corpo == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(corpo))
+                .build();
+        return client.send(richiesta, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static Map<String, Object> oggetto(HttpResponse<String> risposta) {
+        return Json.leggiOggetto(risposta.body());
+    }
+
+    private static final String RAM = "{\"tipo\": \"HW\", \"id\": \"AB000001\", \"cliente\": \"Rossi Srl\","
+            + " \"data\": \"2024-01-15\", \"descrizione\": \"Sostituzione RAM\", \"pezzoRicambio\": \"Crucial\"}";
+
+    @Test
+    void percorsiECodiciDiStato() throws Exception {
+        avvia(cartella.resolve("log.dat"));
+
+        HttpResponse<String> creato = invia("POST", "/interventi", RAM);
+        assertEquals(201, creato.statusCode(), creato.body());
+        assertEquals("/interventi/AB000001", creato.headers().firstValue("Location").orElse(null));
+        assertEquals("Crucial", oggetto(creato).get("pezzoRicambio"));
+        assertEquals(409, invia("POST", "/interventi", RAM.replace("AB000001", "ab000001")).statusCode());
+
+        // Senza id ne viene generato uno.
+        HttpResponse<String> generato = invia("POST", "/interventi", "{\"tipo\": \"SW\", \"cliente\": \"Bianchi\","
+                + " \"data\": \"2024-02-01\", \"descrizione\": \"Aggiornamento\", \"sistemaOperativo\": \"Linux\"}");
+        assertEquals(201, generato.statusCode(), generato.body());
+        String idGenerato = (String) oggetto(generato).get("id");
+
+        HttpResponse<String> letto = invia("GET", "/interventi/ab000001", null);
+        assertEquals(200, letto.statusCode());
+        assertEquals("Rossi Srl", oggetto(letto).get("cliente"));
+        assertEquals(2, ((List<?>) Json.leggi(invia("GET", "/interventi", null).body())).size());
+        assertEquals(1, ((List<?>) Json.leggi(invia("GET", "/interventi?cliente=Bianchi", null).body())).size());
+        assertEquals(200, invia("GET", "/riepilogo?da=2024-01-01&a=2024-12-31", null).statusCode());
+
+        assertEquals(400, invia("GET", "/interventi?da=2024-13-01", null).statusCode());
+        assertEquals(400, invia("GET", "/interventi?testo=ram&cliente=Rossi", null).statusCode());
+        assertEquals(400, invia("POST", "/interventi", "{\"tipo\": \"HW\"").statusCode());
+        assertEquals(400, invia("POST", "/interventi", "{\"tipo\": \"XX\", \"cliente\": \"Rossi\"}").statusCode());
+
+        HttpResponse<String> nonTrovato = invia("GET", "/interventi/ZZ999999", null);
+        assertEquals(404, nonTrovato.statusCode());
+        assertTrue(oggetto(nonTrovato).containsKey("errore"), nonTrovato.body());
+        assertEquals(404, invia("GET", "/sconosciuto", null).statusCode());
+
+        HttpResponse<String> nonAmmesso = invia("PUT", "/interventi", RAM);
+        assertEquals(405, nonAmmesso.statusCode());
+        assertEquals("GET, POST", nonAmmesso.headers().firstValue("Allow").orElse(null));
+        assertEquals(405, invia("POST", "/interventi/AB000001", RAM).statusCode());
+        assertEquals(405, invia("DELETE", "/riepilogo", null).statusCode());
+        assertEquals(405, invia("GET", "/salva", null).statusCode());
+
+        assertEquals(204, invia("DELETE", "/interventi/" + idGenerato, null).statusCode());
+        assertEquals(404, invia("DELETE", "/interventi/" + idGenerato, null).statusCode());
+
+        HttpResponse<String> salvato = invia("POST", "/salva", null);
+        assertEquals(200, salvato.statusCode());
+        assertEquals(Boolean.TRUE, oggetto(salvato).get("salvato"));
+        assertTrue(Files.exists(cartella.resolve("log.dat")));
+    }
+
+    @Test
+    void patchNonValidaNonTocca() throws Exception {
+        avvia(cartella.resolve("log.dat"));
+        assertEquals(201, invia("POST", "/interventi", RAM).statusCode());
+        String prima = invia("GET", "/interventi/AB000001", null).body();
+
+        for (String corpo : new String[] {
+            "{\"descrizione\": \"Nuova\", \"data\": \"2024-13-01\"}",    // data non valida
+            "{\"descrizione\": \"Nuova\", \"data\": \"1899-12-31\"}",    // data fuori intervallo
+            "{\"cliente\": \"Verdi\", \"sistemaOperativo\": \"Linux\"}", // campo di un SW
+            "{\"cliente\": \"Verdi\", \"tipo\": \"SW\"}",
+            "{\"cliente\": \"Verdi\", \"id\": \"AB000002\"}",
+            "{\"cliente\": \"Verdi\", \"colore\": \"rosso\"}",
+            "{\"cliente\": \"\"}",
+            "[\"cliente\", \"Verdi\"]",
+        }) {
+            HttpResponse<String> risposta = invia("PATCH", "/interventi/AB000001", corpo);
+            assertEquals(400, risposta.statusCode(), corpo);
+            assertEquals(prima, invia("GET", "/interventi/AB000001", null).body(), corpo);
+        }
+        assertEquals(404, invia("PATCH", "/interventi/ZZ999999", "{\"cliente\": \"Verdi\"}").statusCode());
+
+        HttpResponse<String> modificato = invia("PATCH", "/interventi/AB000001",
+                "{\"cliente\": \"Verdi\", \"data\": \"15/03/2024\", \"dettaglio\": \"Kingston\", \"tipo\": \"hw\"}");
+        assertEquals(200, modificato.statusCode(), modificato.body());
+        Intervento i = logManager.cercaPerId("AB000001");
+        assertEquals("Verdi", i.getCliente());
+        assertEquals(LocalDate.of(2024, 3, 15), i.getData());
+        assertEquals("Kingston", ((InterventoHardware) i).getPezzoRicambio());
+        assertEquals("Sostituzione RAM", i.getDescrizione());
+    }
+
+    @Test
+    void corpoTroppoAnnidatoOTroppoGrande() throws Exception {
+        avvia(cartella.resolve("log.dat"));
+
+        String annidato = "{\"allegati\": " + "[".repeat(Json.MAX_PROFONDITA) + "]".repeat(Json.MAX_PROFONDITA) + "}";
+        HttpResponse<String> risposta = invia("POST", "/interventi", annidato);
+        assertEquals(400, risposta.statusCode());
+        assertTrue(((String) oggetto(risposta).get("errore")).contains("livelli"), risposta.body());
+
+        String grande = RAM.replace("Sostituzione RAM", "x".repeat(1 << 20));
+        assertEquals(413, invia("POST", "/interventi", grande).statusCode());
+        assertEquals(413, invia("PATCH", "/interventi/AB000001", grande).statusCode());
+        assertTrue(logManager.getTutti().isEmpty());
+        // Il server continua a rispondere.
+        assertEquals(201, invia("POST", "/interventi", RAM).statusCode());
+    }
+
+    /** Un intervento che non si riesce a scrivere a metà elenco. */
+    private static final class Rotto extends InterventoSoftware {
+        private static final long serialVersionUID = 1L;
+        volatile boolean rotto;
+
+        Rotto(String id) {
+            super(id, "Bianchi", LocalDate.of(2024, 2, 1), "Aggiornamento", "Linux");
+        }
+
+        @Override
+        public double calcolaTariffa() {
+            if (rotto) {
+                throw new IllegalStateException("tariffa non calcolabile");
+            }
+            return super.calcolaTariffa();
+        }
+    }
+
+    @Test
+    void elencoInterrottoNonSembraCompleto() throws Exception {
+        avvia(cartella.resolve("log.dat"));
+        // Abbastanza interventi prima di quello rotto da far partire dei chunk.
+        for (int k = 0; k < 2000; k++) {
+            logManager.aggiungiTutti(List.of(new InterventoHardware(String.format("AA%06d", k), "Rossi Srl",
+                    LocalDate.of(2024, 1, 15), "Sostituzione RAM", "Crucial")));
+        }
+        Rotto rotto = new Rotto("ZZ000001");
+        logManager.aggiungiTutti(List.of(rotto));
+        rotto.rotto = true;
+
+        // Non un 200 con un elenco più corto: la connessione si chiude a metà risposta.
+        assertThrows(IOException.class, () -> invia("GET", "/interventi", null));
+        // Il singolo intervento rotto è un 500, e il server continua a rispondere.
+        assertEquals(500, invia("GET", "/interventi/ZZ000001", null).statusCode());
+        assertEquals(200, invia("GET", "/interventi/AA000000", null).statusCode());
+    }
+
+    @Test
+    void salvataggioFallitoRisponde500() throws Exception {
+        // La cartella del log è un file: il salvataggio non può riuscire.
+        avvia(Files.createFile(cartella.resolve("file")).resolve("log.dat"));
+        assertEquals(201, invia("POST", "/interventi", RAM).statusCode());
+
+        HttpResponse<String> risposta = invia("POST", "/salva", null);
+        assertEquals(500, risposta.statusCode());
+        assertTrue(oggetto(risposta).containsKey("errore"), risposta.body());
+    }
+}
@@ -0,0 +1,193 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Formato dello snapshot: andata e ritorno, versione 1 senza tabella, file troncati. */
+class SnapshotBinarioTest {
+
+    @TempDir
+    Path cartella;
+
+    static List<Intervento> esempi() {
+        return List.of(
+                new InterventoHardware("00000001", "Rossi Srl", LocalDate.of(2024, 1, 15), "Sostituzione RAM", "Crucial 2x16GB"),
+                new InterventoSoftware("00000002", "Rossi Srl", LocalDate.of(1999, 12, 31), "Reinstallazione", "Windows 11"),
+                new InterventoSoftware("00000003", "Bianchi & C.", LocalDate.of(2030, 6, 1), "", "Ubuntu Server 24.04"),
+                new InterventoHardware("00000004", "Città Nuova", LocalDate.of(2024, 2, 29), "Perché non parte? ☕\ttab", "SSD"),
+                new InterventoHardware("00000005", "Bianchi & C.", LocalDate.of(2024, 1, 15), "x".repeat(5000), "Crucial 2x16GB"));
+    }
+
+    /** Stessa classe, stessi campi e stessa tariffa. */
+    static void assertUguali(List<Intervento> attesi, List<Intervento> letti) {
+        assertEquals(testo(attesi), testo(letti));
+    }
+
+    static List<String> testo(List<Intervento> interventi) {
+        List<String> righe = new ArrayList<>();
+        for (Intervento i : interventi) {
+            righe.add(i.getClass().getSimpleName() + "|" + i);
+        }
+        return righe;
+    }
+
+    @Test
+    void andataERitorno() throws IOException {
+        Path file = cartella.resolve("log.dat");
+        SnapshotBinario.scrivi(file, esempi());
+
+        assertTrue(SnapshotBinario.riconosce(file));
+        List<Intervento> letti = new ArrayList<>();
+        assertEquals(esempi().size(), SnapshotBinario.leggi(file, letti::add));
+        assertUguali(esempi(), letti);
+    }
+
+    @Test
+    void snapshotVuoto() throws IOException {
+        Path file = cartella.resolve("log.dat");
+        SnapshotBinario.scrivi(file, List.of());
+
+        List<Intervento> letti = new ArrayList<>();
+        assertEquals(0, SnapshotBinario.leggi(file, letti::add));
+        assertTrue(letti.isEmpty());
+    }
+
+    @Test
+    void letturaMappataPerPosizione() throws IOException {
+        Path file = cartella.resolve("log.dat");
+        SnapshotBinario.scrivi(file, esempi());
+
+        SnapshotBinario.Mappa mappa = SnapshotBinario.apri(ByteBuffer.wrap(Files.readAllBytes(file)));
+        List<String> id = new ArrayList<>();
+        List<Integer> posizioni = new ArrayList<>();
+        SnapshotBinario.indicizza(mappa, (idRecord, posizione) -> {
+            id.add(idRecord);
+            posizioni.add(posizione);
+        });
+        assertEquals(List.of("00000001", "00000002", "00000003", "00000004", "00000005"), id);
+
+        List<Intervento> letti = new ArrayList<>();
+        for (int posizione : posizioni) {
+            letti.add(SnapshotBinario.leggiA(mappa, posizione));
+        }
+        assertUguali(esempi(), letti);
+    }
+
+    @Test
+    void versioneSenzaTabellaAncoraLeggibile() throws IOException {
+        // Versione 1: header senza tabella, stringhe per esteso in ogni record.
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        buf.putInt(SnapshotBinario.MAGIC).put(SnapshotBinario.VERSIONE_SENZA_TABELLA).putInt(esempi().size());
+        for (Intervento i : esempi()) {
+            int inizio = buf.position();
+            buf.putInt(0);
+            CodecIntervento.scrivi(i, buf);
+            buf.putInt(inizio, buf.position() - inizio - Integer.BYTES);
+        }
+        Path file = cartella.resolve("v1.dat");
+        Files.write(file, Arrays.copyOf(buf.array(), buf.position()));
+
+        List<Intervento> letti = new ArrayList<>();
+        SnapshotBinario.leggi(file, letti::add);
+        assertUguali(esempi(), letti);
+    }
+
+    @Test
+    void serializzazioneJavaNonRiconosciuta() throws IOException {
+        Path file = cartella.resolve("vecchio.dat");
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(file))) {
+            out.writeObject(new ArrayList<>(esempi()));
+        }
+        assertFalse(SnapshotBinario.riconosce(file));
+    }
+
+    @Test
+    void snapshotTroncatoSegnalato() throws IOException {
+        Path file = cartella.resolve("log.dat");
+        SnapshotBinario.scrivi(file, esempi());
+        byte[] completo = Files.readAllBytes(file);
+
+        // Ogni taglio dopo l'header, anche a metà di un record, è un errore e non un log più corto.
+        for (int taglio = SnapshotBinario.HEADER; taglio < completo.length; taglio += 7) {
+            Files.write(file, Arrays.copyOf(completo, taglio));
+            assertThrows(IOException.class, () -> SnapshotBinario.leggi(file, i -> { }),
+                    "troncato a " + taglio + " byte");
+        }
+    }
+
+    @Test
+    void varintAiLimiti() {
+        for (int valore : new int[] {0, 127, 128, 16_383, 16_384, Integer.MAX_VALUE}) {
+            ByteBuffer buf = ByteBuffer.allocate(8);
+            CodecIntervento.scriviVarint(valore, buf);
+            buf.flip();
+            assertEquals(valore, CodecIntervento.leggiVarint(buf));
+        }
+        // -1 scritto come varint: cinque byte, il quinto oltre i 31 bit.
+        ByteBuffer negativo = ByteBuffer.wrap(new byte[] {-1, -1, -1, -1, 0x0F});
+        assertThrows(IllegalArgumentException.class, () -> CodecIntervento.leggiVarint(negativo));
+    }
+
+    @Test
+    void lunghezzaNegativaSegnalataComeFileCorrotto() throws IOException {
+        // Versione 1, un record il cui ID dichiara una lunghezza di -1 byte.
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        buf.putInt(SnapshotBinario.MAGIC).put(SnapshotBinario.VERSIONE_SENZA_TABELLA).putInt(1);
+        buf.putInt(16).put(CodecIntervento.TIPO_HW).put(new byte[] {-1, -1, -1, -1, 0x0F}).put(new byte[10]);
+        Path file = cartella.resolve("corrotto.dat");
+        Files.write(file, Arrays.copyOf(buf.array(), buf.position()));
+
+        assertThrows(IOException.class, () -> SnapshotBinario.leggi(file, i -> { }));
+        SnapshotBinario.Mappa mappa = SnapshotBinario.apri(ByteBuffer.wrap(Files.readAllBytes(file)));
+        assertThrows(IOException.class, () -> SnapshotBinario.indicizza(mappa, (id, posizione) -> { }));
+        assertThrows(IOException.class, () -> SnapshotBinario.leggiA(mappa, SnapshotBinario.HEADER));
+
+        // Il LogManager non si ferma: avvisa e parte da un log vuoto.
+        for (LogManager.Caricamento caricamento : LogManager.Caricamento.values()) {
+            Files.copy(file, cartella.resolve("log.dat"), StandardCopyOption.REPLACE_EXISTING);
+            LogManager m = new LogManager(cartella.resolve("log.dat"), LogManager.Persistenza.SNAPSHOT, caricamento);
+            m.carica();
+            assertTrue(m.getTutti().isEmpty());
+        }
+    }
+
+    @Test
+    void tabellaConNumeroDiValoriNegativo() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        buf.putInt(SnapshotBinario.MAGIC).put(SnapshotBinario.VERSIONE).putInt(0);
+        buf.putInt(5).put(new byte[] {-1, -1, -1, -1, 0x0F});
+        byte[] dati = Arrays.copyOf(buf.array(), buf.position());
+        Path file = cartella.resolve("tabella.dat");
+        Files.write(file, dati);
+
+        assertThrows(IOException.class, () -> SnapshotBinario.leggi(file, i -> { }));
+        assertThrows(IOException.class, () -> SnapshotBinario.apri(ByteBuffer.wrap(dati)));
+    }
+
+    @Test
+    void dataOltreIlFormatoNonTroncata() {
+        // Solo da un vecchio log serializzato: in ingresso una data così viene rifiutata.
+        List<Intervento> lontano = List.of(
+                new InterventoSoftware("00000001", "Rossi Srl", LocalDate.MAX, "Aggiornamento", "Linux"));
+        assertThrows(IOException.class, () -> SnapshotBinario.scrivi(cartella.resolve("log.dat"), lontano));
+
+        assertThrows(IllegalArgumentException.class, () -> Importatore.data("+999999999-01-01"));
+        assertThrows(IllegalArgumentException.class, () -> Importatore.data("31/12/1899"));
+        assertEquals(Intervento.DATA_MASSIMA, Importatore.data("2099-12-31"));
+        assertEquals(Intervento.DATA_MINIMA, Importatore.data("01/01/1900"));
+    }
+}
@@ -0,0 +1,217 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Regole delle tariffe: ordine di applicazione, caratteri jolly sul sistema operativo,
+ * intervalli di date, file non valido che lascia le regole in uso, tariffa in cache
+ * ricalcolata dopo un setter.
+ */
+class TariffeTest {
+
+    @TempDir
+    Path cartella;
+
+    private Tariffe regole(String... regole) throws IOException {
+        Path file = cartella.resolve("tariffe.json");
+        Files.writeString(file, "{\"regole\": [" + String.join(",", regole) + "]}", StandardCharsets.UTF_8);
+        return Tariffe.leggi(file);
+    }
+
+    private static Intervento hw(String cliente, LocalDate data) {
+        return new InterventoHardware("AB000001", cliente, data, "Sostituzione RAM", "Crucial");
+    }
+
+    private static Intervento sw(String cliente, LocalDate data, String sistema) {
+        return new InterventoSoftware("AB000002", cliente, data, "Aggiornamento", sistema);
+    }
+
+    private static final LocalDate GIORNO = LocalDate.of(2024, 1, 15);
+
+    @Test
+    void predefinite() throws IOException {
+        Tariffe t = Tariffe.predefinite();
+        assertTrue(t.isPredefinite());
+        assertEquals(3, t.getNumeroRegole());
+        assertEquals(9000, t.centesimi(hw("Rossi", GIORNO)));
+        assertEquals(5500, t.centesimi(sw("Rossi", GIORNO, "Windows 11")));
+        assertEquals(7700, t.centesimi(sw("Rossi", GIORNO, "Windows Server 2022")));
+        assertEquals(7700, t.centesimi(sw("Rossi", GIORNO, "ubuntu SERVER")));
+        // Senza file, le stesse regole.
+        assertSame(t, Tariffe.leggi(cartella.resolve("manca.json")));
+        // Fuori da un LogManager un intervento usa le predefinite.
+        assertEquals(77.0, sw("Rossi", GIORNO, "Windows Server 2022").calcolaTariffa());
+    }
+
+    @Test
+    void regoleNellOrdineDelFile() throws IOException {
+        Tariffe t = regole(
+                "{\"tariffa\": 50}",
+                "{\"tipo\": \"HW\", \"tariffa\": 70}",
+                "{\"percentuale\": 10}",
+                "{\"supplemento\": 5}");
+        assertEquals(4, t.getNumeroRegole());
+        assertEquals(8200, t.centesimi(hw("Rossi", GIORNO)));                 // 70 + 10% + 5
+        assertEquals(6000, t.centesimi(sw("Rossi", GIORNO, "Linux")));        // 50 + 10% + 5
+
+        // Una tariffa dopo percentuale e supplemento li cancella.
+        Tariffe alContrario = regole("{\"supplemento\": 5}", "{\"percentuale\": 10}", "{\"tariffa\": 50}");
+        assertEquals(5000, alContrario.centesimi(hw("Rossi", GIORNO)));
+
+        // Nella stessa regola: tariffa, poi percentuale, poi supplemento. Conti in centesimi.
+        Tariffe unaRegola = regole("{\"tariffa\": 55, \"percentuale\": 40, \"supplemento\": 3.5}");
+        assertEquals(8050, unaRegola.centesimi(hw("Rossi", GIORNO)));
+        assertEquals(3833, regole("{\"tariffa\": 33.33, \"percentuale\": 15}").centesimi(hw("Rossi", GIORNO)));
+        assertEquals(2000, regole("{\"tariffa\": 40, \"percentuale\": -50}").centesimi(hw("Rossi", GIORNO)));
+        // Nessuna regola che vale: 0.
+        assertEquals(0, regole("{\"tipo\": \"SW\", \"tariffa\": 55}").centesimi(hw("Rossi", GIORNO)));
+    }
+
+    @Test
+    void sistemaConCaratteriJolly() throws IOException {
+        Tariffe t = regole(
+                "{\"tipo\": \"SW\", \"tariffa\": 50}",
+                "{\"sistema\": \"Win?ows*\", \"supplemento\": 10}",
+                "{\"sistema\": \"*v1.0*\", \"supplemento\": 1}");
+        assertEquals(6000, t.centesimi(sw("Rossi", GIORNO, "Windows 11")));
+        assertEquals(6000, t.centesimi(sw("Rossi", GIORNO, "WINDOWS server")));
+        assertEquals(5000, t.centesimi(sw("Rossi", GIORNO, "Wndows 11")));
+        assertEquals(5000, t.centesimi(sw("Rossi", GIORNO, "MS Windows")));    // il modello copre tutto il nome
+        assertEquals(5100, t.centesimi(sw("Rossi", GIORNO, "Firmware v1.0")));
+        assertEquals(5000, t.centesimi(sw("Rossi", GIORNO, "Firmware v1x0"))); // il punto non è un jolly
+        // Una regola con il sistema vale solo per gli SW, anche senza "tipo".
+        assertEquals(0, t.centesimi(hw("Rossi", GIORNO)));
+        // Stesso risultato la seconda volta, dalle regole ricordate per sistema operativo.
+        assertEquals(6000, t.centesimi(sw("Bianchi", GIORNO, "Windows 11")));
+    }
+
+    @Test
+    void clienteEDate() throws IOException {
+        Tariffe t = regole(
+                "{\"tariffa\": 100}",
+                "{\"cliente\": \"Rossi Srl\", \"da\": \"2025-01-01\", \"a\": \"31/12/2025\", \"percentuale\": -10}",
+                "{\"da\": \"2026-01-01\", \"supplemento\": 20}");
+        assertEquals(10000, t.centesimi(hw("Rossi Srl", LocalDate.of(2024, 12, 31))));
+        assertEquals(9000, t.centesimi(hw("Rossi Srl", LocalDate.of(2025, 1, 1))));
+        assertEquals(9000, t.centesimi(hw(" rossi srl ", LocalDate.of(2025, 12, 31))));
+        assertEquals(10000, t.centesimi(hw("Bianchi", LocalDate.of(2025, 6, 1))));
+        assertEquals(12000, t.centesimi(hw("Rossi Srl", LocalDate.of(2026, 1, 1))));
+    }
+
+    @Test
+    void fileNonValido() throws IOException {
+        String[][] casi = {
+            {"{\"regole\": 1}", "regole"},
+            {"{\"regole\": [{\"tariffa\": 50}", "JSON non valido"},
+            {"{\"regole\": [1]}", "regola 1"},
+            {"{\"regole\": [{\"tariffa\": 50}, {\"prezzo\": 50}]}", "regola 2: chiave sconosciuta 'prezzo'"},
+            {"{\"regole\": [{\"tipo\": \"XX\", \"tariffa\": 50}]}", "tipo non riconosciuto"},
+            {"{\"regole\": [{\"tipo\": \"HW\", \"sistema\": \"*\", \"tariffa\": 50}]}", "solo per gli interventi SW"},
+            {"{\"regole\": [{\"da\": \"2025-02-01\", \"a\": \"2025-01-01\", \"tariffa\": 50}]}", "'da' è dopo 'a'"},
+            {"{\"regole\": [{\"da\": \"2025-13-01\", \"tariffa\": 50}]}", "regola 1"},
+            {"{\"regole\": [{\"tariffa\": 50.001}]}", "più di due decimali"},
+            {"{\"regole\": [{\"tariffa\": -1}]}", "sotto zero"},
+            {"{\"regole\": [{\"tariffa\": \"50\"}]}", "deve essere un numero"},
+            {"{\"regole\": [{\"tariffa\": 2000000}]}", "fuori scala"},
+            {"{\"regole\": [{\"percentuale\": -101}]}", "sotto -100"},
+            {"{\"regole\": [{\"tipo\": \"HW\"}]}", "serve almeno uno"},
+        };
+        Path file = cartella.resolve("tariffe.json");
+        for (String[] caso : casi) {
+            Files.writeString(file, caso[0], StandardCharsets.UTF_8);
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> Tariffe.leggi(file), caso[0]);
+            assertTrue(e.getMessage().contains(caso[1]), e.getMessage());
+        }
+        // Il BOM del Blocco note non è un errore.
+        Files.writeString(file, "\uFEFF{\"regole\": [{\"tariffa\": 50}]}", StandardCharsets.UTF_8);
+        assertEquals(file.toString(), Tariffe.leggi(file).getOrigine());
+    }
+
+    @Test
+    void tariffaInCacheRicalcolataDopoUnSetter() throws Exception {
+        LogManager m = new LogManager(cartella.resolve("log.dat"), LogManager.Persistenza.SNAPSHOT);
+        m.carica();
+        m.setTariffe(regole(
+                "{\"tipo\": \"SW\", \"tariffa\": 50}",
+                "{\"sistema\": \"*server*\", \"supplemento\": 30}",
+                "{\"cliente\": \"Rossi Srl\", \"percentuale\": -10}",
+                "{\"a\": \"2023-12-31\", \"supplemento\": -5}"));
+        InterventoSoftware i = (InterventoSoftware) sw("Bianchi", GIORNO, "Linux");
+        m.aggiungiTutti(List.of(i));
+        assertEquals(50.0, i.calcolaTariffa());
+
+        i.setSistemaOperativo("Linux Server");
+        assertEquals(80.0, i.calcolaTariffa());
+        assertEquals(80.0, m.getTotale().getImporto(), 1e-9);
+        i.setCliente("Rossi Srl");
+        assertEquals(72.0, i.calcolaTariffa());
+        i.setData(LocalDate.of(2023, 12, 31));
+        assertEquals(67.0, i.calcolaTariffa());
+        assertEquals(67.0, m.getTotale().getImporto(), 1e-9);
+        // La descrizione non conta per le regole.
+        i.setDescrizione("Altro");
+        assertEquals(67.0, i.calcolaTariffa());
+
+        // Regole nuove: ricalcolate la tariffa e i totali già fatti.
+        m.setTariffe(Tariffe.predefinite());
+        assertEquals(77.0, i.calcolaTariffa());
+        assertEquals(77.0, m.getTotale().getImporto(), 1e-9);
+
+        // Fuori dal LogManager lo stesso vale con le predefinite.
+        InterventoSoftware libero = (InterventoSoftware) sw("Bianchi", GIORNO, "Linux");
+        assertEquals(55.0, libero.calcolaTariffa());
+        libero.setSistemaOperativo("Linux Server");
+        assertEquals(77.0, libero.calcolaTariffa());
+    }
+
+    @Test
+    void ricaricaNonValidaLasciaLeRegoleInUso() throws Exception {
+        Path file = cartella.resolve("tariffe.json");
+        LogManager m = new LogManager(cartella.resolve("log.dat"), LogManager.Persistenza.SNAPSHOT);
+        m.carica();
+        Intervento i = hw("Rossi Srl", GIORNO);
+        m.aggiungiTutti(List.of(i));
+        ServerHttp server = ServerHttp.avvia(m, file, 0);
+        try {
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            HttpRequest ricarica = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPorta() + "/tariffe"))
+                    .POST(HttpRequest.BodyPublishers.noBody()).build();
+
+            Files.writeString(file, "{\"regole\": [{\"tariffa\": 100}, {\"tipo\": \"HW\", \"supplemento\": 10}]}");
+            HttpResponse<String> risposta = client.send(ricarica, HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, risposta.statusCode(), risposta.body());
+            assertEquals(2L, Json.leggiOggetto(risposta.body()).get("regole"));
+            assertEquals(110.0, i.calcolaTariffa());
+
+            Files.writeString(file, "{\"regole\": [{\"tariffa\": 100}, {\"tipo\": \"HW\", \"supplemento\": 10.001}]}");
+            risposta = client.send(ricarica, HttpResponse.BodyHandlers.ofString());
+            assertEquals(400, risposta.statusCode());
+            assertTrue(risposta.body().contains("regola 2"), risposta.body());
+            assertEquals(110.0, i.calcolaTariffa());
+            assertEquals(110.0, m.getTotale().getImporto(), 1e-9);
+
+            // Senza file tornano le predefinite.
+            Files.delete(file);
+            risposta = client.send(ricarica, HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, risposta.statusCode());
+            assertEquals(90.0, i.calcolaTariffa());
+        } finally {
+            server.ferma();
+        }
+    }
+}